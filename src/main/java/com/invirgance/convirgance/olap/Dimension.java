@@ -21,6 +21,9 @@ SOFTWARE.
  */
 package com.invirgance.convirgance.olap;
 
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.ForeignKey;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
 import com.invirgance.convirgance.olap.sql.Table;
 import com.invirgance.convirgance.wiring.annotation.Wiring;
 
@@ -128,4 +131,131 @@ public class Dimension
     {
         this.column = column;
     }
+    
+    /**
+     * Generates the SQL expression for the value of this dimension.
+     * @param generator the SQLGenerator building the query.
+     * @return SQL expression of the dimension
+     */
+    public String getSQL(SQLGenerator generator)
+    {
+        return generator.getColumnSQL(table, column);
+    }
+    
+    /**
+     * Selects this dimension in the SQL query being generated. The column is
+     * selected with the name of the dimension as its alias.
+     * @param generator the SQLGenerator building the query.
+     */
+    public void addSelect(SQLGenerator generator)
+    {
+        generator.addSelect(column, table, name);
+    }
+    
+    /**
+     * Generates the SQL condition restricting the query to the rows matched 
+     * by the filter.
+     * @param generator the SQLGenerator building the query.
+     * @param filter the filter on this dimension.
+     * @return the SQL condition
+     */
+    public String getFilterSQL(SQLGenerator generator, Filter filter)
+    {
+        StringBuffer buffer = new StringBuffer();
+        Dialect dialect = generator.getDialect();
+        String reference = generator.getColumnSQL(table, column);
+        
+        if(filter.isRange())
+        {
+            if(filter.getFrom() != null) buffer.append(reference + " >= " + dialect.getLiteralSQL(filter.getFrom()));
+            if(filter.getFrom() != null && filter.getTo() != null) buffer.append(" and ");
+            if(filter.getTo() != null) buffer.append(reference + " <= " + dialect.getLiteralSQL(filter.getTo()));
+            
+            return buffer.toString();
+        }
+        
+        if(filter.getValues().size() == 1)
+        {
+            if(filter.getValues().get(0) == null) return reference + " is null";
+            
+            return reference + " = " + dialect.getLiteralSQL(filter.getValues().get(0));
+        }
+        
+        buffer.append(reference);
+        buffer.append(" in (");
+        
+        for(int i=0; i<filter.getValues().size(); i++)
+        {
+            if(i > 0) buffer.append(", ");
+            
+            buffer.append(dialect.getLiteralSQL(filter.getValues().get(i)));
+        }
+        
+        buffer.append(')');
+        
+        return buffer.toString();
+    }
+    
+    /**
+     * Returns true if a value of this dimension, as returned in the results
+     * of a report, is matched by the filter. Used to apply filters in memory
+     * to cached results.
+     * @param filter the filter on this dimension.
+     * @param value the value of the dimension.
+     * @return true if the value is matched by the filter
+     */
+    public boolean matches(Filter filter, Object value)
+    {
+        if(filter.isRange())
+        {
+            if(value == null) return false;
+            if(filter.getFrom() != null && compare(value, filter.getFrom()) < 0) return false;
+            if(filter.getTo() != null && compare(value, filter.getTo()) > 0) return false;
+            
+            return true;
+        }
+        
+        for(Object match : filter.getValues())
+        {
+            if(match == null && value == null) return true;
+            if(match != null && value != null && compare(value, match) == 0) return true;
+        }
+        
+        return false;
+    }
+    
+    private static int compare(Object value, Object other)
+    {
+        if(value instanceof Number && other instanceof Number)
+        {
+            return Double.compare(((Number)value).doubleValue(), ((Number)other).doubleValue());
+        }
+        
+        if(value instanceof Comparable && value.getClass().isInstance(other))
+        {
+            return ((Comparable)value).compareTo(other);
+        }
+        
+        return value.toString().compareTo(other.toString());
+    }
+    
+    /**
+     * Returns the foreign key of the fact table that references this 
+     * dimension's table. Reports can group by the foreign key rather than by
+     * the column of this dimension and attach the labels afterwards, avoiding
+     * both the join and grouping on strings.
+     * @return the foreign key or null if the dimension can't be grouped by key
+     */
+    public ForeignKey getGroupingKey()
+    {
+        if(star == null || table == null || table.getPrimaryKey() == null) return null;
+        if(table.equals(star.getFact())) return null;
+        
+        for(ForeignKey key : star.getFact().getForeignKeys())
+        {
+            if(key.getTarget().equals(table)) return key;
+        }
+        
+        return null;
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.json.JSONArray;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Restricts a report to the rows where a Dimension matches a list of values
+ * or falls within a range. Ranges are inclusive at both ends and either end 
+ * may be left open by passing null. The SQL for the restriction is generated
+ * by the Dimension so that dimensions such as {@link TimeDimension} can push
+ * down predicates the database can use with indexes and partitions.
+ * 
+ * @author jbanes
+ */
+public class Filter
+{
+    private Dimension dimension;
+    private List<Object> values;
+    private Object from;
+    private Object to;
+
+    /**
+     * Creates a filter matching any of the values.
+     * @param dimension the Dimension being filtered
+     * @param values the values to match
+     */
+    public Filter(Dimension dimension, List<?> values)
+    {
+        if(values == null || values.isEmpty()) throw new IllegalArgumentException("At least one value is required to filter [" + dimension.getName() + "]");
+        
+        this.dimension = dimension;
+        this.values = Collections.unmodifiableList(new ArrayList<Object>(values));
+    }
+
+    /**
+     * Creates a filter matching the inclusive range.
+     * @param dimension the Dimension being filtered
+     * @param from the lower bound or null for no lower bound
+     * @param to the upper bound or null for no upper bound
+     */
+    public Filter(Dimension dimension, Object from, Object to)
+    {
+        if(from == null && to == null) throw new IllegalArgumentException("A range filter on [" + dimension.getName() + "] requires a lower or upper bound");
+        
+        this.dimension = dimension;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the Dimension being filtered.
+     * @return the Dimension
+     */
+    public Dimension getDimension()
+    {
+        return dimension;
+    }
+
+    /**
+     * Returns true if this filter matches a range rather than a list of values.
+     * @return true for range filters
+     */
+    public boolean isRange()
+    {
+        return (values == null);
+    }
+    
+    /**
+     * Returns the values matched by this filter or null for range filters.
+     * @return the list of values
+     */
+    public List<Object> getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Returns the inclusive lower bound of a range filter.
+     * @return the lower bound or null
+     */
+    public Object getFrom()
+    {
+        return from;
+    }
+
+    /**
+     * Returns the inclusive upper bound of a range filter.
+     * @return the upper bound or null
+     */
+    public Object getTo()
+    {
+        return to;
+    }
+
+    // Values JSON can't represent are tagged with their type so they can't collide with strings
+    private static Object normalize(Object value)
+    {
+        JSONArray<Object> tagged;
+        
+        if(value == null || value instanceof String || value instanceof Number || value instanceof Boolean) return value;
+        
+        tagged = new JSONArray<>();
+        
+        tagged.add(value.getClass().getName());
+        tagged.add(value.toString());
+        
+        return tagged;
+    }
+    
+    private static String encode(Object value)
+    {
+        JSONArray<Object> array = new JSONArray<>();
+        
+        array.add(value);
+        
+        return array.toString();
+    }
+    
+    /**
+     * Returns a normalized description of the filter used in report 
+     * signatures. The description is a JSON array of the Dimension name
+     * followed by either the sorted, distinct values or the range, so that
+     * filters listing the same values in any order share a description and 
+     * values containing separators can't be confused with lists.
+     * @return the description of the filter
+     */
+    @Override
+    public String toString()
+    {
+        JSONArray<Object> description = new JSONArray<>();
+        JSONArray<Object> matched = new JSONArray<>();
+        Map<String,Object> sorted = new TreeMap<>();
+        Object normalized;
+        
+        description.add(dimension.getName());
+        
+        if(isRange())
+        {
+            description.add("range");
+            description.add(normalize(from));
+            description.add(normalize(to));
+            
+            return description.toString();
+        }
+        
+        for(Object value : values)
+        {
+            normalized = normalize(value);
+            
+            sorted.put(encode(normalized), normalized);
+        }
+        
+        matched.addAll(sorted.values());
+        description.add("in");
+        description.add(matched);
+        
+        return description.toString();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered path of Dimensions from the coarsest level to the finest level
+ * (e.g. Country, Region, Store). Hierarchies describe how users drill down 
+ * and drill up through the Dimensions of a Star. Results at a finer level 
+ * can be re-aggregated in memory to answer requests at a coarser level.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class Hierarchy
+{
+    private Star star;
+    private String name;
+    private List<Dimension> levels = new ArrayList<>();
+
+    /**
+     * Initializes an empty Hierarchy with no levels.
+     */
+    public Hierarchy()
+    {
+    }
+
+    /**
+     * Constructs a Hierarchy with the specified name and levels.
+     * @param name the name of the Hierarchy (e.g. "Geography")
+     * @param levels the Dimensions ordered from coarsest to finest
+     */
+    public Hierarchy(String name, List<Dimension> levels)
+    {
+        this.name = name;
+        
+        setLevels(levels);
+    }
+
+    /**
+     * Returns the star schema associated with this hierarchy.
+     * @return the Star schema assigned to the hierarchy.
+     */
+    public Star getStar()
+    {
+        return star;
+    }
+
+    /**
+     * Assigns the star schema reference to this hierarchy. 
+     * @param star The {@code Star} schema object.
+     */
+    void setStar(Star star)
+    {
+        this.star = star;
+    }
+
+    /**
+     * Returns the name of the hierarchy.
+     * @return the name as a String.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Sets the name of this Hierarchy.
+     * @param name the new name as a String.
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Returns the levels of the hierarchy ordered from coarsest to finest.
+     * @return the list of Dimensions
+     */
+    public List<Dimension> getLevels()
+    {
+        return levels;
+    }
+
+    /**
+     * Sets the levels of the hierarchy ordered from coarsest to finest.
+     * @param levels the list of Dimensions
+     */
+    public void setLevels(List<Dimension> levels)
+    {
+        this.levels = new ArrayList<>();
+        
+        for(Dimension level : levels) addLevel(level);
+    }
+    
+    /**
+     * Adds a level below the current finest level.
+     * @param level the Dimension to add
+     */
+    public void addLevel(Dimension level)
+    {
+        if(levels.contains(level)) throw new IllegalArgumentException("Dimension [" + level.getName() + "] is already a level of [" + name + "]");
+        
+        levels.add(level);
+    }
+    
+    /**
+     * Returns true if the Dimension is a level of this hierarchy.
+     * @param dimension the Dimension to check
+     * @return true if the Dimension is a level
+     */
+    public boolean contains(Dimension dimension)
+    {
+        return levels.contains(dimension);
+    }
+    
+    /**
+     * Returns the next coarser level above the Dimension.
+     * @param dimension a level of this hierarchy
+     * @return the parent level or null if the Dimension is the top level
+     */
+    public Dimension getParent(Dimension dimension)
+    {
+        int index = levels.indexOf(dimension);
+        
+        if(index < 0) throw new IllegalArgumentException("Dimension [" + dimension.getName() + "] is not a level of [" + name + "]");
+        
+        return (index > 0) ? levels.get(index - 1) : null;
+    }
+    
+    /**
+     * Returns the next finer level below the Dimension.
+     * @param dimension a level of this hierarchy
+     * @return the child level or null if the Dimension is the bottom level
+     */
+    public Dimension getChild(Dimension dimension)
+    {
+        int index = levels.indexOf(dimension);
+        
+        if(index < 0) throw new IllegalArgumentException("Dimension [" + dimension.getName() + "] is not a level of [" + name + "]");
+        
+        return (index < levels.size() - 1) ? levels.get(index + 1) : null;
+    }
+    
+    /**
+     * Returns the levels from the top of the hierarchy down to and including
+     * the Dimension. Requesting the full path when drilling down leaves 
+     * results that can answer every coarser level when drilling back up.
+     * @param dimension a level of this hierarchy
+     * @return the list of Dimensions from the top level to the Dimension
+     */
+    public List<Dimension> getPath(Dimension dimension)
+    {
+        int index = levels.indexOf(dimension);
+        
+        if(index < 0) throw new IllegalArgumentException("Dimension [" + dimension.getName() + "] is not a level of [" + name + "]");
+        
+        return new ArrayList<>(levels.subList(0, index + 1));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Attaches dimension labels to the results of a report grouped by the 
+ * foreign keys of the fact table. See 
+ * {@link ReportGenerator#getKeySQLGenerator()}. Each key column is replaced 
+ * by the label the key maps to in the dimension table, then the rows are 
+ * re-aggregated by label with {@link Rollup} since several keys may share
+ * the same label. Rows whose key is not found in the dimension table are 
+ * dropped, matching the inner join of the label query.
+ * 
+ * @author jbanes
+ */
+public class LabelMaterializer
+{
+    /** Prefix of the alias key columns are selected with. */
+    public static final String KEY_PREFIX = "Key:";
+    
+    private ReportGenerator report;
+    private Map<Dimension,Map<Object,Object>> labels = new HashMap<>();
+
+    /**
+     * Creates a new materializer for the results of the report.
+     * @param report the report grouped by key
+     */
+    public LabelMaterializer(ReportGenerator report)
+    {
+        this.report = report;
+    }
+    
+    /**
+     * Normalizes keys so that the same key read as different numeric types 
+     * from the fact and dimension tables matches.
+     * @param key the key
+     * @return the normalized key
+     */
+    private static Object normalize(Object key)
+    {
+        if(key instanceof Integer || key instanceof Short || key instanceof Byte) return ((Number)key).longValue();
+        if(key instanceof BigInteger && ((BigInteger)key).bitLength() < 64) return ((BigInteger)key).longValue();
+        if(key instanceof BigDecimal && ((BigDecimal)key).scale() <= 0 && ((BigDecimal)key).precision() < 19) return ((BigDecimal)key).longValue();
+        
+        return key;
+    }
+
+    /**
+     * Sets the key to label map of a dimension.
+     * @param dimension a dimension of the report grouped by key
+     * @param labels the labels of the dimension keyed by primary key
+     */
+    public void setLabels(Dimension dimension, Map<?,?> labels)
+    {
+        Map<Object,Object> normalized = new HashMap<>();
+        
+        for(Map.Entry<?,?> entry : labels.entrySet()) normalized.put(normalize(entry.getKey()), entry.getValue());
+        
+        this.labels.put(dimension, normalized);
+    }
+    
+    /**
+     * Replaces the keys in the rows with labels and re-aggregates the rows
+     * by label.
+     * @param rows the results of the report grouped by key
+     * @return the results of the report grouped by label
+     */
+    public JSONArray<JSONObject> materialize(Iterable<JSONObject> rows)
+    {
+        Rollup rollup = new Rollup(report.getDimensions(), report.getMeasures());
+        Map<Object,Object> map;
+        Object key;
+        
+        rows:
+        for(JSONObject row : rows)
+        {
+            for(Dimension dimension : report.getDimensions())
+            {
+                if(dimension.getGroupingKey() == null) continue;
+                
+                map = labels.get(dimension);
+                key = normalize(row.remove(KEY_PREFIX + dimension.getName()));
+                
+                if(map == null) throw new IllegalStateException("No labels set for [" + dimension.getName() + "]");
+                if(!map.containsKey(key)) continue rows;
+                
+                row.put(dimension.getName(), map.get(key));
+            }
+            
+            rollup.add(row);
+        }
+        
+        return rollup.getResults();
+    }
+}
@@ -21,6 +21,8 @@ SOFTWARE.
  */
 package com.invirgance.convirgance.olap;
 
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
 import com.invirgance.convirgance.wiring.annotation.Wiring;
 
 /**
@@ -62,7 +64,17 @@ public class Measure
      */
     public Star getStar()
     {
-        return metric.getStar();
+        return getMetric().getStar();
+    }
+    
+    /**
+     * Associates this Measure with the Star it has been added to. By default
+     * the Star is recorded on the Metric behind the Measure.
+     * @param star the Star containing the Measure.
+     */
+    protected void setStar(Star star)
+    {
+        if(getMetric() != null) getMetric().setStar(star);
     }
 
     /**
@@ -118,4 +130,129 @@ public class Measure
     {
         this.function = function;
     }
+    
+    /**
+     * Returns the function used to combine already aggregated values of this
+     * Measure into a coarser aggregate. For example, sums and counts are 
+     * combined by summing while minimums are combined by taking the minimum.
+     * Functions such as averages cannot be combined without additional
+     * information and return null.
+     * @return the function combining aggregated values or null if the Measure 
+     * cannot be re-aggregated
+     */
+    public String getRollupFunction()
+    {
+        if(getFunction() == null) return null;
+        
+        switch(getFunction().toLowerCase())
+        {
+            case "sum":
+            case "count":
+                return "sum";
+            case "min":
+                return "min";
+            case "max":
+                return "max";
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Returns true if this Measure is computed with window functions across
+     * the rows of the report, such as a running total. The values of such
+     * Measures depend on which rows are grouped together, so the report 
+     * cannot share a scan with other reports.
+     * @return true if the Measure uses window functions
+     */
+    public boolean isWindowed()
+    {
+        return false;
+    }
+    
+    /**
+     * Returns true if this Measure can be estimated from a random sample of
+     * the fact table. Reports containing a Measure that can't be estimated 
+     * can't be run in approximate mode.
+     * @return true if the Measure supports {@link #addApproximateAggregate(com.invirgance.convirgance.olap.sql.SQLGenerator, double, double)}
+     */
+    public boolean isEstimable()
+    {
+        return true;
+    }
+    
+    /**
+     * Selects this Measure in the SQL query being generated for a report. 
+     * The aggregate is selected with the name of the Measure as its alias.
+     * @param report the report being generated
+     * @param generator the SQLGenerator building the query
+     */
+    public void addSelect(ReportGenerator report, SQLGenerator generator)
+    {
+        generator.addAggregate(function, metric.getColumn(), metric.getTable(), name);
+    }
+    
+    /**
+     * Generates the aggregate expression computing this Measure, for use in
+     * expressions such as window functions that reference the Measure.
+     * @param generator the SQLGenerator the expression is generated for
+     * @return the SQL aggregate expression
+     */
+    public String getSQL(SQLGenerator generator)
+    {
+        return getFunction() + "(" + getColumnSQL(generator) + ")";
+    }
+    
+    /**
+     * Generates the expression aggregated by this Measure, which by default
+     * is the column of the Metric.
+     * @param generator the SQLGenerator the expression is generated for
+     * @return the SQL expression
+     */
+    public String getColumnSQL(SQLGenerator generator)
+    {
+        return generator.getColumnSQL(metric.getTable(), metric.getColumn());
+    }
+    
+    /**
+     * Adds this Measure to a query reading a random sample of the fact table.
+     * Sums and counts are scaled up by the sampling rate to estimate the 
+     * full population, while averages, minimums, and maximums are reported
+     * as sampled. A second column named after the Measure followed by 
+     * {@link ReportGenerator#MARGIN_SUFFIX} holds the margin of error so that
+     * the population value lies within the estimate plus or minus the margin
+     * at the confidence given by z. The margin is null for functions without
+     * a known error bound such as minimums and maximums.
+     * @param generator the SQLGenerator to add the aggregates to
+     * @param rate the fraction of fact rows sampled between 0 and 1
+     * @param z the number of standard errors spanned by the margin, e.g. 
+     * 1.96 for 95% confidence
+     */
+    public void addApproximateAggregate(SQLGenerator generator, double rate, double z)
+    {
+        String column = getColumnSQL(generator);
+        String scale = " / " + Dialect.getNumberSQL(rate);
+        String remainder = Dialect.getNumberSQL(1 - rate);
+        String margin = "null";
+        
+        switch(getFunction() == null ? "" : getFunction().toLowerCase())
+        {
+            case "sum":
+                generator.addAggregateExpression("sum(" + column + ")" + scale, getMetric().getTable(), name);
+                margin = z + " * sqrt(" + remainder + " * sum(1.0 * " + column + " * " + column + "))" + scale;
+                break;
+            case "count":
+                generator.addAggregateExpression("count(" + column + ")" + scale, getMetric().getTable(), name);
+                margin = z + " * sqrt(" + remainder + " * count(" + column + "))" + scale;
+                break;
+            case "avg":
+                generator.addAggregateExpression("avg(" + column + ")", getMetric().getTable(), name);
+                margin = z + " * " + generator.getDialect().getStandardDeviationSQL(column) + " / sqrt(nullif(count(" + column + "), 0))";
+                break;
+            default:
+                generator.addAggregateExpression(getFunction() + "(" + column + ")", getMetric().getTable(), name);
+        }
+        
+        generator.addAggregateExpression(margin, getMetric().getTable(), name + ReportGenerator.MARGIN_SUFFIX);
+    }
 }
@@ -21,8 +21,13 @@ SOFTWARE.
  */
 package com.invirgance.convirgance.olap;
 
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.ForeignKey;
 import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.olap.sql.Table;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,11 +36,33 @@ import java.util.List;
  */
 public class ReportGenerator
 {
+    /**
+     * Suffix of the column holding the margin of error of each measure in
+     * a sampled report.
+     */
+    public static final String MARGIN_SUFFIX = ":Margin";
+    
+    /**
+     * Number of standard errors spanned by the margin of error of a sampled 
+     * report, giving 95% confidence.
+     */
+    public static final double CONFIDENCE_Z = 1.96;
+    
+    /**
+     * Name of the column holding the rank of each row in a report limited by
+     * a {@link TopK}.
+     */
+    public static final String RANK_COLUMN = "Rank";
+    
     private Star star;
     private List<Dimension> dimensions = new ArrayList<>();
     private List<Measure> measures = new ArrayList<>();
+    private List<Filter> filters = new ArrayList<>();
     
     private boolean caseSensitive;
+    private Dialect dialect;
+    private double sampleRate = 1;
+    private TopK topK;
 
     /**
      * Constructs a ReportGenerator with a specified star schema.
@@ -46,6 +73,15 @@ public class ReportGenerator
         this.star = star;
     }
 
+    /**
+     * Returns the star schema this report is generated against.
+     * @return the Star object.
+     */
+    public Star getStar()
+    {
+        return star;
+    }
+
     /**
      * Returns true if the ReportGenerator is case sensitive
      * @return boolean.
@@ -64,6 +100,83 @@ public class ReportGenerator
         this.caseSensitive = caseSensitive;
     }
     
+    /**
+     * Returns the Dialect used to generate database specific SQL.
+     * @return the Dialect or null for the default ANSI dialect
+     */
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * Sets the Dialect used to generate database specific SQL such as the
+     * date truncation of a {@link TimeDimension}.
+     * @param dialect the Dialect
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+    
+    /**
+     * Returns the fraction of fact rows read by this report.
+     * @return the sampling rate or 1 if every row is read
+     */
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Puts the report in approximate mode by reading only a random sample of
+     * the fact table. The sample is taken with TABLESAMPLE or, where the 
+     * dialect lacks it, a predicate hashing the primary key of the fact 
+     * table. Sums and counts are scaled to estimate the full population and
+     * every measure is returned with a margin of error column. See 
+     * {@link Measure#addApproximateAggregate(com.invirgance.convirgance.olap.sql.SQLGenerator, double, double)}.
+     * Reports with a Measure that is not {@link Measure#isEstimable() estimable}
+     * cannot be sampled.
+     * @param sampleRate the fraction of rows to read greater than 0, or 1 to
+     * read every row
+     */
+    public void setSampleRate(double sampleRate)
+    {
+        if(!(sampleRate > 0 && sampleRate <= 1)) throw new IllegalArgumentException("Sample rate must be greater than 0 and at most 1: " + sampleRate);
+        
+        for(Measure measure : measures)
+        {
+            if(sampleRate < 1 && !measure.isEstimable()) throw new IllegalArgumentException("Measure [" + measure.getName() + "] cannot be estimated from a sample");
+        }
+        
+        this.sampleRate = sampleRate;
+    }
+    
+    /**
+     * Returns true if this report reads a sample of the fact table and 
+     * returns estimates with margins of error.
+     * @return true if the report is approximate
+     */
+    public boolean isApproximate()
+    {
+        return sampleRate < 1;
+    }
+    
+    /**
+     * Returns true if every Measure of this report can be estimated from a 
+     * sample, so that the report can be put in approximate mode.
+     * @return true if the report can be sampled
+     */
+    public boolean isEstimable()
+    {
+        for(Measure measure : measures)
+        {
+            if(!measure.isEstimable()) return false;
+        }
+        
+        return true;
+    }
+    
     /**
      * Adds a new dimension to the ReportGenerator object. The dimension provided must
      * be in the associated star schema to be added to the report generator.
@@ -84,33 +197,302 @@ public class ReportGenerator
     public void addMeasure(Measure measure)
     {
         if(measure.getStar() != star) throw new IllegalArgumentException("Measures must be part of Star");
+        if(isApproximate() && !measure.isEstimable()) throw new IllegalArgumentException("Measure [" + measure.getName() + "] cannot be estimated from a sample");
         
         if(!this.measures.contains(measure)) this.measures.add(measure);
     }
     
     /**
-     * Generates the SQL query as a String using the dimensions and measures
-     * from this report generator.
-     * @return the SQL query as a string.
+     * Restricts the report to the rows matched by the filter. The filtered 
+     * dimension must be in the associated star schema but does not need to 
+     * be one of the report's dimensions.
+     * @param filter the Filter to apply
      */
-    public String getSQL()
+    public void addFilter(Filter filter)
+    {
+        if(filter.getDimension().getStar() != star) throw new IllegalArgumentException("Filtered dimensions must be part of Star");
+        
+        this.filters.add(filter);
+    }
+    
+    /**
+     * Returns the filters applied to this report in the order they were added.
+     * @return the list of Filters.
+     */
+    public List<Filter> getFilters()
+    {
+        return filters;
+    }
+    
+    /**
+     * Returns the limit on the top members of a Dimension within each group.
+     * @return the TopK or null if the report is not limited
+     */
+    public TopK getTopK()
+    {
+        return topK;
+    }
+
+    /**
+     * Limits the report to the top members of a Dimension within each group
+     * of the other dimensions. The ranked Dimension and Measure are added to
+     * the report if they have not been added already. The ranking is 
+     * rendered with ROW_NUMBER() OVER (PARTITION BY ...) on the other 
+     * dimensions.
+     * @param topK the limit or null to remove the limit
+     */
+    public void setTopK(TopK topK)
+    {
+        if(topK != null)
+        {
+            addDimension(topK.getDimension());
+            addMeasure(topK.getMeasure());
+        }
+        
+        this.topK = topK;
+    }
+    
+    /**
+     * Returns true if this report can be merged with other reports into a 
+     * single scan of the fact table. Approximate reports, reports limited by
+     * a {@link TopK}, and reports with {@link Measure#isWindowed() windowed}
+     * Measures produce values that depend on the rest of the query and must
+     * be scanned on their own.
+     * @return true if the report can share a scan
+     */
+    public boolean isShareable()
+    {
+        if(isApproximate() || topK != null) return false;
+        
+        for(Measure measure : measures)
+        {
+            if(measure.isWindowed()) return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the dimensions added to this report in the order they were added.
+     * @return the list of Dimensions.
+     */
+    public List<Dimension> getDimensions()
+    {
+        return dimensions;
+    }
+    
+    /**
+     * Returns the measures added to this report in the order they were added.
+     * @return the list of Measures.
+     */
+    public List<Measure> getMeasures()
+    {
+        return measures;
+    }
+    
+    private static JSONArray<Object> getSorted(List<String> names)
+    {
+        JSONArray<Object> sorted = new JSONArray<>();
+        
+        Collections.sort(names);
+        sorted.addAll(names);
+        
+        return sorted;
+    }
+    
+    /**
+     * Returns a normalized signature identifying this report. Reports that
+     * request the same dimensions, measures, and filters from the same fact 
+     * table share a signature regardless of the order they were added in.
+     * The signature is a JSON array with a fixed slot for each part of the 
+     * report, so names and values containing separators can't make two 
+     * different reports share a signature.
+     * @return the signature as a String.
+     */
+    public String getSignature()
+    {
+        JSONArray<Object> signature = new JSONArray<>();
+        JSONArray<Object> ranking = null;
+        List<String> names = new ArrayList<>();
+        
+        signature.add(star.getFact().getName());
+        
+        for(Dimension dimension : dimensions) names.add(dimension.getName());
+        
+        signature.add(getSorted(names));
+        names = new ArrayList<>();
+        
+        for(Measure measure : measures) names.add(measure.getName());
+        
+        signature.add(getSorted(names));
+        names = new ArrayList<>();
+        
+        for(Filter filter : filters) names.add(filter.toString());
+        
+        signature.add(getSorted(names));
+        
+        if(topK != null)
+        {
+            ranking = new JSONArray<>();
+            
+            ranking.add(topK.getDimension().getName());
+            ranking.add(topK.getMeasure().getName());
+            ranking.add(topK.getLimit());
+            ranking.add(topK.isDescending());
+        }
+        
+        signature.add(ranking);
+        signature.add(isApproximate() ? Dialect.getNumberSQL(sampleRate) : null);
+        
+        return signature.toString();
+    }
+    
+    /**
+     * Returns a SQLGenerator configured with the dimensions, measures, and
+     * filters from this report generator. 
+     * @return the configured SQLGenerator.
+     */
+    public SQLGenerator getSQLGenerator()
+    {
+        SQLGenerator generator = new SQLGenerator();
+        
+        generator.setCaseSensitive(caseSensitive);
+        generator.setForceGroupBy(true);
+        generator.setDialect(dialect);
+        generator.addTable(star.getFact());
+        
+        for(Dimension dimension : dimensions) 
+        {
+            dimension.addSelect(generator);
+        }
+        
+        for(Measure measure : measures) 
+        {
+            if(isApproximate()) measure.addApproximateAggregate(generator, sampleRate, CONFIDENCE_Z);
+            else measure.addSelect(this, generator);
+        }
+        
+        for(Filter filter : filters)
+        {
+            generator.addWhere(filter.getDimension().getFilterSQL(generator, filter), filter.getDimension().getTable());
+        }
+        
+        if(isApproximate()) addSample(generator);
+        if(topK != null) addRank(generator);
+        
+        return generator;
+    }
+    
+    private void addRank(SQLGenerator generator)
+    {
+        StringBuffer buffer = new StringBuffer("row_number() over (");
+        int index = 0;
+        
+        for(Dimension dimension : dimensions)
+        {
+            if(dimension == topK.getDimension()) continue;
+            
+            buffer.append(index++ > 0 ? ", " : "partition by ");
+            buffer.append(dimension.getSQL(generator));
+        }
+        
+        if(index > 0) buffer.append(' ');
+        
+        buffer.append("order by ");
+        buffer.append(generator.getDialect().getOrderBySQL(topK.getMeasure().getSQL(generator), topK.isDescending()));
+        buffer.append(')');
+        
+        generator.addAggregateExpression(buffer.toString(), star.getFact(), RANK_COLUMN);
+        generator.setRankLimit(RANK_COLUMN, topK.getLimit());
+    }
+    
+    private void addSample(SQLGenerator generator)
+    {
+        Table fact = star.getFact();
+        String sample = generator.getDialect().getTableSampleSQL(sampleRate);
+        String key = null;
+        
+        if(sample != null)
+        {
+            generator.setTableSample(sample);
+            return;
+        }
+        
+        if(fact.getPrimaryKey() != null) key = generator.getColumnSQL(fact, fact.getPrimaryKey());
+        
+        generator.addWhere(generator.getDialect().getSamplePredicateSQL(key, sampleRate), fact);
+    }
+    
+    /**
+     * Returns true if this report can be grouped by the foreign keys of the
+     * fact table with the labels attached afterwards by a 
+     * {@link LabelMaterializer}. Requires at least one dimension with a 
+     * {@link Dimension#getGroupingKey() grouping key} and that every measure
+     * can be re-aggregated, as several keys may share a label. Approximate
+     * reports are never grouped by key as margins of error cannot be 
+     * re-aggregated, nor are reports limited by a {@link TopK} as members 
+     * must be ranked by label.
+     * @return true if the report can be grouped by key
+     */
+    public boolean isKeyGroupable()
+    {
+        if(isApproximate() || topK != null) return false;
+        if(!Rollup.isSupported(measures)) return false;
+        
+        for(Dimension dimension : dimensions)
+        {
+            if(dimension.getGroupingKey() != null) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns a SQLGenerator that groups by the foreign keys of the fact 
+     * table in place of the columns of dimensions with a grouping key. The
+     * key of each such dimension is selected with the alias 
+     * {@link LabelMaterializer#KEY_PREFIX} followed by the dimension name.
+     * Dimension tables are only joined when they are needed by a filter.
+     * @return the configured SQLGenerator.
+     */
+    public SQLGenerator getKeySQLGenerator()
     {
         SQLGenerator generator = new SQLGenerator();
+        ForeignKey key;
         
         generator.setCaseSensitive(caseSensitive);
         generator.setForceGroupBy(true);
+        generator.setDialect(dialect);
         generator.addTable(star.getFact());
         
         for(Dimension dimension : dimensions) 
         {
-            generator.addSelect(dimension.getColumn(), dimension.getTable(), dimension.getName());
+            key = dimension.getGroupingKey();
+            
+            if(key == null) dimension.addSelect(generator);
+            else generator.addSelect(key.getSourceKey(), star.getFact(), LabelMaterializer.KEY_PREFIX + dimension.getName());
         }
         
         for(Measure measure : measures) 
         {
-            generator.addAggregate(measure.getFunction(), measure.getMetric().getColumn(), measure.getMetric().getTable(), measure.getName());
+            measure.addSelect(this, generator);
+        }
+        
+        for(Filter filter : filters)
+        {
+            generator.addWhere(filter.getDimension().getFilterSQL(generator, filter), filter.getDimension().getTable());
         }
         
-        return generator.getSQL();
+        return generator;
+    }
+    
+    /**
+     * Generates the SQL query as a String using the dimensions and measures
+     * from this report generator.
+     * @return the SQL query as a string.
+     */
+    public String getSQL()
+    {
+        return getSQLGenerator().getSQL();
     }
 }
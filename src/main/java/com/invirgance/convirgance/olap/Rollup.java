@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-aggregates report results in memory to a coarser set of Dimensions. 
+ * Rows are expected to contain a value for each Dimension and Measure keyed 
+ * by name, as returned by {@link ReportGenerator}. Each Measure is combined
+ * using its {@link Measure#getRollupFunction() rollup function}, so only 
+ * Measures with a rollup function can be re-aggregated. Null measure values 
+ * are ignored, matching SQL aggregate semantics.
+ * 
+ * @author jbanes
+ */
+public class Rollup
+{
+    private List<Dimension> dimensions;
+    private List<Measure> measures;
+    private Map<List<Object>,JSONObject> groups = new LinkedHashMap<>();
+
+    /**
+     * Creates a new Rollup producing the given Dimensions and Measures.
+     * @param dimensions the Dimensions to group by
+     * @param measures the Measures to re-aggregate
+     */
+    public Rollup(List<Dimension> dimensions, List<Measure> measures)
+    {
+        this.dimensions = dimensions;
+        this.measures = measures;
+        
+        for(Measure measure : measures)
+        {
+            if(measure.getRollupFunction() == null) throw new IllegalArgumentException("Measure [" + measure.getName() + "] cannot be re-aggregated");
+        }
+    }
+    
+    /**
+     * Returns true if every Measure can be re-aggregated.
+     * @param measures the Measures to check
+     * @return true if a Rollup can be constructed for the Measures
+     */
+    public static boolean isSupported(List<Measure> measures)
+    {
+        for(Measure measure : measures)
+        {
+            if(measure.getRollupFunction() == null) return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Adds a finer grained row to the rollup.
+     * @param row the row to aggregate
+     */
+    public void add(JSONObject row)
+    {
+        List<Object> key = new ArrayList<>(dimensions.size());
+        JSONObject group;
+        String name;
+        
+        for(Dimension dimension : dimensions) key.add(row.get(dimension.getName()));
+        
+        group = groups.get(key);
+        
+        if(group == null)
+        {
+            group = new JSONObject();
+            
+            for(Dimension dimension : dimensions) group.put(dimension.getName(), row.get(dimension.getName()));
+            for(Measure measure : measures) group.put(measure.getName(), null);
+            
+            groups.put(key, group);
+        }
+        
+        for(Measure measure : measures)
+        {
+            name = measure.getName();
+            
+            group.put(name, combine(measure.getRollupFunction(), group.get(name), row.get(name)));
+        }
+    }
+    
+    /**
+     * Adds every row to the rollup.
+     * @param rows the rows to aggregate
+     */
+    public void addAll(Iterable<JSONObject> rows)
+    {
+        for(JSONObject row : rows) add(row);
+    }
+    
+    /**
+     * Returns the re-aggregated rows in the order each group was first seen.
+     * @return the re-aggregated rows
+     */
+    public JSONArray<JSONObject> getResults()
+    {
+        return new JSONArray<>(new ArrayList<>(groups.values()));
+    }
+    
+    /**
+     * Combines two aggregated values using the rollup function.
+     * @param function the rollup function (sum, min, or max)
+     * @param current the value aggregated so far or null
+     * @param value the value to combine or null
+     * @return the combined value
+     */
+    public static Object combine(String function, Object current, Object value)
+    {
+        if(value == null) return current;
+        if(current == null) return value;
+        
+        switch(function)
+        {
+            case "sum":
+                return add((Number)current, (Number)value);
+            case "min":
+                return ((Comparable)value).compareTo(current) < 0 ? value : current;
+            case "max":
+                return ((Comparable)value).compareTo(current) > 0 ? value : current;
+            default:
+                throw new IllegalArgumentException("Unsupported rollup function [" + function + "]");
+        }
+    }
+    
+    private static Number add(Number left, Number right)
+    {
+        if(isIntegral(left) && isIntegral(right)) return left.longValue() + right.longValue();
+        if(left instanceof BigDecimal || right instanceof BigDecimal) return new BigDecimal(left.toString()).add(new BigDecimal(right.toString()));
+        
+        return left.doubleValue() + right.doubleValue();
+    }
+    
+    private static boolean isIntegral(Number number)
+    {
+        return (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single query over the fact table of a Star that answers several reports
+ * at once. Created by the {@link SharedScanPlanner}. The results of the 
+ * query are split back out into the results of each report by calling 
+ * {@link #split(java.lang.Iterable)}.
+ * <br><br>
+ * Scans are produced in one of two forms. Grouping set scans compute each
+ * report's dimension set with GROUPING SETS and tag every row with GROUPING()
+ * indicators so the rows can be routed back to their reports. Rollup scans
+ * compute the finest grain needed by all the reports and re-aggregate it in
+ * memory, which requires every Measure to have a rollup function.
+ * <br><br>
+ * Every report in a scan must have the same filters. The filters are 
+ * applied once in the WHERE clause of the shared query.
+ * 
+ * @author jbanes
+ */
+public class SharedScan
+{
+    private static final String GROUPING_PREFIX = "Grouping:";
+    
+    private Star star;
+    private Map<String,ReportGenerator> reports = new LinkedHashMap<>();
+    private List<Dimension> dimensions = new ArrayList<>();
+    private List<Measure> measures = new ArrayList<>();
+    private List<Filter> filters;
+    private Dialect dialect;
+    private boolean groupingSets;
+    private boolean caseSensitive;
+
+    /**
+     * Creates a new scan over the Star.
+     * @param star the Star being scanned
+     * @param groupingSets true to use GROUPING SETS, false to re-aggregate in memory
+     */
+    SharedScan(Star star, boolean groupingSets)
+    {
+        this.star = star;
+        this.groupingSets = groupingSets;
+    }
+    
+    /**
+     * Adds a report to be answered by this scan.
+     * @param id the identifier of the report
+     * @param report the report
+     */
+    void addReport(String id, ReportGenerator report)
+    {
+        reports.put(id, report);
+        
+        if(report.isCaseSensitive()) caseSensitive = true;
+        if(report.getDialect() != null) dialect = report.getDialect();
+        if(filters == null) filters = report.getFilters();
+        
+        for(Dimension dimension : report.getDimensions())
+        {
+            if(!dimensions.contains(dimension)) dimensions.add(dimension);
+        }
+        
+        for(Measure measure : report.getMeasures())
+        {
+            if(!measures.contains(measure)) measures.add(measure);
+        }
+    }
+
+    /**
+     * Returns the reports answered by this scan keyed by their identifiers.
+     * @return the map of identifiers to reports
+     */
+    public Map<String,ReportGenerator> getReports()
+    {
+        return reports;
+    }
+    
+    /**
+     * Returns true if this scan answers its reports using GROUPING SETS.
+     * @return true if using GROUPING SETS, false if re-aggregating in memory
+     */
+    public boolean isGroupingSets()
+    {
+        return groupingSets;
+    }
+    
+    /**
+     * Generates the SQL query that scans the fact table once for every report.
+     * @return the SQL query as a string.
+     */
+    public String getSQL()
+    {
+        ReportGenerator report;
+        SQLGenerator generator;
+        List<List<String>> sets = new ArrayList<>();
+        List<String> set;
+        
+        if(reports.size() == 1) return reports.values().iterator().next().getSQL();
+        
+        report = new ReportGenerator(star);
+        
+        report.setCaseSensitive(caseSensitive);
+        report.setDialect(dialect);
+        
+        for(Dimension dimension : dimensions) report.addDimension(dimension);
+        for(Measure measure : measures) report.addMeasure(measure);
+        for(Filter filter : filters) report.addFilter(filter);
+        
+        generator = report.getSQLGenerator();
+        
+        if(!groupingSets) return generator.getSQL();
+        
+        for(Dimension dimension : dimensions)
+        {
+            generator.addGrouping(dimension.getName(), GROUPING_PREFIX + dimension.getName());
+        }
+        
+        for(ReportGenerator child : reports.values())
+        {
+            set = new ArrayList<>();
+            
+            for(Dimension dimension : dimensions)
+            {
+                if(child.getDimensions().contains(dimension)) set.add(dimension.getName());
+            }
+            
+            if(!sets.contains(set)) sets.add(set);
+        }
+        
+        for(List<String> grouping : sets) generator.addGroupingSet(grouping);
+        
+        return generator.getSQL();
+    }
+    
+    private boolean isGroupedBy(JSONObject row, ReportGenerator report)
+    {
+        Object grouping;
+        boolean grouped;
+        
+        for(Dimension dimension : dimensions)
+        {
+            grouping = row.get(GROUPING_PREFIX + dimension.getName());
+            grouped = (grouping == null || ((Number)grouping).intValue() == 0);
+            
+            if(grouped != report.getDimensions().contains(dimension)) return false;
+        }
+        
+        return true;
+    }
+    
+    private JSONObject project(JSONObject row, ReportGenerator report)
+    {
+        JSONObject result = new JSONObject();
+        
+        for(Dimension dimension : report.getDimensions()) result.put(dimension.getName(), row.get(dimension.getName()));
+        for(Measure measure : report.getMeasures()) result.put(measure.getName(), row.get(measure.getName()));
+        
+        return result;
+    }
+    
+    /**
+     * Splits the results of the scan into the results of each report.
+     * @param rows the results of executing {@link #getSQL()}
+     * @return the results of each report keyed by the report identifier
+     */
+    public Map<String,JSONArray<JSONObject>> split(Iterable<JSONObject> rows)
+    {
+        Map<String,JSONArray<JSONObject>> results = new LinkedHashMap<>();
+        Map<String,Rollup> rollups = new LinkedHashMap<>();
+        ReportGenerator report;
+        
+        for(String id : reports.keySet()) 
+        {
+            report = reports.get(id);
+            
+            results.put(id, new JSONArray<>());
+            
+            if(!groupingSets && reports.size() > 1) rollups.put(id, new Rollup(report.getDimensions(), report.getMeasures()));
+        }
+        
+        for(JSONObject row : rows)
+        {
+            for(String id : reports.keySet())
+            {
+                report = reports.get(id);
+                
+                if(reports.size() == 1) results.get(id).add(row);
+                else if(!groupingSets) rollups.get(id).add(row);
+                else if(isGroupedBy(row, report)) results.get(id).add(project(row, report));
+            }
+        }
+        
+        for(String id : rollups.keySet()) results.put(id, rollups.get(id).getResults());
+        
+        return results;
+    }
+}
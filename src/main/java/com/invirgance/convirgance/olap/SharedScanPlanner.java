@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans a batch of reports against a Star so that compatible reports share a
+ * single scan of the fact table. By default all reports are merged into one
+ * GROUPING SETS query. For databases without GROUPING SETS support, the
+ * planner can instead merge reports into one query at the finest grain and
+ * re-aggregate the results in memory. In that mode only reports whose 
+ * Measures can all be re-aggregated are merged; every other report is given 
+ * a scan of its own.
+ * <br><br>
+ * Only reports with the same filters can share a scan. Reports are grouped
+ * by their filters first, then merged within each group. Reports that are 
+ * not {@link ReportGenerator#isShareable() shareable} are always given a 
+ * scan of their own.
+ * 
+ * @author jbanes
+ */
+public class SharedScanPlanner
+{
+    private Star star;
+    private List<String> ids = new ArrayList<>();
+    private List<ReportGenerator> reports = new ArrayList<>();
+    private boolean groupingSets = true;
+
+    /**
+     * Creates a new planner for reports against the Star.
+     * @param star the Star the reports are run against
+     */
+    public SharedScanPlanner(Star star)
+    {
+        this.star = star;
+    }
+
+    /**
+     * Returns true if reports are merged using GROUPING SETS.
+     * @return true if using GROUPING SETS, false if re-aggregating in memory
+     */
+    public boolean isGroupingSets()
+    {
+        return groupingSets;
+    }
+
+    /**
+     * Set to true to merge reports using GROUPING SETS or false to merge 
+     * reports into a finest grain query that is re-aggregated in memory.
+     * Defaults to true.
+     * @param groupingSets true to use GROUPING SETS
+     */
+    public void setGroupingSets(boolean groupingSets)
+    {
+        this.groupingSets = groupingSets;
+    }
+    
+    /**
+     * Adds a report to the batch being planned.
+     * @param id the identifier used to return the results of the report
+     * @param report the report
+     */
+    public void addReport(String id, ReportGenerator report)
+    {
+        if(report.getStar() != star) throw new IllegalArgumentException("Reports must be part of Star");
+        if(ids.contains(id)) throw new IllegalArgumentException("Duplicate report id [" + id + "]");
+        
+        ids.add(id);
+        reports.add(report);
+    }
+    
+    private String getFilterKey(ReportGenerator report)
+    {
+        List<String> filters = new ArrayList<>();
+        
+        for(Filter filter : report.getFilters()) filters.add(filter.toString());
+        
+        Collections.sort(filters);
+        
+        return filters.toString();
+    }
+    
+    /**
+     * Plans the scans needed to answer every report in the batch.
+     * @return the list of scans
+     */
+    public List<SharedScan> getScans()
+    {
+        List<SharedScan> scans = new ArrayList<>();
+        Map<String,SharedScan> shared = new HashMap<>();
+        SharedScan scan;
+        ReportGenerator report;
+        String filters;
+        
+        for(int i=0; i<reports.size(); i++)
+        {
+            report = reports.get(i);
+            filters = getFilterKey(report);
+            
+            if(report.isShareable() && (groupingSets || Rollup.isSupported(report.getMeasures())))
+            {
+                scan = shared.get(filters);
+                
+                if(scan == null) 
+                {
+                    scans.add(scan = new SharedScan(star, groupingSets));
+                    shared.put(filters, scan);
+                }
+                
+                scan.addReport(ids.get(i), report);
+            }
+            else
+            {
+                scan = new SharedScan(star, groupingSets);
+                
+                scan.addReport(ids.get(i), report);
+                scans.add(scan);
+            }
+        }
+        
+        return scans;
+    }
+}
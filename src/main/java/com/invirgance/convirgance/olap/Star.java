@@ -38,6 +38,8 @@ public class Star
     private List<Dimension> dimensions = new ArrayList<>();
     private List<Metric> metrics = new ArrayList<>();
     private List<Measure> measures = new ArrayList<>();
+    private List<Hierarchy> hierarchies = new ArrayList<>();
+    private long version;
 
     /**
      * Initializes am empty Star object with no assigned attributes.
@@ -73,6 +75,27 @@ public class Star
         this.fact = fact;
     }
     
+    /**
+     * Returns the version of the model the Star was loaded from.
+     * @return the version of the Star
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Sets the version of the model the Star was loaded from. Persistent 
+     * caches such as {@link com.invirgance.convirgance.olap.cache.DiskReportCache}
+     * only return results computed against the same version, so the version
+     * must change whenever the model changes. Defaults to 0.
+     * @param version the version of the Star
+     */
+    public void setVersion(long version)
+    {
+        this.version = version;
+    }
+    
     /**
      * Returns the requested Dimension from the Star or null if 
      * no such Dimension found.
@@ -182,7 +205,7 @@ public class Star
         if(!this.measures.contains(measure)) 
         {
             this.measures.add(measure);
-            measure.getMetric().setStar(this);
+            measure.setStar(this);
         }
     }
 
@@ -196,7 +219,78 @@ public class Star
     {
         this.measures = measures;
         
-        for(Measure measure : measures) measure.getMetric().setStar(this);
+        for(Measure measure : measures) measure.setStar(this);
+    }
+    
+    /**
+     * Returns the requested Hierarchy from the Star or null if 
+     * no such Hierarchy found.
+     * @param name the String with the Hierarchy's name.
+     * @return The requested Hierarchy object or null.
+     */
+    public Hierarchy getHierarchy(String name)
+    {
+        for(Hierarchy hierarchy : this.hierarchies)
+        {
+            if(hierarchy.getName().equals(name)) return hierarchy;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the first Hierarchy containing the Dimension as a level or null
+     * if the Dimension is not part of any Hierarchy.
+     * @param dimension the Dimension to look up.
+     * @return The Hierarchy containing the Dimension or null.
+     */
+    public Hierarchy getHierarchy(Dimension dimension)
+    {
+        for(Hierarchy hierarchy : this.hierarchies)
+        {
+            if(hierarchy.contains(dimension)) return hierarchy;
+        }
+        
+        return null;
+    }
+
+    /**
+     * Returns all Hierarchies contained in the Star.
+     * @return the list of Hierarchies.
+     */
+    public List<Hierarchy> getHierarchies()
+    {
+        return hierarchies;
     }
     
+    /**
+     * Adds the passed in Hierarchy to the list of Hierarchies in the Star.
+     * Every level of the Hierarchy must be a Dimension of this Star.
+     * @param hierarchy The Hierarchy to add.
+     */
+    public void addHierarchy(Hierarchy hierarchy)
+    {
+        for(Dimension level : hierarchy.getLevels())
+        {
+            if(!this.dimensions.contains(level)) throw new IllegalArgumentException("Hierarchy levels must be part of Star");
+        }
+        
+        if(!this.hierarchies.contains(hierarchy))
+        {
+            this.hierarchies.add(hierarchy);
+            hierarchy.setStar(this);
+        }
+    }
+
+    /**
+     * Assigns the passed in List of Hierarchies to this Star object. Also
+     * associates this Star object with every Hierarchy in the list.
+     * @param hierarchies The list of Hierarchies.
+     */
+    public void setHierarchies(List<Hierarchy> hierarchies)
+    {
+        this.hierarchies = hierarchies;
+        
+        for(Hierarchy hierarchy : hierarchies) hierarchy.setStar(this);
+    }
 }
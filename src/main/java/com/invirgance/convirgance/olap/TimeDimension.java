@@ -0,0 +1,211 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.ForeignKey;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.olap.sql.Table;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * A Dimension over a date or timestamp column that buckets the values into
+ * days, weeks, months, quarters, or years. The column is truncated to the 
+ * start of its bucket using the date functions of the {@link Dialect}. Weeks
+ * start on Monday.
+ * <br><br>
+ * Filters on a TimeDimension are never applied to the truncated value. The
+ * bucket boundaries are computed up front and the filter is pushed down as 
+ * a range on the raw column (<code>column &gt;= start and column &lt; end</code>).
+ * The database can then use indexes on the column and prune partitions 
+ * rather than truncating every row to evaluate the filter. Filter values may
+ * be any date inside the bucket they select.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class TimeDimension extends Dimension
+{
+    private String grain = Dialect.MONTH;
+
+    /**
+     * Initializes an empty TimeDimension bucketed by month.
+     */
+    public TimeDimension()
+    {
+    }
+
+    /**
+     * Constructs a TimeDimension with a specified name, associated table, 
+     * column, and grain.
+     * @param name The name of the Dimension (e.g. "Order Month").
+     * @param table The database table containing the date column, usually the fact table.
+     * @param column The date or timestamp column.
+     * @param grain One of day, week, month, quarter, or year.
+     */
+    public TimeDimension(String name, Table table, String column, String grain)
+    {
+        super(name, table, column);
+        
+        setGrain(grain);
+    }
+
+    /**
+     * Returns the grain of the buckets.
+     * @return one of day, week, month, quarter, or year
+     */
+    public String getGrain()
+    {
+        return grain;
+    }
+
+    /**
+     * Sets the grain of the buckets. Defaults to month.
+     * @param grain one of day, week, month, quarter, or year
+     */
+    public void setGrain(String grain)
+    {
+        this.grain = Dialect.checkGrain(grain);
+    }
+    
+    /**
+     * Converts a filter value into a date. Accepts dates, timestamps, and 
+     * strings starting with an ISO yyyy-mm-dd date.
+     * @param value the value to convert
+     * @return the date
+     */
+    public static LocalDate toDate(Object value)
+    {
+        if(value instanceof LocalDate) return (LocalDate)value;
+        if(value instanceof LocalDateTime) return ((LocalDateTime)value).toLocalDate();
+        if(value instanceof java.sql.Date) return ((java.sql.Date)value).toLocalDate();
+        if(value instanceof java.sql.Timestamp) return ((java.sql.Timestamp)value).toLocalDateTime().toLocalDate();
+        if(value instanceof Date) return ((Date)value).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        
+        if(value instanceof String && ((String)value).length() >= 10)
+        {
+            return LocalDate.parse(((String)value).substring(0, 10));
+        }
+        
+        throw new IllegalArgumentException("Unable to convert [" + value + "] to a date");
+    }
+
+    @Override
+    public String getSQL(SQLGenerator generator)
+    {
+        return generator.getDialect().getDateTruncSQL(grain, generator.getColumnSQL(getTable(), getColumn()));
+    }
+    
+    @Override
+    public void addSelect(SQLGenerator generator)
+    {
+        generator.addExpression(getSQL(generator), getTable(), getName());
+    }
+    
+    private String getRangeSQL(SQLGenerator generator, LocalDate start, LocalDate end)
+    {
+        Dialect dialect = generator.getDialect();
+        String reference = generator.getColumnSQL(getTable(), getColumn());
+        
+        if(start == null) return reference + " < " + dialect.getDateLiteralSQL(end);
+        if(end == null) return reference + " >= " + dialect.getDateLiteralSQL(start);
+        
+        return reference + " >= " + dialect.getDateLiteralSQL(start) + " and " + reference + " < " + dialect.getDateLiteralSQL(end);
+    }
+
+    @Override
+    public String getFilterSQL(SQLGenerator generator, Filter filter)
+    {
+        StringBuffer buffer = new StringBuffer();
+        LocalDate date;
+        
+        if(filter.isRange())
+        {
+            return getRangeSQL(generator, 
+                filter.getFrom() == null ? null : Dialect.truncate(grain, toDate(filter.getFrom())),
+                filter.getTo() == null ? null : Dialect.next(grain, toDate(filter.getTo())));
+        }
+        
+        if(filter.getValues().size() == 1)
+        {
+            date = toDate(filter.getValues().get(0));
+            
+            return getRangeSQL(generator, Dialect.truncate(grain, date), Dialect.next(grain, date));
+        }
+        
+        buffer.append('(');
+        
+        for(int i=0; i<filter.getValues().size(); i++)
+        {
+            date = toDate(filter.getValues().get(i));
+            
+            if(i > 0) buffer.append(" or ");
+            
+            buffer.append('(');
+            buffer.append(getRangeSQL(generator, Dialect.truncate(grain, date), Dialect.next(grain, date)));
+            buffer.append(')');
+        }
+        
+        buffer.append(')');
+        
+        return buffer.toString();
+    }
+    
+    @Override
+    public boolean matches(Filter filter, Object value)
+    {
+        LocalDate date;
+        
+        if(value == null) return false;
+        
+        date = toDate(value);
+        
+        if(filter.isRange())
+        {
+            if(filter.getFrom() != null && date.isBefore(Dialect.truncate(grain, toDate(filter.getFrom())))) return false;
+            if(filter.getTo() != null && !date.isBefore(Dialect.next(grain, toDate(filter.getTo())))) return false;
+            
+            return true;
+        }
+        
+        for(Object match : filter.getValues())
+        {
+            if(match != null && Dialect.truncate(grain, toDate(match)).equals(Dialect.truncate(grain, date))) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Time dimensions are bucketed in the query and can't be grouped by key.
+     * @return null
+     */
+    @Override
+    public ForeignKey getGroupingKey()
+    {
+        return null;
+    }
+}
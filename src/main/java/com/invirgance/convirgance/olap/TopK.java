@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+/**
+ * Limits a report to the top members of a Dimension within each group of 
+ * the report's other dimensions, such as the top 5 products in each region.
+ * Members are ranked by a Measure and the rank of each row is returned in 
+ * the {@link ReportGenerator#RANK_COLUMN} column. Ties are broken 
+ * arbitrarily.
+ * 
+ * @author jbanes
+ */
+public class TopK
+{
+    private Dimension dimension;
+    private Measure measure;
+    private int limit;
+    private boolean descending;
+
+    /**
+     * Creates a limit keeping the members with the highest values.
+     * @param dimension the Dimension whose members are ranked
+     * @param measure the Measure to rank by
+     * @param limit the number of members to keep in each group
+     */
+    public TopK(Dimension dimension, Measure measure, int limit)
+    {
+        this(dimension, measure, limit, true);
+    }
+    
+    /**
+     * Creates a limit keeping the members with the highest or lowest values.
+     * @param dimension the Dimension whose members are ranked
+     * @param measure the Measure to rank by
+     * @param limit the number of members to keep in each group
+     * @param descending true to keep the highest values, false for the lowest
+     */
+    public TopK(Dimension dimension, Measure measure, int limit, boolean descending)
+    {
+        if(limit < 1) throw new IllegalArgumentException("The limit for [" + dimension.getName() + "] must be at least 1: " + limit);
+        
+        this.dimension = dimension;
+        this.measure = measure;
+        this.limit = limit;
+        this.descending = descending;
+    }
+
+    /**
+     * Returns the Dimension whose members are ranked.
+     * @return the Dimension
+     */
+    public Dimension getDimension()
+    {
+        return dimension;
+    }
+
+    /**
+     * Returns the Measure members are ranked by.
+     * @return the Measure
+     */
+    public Measure getMeasure()
+    {
+        return measure;
+    }
+
+    /**
+     * Returns the number of members kept in each group.
+     * @return the limit
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * Returns true if the members with the highest values are kept.
+     * @return true if ranked in descending order
+     */
+    public boolean isDescending()
+    {
+        return descending;
+    }
+    
+    /**
+     * Compares two values of the Measure in rank order. Null values are 
+     * ranked last.
+     * @param a the first value
+     * @param b the second value
+     * @return a negative number if a ranks before b, positive if after, or
+     * zero if tied
+     */
+    public int compare(Object a, Object b)
+    {
+        int result;
+        
+        if(a == null || b == null) return (a == null ? 1 : 0) - (b == null ? 1 : 0);
+        
+        result = Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+        
+        return descending ? -result : result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Top[" + limit + " " + dimension.getName() + " by " + measure.getName() + (descending ? " desc" : " asc") + "]";
+    }
+}
@@ -0,0 +1,658 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.cache;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.output.TypedValues;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk backed tier of the {@link ReportCache} that survives restarts. 
+ * Results are encoded with {@link TypedValues} and appended to segment files
+ * in the cache directory. Values come back as the same type they were 
+ * stored as, so decimals, dates, and timestamps survive the round trip 
+ * exactly. Results containing a value that cannot be stored without loss 
+ * are not stored at all. A small index file maps each report 
+ * to its segment, offset, and length and is the only file read when the 
+ * cache is reopened. Segments are memory mapped on first use and entries are
+ * only decoded when they are read, so cached results that nobody asks for 
+ * cost nothing at startup.
+ * <br><br>
+ * Entries are keyed by the fact table, the {@link com.invirgance.convirgance.olap.Star#getVersion() version}
+ * of the Star, and the signature of the report. Results computed against 
+ * an older version of the model are never returned and age out with the
+ * rest. Segments are only ever appended to. Space is reclaimed by deleting
+ * whole segments once every entry in them has expired, or by deleting the 
+ * oldest segments when the cache grows beyond maxSize bytes.
+ * <br><br>
+ * Writes happen in the background so that callers do not wait on the disk.
+ * The index is rewritten once the pending writes drain, or after every 64
+ * writes under sustained load, rather than after every write. A crash may 
+ * lose the most recently written entries but the index never refers to 
+ * data that is not on disk. Each cache should be given its own directory.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class DiskReportCache
+{
+    private static final byte[] MAGIC = { 'C', 'V', 'R', 'C' };
+    private static final int FORMAT = 2;
+    private static final int INDEX_INTERVAL = 64;
+    private static final String INDEX = "index";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    
+    private static final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "DiskReportCache Writer");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "convirgance-report-cache");
+    private long maxSize = 1024L * 1024 * 1024;
+    private long segmentSize = 64L * 1024 * 1024;
+    private long timeToLive = 86400000;
+    
+    private long hits;
+    private long misses;
+    private long writes;
+    private long skipped;
+    private int unindexed;
+    
+    private Map<String,Entry> entries;
+    private final Map<Integer,MappedByteBuffer> mapped = new HashMap<>();
+    private int segment;
+
+    /**
+     * Returns the directory the cache is stored in.
+     * @return the cache directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Sets the directory the cache is stored in. Defaults to a 
+     * convirgance-report-cache directory under java.io.tmpdir.
+     * @param directory the cache directory
+     */
+    public synchronized void setDirectory(File directory)
+    {
+        this.directory = directory;
+        this.entries = null;
+        
+        mapped.clear();
+    }
+
+    /**
+     * Returns the maximum number of bytes stored on disk.
+     * @return the maximum size in bytes
+     */
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes stored on disk. The oldest segments
+     * are deleted once the limit is exceeded. Defaults to 1GB.
+     * @param maxSize the maximum size in bytes
+     */
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the size in bytes at which a new segment file is started.
+     * @return the segment size in bytes
+     */
+    public long getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size in bytes at which a new segment file is started. Smaller
+     * segments reclaim space sooner at the cost of more files. Defaults to 
+     * 64MB.
+     * @param segmentSize the segment size in bytes
+     */
+    public void setSegmentSize(long segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns the number of milliseconds results remain in the cache.
+     * @return the time to live in milliseconds
+     */
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the number of milliseconds results remain in the cache. Defaults
+     * to 24 hours.
+     * @param timeToLive the time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+    
+    /**
+     * Returns the number of reports currently stored.
+     * @return the number of entries
+     */
+    public synchronized int size()
+    {
+        open();
+        
+        return entries.size();
+    }
+    
+    /**
+     * Returns the entry, byte, hit, miss, and write counts of the cache along
+     * with the number of results skipped because they could not be stored 
+     * without loss.
+     * @return the cache statistics
+     */
+    public synchronized JSONObject getMetrics()
+    {
+        JSONObject metrics = new JSONObject();
+        
+        open();
+        
+        metrics.put("entries", entries.size());
+        metrics.put("bytes", getSegments().values().stream().mapToLong(File::length).sum());
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("writes", writes);
+        metrics.put("skipped", skipped);
+        
+        return metrics;
+    }
+    
+    /**
+     * Returns the key results of the report are stored under.
+     * @param report the report
+     * @return the key of the report
+     */
+    protected String getKey(ReportGenerator report)
+    {
+        return report.getStar().getFact().getName() + "@" + report.getStar().getVersion() + ":" + report.getSignature();
+    }
+    
+    /**
+     * Returns the stored results of the report. The results are decoded from
+     * the memory mapped segment each time they are iterated.
+     * @param report the report
+     * @return the results or null if the report is not stored
+     */
+    public synchronized Iterable<JSONObject> get(ReportGenerator report)
+    {
+        Entry entry;
+        ByteBuffer buffer;
+        ByteBuffer slice;
+        
+        open();
+        
+        entry = entries.get(getKey(report));
+        
+        if(entry == null || entry.created + timeToLive < System.currentTimeMillis())
+        {
+            misses++;
+            
+            return null;
+        }
+        
+        try
+        {
+            buffer = map(entry.segment, entry.offset + entry.length).duplicate();
+        }
+        catch(IOException e)
+        {
+            misses++;
+            
+            return null;
+        }
+        
+        buffer.position((int)entry.offset);
+        buffer.limit((int)(entry.offset + entry.length));
+        
+        slice = buffer.slice();
+        hits++;
+        
+        return () -> new EntryIterator(slice.duplicate());
+    }
+    
+    /**
+     * Stores the results of the report in the background. The results are 
+     * read on the writer thread and must not be modified afterwards. Results
+     * containing a value that {@link TypedValues#isLossless(Object) cannot be
+     * stored without loss} are skipped.
+     * @param report the report
+     * @param results the complete results of the report
+     * @return a future that completes once the results are on disk
+     */
+    public Future<?> put(ReportGenerator report, Iterable<JSONObject> results)
+    {
+        String key = getKey(report);
+        
+        return writer.submit(() -> {
+            byte[] data = encode(results);
+            
+            if(data != null) append(key, data);
+            else skip();
+        });
+    }
+    
+    // Each row is its field count followed by a column code and value per 
+    // field. A code equal to the number of known columns introduces a new
+    // column name.
+    private byte[] encode(Iterable<JSONObject> results)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<String,Integer> columns = new HashMap<>();
+        Integer code;
+        Object value;
+        
+        try
+        {
+            for(JSONObject record : results)
+            {
+                out.writeInt(record.size());
+                
+                for(String column : record.keySet())
+                {
+                    value = record.get(column);
+                    code = columns.get(column);
+                    
+                    if(!TypedValues.isLossless(value)) return null;
+                    
+                    if(code == null)
+                    {
+                        out.writeInt(columns.size());
+                        TypedValues.write(out, column);
+                        columns.put(column, columns.size());
+                    }
+                    else
+                    {
+                        out.writeInt(code);
+                    }
+                    
+                    TypedValues.write(out, value);
+                }
+            }
+            
+            out.writeInt(-1);
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    private synchronized void skip()
+    {
+        skipped++;
+    }
+    
+    /**
+     * Removes every report from the cache and deletes the files on disk.
+     */
+    public synchronized void clear()
+    {
+        open();
+        entries.clear();
+        
+        for(Map.Entry<Integer,File> candidate : getSegments().entrySet()) removeSegment(candidate.getKey(), candidate.getValue());
+        
+        segment = 0;
+        
+        writeIndex();
+    }
+    
+    private synchronized void append(String key, byte[] data)
+    {
+        File file;
+        long offset;
+        
+        open();
+        
+        file = getSegment(segment);
+        
+        if(file.length() > 0 && file.length() + data.length > segmentSize) file = getSegment(++segment);
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            
+            offset = channel.size();
+            
+            channel.position(offset);
+            
+            while(buffer.hasRemaining()) channel.write(buffer);
+            
+            // The index must never point at data that is not on disk
+            channel.force(false);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        entries.put(key, new Entry(segment, offset, data.length, System.currentTimeMillis()));
+        writes++;
+        unindexed++;
+        
+        evict();
+        
+        // Later writes in the queue will rewrite the index anyway
+        if(unindexed >= INDEX_INTERVAL || writer.getQueue().isEmpty()) writeIndex();
+    }
+    
+    private MappedByteBuffer map(int segment, long end) throws IOException
+    {
+        MappedByteBuffer buffer = mapped.get(segment);
+        
+        // Segments grow as entries are appended, so remap to see the new data
+        if(buffer != null && buffer.capacity() >= end) return buffer;
+        
+        try(FileChannel channel = FileChannel.open(getSegment(segment).toPath(), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        mapped.put(segment, buffer);
+        
+        return buffer;
+    }
+    
+    private File getSegment(int segment)
+    {
+        return new File(directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+    
+    private TreeMap<Integer,File> getSegments()
+    {
+        TreeMap<Integer,File> segments = new TreeMap<>();
+        File[] files = directory.listFiles();
+        String name;
+        
+        if(files == null) return segments;
+        
+        for(File file : files)
+        {
+            name = file.getName();
+            
+            if(!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+            
+            try
+            {
+                segments.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+            catch(NumberFormatException e)
+            {
+                // Not one of our segments
+            }
+        }
+        
+        return segments;
+    }
+    
+    private void open()
+    {
+        TreeMap<Integer,File> segments;
+        
+        if(entries != null) return;
+        
+        entries = new LinkedHashMap<>();
+        
+        try
+        {
+            Files.createDirectories(directory.toPath());
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        segments = getSegments();
+        segment = segments.isEmpty() ? 0 : segments.lastKey();
+        
+        try
+        {
+            readIndex(segments);
+        }
+        catch(IOException e)
+        {
+            // A damaged index only loses the cached results
+            entries.clear();
+        }
+        
+        evict();
+    }
+    
+    private void readIndex(TreeMap<Integer,File> segments) throws IOException
+    {
+        File file = new File(directory, INDEX);
+        byte[] magic = new byte[MAGIC.length];
+        String key;
+        Entry entry;
+        File data;
+        int count;
+        
+        if(!file.exists()) return;
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            in.readFully(magic);
+            
+            if(!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT) return;
+            
+            count = in.readInt();
+            
+            for(int i=0; i<count; i++)
+            {
+                key = in.readUTF();
+                entry = new Entry(in.readInt(), in.readLong(), in.readInt(), in.readLong());
+                data = segments.get(entry.segment);
+                
+                if(data != null && data.length() >= entry.offset + entry.length) entries.put(key, entry);
+            }
+        }
+    }
+    
+    private void writeIndex()
+    {
+        File file = new File(directory, INDEX);
+        File temp = new File(directory, INDEX + ".tmp");
+        
+        try
+        {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.write(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(entries.size());
+
+                for(Map.Entry<String,Entry> entry : entries.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().segment);
+                    out.writeLong(entry.getValue().offset);
+                    out.writeInt(entry.getValue().length);
+                    out.writeLong(entry.getValue().created);
+                }
+            }
+            
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            unindexed = 0;
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private void evict()
+    {
+        TreeMap<Integer,File> segments = getSegments();
+        Map<Integer,Integer> live = new HashMap<>();
+        Iterator<Entry> iterator = entries.values().iterator();
+        long now = System.currentTimeMillis();
+        long size = 0;
+        Entry entry;
+        
+        while(iterator.hasNext())
+        {
+            entry = iterator.next();
+            
+            if(entry.created + timeToLive < now) iterator.remove();
+            else live.merge(entry.segment, 1, Integer::sum);
+        }
+        
+        for(File file : segments.values()) size += file.length();
+        
+        for(Map.Entry<Integer,File> candidate : segments.entrySet())
+        {
+            if(candidate.getKey() == segment) break;
+            if(live.containsKey(candidate.getKey()) && size <= maxSize) continue;
+            
+            size -= candidate.getValue().length();
+            
+            removeSegment(candidate.getKey(), candidate.getValue());
+        }
+    }
+    
+    private void removeSegment(int segment, File file)
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        
+        while(iterator.hasNext())
+        {
+            if(iterator.next().segment == segment) iterator.remove();
+        }
+        
+        mapped.remove(segment);
+        file.delete();
+    }
+    
+    private static class Entry
+    {
+        private int segment;
+        private long offset;
+        private int length;
+        private long created;
+
+        public Entry(int segment, long offset, int length, long created)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.created = created;
+        }
+    }
+    
+    private static class EntryIterator implements Iterator<JSONObject>
+    {
+        private ByteBuffer buffer;
+        private List<String> columns = new ArrayList<>();
+        private int fields;
+
+        public EntryIterator(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+            this.fields = buffer.getInt();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return fields >= 0;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject record = new JSONObject();
+            int code;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            for(int i=0; i<fields; i++)
+            {
+                code = buffer.getInt();
+                
+                if(code == columns.size()) columns.add((String)TypedValues.read(buffer));
+                
+                record.put(columns.get(code), TypedValues.read(buffer));
+            }
+            
+            fields = buffer.getInt();
+            
+            return record;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.cache;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Hierarchy;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Rollup;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Semantic cache of report results. Reports are first matched by their 
+ * signature. When there is no exact match, the cache looks for a cached 
+ * report that subsumes the request and derives the answer in memory:
+ * <ul>
+ * <li>The cached report must have every requested Dimension and Measure. 
+ * Extra Dimensions, such as finer levels of a 
+ * {@link com.invirgance.convirgance.olap.Hierarchy}, are removed by
+ * re-aggregating the rows with {@link Rollup}, which requires every Measure
+ * to have a rollup function.</li>
+ * <li>Every filter of the cached report must be implied by a filter of the 
+ * request. Requested filters that are narrower than the cached filters are 
+ * applied to the cached rows in memory, which requires the filtered 
+ * Dimension to be in the cached report.</li>
+ * <li>{@link Measure#isWindowed() Windowed} Measures are computed over the
+ * rows of the report, so they are only derived when the cached report has
+ * the same Dimensions and no filters need to be applied in memory.</li>
+ * </ul>
+ * Reports on a level of a Hierarchy can be executed along their 
+ * {@link #getDrillPath(ReportGenerator) drill path}, so that the cached 
+ * results also answer the coarser levels when the user drills back up. The
+ * results of the requested level are re-aggregated from the drill path.
+ * <br><br>
+ * Approximate reports and reports limited by a 
+ * {@link com.invirgance.convirgance.olap.TopK} are only answered by an 
+ * exact match, as their margins of error and ranks cannot be re-aggregated.
+ * The smallest cached report that subsumes the request is used.
+ * <br><br>
+ * Cached results are shared between callers and must not be modified. The
+ * least recently used entries are evicted once maxEntries is exceeded and
+ * entries expire after timeToLive milliseconds.
+ * <br><br>
+ * An optional {@link DiskReportCache} adds a persistent tier. Every report
+ * added to the cache is also written to disk, and reports that can't be 
+ * answered from memory are loaded from disk before being counted as a miss.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class ReportCache
+{
+    private int maxEntries = 100;
+    private int maxRows = 100000;
+    private long timeToLive = 300000;
+    private DiskReportCache disk;
+    
+    private long hits;
+    private long derived;
+    private long stored;
+    private long misses;
+    
+    private final Map<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Returns the maximum number of reports held in the cache.
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of reports held in the cache. The least 
+     * recently used report is evicted when the limit is exceeded. Defaults
+     * to 100.
+     * @param maxEntries the maximum number of entries
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the maximum number of rows a report may have to be cached.
+     * @return the maximum number of rows
+     */
+    public int getMaxRows()
+    {
+        return maxRows;
+    }
+
+    /**
+     * Sets the maximum number of rows a report may have to be cached. Larger
+     * reports are streamed without being cached. Defaults to 100,000.
+     * @param maxRows the maximum number of rows
+     */
+    public void setMaxRows(int maxRows)
+    {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Returns the number of milliseconds results remain in the cache.
+     * @return the time to live in milliseconds
+     */
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the number of milliseconds results remain in the cache. Defaults
+     * to 5 minutes.
+     * @param timeToLive the time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+    
+    /**
+     * Returns the disk tier of the cache.
+     * @return the disk tier or null if results are only held in memory
+     */
+    public DiskReportCache getDisk()
+    {
+        return disk;
+    }
+
+    /**
+     * Sets the disk tier of the cache. Results loaded from disk are kept in
+     * memory until they are evicted. Defaults to null.
+     * @param disk the disk tier or null to only hold results in memory
+     */
+    public void setDisk(DiskReportCache disk)
+    {
+        this.disk = disk;
+    }
+    
+    /**
+     * Returns the number of reports currently cached.
+     * @return the number of entries
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+    
+    /**
+     * Removes every report from the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+    
+    /**
+     * Returns the hit, derived, stored, and miss counts of the cache. The
+     * metrics of the disk tier are included under "disk".
+     * @return the cache statistics
+     */
+    public synchronized JSONObject getMetrics()
+    {
+        JSONObject metrics = new JSONObject();
+        
+        metrics.put("entries", entries.size());
+        metrics.put("hits", hits);
+        metrics.put("derived", derived);
+        metrics.put("stored", stored);
+        metrics.put("misses", misses);
+        
+        if(disk != null) metrics.put("disk", disk.getMetrics());
+        
+        return metrics;
+    }
+    
+    /**
+     * Adds the results of a report to the cache.
+     * @param report the report
+     * @param results the complete results of the report
+     */
+    public void put(ReportGenerator report, JSONArray<JSONObject> results)
+    {
+        if(results.size() > maxRows) return;
+        
+        store(report, results);
+        
+        if(disk != null) disk.put(report, results);
+    }
+    
+    private synchronized void store(ReportGenerator report, JSONArray<JSONObject> results)
+    {
+        Iterator<Entry> iterator;
+        
+        entries.put(report.getSignature(), new Entry(report, results));
+        
+        iterator = entries.values().iterator();
+        
+        while(entries.size() > maxEntries && iterator.hasNext())
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * Returns the results of the report from the cache, re-aggregating the
+     * results of a cached finer report if needed. Reports that can't be 
+     * answered from memory are loaded from the disk tier if one is set.
+     * @param report the report
+     * @return the results or null if the report can't be answered from the cache
+     */
+    public JSONArray<JSONObject> get(ReportGenerator report)
+    {
+        JSONArray<JSONObject> results;
+        Entry source = null;
+        Entry entry;
+        
+        synchronized(this)
+        {
+            expire();
+            
+            entry = entries.get(report.getSignature());
+            
+            if(entry != null && entry.report.getStar() == report.getStar())
+            {
+                hits++;
+                
+                return entry.results;
+            }
+            
+            for(Entry candidate : entries.values())
+            {
+                if(!isDerivable(candidate.report, report)) continue;
+                if(source == null || candidate.results.size() < source.results.size()) source = candidate;
+            }
+            
+            if(source != null) derived++;
+        }
+        
+        if(source == null) return load(report);
+        
+        results = derive(source.report, source.results, report);
+        
+        put(report, results);
+        
+        return results;
+    }
+    
+    private JSONArray<JSONObject> load(ReportGenerator report)
+    {
+        Iterable<JSONObject> rows = (disk != null) ? disk.get(report) : null;
+        JSONArray<JSONObject> results = new JSONArray<>();
+        
+        synchronized(this)
+        {
+            if(rows == null) 
+            {
+                misses++;
+                
+                return null;
+            }
+            
+            stored++;
+        }
+        
+        for(JSONObject row : rows) results.add(row);
+        
+        store(report, results);
+        
+        return results;
+    }
+    
+    /**
+     * Returns true if the results of the requested report can be derived 
+     * from the results of the cached report. See the class description for
+     * the rules.
+     * @param cached the report in the cache
+     * @param requested the report being requested
+     * @return true if the requested report can be derived
+     */
+    protected boolean isDerivable(ReportGenerator cached, ReportGenerator requested)
+    {
+        List<Filter> residual;
+        
+        if(cached.getStar() != requested.getStar()) return false;
+        if(cached.isApproximate() || requested.isApproximate()) return false;
+        if(cached.getTopK() != null || requested.getTopK() != null) return false;
+        if(!cached.getDimensions().containsAll(requested.getDimensions())) return false;
+        if(!cached.getMeasures().containsAll(requested.getMeasures())) return false;
+        
+        // Removing dimensions requires combining the aggregates of several rows
+        if(cached.getDimensions().size() > requested.getDimensions().size())
+        {
+            for(Measure measure : requested.getMeasures())
+            {
+                if(measure.getRollupFunction() == null) return false;
+            }
+        }
+        
+        for(Filter filter : cached.getFilters())
+        {
+            if(!isImplied(filter, requested.getFilters())) return false;
+        }
+        
+        residual = getResidualFilters(cached, requested);
+        
+        for(Filter filter : residual)
+        {
+            if(!cached.getDimensions().contains(filter.getDimension())) return false;
+        }
+        
+        // Windows over fewer or coarser rows than cached give different values
+        if(!residual.isEmpty() || cached.getDimensions().size() > requested.getDimensions().size())
+        {
+            for(Measure measure : requested.getMeasures())
+            {
+                if(measure.isWindowed()) return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns true if every row matched by one of the filters is also matched
+     * by the cached filter.
+     * @param cached a filter of the cached report
+     * @param filters the filters of the requested report
+     * @return true if the cached filter is implied by the requested filters
+     */
+    private boolean isImplied(Filter cached, List<Filter> filters)
+    {
+        boolean matched;
+        
+        for(Filter filter : filters)
+        {
+            if(filter.getDimension() != cached.getDimension()) continue;
+            if(filter.toString().equals(cached.toString())) return true;
+            if(filter.isRange()) continue;
+            
+            matched = true;
+            
+            for(Object value : filter.getValues())
+            {
+                if(!cached.getDimension().matches(cached, value)) matched = false;
+            }
+            
+            if(matched) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the requested filters that have not already been applied by 
+     * the cached report and must be applied in memory.
+     * @param cached the report in the cache
+     * @param requested the report being requested
+     * @return the list of filters to apply in memory
+     */
+    private List<Filter> getResidualFilters(ReportGenerator cached, ReportGenerator requested)
+    {
+        List<Filter> residual = new ArrayList<>();
+        List<String> applied = new ArrayList<>();
+        
+        for(Filter filter : cached.getFilters()) applied.add(filter.toString());
+        
+        for(Filter filter : requested.getFilters())
+        {
+            if(!applied.contains(filter.toString())) residual.add(filter);
+        }
+        
+        return residual;
+    }
+    
+    /**
+     * Returns a copy of the report that also groups by every coarser level 
+     * of the {@link Hierarchy} of each of its Dimensions (see 
+     * {@link Hierarchy#getPath(Dimension)}). A report on stores becomes a 
+     * report on regions and stores, which can then answer the report on 
+     * stores and, once cached, a later report on regions.
+     * @param report the report being requested
+     * @return the report along the drill path or null if the report has no 
+     *         missing levels or can't be derived from its drill path
+     */
+    public ReportGenerator getDrillPath(ReportGenerator report)
+    {
+        ReportGenerator path = new ReportGenerator(report.getStar());
+        Hierarchy hierarchy;
+        
+        if(report.isApproximate() || report.getTopK() != null) return null;
+        
+        for(Measure measure : report.getMeasures())
+        {
+            if(measure.isWindowed()) return null;
+        }
+        
+        for(Dimension dimension : report.getDimensions())
+        {
+            hierarchy = report.getStar().getHierarchy(dimension);
+            
+            if(hierarchy == null)
+            {
+                if(!path.getDimensions().contains(dimension)) path.addDimension(dimension);
+                
+                continue;
+            }
+            
+            for(Dimension level : hierarchy.getPath(dimension))
+            {
+                if(!path.getDimensions().contains(level)) path.addDimension(level);
+            }
+        }
+        
+        if(path.getDimensions().size() == report.getDimensions().size()) return null;
+        
+        for(Measure measure : report.getMeasures()) path.addMeasure(measure);
+        for(Filter filter : report.getFilters()) path.addFilter(filter);
+        
+        path.setCaseSensitive(report.isCaseSensitive());
+        path.setDialect(report.getDialect());
+        
+        return isDerivable(path, report) ? path : null;
+    }
+    
+    /**
+     * Derives the results of the report from the results of its drill path
+     * and adds them to the cache. The rows are re-aggregated as they are 
+     * read, so only the groups of the report are held in memory. The rows
+     * should come from {@link #track(ReportGenerator, Iterable)} so that the
+     * drill path is cached as well.
+     * @param path the drill path returned by {@link #getDrillPath(ReportGenerator)}
+     * @param rows the results of executing the drill path
+     * @param report the report being requested
+     * @return the results of the report
+     */
+    public JSONArray<JSONObject> putDrillPath(ReportGenerator path, Iterable<JSONObject> rows, ReportGenerator report)
+    {
+        JSONArray<JSONObject> results = derive(path, rows, report);
+        
+        put(report, results);
+        
+        return results;
+    }
+    
+    /**
+     * Derives the results of the requested report by filtering, projecting,
+     * and re-aggregating the results of the cached report.
+     * @param cached the report in the cache
+     * @param rows the results of the cached report
+     * @param requested the report being requested
+     * @return the results of the requested report
+     */
+    protected JSONArray<JSONObject> derive(ReportGenerator cached, Iterable<JSONObject> rows, ReportGenerator requested)
+    {
+        List<Filter> filters = getResidualFilters(cached, requested);
+        JSONArray<JSONObject> results = new JSONArray<>();
+        boolean regroup = cached.getDimensions().size() > requested.getDimensions().size();
+        Rollup rollup = regroup ? new Rollup(requested.getDimensions(), requested.getMeasures()) : null;
+        JSONObject result;
+        
+        rows:
+        for(JSONObject row : rows)
+        {
+            for(Filter filter : filters)
+            {
+                if(!filter.getDimension().matches(filter, row.get(filter.getDimension().getName()))) continue rows;
+            }
+            
+            if(regroup)
+            {
+                rollup.add(row);
+                continue;
+            }
+            
+            result = new JSONObject();
+            
+            for(Dimension dimension : requested.getDimensions()) result.put(dimension.getName(), row.get(dimension.getName()));
+            for(Measure measure : requested.getMeasures()) result.put(measure.getName(), row.get(measure.getName()));
+            
+            results.add(result);
+        }
+        
+        return regroup ? rollup.getResults() : results;
+    }
+    
+    private void expire()
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        long now = System.currentTimeMillis();
+        
+        while(iterator.hasNext())
+        {
+            if(iterator.next().created + timeToLive < now) iterator.remove();
+        }
+    }
+    
+    /**
+     * Wraps the results of a report so that they are added to the cache once
+     * they have been completely read. Reports with more than maxRows rows are
+     * passed through without being cached. Closing an iterator before it has
+     * been completely read closes the underlying results without caching.
+     * @param report the report
+     * @param results the results of executing the report
+     * @return the results
+     */
+    public Iterable<JSONObject> track(ReportGenerator report, Iterable<JSONObject> results)
+    {
+        return new Iterable<JSONObject>() {
+            @Override
+            public Iterator<JSONObject> iterator()
+            {
+                final Iterator<JSONObject> iterator = results.iterator();
+                
+                return new TrackedIterator() {
+                    private JSONArray<JSONObject> buffer = new JSONArray<>();
+                    
+                    @Override
+                    public boolean hasNext()
+                    {
+                        boolean next = iterator.hasNext();
+                        
+                        if(!next && buffer != null)
+                        {
+                            put(report, buffer);
+                            buffer = null;
+                        }
+                        
+                        return next;
+                    }
+
+                    @Override
+                    public JSONObject next()
+                    {
+                        JSONObject record = iterator.next();
+                        
+                        if(buffer != null && buffer.size() >= maxRows) buffer = null;
+                        if(buffer != null) buffer.add(record);
+                        
+                        return record;
+                    }
+
+                    @Override
+                    public void close() throws Exception
+                    {
+                        // Partial results must not be cached
+                        buffer = null;
+                        
+                        if(iterator instanceof AutoCloseable) ((AutoCloseable)iterator).close();
+                        else if(results instanceof AutoCloseable) ((AutoCloseable)results).close();
+                    }
+                };
+            }
+        };
+    }
+    
+    private static class Entry
+    {
+        private ReportGenerator report;
+        private JSONArray<JSONObject> results;
+        private long created = System.currentTimeMillis();
+
+        public Entry(ReportGenerator report, JSONArray<JSONObject> results)
+        {
+            this.report = report;
+            this.results = results;
+        }
+    }
+    
+    private interface TrackedIterator extends Iterator<JSONObject>, AutoCloseable
+    {
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.QueryCursor;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+
+/**
+ * Answers reports from a {@link LocalStar} held in memory. The fact rows are
+ * extracted from the database in the background the first time the cost of
+ * a report is estimated, and re-extracted in the background once they are 
+ * older than the refresh interval. Until the first extract completes the 
+ * cost is unknown, so the {@link ReportRouter} sends reports elsewhere. A
+ * report executed directly before then waits for the extract. Stars with more fact rows than the configured maximum are 
+ * never copied. The limit is enforced while the rows are extracted, so a 
+ * Star that has grown since its statistics were gathered is abandoned 
+ * rather than held in memory, and the executor reports itself as 
+ * {@link #isExceeded() exceeded} from then on.
+ * <br><br>
+ * When a snapshot file is set, every extract is saved to it and the first 
+ * load after a restart memory maps the snapshot instead of extracting the
+ * rows again. Snapshots older than the refresh interval are still used and
+ * refreshed in the background.
+ * <br><br>
+ * When the LocalStar has a watermark column, rows added to the fact table 
+ * are polled in the background every delta interval and appended as delta
+ * segments between full refreshes. Once more than maxSegments segments are 
+ * held they are compacted and the snapshot, if any, is saved again.
+ * <br><br>
+ * Aggregating the local copy costs a fraction of a database scan for each
+ * column of each row the report reads.
+ * <br><br>
+ * Failures of the background extract, delta polls, and snapshot saves don't
+ * fail reports. The previous copy keeps being used and the last failure is
+ * kept for {@link #getMetrics()} and the routing log.
+ * 
+ * @author jbanes
+ */
+public class LocalReportExecutor implements ReportExecutor
+{
+    private static final ExecutorService loader = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LocalReportExecutor Loader");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    private LocalStar local;
+    private DataSource source;
+    private boolean caseSensitive;
+    private Dialect dialect;
+    private AdmissionController controller;
+    private long maxRows = 1000000;
+    private long refreshInterval = 3600000;
+    private double rowCost = 0.05;
+    private long deltaInterval = 60000;
+    private int maxSegments = 8;
+    private File snapshot;
+    private Future<?> task;
+    private volatile String lastError;
+    private volatile long lastErrorTime;
+    private volatile long errors;
+    private volatile boolean exceeded;
+    private volatile long polled;
+
+    /**
+     * Creates an executor answering reports from the local copy.
+     * @param local the local copy of the Star
+     * @param source the database containing the Star
+     */
+    public LocalReportExecutor(LocalStar local, DataSource source)
+    {
+        this.local = local;
+        this.source = source;
+    }
+
+    /**
+     * Returns the local copy of the Star.
+     * @return the LocalStar
+     */
+    public LocalStar getLocalStar()
+    {
+        return local;
+    }
+
+    /**
+     * Set to true to quote identifiers when extracting the fact rows.
+     * @param caseSensitive true if case sensitive
+     */
+    public void setCaseSensitive(boolean caseSensitive)
+    {
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Sets the Dialect used to extract the fact rows.
+     * @param dialect the Dialect
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Sets the admission controller guarding the database. Extracts are 
+     * admitted at export priority.
+     * @param controller the admission controller or null for none
+     */
+    public void setAdmissionController(AdmissionController controller)
+    {
+        this.controller = controller;
+    }
+
+    /**
+     * Returns the largest number of fact rows copied into memory.
+     * @return the maximum number of rows
+     */
+    public long getMaxRows()
+    {
+        return maxRows;
+    }
+
+    /**
+     * Sets the largest number of fact rows copied into memory. Defaults to 
+     * 1,000,000.
+     * @param maxRows the maximum number of rows
+     */
+    public void setMaxRows(long maxRows)
+    {
+        this.maxRows = maxRows;
+    }
+    
+    /**
+     * True if an extract returned more than maxRows rows. The local copy is
+     * no longer used and every report should be sent to the database.
+     * @return true if the Star is too large to copy
+     */
+    public boolean isExceeded()
+    {
+        return exceeded;
+    }
+
+    /**
+     * Returns the number of milliseconds before the copy is refreshed.
+     * @return the refresh interval in milliseconds
+     */
+    public long getRefreshInterval()
+    {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds before the copy is refreshed in the 
+     * background. Defaults to 1 hour.
+     * @param refreshInterval the refresh interval in milliseconds
+     */
+    public void setRefreshInterval(long refreshInterval)
+    {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Returns the number of milliseconds between polls for added rows.
+     * @return the delta interval in milliseconds
+     */
+    public long getDeltaInterval()
+    {
+        return deltaInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds between polls for rows added to the 
+     * fact table. Only used when the LocalStar has a watermark column. 
+     * Defaults to 1 minute.
+     * @param deltaInterval the delta interval in milliseconds
+     */
+    public void setDeltaInterval(long deltaInterval)
+    {
+        this.deltaInterval = deltaInterval;
+    }
+
+    /**
+     * Returns the number of segments held before they are compacted.
+     * @return the maximum number of segments
+     */
+    public int getMaxSegments()
+    {
+        return maxSegments;
+    }
+
+    /**
+     * Sets the number of segments held before they are compacted. Each 
+     * segment adds a little overhead to every report. Defaults to 8.
+     * @param maxSegments the maximum number of segments
+     */
+    public void setMaxSegments(int maxSegments)
+    {
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Returns the snapshot file the copy is saved to.
+     * @return the snapshot file or null
+     */
+    public File getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Sets the snapshot file the copy is saved to and opened from. See
+     * {@link LocalStar#save(java.io.File)}. Defaults to null.
+     * @param snapshot the snapshot file or null to always extract from the database
+     */
+    public void setSnapshot(File snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the cost of reading one column of one local row relative to 
+     * scanning one row in the database. Defaults to 0.05.
+     * @param rowCost the cost per column of each local row
+     */
+    public void setRowCost(double rowCost)
+    {
+        this.rowCost = rowCost;
+    }
+
+    /**
+     * Returns the last error raised while loading, updating, or saving the 
+     * local copy in the background.
+     * @return the error message or null if there has been no error
+     */
+    @Override
+    public String getLastError()
+    {
+        return lastError;
+    }
+
+    /**
+     * Returns the time the last background error was raised.
+     * @return the time in milliseconds since the epoch or 0 if none
+     */
+    public long getLastErrorTime()
+    {
+        return lastErrorTime;
+    }
+    
+    /**
+     * Returns the size and freshness of the local copy along with the 
+     * number of background errors and the last error raised.
+     * @return the metrics of the local copy
+     */
+    public JSONObject getMetrics()
+    {
+        JSONObject metrics = new JSONObject();
+        
+        metrics.put("rows", local.getRows());
+        metrics.put("segments", local.getSegments());
+        metrics.put("loaded", local.getLoaded());
+        metrics.put("polled", polled);
+        metrics.put("exceeded", exceeded);
+        metrics.put("errors", errors);
+        metrics.put("lastError", lastError);
+        metrics.put("lastErrorTime", lastErrorTime);
+        
+        return metrics;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "local";
+    }
+
+    @Override
+    public boolean supports(ReportGenerator report)
+    {
+        return local.supports(report);
+    }
+
+    // The dimension codes and metrics read for every row
+    private int getColumns(ReportGenerator report)
+    {
+        Set<Dimension> dimensions = new HashSet<>(report.getDimensions());
+        
+        for(Filter filter : report.getFilters()) dimensions.add(filter.getDimension());
+        
+        return Math.max(1, dimensions.size() + report.getMeasures().size());
+    }
+    
+    @Override
+    public double estimateCost(ReportGenerator report, StarStatistics statistics)
+    {
+        double scan = getColumns(report) * rowCost;
+        double groups = (statistics == null) ? 0 : statistics.estimateGroups(report.getDimensions()) * rowCost;
+        
+        if(exceeded) return Double.POSITIVE_INFINITY;
+        if(local.getLoaded() > 0) return local.getRows() * scan + groups;
+        if(statistics == null || statistics.getRows() > maxRows) return Double.POSITIVE_INFINITY;
+        
+        // Other executors answer reports until the copy is ready
+        background(this::open);
+        
+        return Double.POSITIVE_INFINITY;
+    }
+    
+    private Iterable<JSONObject> limit(Iterable<JSONObject> rows, long limit)
+    {
+        return () -> {
+            Iterator<JSONObject> iterator = rows.iterator();
+            
+            return new Iterator<JSONObject>() {
+                private long count;
+                
+                @Override
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public JSONObject next()
+                {
+                    if(++count > limit)
+                    {
+                        exceeded = true;
+                        
+                        throw new ConvirganceException("Star has more than " + maxRows + " fact rows and will not be copied into memory");
+                    }
+                    
+                    return iterator.next();
+                }
+            };
+        };
+    }
+    
+    /**
+     * Extracts the fact rows from the database into the local copy and saves
+     * the snapshot if one is set. The extract is abandoned and the previous
+     * copy kept if the Star has more than maxRows fact rows.
+     */
+    public void load()
+    {
+        try(QueryCursor cursor = new QueryCursor(source, local.getSQL(caseSensitive, dialect)))
+        {
+            if(controller != null) cursor.setAdmissionController(controller, AdmissionController.EXPORT);
+            
+            local.load(limit(cursor, maxRows));
+        }
+        
+        polled = System.currentTimeMillis();
+        
+        save();
+    }
+    
+    /**
+     * Appends the fact rows added since the last load or update to the local
+     * copy, compacting it once it holds more than maxSegments segments.
+     */
+    public void update()
+    {
+        polled = System.currentTimeMillis();
+        
+        try(QueryCursor cursor = new QueryCursor(source, local.getDeltaSQL(caseSensitive, dialect)))
+        {
+            if(controller != null) cursor.setAdmissionController(controller, AdmissionController.EXPORT);
+            
+            local.append(limit(cursor, maxRows - local.getRows()));
+        }
+        
+        if(local.getSegments() <= maxSegments) return;
+        
+        local.compact();
+        save();
+    }
+    
+    private void save()
+    {
+        if(snapshot == null) return;
+        
+        try
+        {
+            local.save(snapshot);
+        }
+        catch(RuntimeException e)
+        {
+            // The snapshot only speeds up the next start
+            fail(e);
+        }
+    }
+    
+    private void open()
+    {
+        if(snapshot == null || !local.open(snapshot)) load();
+    }
+    
+    private synchronized void fail(RuntimeException e)
+    {
+        lastError = (e.getMessage() != null) ? e.getMessage() : e.toString();
+        lastErrorTime = System.currentTimeMillis();
+        errors++;
+    }
+    
+    private synchronized Future<?> background(Runnable runnable)
+    {
+        if(task != null && !task.isDone()) return task;
+        
+        task = loader.submit(() -> {
+            try
+            {
+                runnable.run();
+            }
+            catch(RuntimeException e)
+            {
+                // Keep serving the previous copy and try again on the next report
+                fail(e);
+            }
+        });
+        
+        return task;
+    }
+    
+    private void await(Future<?> task)
+    {
+        try
+        {
+            task.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new ConvirganceException(e.getCause());
+        }
+    }
+
+    @Override
+    public Iterable<JSONObject> execute(ReportGenerator report, int priority)
+    {
+        if(local.getLoaded() == 0 && !exceeded) await(background(this::open));
+        
+        if(exceeded) throw new ConvirganceException("Star has more than " + maxRows + " fact rows and is not held in memory");
+        if(local.getLoaded() == 0) throw new ConvirganceException("Unable to load the local copy of the Star: " + lastError);
+        
+        if(local.getLoaded() + refreshInterval < System.currentTimeMillis()) background(this::load);
+        else if(local.getWatermarkColumn() != null && polled + deltaInterval < System.currentTimeMillis()) background(this::update);
+        
+        return local.execute(report);
+    }
+}
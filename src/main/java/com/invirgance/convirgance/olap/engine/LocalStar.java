@@ -0,0 +1,1092 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.TopK;
+import com.invirgance.convirgance.olap.measures.FilteredMeasure;
+import com.invirgance.convirgance.olap.output.TypedValues;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An in-memory, columnar copy of the fact rows of a Star. Each Dimension is
+ * dictionary encoded into an {@link IntBuffer} of codes and each Metric is 
+ * held in a {@link DoubleBuffer} with NaN marking nulls. Reports are 
+ * answered by a single pass over the buffers, grouping on the dimension 
+ * codes. Filters are evaluated once per dictionary entry rather than once 
+ * per row.
+ * <br><br>
+ * Supports measures computed with sum, count, min, max, and avg, including
+ * {@link FilteredMeasure filtered} variants of them. Sums, 
+ * minimums, and maximums of metrics that only hold whole numbers are 
+ * returned as longs to match the results of the database.
+ * <br><br>
+ * When a watermark column of the fact table is set, rows added to the fact
+ * table since the last load can be appended with {@link #append(java.lang.Iterable)}
+ * using the results of {@link #getDeltaSQL(boolean, com.invirgance.convirgance.olap.sql.Dialect)}.
+ * Each append becomes an immutable delta segment and extends the
+ * dictionaries without changing existing codes. The rows, segments, and 
+ * dictionaries are swapped in as a whole, so every report sees either all 
+ * of a segment or none of it. {@link #compact()} merges the segments into 
+ * one and re-encodes the dictionaries. Reports keep reading the previous 
+ * segments until the merged copy is swapped in.
+ * <br><br>
+ * The loaded rows can be saved to a snapshot file and memory mapped on a 
+ * later start rather than extracted from the database again. A snapshot 
+ * begins with a fixed 24 byte header:
+ * <ul>
+ * <li>The magic bytes "CVSS", a 2 byte format version, and 2 bytes of 
+ * padding</li>
+ * <li>The CRC32 checksum and the length of everything after the header, 
+ * each as 8 bytes</li>
+ * </ul>
+ * The header is followed by the version of the Star, the load time, the 
+ * number of rows, the watermark, the name and dictionary of each Dimension,
+ * and the key of each Metric with whether it only holds whole numbers. The columns start
+ * on the next 8 byte boundary: one 4 byte code per row for each Dimension 
+ * followed by one 8 byte double per row for each Metric. Columns are viewed
+ * in place through the mapping, so only the dictionaries are decoded when a
+ * snapshot is opened. Strings, numbers, booleans, dates, and timestamps in 
+ * dictionaries and the watermark keep the type JDBC returned them as. Other 
+ * values are restored as strings.
+ * 
+ * @author jbanes
+ */
+public class LocalStar
+{
+    private static final String METRIC_PREFIX = "Metric:";
+    private static final String WATERMARK = "Watermark";
+    
+    private static final byte[] SNAPSHOT_MAGIC = { 'C', 'V', 'S', 'S' };
+    private static final short SNAPSHOT_FORMAT = 3;
+    private static final int SNAPSHOT_HEADER = 24;
+    
+    private Star star;
+    private String watermarkColumn;
+    private volatile Contents contents = new Contents();
+    
+    // Serializes changes so that compaction never drops an appended segment
+    private final Object writes = new Object();
+
+    /**
+     * Creates an empty copy of the Star. Call {@link #load(java.lang.Iterable)} 
+     * with the results of {@link #getSQL(boolean, com.invirgance.convirgance.olap.sql.Dialect)}
+     * to populate it.
+     * @param star the Star to copy
+     */
+    public LocalStar(Star star)
+    {
+        this.star = star;
+    }
+
+    /**
+     * Returns the Star this is a copy of.
+     * @return the Star
+     */
+    public Star getStar()
+    {
+        return star;
+    }
+
+    /**
+     * Returns the number of fact rows loaded.
+     * @return the number of rows
+     */
+    public int getRows()
+    {
+        return contents.rows;
+    }
+
+    /**
+     * Returns the time the rows were loaded.
+     * @return the load time in milliseconds since the epoch or 0 if never loaded
+     */
+    public long getLoaded()
+    {
+        return contents.loaded;
+    }
+
+    /**
+     * Returns the number of segments holding the rows. The rows of a load 
+     * are held in one segment and each append adds another.
+     * @return the number of segments
+     */
+    public int getSegments()
+    {
+        return contents.segments.size();
+    }
+
+    /**
+     * Returns the column of the fact table used as the watermark.
+     * @return the watermark column or null
+     */
+    public String getWatermarkColumn()
+    {
+        return watermarkColumn;
+    }
+
+    /**
+     * Sets the column of the fact table used as the watermark. The column
+     * must increase as rows are added to the fact table, such as an identity
+     * or a load timestamp. Rows added with a value at or below the highest
+     * value already loaded are not seen until the next full load. Defaults
+     * to null.
+     * @param watermarkColumn the watermark column or null
+     */
+    public void setWatermarkColumn(String watermarkColumn)
+    {
+        this.watermarkColumn = watermarkColumn;
+    }
+
+    /**
+     * Returns the highest value of the watermark column loaded so far.
+     * @return the watermark or null if none
+     */
+    public Object getWatermark()
+    {
+        return contents.watermark;
+    }
+    
+    private List<Metric> getMetrics()
+    {
+        Map<String,Metric> list = new LinkedHashMap<>();
+        
+        for(Measure measure : star.getMeasures())
+        {
+            if(measure.getMetric() != null) list.putIfAbsent(StarStatistics.getKey(measure.getMetric()), measure.getMetric());
+        }
+        
+        return new ArrayList<>(list.values());
+    }
+    
+    /**
+     * Returns true if the Measure can be computed locally.
+     * @param measure the Measure
+     * @return true if supported
+     */
+    public static boolean supports(Measure measure)
+    {
+        if(measure.getMetric() == null || measure.getFunction() == null) return false;
+        
+        switch(measure.getFunction().toLowerCase())
+        {
+            case "sum":
+            case "count":
+            case "min":
+            case "max":
+            case "avg":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Returns true if the report can be computed locally. Every Measure must
+     * be supported and the combinations of the Dimension codes must fit in 
+     * a long. Approximate reports are left to the database, which returns
+     * the margins of error they expect.
+     * @param report the report
+     * @return true if supported
+     */
+    public boolean supports(ReportGenerator report)
+    {
+        Map<Dimension,List<Object>> dictionaries = contents.dictionaries;
+        long combinations = 1;
+        
+        if(report.getStar() != star) return false;
+        if(report.isApproximate()) return false;
+        
+        for(Measure measure : report.getMeasures())
+        {
+            if(!supports(measure)) return false;
+        }
+        
+        try
+        {
+            for(Dimension dimension : report.getDimensions())
+            {
+                if(dictionaries.containsKey(dimension)) combinations = Math.multiplyExact(combinations, Math.max(1, dictionaries.get(dimension).size()));
+            }
+        }
+        catch(ArithmeticException e)
+        {
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Generates the query extracting every fact row with the value of each
+     * Dimension and Metric and of the watermark column if set.
+     * @param caseSensitive true to quote identifiers
+     * @param dialect the dialect of the database or null for ANSI
+     * @return the SQL query as a string
+     */
+    public String getSQL(boolean caseSensitive, Dialect dialect)
+    {
+        return getGenerator(caseSensitive, dialect).getSQL();
+    }
+    
+    /**
+     * Generates the query extracting the fact rows added since the last load
+     * or append. The rows are those with a watermark above the highest value
+     * loaded so far.
+     * @param caseSensitive true to quote identifiers
+     * @param dialect the dialect of the database or null for ANSI
+     * @return the SQL query as a string
+     */
+    public String getDeltaSQL(boolean caseSensitive, Dialect dialect)
+    {
+        SQLGenerator generator = getGenerator(caseSensitive, dialect);
+        Object watermark = contents.watermark;
+        
+        if(watermarkColumn == null) throw new IllegalStateException("No watermark column set");
+        
+        if(watermark != null)
+        {
+            generator.addWhere(generator.getColumnSQL(star.getFact(), watermarkColumn) + " > " + generator.getDialect().getLiteralSQL(watermark), star.getFact());
+        }
+        
+        return generator.getSQL();
+    }
+    
+    private SQLGenerator getGenerator(boolean caseSensitive, Dialect dialect)
+    {
+        SQLGenerator generator = new SQLGenerator();
+        
+        generator.setCaseSensitive(caseSensitive);
+        generator.setDialect(dialect);
+        generator.addTable(star.getFact());
+        
+        for(Dimension dimension : star.getDimensions()) dimension.addSelect(generator);
+        
+        for(Metric metric : getMetrics())
+        {
+            generator.addSelect(metric.getColumn(), metric.getTable(), METRIC_PREFIX + StarStatistics.getKey(metric));
+        }
+        
+        if(watermarkColumn != null) generator.addSelect(watermarkColumn, star.getFact(), WATERMARK);
+        
+        return generator;
+    }
+    
+    private static IntBuffer grow(IntBuffer buffer)
+    {
+        IntBuffer larger;
+        
+        if(buffer.hasRemaining()) return buffer;
+        
+        larger = IntBuffer.allocate(buffer.capacity() * 2);
+        
+        buffer.flip();
+        larger.put(buffer);
+        
+        return larger;
+    }
+    
+    private static DoubleBuffer grow(DoubleBuffer buffer)
+    {
+        DoubleBuffer larger;
+        
+        if(buffer.hasRemaining()) return buffer;
+        
+        larger = DoubleBuffer.allocate(buffer.capacity() * 2);
+        
+        buffer.flip();
+        larger.put(buffer);
+        
+        return larger;
+    }
+    
+    /**
+     * Replaces the contents with the rows returned by the extract query.
+     * @param results the results of {@link #getSQL(boolean, com.invirgance.convirgance.olap.sql.Dialect)}
+     */
+    public void load(Iterable<JSONObject> results)
+    {
+        Encoder encoder = new Encoder(null);
+        Contents loaded;
+        
+        for(JSONObject row : results) encoder.add(row);
+        
+        loaded = encoder.getContents(null);
+        loaded.loaded = System.currentTimeMillis();
+        
+        synchronized(writes)
+        {
+            contents = loaded;
+        }
+    }
+    
+    /**
+     * Appends the rows returned by the delta query as a new segment. Reports
+     * running while the rows are appended do not see them.
+     * @param results the results of {@link #getDeltaSQL(boolean, com.invirgance.convirgance.olap.sql.Dialect)}
+     * @return the number of rows appended
+     */
+    public int append(Iterable<JSONObject> results)
+    {
+        Encoder encoder;
+        
+        synchronized(writes)
+        {
+            encoder = new Encoder(contents);
+            
+            for(JSONObject row : results) encoder.add(row);
+            
+            if(encoder.rows > 0) contents = encoder.getContents(contents);
+            
+            return encoder.rows;
+        }
+    }
+    
+    /**
+     * Merges every segment into a single segment with freshly encoded 
+     * dictionaries, matching the result of loading the same rows. Reports 
+     * continue to read the previous segments while the merge runs. Appends
+     * wait for the merge to finish.
+     */
+    public void compact()
+    {
+        Encoder encoder;
+        Contents current;
+        Contents compacted;
+        List<Metric> list = getMetrics();
+        List<Object> dictionary;
+        IntBuffer column;
+        String key;
+        
+        synchronized(writes)
+        {
+            current = contents;
+            
+            if(current.segments.size() < 2) return;
+            
+            encoder = new Encoder(null);
+            
+            for(Segment segment : current.segments)
+            {
+                for(int row=0; row<segment.rows; row++)
+                {
+                    for(Dimension dimension : star.getDimensions())
+                    {
+                        column = segment.codes.get(dimension);
+                        dictionary = current.dictionaries.get(dimension);
+                        
+                        encoder.addCode(dimension, dictionary.get(column.get(row)));
+                    }
+                    
+                    for(Metric metric : list)
+                    {
+                        key = StarStatistics.getKey(metric);
+                        
+                        encoder.addValue(key, segment.metrics.get(key).get(row));
+                    }
+                    
+                    encoder.rows++;
+                }
+            }
+            
+            compacted = encoder.getContents(null);
+            compacted.watermark = current.watermark;
+            compacted.loaded = current.loaded;
+            
+            contents = compacted;
+        }
+    }
+    
+    /**
+     * Returns the snapshot file for a model. The file sits next to the model 
+     * and is named after it (e.g. sales.xml is paired with sales.snapshot).
+     * @param model the model file
+     * @return the snapshot file
+     */
+    public static File getSnapshotFile(File model)
+    {
+        String name = model.getName();
+        
+        if(name.toLowerCase().endsWith(".xml")) name = name.substring(0, name.length() - 4);
+        
+        return new File(model.getParentFile(), name + ".snapshot");
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        
+        buffer.get(bytes);
+        
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    // Numbers are compared by value so that an Integer and a Long watermark can be compared
+    private static Object getLater(Object current, Object value)
+    {
+        if(value == null) return current;
+        if(current == null) return value;
+        
+        if(current instanceof Number && value instanceof Number)
+        {
+            return new BigDecimal(current.toString()).compareTo(new BigDecimal(value.toString())) < 0 ? value : current;
+        }
+        
+        if(current instanceof java.util.Date && value instanceof java.util.Date)
+        {
+            return ((java.util.Date)current).compareTo((java.util.Date)value) < 0 ? value : current;
+        }
+        
+        if(current.getClass() == value.getClass() && current instanceof Comparable)
+        {
+            return ((Comparable)current).compareTo(value) < 0 ? value : current;
+        }
+        
+        throw new IllegalStateException("Watermark values " + current + " and " + value + " cannot be compared");
+    }
+    
+    /**
+     * Writes the loaded rows to a snapshot file. The file is replaced 
+     * atomically so readers never see a partially written snapshot.
+     * @param file the snapshot file
+     */
+    public void save(File file)
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        List<Metric> list = getMetrics();
+        Contents contents = this.contents;
+        CRC32 checksum = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+        DataOutputStream out;
+        IntBuffer column;
+        DoubleBuffer values;
+        long length;
+        
+        try
+        {
+            try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                channel.position(SNAPSHOT_HEADER);
+                
+                out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 65536));
+                
+                out.writeLong(star.getVersion());
+                out.writeLong(contents.loaded);
+                out.writeInt(contents.rows);
+                TypedValues.write(out, contents.watermark);
+                out.writeInt(star.getDimensions().size());
+                
+                for(Dimension dimension : star.getDimensions())
+                {
+                    writeString(out, dimension.getName());
+                    out.writeInt(contents.dictionaries.get(dimension).size());
+                    
+                    for(Object value : contents.dictionaries.get(dimension)) TypedValues.write(out, value);
+                }
+                
+                out.writeInt(list.size());
+                
+                for(Metric metric : list)
+                {
+                    writeString(out, StarStatistics.getKey(metric));
+                    out.writeBoolean(contents.integral.get(StarStatistics.getKey(metric)));
+                }
+                
+                // Columns start on an 8 byte boundary so they can be viewed in place
+                while((SNAPSHOT_HEADER + out.size()) % 8 != 0) out.writeByte(0);
+                
+                // Segments are written back to back, so a snapshot is always compact
+                for(Dimension dimension : star.getDimensions())
+                {
+                    for(Segment segment : contents.segments)
+                    {
+                        column = segment.codes.get(dimension);
+                        
+                        for(int i=0; i<segment.rows; i++) out.writeInt(column.get(i));
+                    }
+                }
+                
+                for(Metric metric : list)
+                {
+                    for(Segment segment : contents.segments)
+                    {
+                        values = segment.metrics.get(StarStatistics.getKey(metric));
+                        
+                        for(int i=0; i<segment.rows; i++) out.writeDouble(values.get(i));
+                    }
+                }
+                
+                out.flush();
+                
+                length = channel.position() - SNAPSHOT_HEADER;
+                
+                header.put(SNAPSHOT_MAGIC);
+                header.putShort(SNAPSHOT_FORMAT);
+                header.putShort((short)0);
+                header.putLong(checksum.getValue());
+                header.putLong(length);
+                header.flip();
+                
+                while(header.hasRemaining()) channel.write(header, header.position());
+                
+                channel.force(true);
+            }
+            
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            temp.delete();
+            
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private static long getChecksum(FileChannel channel, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        CRC32 checksum = new CRC32();
+        long position = SNAPSHOT_HEADER;
+        int read;
+        
+        while(position < SNAPSHOT_HEADER + length)
+        {
+            buffer.clear();
+            
+            if((read = channel.read(buffer, position)) < 0) break;
+            
+            buffer.flip();
+            checksum.update(buffer);
+            
+            position += read;
+        }
+        
+        return checksum.getValue();
+    }
+    
+    /**
+     * Replaces the contents with the rows of a snapshot written by 
+     * {@link #save(java.io.File)}. The columns are memory mapped rather than
+     * read. Snapshots that are damaged, were written for another version of
+     * the Star, or don't match its Dimensions and Metrics are ignored.
+     * @param file the snapshot file
+     * @return true if the snapshot was opened
+     */
+    public boolean open(File file)
+    {
+        Contents opened = new Contents();
+        Segment segment = new Segment();
+        Map<Dimension,List<Object>> dictionaries = opened.dictionaries;
+        Map<String,Boolean> integral = opened.integral;
+        List<Metric> list = getMetrics();
+        List<Dimension> order = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+        byte[] magic = new byte[SNAPSHOT_MAGIC.length];
+        List<Object> dictionary;
+        Dimension dimension;
+        ByteBuffer metadata;
+        String key;
+        long checksum;
+        long length;
+        long position;
+        int rows;
+        int count;
+        
+        if(!file.isFile()) return false;
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            while(header.hasRemaining())
+            {
+                if(channel.read(header, header.position()) < 0) return false;
+            }
+            
+            header.flip();
+            header.get(magic);
+            
+            if(!Arrays.equals(magic, SNAPSHOT_MAGIC) || header.getShort() != SNAPSHOT_FORMAT) return false;
+            
+            header.getShort();
+            
+            checksum = header.getLong();
+            length = header.getLong();
+            
+            if(channel.size() != SNAPSHOT_HEADER + length || getChecksum(channel, length) != checksum) return false;
+            
+            // The dictionaries precede the columns, so mapping the first 2GB always covers them
+            metadata = channel.map(FileChannel.MapMode.READ_ONLY, SNAPSHOT_HEADER, Math.min(length, Integer.MAX_VALUE));
+            
+            if(metadata.getLong() != star.getVersion()) return false;
+            
+            opened.loaded = metadata.getLong();
+            opened.rows = rows = metadata.getInt();
+            opened.watermark = TypedValues.read(metadata);
+            count = metadata.getInt();
+            
+            if(count != star.getDimensions().size()) return false;
+            
+            for(int i=0; i<count; i++)
+            {
+                dimension = star.getDimension(readString(metadata));
+                dictionary = new ArrayList<>();
+                
+                if(dimension == null || dictionaries.containsKey(dimension)) return false;
+                
+                for(int j=metadata.getInt(); j>0; j--) dictionary.add(TypedValues.read(metadata));
+                
+                dictionaries.put(dimension, dictionary);
+                order.add(dimension);
+            }
+            
+            count = metadata.getInt();
+            
+            if(count != list.size()) return false;
+            
+            for(int i=0; i<count; i++)
+            {
+                key = readString(metadata);
+                
+                integral.put(key, metadata.get() != 0);
+                keys.add(key);
+            }
+            
+            for(Metric metric : list)
+            {
+                if(!integral.containsKey(StarStatistics.getKey(metric))) return false;
+            }
+            
+            position = SNAPSHOT_HEADER + metadata.position();
+            position += (8 - position % 8) % 8;
+            
+            if(position + rows * (order.size() * 4L + keys.size() * 8L) != channel.size()) return false;
+            
+            for(Dimension current : order)
+            {
+                segment.codes.put(current, channel.map(FileChannel.MapMode.READ_ONLY, position, rows * 4L).asIntBuffer());
+                
+                position += rows * 4L;
+            }
+            
+            for(String current : keys)
+            {
+                segment.metrics.put(current, channel.map(FileChannel.MapMode.READ_ONLY, position, rows * 8L).asDoubleBuffer());
+                
+                position += rows * 8L;
+            }
+        }
+        catch(IOException | BufferUnderflowException | IllegalStateException e)
+        {
+            return false;
+        }
+        
+        segment.rows = rows;
+        
+        opened.segments.add(segment);
+        
+        synchronized(writes)
+        {
+            contents = opened;
+        }
+        
+        return true;
+    }
+    
+    private boolean[] getMask(Filter filter, List<Object> dictionary)
+    {
+        boolean[] mask = new boolean[dictionary.size()];
+        
+        for(int i=0; i<mask.length; i++) mask[i] = filter.getDimension().matches(filter, dictionary.get(i));
+        
+        return mask;
+    }
+    
+    private Object getResult(Map<String,Boolean> integral, Measure measure, Group group, int index)
+    {
+        String key = StarStatistics.getKey(measure.getMetric());
+        String function = measure.getFunction().toLowerCase();
+        
+        if(function.equals("count")) return group.counts[index];
+        if(group.counts[index] == 0) return null;
+        if(function.equals("avg")) return group.values[index] / group.counts[index];
+        if(integral.get(key)) return (long)group.values[index];
+        
+        return group.values[index];
+    }
+    
+    private List<Group> getTop(Map<String,Boolean> integral, ReportGenerator report, Iterable<Group> groups, long[] radix)
+    {
+        TopK topK = report.getTopK();
+        Measure measure = topK.getMeasure();
+        int ranked = report.getDimensions().indexOf(topK.getDimension());
+        int index = report.getMeasures().indexOf(measure);
+        Comparator<Group> order = (a, b) -> topK.compare(getResult(integral, measure, a, index), getResult(integral, measure, b, index));
+        Map<Long,PriorityQueue<Group>> partitions = new LinkedHashMap<>();
+        List<Group> results = new ArrayList<>();
+        PriorityQueue<Group> heap;
+        List<Group> top;
+        long partition;
+        
+        for(Group group : groups)
+        {
+            partition = group.key - group.codes[ranked] * radix[ranked];
+            heap = partitions.get(partition);
+            
+            // The head of the heap is the lowest ranked group kept so far
+            if(heap == null) partitions.put(partition, heap = new PriorityQueue<>(topK.getLimit() + 1, order.reversed()));
+            
+            heap.add(group);
+            
+            if(heap.size() > topK.getLimit()) heap.poll();
+        }
+        
+        for(PriorityQueue<Group> kept : partitions.values())
+        {
+            top = new ArrayList<>(kept);
+            
+            top.sort(order);
+            
+            for(int i=0; i<top.size(); i++) top.get(i).rank = i + 1;
+            
+            results.addAll(top);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Computes the results of the report from the loaded rows. Every group 
+     * of the report is aggregated in memory, including for reports limited
+     * by a {@link TopK}, as the rank of a group is only known once every row
+     * has been read. A TopK then keeps a heap of at most the limit in groups
+     * for each partition, so that only the top groups are sorted and built 
+     * into rows.
+     * @param report the report
+     * @return the results of the report
+     */
+    public JSONArray<JSONObject> execute(ReportGenerator report)
+    {
+        Contents contents = this.contents;
+        Map<Dimension,List<Object>> dictionaries = contents.dictionaries;
+        List<Dimension> dimensions = report.getDimensions();
+        List<Measure> measures = report.getMeasures();
+        IntBuffer[] columns = new IntBuffer[dimensions.size()];
+        DoubleBuffer[] values = new DoubleBuffer[measures.size()];
+        String[] functions = new String[measures.size()];
+        IntBuffer[] conditioned = new IntBuffer[measures.size()];
+        Dimension[] conditionDimensions = new Dimension[measures.size()];
+        boolean[][] conditions = new boolean[measures.size()][];
+        IntBuffer[] filtered = new IntBuffer[report.getFilters().size()];
+        boolean[][] masks = new boolean[report.getFilters().size()][];
+        long[] radix = new long[dimensions.size()];
+        Map<Long,Group> groups = new LinkedHashMap<>();
+        JSONArray<JSONObject> results = new JSONArray<>();
+        Filter filter;
+        JSONObject record;
+        Group group;
+        long key;
+        double value;
+        
+        if(report.getStar() != star) throw new IllegalArgumentException("Report is not part of Star");
+        
+        for(int i=0; i<dimensions.size(); i++)
+        {
+            radix[i] = (i == 0) ? 1 : Math.multiplyExact(radix[i-1], Math.max(1, dictionaries.get(dimensions.get(i-1)).size()));
+        }
+        
+        for(int i=0; i<measures.size(); i++)
+        {
+            if(!supports(measures.get(i))) throw new IllegalArgumentException("Measure [" + measures.get(i).getName() + "] cannot be computed locally");
+            
+            functions[i] = measures.get(i).getFunction().toLowerCase();
+            
+            if(measures.get(i) instanceof FilteredMeasure)
+            {
+                filter = ((FilteredMeasure)measures.get(i)).getFilter();
+                conditionDimensions[i] = filter.getDimension();
+                conditions[i] = getMask(filter, dictionaries.get(filter.getDimension()));
+            }
+        }
+        
+        for(int i=0; i<filtered.length; i++)
+        {
+            filter = report.getFilters().get(i);
+            masks[i] = getMask(filter, dictionaries.get(filter.getDimension()));
+        }
+        
+        for(Segment segment : contents.segments)
+        {
+            for(int i=0; i<columns.length; i++) columns[i] = segment.codes.get(dimensions.get(i));
+            for(int i=0; i<values.length; i++) values[i] = segment.metrics.get(StarStatistics.getKey(measures.get(i).getMetric()));
+            for(int i=0; i<conditioned.length; i++) conditioned[i] = (conditions[i] == null) ? null : segment.codes.get(conditionDimensions[i]);
+            for(int i=0; i<filtered.length; i++) filtered[i] = segment.codes.get(report.getFilters().get(i).getDimension());
+            
+            rows:
+            for(int row=0; row<segment.rows; row++)
+            {
+                for(int i=0; i<filtered.length; i++)
+                {
+                    if(!masks[i][filtered[i].get(row)]) continue rows;
+                }
+
+                key = 0;
+
+                for(int i=0; i<columns.length; i++) key += columns[i].get(row) * radix[i];
+
+                group = groups.get(key);
+
+                if(group == null)
+                {
+                    group = new Group(key, columns.length, values.length);
+                    
+                    for(int i=0; i<columns.length; i++) group.codes[i] = columns[i].get(row);
+                    
+                    groups.put(key, group);
+                }
+
+                for(int i=0; i<values.length; i++)
+                {
+                    if(conditions[i] != null && !conditions[i][conditioned[i].get(row)]) continue;
+                    
+                    value = values[i].get(row);
+                    
+                    if(Double.isNaN(value)) continue;
+                    
+                    if(group.counts[i] == 0) group.values[i] = value;
+                    else if(functions[i].equals("min")) group.values[i] = Math.min(group.values[i], value);
+                    else if(functions[i].equals("max")) group.values[i] = Math.max(group.values[i], value);
+                    else group.values[i] += value;
+                    
+                    group.counts[i]++;
+                }
+            }
+        }
+        
+        // Aggregates without dimensions always return a single row
+        if(groups.isEmpty() && dimensions.isEmpty()) groups.put(0L, new Group(0L, 0, values.length));
+        
+        for(Group current : (report.getTopK() == null ? groups.values() : getTop(contents.integral, report, groups.values(), radix)))
+        {
+            record = new JSONObject();
+            
+            for(int i=0; i<dimensions.size(); i++) record.put(dimensions.get(i).getName(), dictionaries.get(dimensions.get(i)).get(current.codes[i]));
+            for(int i=0; i<measures.size(); i++) record.put(measures.get(i).getName(), getResult(contents.integral, measures.get(i), current, i));
+            
+            if(report.getTopK() != null) record.put(ReportGenerator.RANK_COLUMN, current.rank);
+            
+            results.add(record);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * The rows, segments, and dictionaries visible to reports. Replaced as a
+     * whole rather than modified so that reports read a consistent copy 
+     * without locking.
+     */
+    private static class Contents
+    {
+        private List<Segment> segments = new ArrayList<>();
+        private Map<Dimension,List<Object>> dictionaries = new HashMap<>();
+        private Map<String,Boolean> integral = new HashMap<>();
+        private int rows;
+        private long loaded;
+        private Object watermark;
+    }
+    
+    private static class Segment
+    {
+        private int rows;
+        private Map<Dimension,IntBuffer> codes = new HashMap<>();
+        private Map<String,DoubleBuffer> metrics = new HashMap<>();
+    }
+    
+    /**
+     * Encodes rows into a new segment, extending a copy of the dictionaries
+     * of the current contents so that existing codes remain valid.
+     */
+    private class Encoder
+    {
+        private Map<Dimension,List<Object>> dictionaries = new HashMap<>();
+        private Map<Dimension,Map<Object,Integer>> lookups = new HashMap<>();
+        private Map<String,Boolean> integral = new HashMap<>();
+        private Segment segment = new Segment();
+        private List<Metric> list = getMetrics();
+        private Object watermark;
+        private int rows;
+
+        public Encoder(Contents base)
+        {
+            Map<Object,Integer> lookup;
+            List<Object> dictionary;
+            
+            for(Dimension dimension : star.getDimensions())
+            {
+                dictionary = (base == null) ? new ArrayList<>() : new ArrayList<>(base.dictionaries.get(dimension));
+                lookup = new HashMap<>();
+                
+                for(int i=0; i<dictionary.size(); i++) lookup.put(dictionary.get(i), i);
+                
+                dictionaries.put(dimension, dictionary);
+                lookups.put(dimension, lookup);
+                segment.codes.put(dimension, IntBuffer.allocate(1024));
+            }
+            
+            for(Metric metric : list)
+            {
+                integral.put(StarStatistics.getKey(metric), base == null || base.integral.get(StarStatistics.getKey(metric)));
+                segment.metrics.put(StarStatistics.getKey(metric), DoubleBuffer.allocate(1024));
+            }
+            
+            if(base != null) watermark = base.watermark;
+        }
+        
+        public void addCode(Dimension dimension, Object value)
+        {
+            Map<Object,Integer> lookup = lookups.get(dimension);
+            Integer code = lookup.get(value);
+
+            if(code == null)
+            {
+                code = lookup.size();
+
+                lookup.put(value, code);
+                dictionaries.get(dimension).add(value);
+            }
+
+            segment.codes.put(dimension, grow(segment.codes.get(dimension)).put(code));
+        }
+        
+        public void addValue(String key, double number)
+        {
+            if(!Double.isNaN(number) && number != Math.rint(number)) integral.put(key, false);
+            
+            segment.metrics.put(key, grow(segment.metrics.get(key)).put(number));
+        }
+        
+        public void add(JSONObject row)
+        {
+            Object value;
+            String key;
+            
+            for(Dimension dimension : star.getDimensions()) addCode(dimension, row.get(dimension.getName()));
+            
+            for(Metric metric : list)
+            {
+                key = StarStatistics.getKey(metric);
+                value = row.get(METRIC_PREFIX + key);
+                
+                addValue(key, (value == null) ? Double.NaN : ((Number)value).doubleValue());
+            }
+            
+            if(watermarkColumn != null) watermark = getLater(watermark, row.get(WATERMARK));
+            
+            rows++;
+        }
+        
+        public Contents getContents(Contents base)
+        {
+            Contents contents = new Contents();
+            
+            for(IntBuffer buffer : segment.codes.values()) buffer.flip();
+            for(DoubleBuffer buffer : segment.metrics.values()) buffer.flip();
+            
+            segment.rows = rows;
+            
+            if(base != null) 
+            {
+                contents.segments.addAll(base.segments);
+                contents.rows = base.rows;
+                contents.loaded = base.loaded;
+            }
+            
+            contents.segments.add(segment);
+            contents.dictionaries = dictionaries;
+            contents.integral = integral;
+            contents.watermark = watermark;
+            contents.rows += rows;
+            
+            return contents;
+        }
+    }
+    
+    private static class Group
+    {
+        private long key;
+        private int[] codes;
+        private double[] values;
+        private long[] counts;
+        private int rank;
+
+        public Group(long key, int dimensions, int measures)
+        {
+            this.key = key;
+            this.codes = new int[dimensions];
+            this.values = new double[measures];
+            this.counts = new long[measures];
+        }
+    }
+}
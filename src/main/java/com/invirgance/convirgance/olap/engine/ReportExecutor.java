@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+
+/**
+ * Executes reports against a Star. Implementations answer reports in 
+ * different ways, such as pushing SQL to the database or aggregating an
+ * in-memory copy of the Star. The {@link ReportRouter} compares the 
+ * estimated cost of each executor to pick one per report.
+ * 
+ * @author jbanes
+ */
+public interface ReportExecutor
+{
+    /**
+     * Returns the name of the executor used when logging routing decisions.
+     * @return the name of the executor
+     */
+    public String getName();
+    
+    /**
+     * Returns true if this executor is able to answer the report.
+     * @param report the report
+     * @return true if the report is supported
+     */
+    public boolean supports(ReportGenerator report);
+    
+    /**
+     * Estimates the cost of answering the report in units of fact rows 
+     * scanned. Costs are only compared between executors.
+     * @param report the report
+     * @param statistics the statistics of the Star or null if unknown
+     * @return the estimated cost or {@link Double#POSITIVE_INFINITY} if unknown
+     */
+    public double estimateCost(ReportGenerator report, StarStatistics statistics);
+    
+    /**
+     * Executes the report.
+     * @param report the report
+     * @param priority the priority of the report when waiting for admission
+     * @return the results of the report
+     */
+    public Iterable<JSONObject> execute(ReportGenerator report, int priority);
+    
+    /**
+     * Returns the last error raised while maintaining the executor in the
+     * background. Errors are written to the routing log.
+     * @return the error message or null if there has been no error
+     */
+    public default String getLastError()
+    {
+        return null;
+    }
+}
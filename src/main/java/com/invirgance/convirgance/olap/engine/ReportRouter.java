@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import com.invirgance.convirgance.olap.workload.WorkloadLog;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the {@link ReportExecutor} with the lowest estimated cost for each
+ * report. Costs are estimated from the fact row count and the number of 
+ * groups the report produces, taken from the {@link StarStatistics}. When no
+ * executor has a known cost, the first executor supporting the report is 
+ * used, so the default executor should be added first.
+ * <br><br>
+ * Every decision is written to the routing log of the {@link WorkloadLog}
+ * when one is configured, along with the last background error of each 
+ * executor that has one.
+ * 
+ * @author jbanes
+ */
+public class ReportRouter
+{
+    private List<ReportExecutor> executors = new ArrayList<>();
+    private StarStatistics statistics;
+    private WorkloadLog log;
+
+    /**
+     * Adds an executor to choose between.
+     * @param executor the executor
+     */
+    public void addExecutor(ReportExecutor executor)
+    {
+        executors.add(executor);
+    }
+
+    /**
+     * Returns the executors chosen between in the order they were added.
+     * @return the list of executors
+     */
+    public List<ReportExecutor> getExecutors()
+    {
+        return executors;
+    }
+
+    /**
+     * Returns the statistics costs are estimated from.
+     * @return the statistics or null if unknown
+     */
+    public StarStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics costs are estimated from.
+     * @param statistics the statistics of the Star
+     */
+    public void setStatistics(StarStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the log routing decisions are written to.
+     * @return the workload log or null
+     */
+    public WorkloadLog getWorkloadLog()
+    {
+        return log;
+    }
+
+    /**
+     * Sets the log routing decisions are written to.
+     * @param log the workload log
+     */
+    public void setWorkloadLog(WorkloadLog log)
+    {
+        this.log = log;
+    }
+    
+    /**
+     * Chooses the executor for the report.
+     * @param report the report
+     * @return the executor with the lowest estimated cost
+     */
+    public ReportExecutor route(ReportGenerator report)
+    {
+        Map<String,Double> costs = new LinkedHashMap<>();
+        Map<String,String> errors = new LinkedHashMap<>();
+        ReportExecutor chosen = null;
+        double best = Double.POSITIVE_INFINITY;
+        double cost;
+        
+        for(ReportExecutor executor : executors)
+        {
+            if(executor.getLastError() != null) errors.put(executor.getName(), executor.getLastError());
+            if(!executor.supports(report)) continue;
+            
+            cost = executor.estimateCost(report, statistics);
+            
+            costs.put(executor.getName(), cost);
+            
+            if(chosen == null || cost < best)
+            {
+                chosen = executor;
+                best = cost;
+            }
+        }
+        
+        if(chosen == null) throw new IllegalStateException("No executor supports the report " + report.getSignature());
+        
+        if(log != null)
+        {
+            log.recordRouting(report, chosen.getName(), 
+                              statistics == null ? -1 : statistics.getRows(), 
+                              statistics == null ? -1 : statistics.estimateGroups(report.getDimensions()), 
+                              costs, errors);
+        }
+        
+        return chosen;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.QueryCursor;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import javax.sql.DataSource;
+
+/**
+ * Answers reports by pushing the generated SQL to the database. The cost of
+ * a report is a fixed overhead for the round trip and query planning, plus
+ * a scan of every fact row, plus the transfer of every group returned.
+ * 
+ * @author jbanes
+ */
+public class SQLReportExecutor implements ReportExecutor
+{
+    private DataSource source;
+    private double overhead = 50000;
+    private int timeout;
+    private int idleTimeout = 60;
+    private AdmissionController controller;
+
+    /**
+     * Creates an executor querying the database.
+     * @param source the database containing the Star
+     */
+    public SQLReportExecutor(DataSource source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Returns the fixed cost of sending a query to the database.
+     * @return the overhead in fact rows
+     */
+    public double getOverhead()
+    {
+        return overhead;
+    }
+
+    /**
+     * Sets the fixed cost of sending a query to the database, expressed as
+     * the number of fact rows that could be scanned in the same time. 
+     * Defaults to 50,000.
+     * @param overhead the overhead in fact rows
+     */
+    public void setOverhead(double overhead)
+    {
+        this.overhead = overhead;
+    }
+
+    /**
+     * Sets the number of seconds a query may run before it is cancelled.
+     * @param timeout the timeout in seconds or 0 for none
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the number of seconds the results may go unread before the query
+     * is cancelled. Defaults to 60 seconds.
+     * @param idleTimeout the idle timeout in seconds or 0 for none
+     */
+    public void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the admission controller guarding the database.
+     * @param controller the admission controller or null for none
+     */
+    public void setAdmissionController(AdmissionController controller)
+    {
+        this.controller = controller;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "sql";
+    }
+
+    @Override
+    public boolean supports(ReportGenerator report)
+    {
+        return true;
+    }
+
+    @Override
+    public double estimateCost(ReportGenerator report, StarStatistics statistics)
+    {
+        if(statistics == null) return Double.POSITIVE_INFINITY;
+        
+        return overhead + statistics.getRows() + statistics.estimateGroups(report.getDimensions());
+    }
+    
+    /**
+     * Executes a SQL query against the database.
+     * @param sql the query
+     * @param priority the priority of the query when waiting for admission
+     * @return the results of the query
+     */
+    public Iterable<JSONObject> query(String sql, int priority)
+    {
+        QueryCursor cursor = new QueryCursor(source, sql);
+        
+        cursor.setTimeout(timeout);
+        cursor.setIdleTimeout(idleTimeout);
+        
+        if(controller != null) cursor.setAdmissionController(controller, priority);
+        
+        return cursor;
+    }
+
+    @Override
+    public Iterable<JSONObject> execute(ReportGenerator report, int priority)
+    {
+        return query(report.getSQL(), priority);
+    }
+}
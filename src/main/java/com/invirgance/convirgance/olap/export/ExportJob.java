@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.export;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Future;
+
+/**
+ * Tracks a report being exported to a file by an {@link ExportManager}. A
+ * job is queued until a worker is available, running while rows are 
+ * written, and then complete, failed, or cancelled. Once complete, the file
+ * can be read in ranges with {@link #read(long, int)}.
+ * 
+ * @author jbanes
+ */
+public class ExportJob
+{
+    /**
+     * The job is waiting for a worker.
+     */
+    public static final String QUEUED = "queued";
+    
+    /**
+     * The job is writing rows to its file.
+     */
+    public static final String RUNNING = "running";
+    
+    /**
+     * The file has been written and can be downloaded.
+     */
+    public static final String COMPLETE = "complete";
+    
+    /**
+     * The export failed. See {@link #getError()}.
+     */
+    public static final String FAILED = "failed";
+    
+    /**
+     * The export was cancelled before it completed.
+     */
+    public static final String CANCELLED = "cancelled";
+    
+    private String id;
+    private String format;
+    private File file;
+    private long created = System.currentTimeMillis();
+    
+    private volatile String state = QUEUED;
+    private volatile long rows;
+    private volatile long started;
+    private volatile long completed;
+    private volatile String error;
+    private Future<?> future;
+
+    ExportJob(String id, String format, File file)
+    {
+        this.id = id;
+        this.format = format;
+        this.file = file;
+    }
+
+    /**
+     * Returns the identifier of the job.
+     * @return the job id
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the format of the file being written.
+     * @return the format, e.g. csv or columnar
+     */
+    public String getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Returns the file the report is exported to. The file only exists once
+     * the job is complete.
+     * @return the file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the state of the job.
+     * @return one of queued, running, complete, failed, or cancelled
+     */
+    public String getState()
+    {
+        return state;
+    }
+
+    synchronized boolean setState(String expected, String state)
+    {
+        if(!this.state.equals(expected)) return false;
+        
+        this.state = state;
+        
+        if(state.equals(RUNNING)) started = System.currentTimeMillis();
+        else completed = System.currentTimeMillis();
+        
+        return true;
+    }
+
+    /**
+     * Returns true once the job is no longer queued or running.
+     * @return true if the job has finished
+     */
+    public boolean isDone()
+    {
+        return !state.equals(QUEUED) && !state.equals(RUNNING);
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     * @return the row count
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    void addRow()
+    {
+        rows++;
+    }
+
+    /**
+     * Returns the time the job was submitted.
+     * @return the time in milliseconds since the epoch
+     */
+    public long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * Returns the time the job started running.
+     * @return the time in milliseconds since the epoch or 0 if not started
+     */
+    public long getStarted()
+    {
+        return started;
+    }
+
+    /**
+     * Returns the time the job finished.
+     * @return the time in milliseconds since the epoch or 0 if not finished
+     */
+    public long getCompleted()
+    {
+        return completed;
+    }
+
+    /**
+     * Returns the reason the job failed.
+     * @return the error message or null
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    void setError(String error)
+    {
+        this.error = error;
+    }
+
+    void setFuture(Future<?> future)
+    {
+        this.future = future;
+    }
+    
+    /**
+     * Cancels the job if it has not finished.
+     * @return true if the job was cancelled
+     */
+    public synchronized boolean cancel()
+    {
+        if(!setState(QUEUED, CANCELLED) && !setState(RUNNING, CANCELLED)) return false;
+        if(future != null) future.cancel(true);
+        
+        return true;
+    }
+    
+    /**
+     * Returns the size of the exported file.
+     * @return the size in bytes or 0 if the job is not complete
+     */
+    public long getSize()
+    {
+        return state.equals(COMPLETE) ? file.length() : 0;
+    }
+    
+    /**
+     * Reads a range of the exported file.
+     * @param offset the position of the first byte to read
+     * @param length the largest number of bytes to read
+     * @return the bytes read, which are fewer than requested at the end of
+     * the file
+     */
+    public ByteBuffer read(long offset, int length)
+    {
+        ByteBuffer buffer;
+        
+        if(!state.equals(COMPLETE)) throw new IllegalStateException("Export [" + id + "] is " + state);
+        if(offset < 0 || length < 0) throw new IllegalArgumentException("Invalid range " + offset + "+" + length);
+        
+        buffer = ByteBuffer.allocate((int)Math.max(0, Math.min(length, file.length() - offset)));
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            while(buffer.hasRemaining())
+            {
+                if(channel.read(buffer, offset + buffer.position()) < 0) break;
+            }
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        buffer.flip();
+        
+        return buffer;
+    }
+    
+    /**
+     * Describes the job for status requests.
+     * @return the id, format, state, rows, size, timings, and any error
+     */
+    public JSONObject toJSON()
+    {
+        JSONObject record = new JSONObject();
+        
+        record.put("id", id);
+        record.put("format", format);
+        record.put("state", state);
+        record.put("rows", rows);
+        record.put("size", getSize());
+        record.put("created", created);
+        record.put("started", started);
+        record.put("completed", completed);
+        
+        if(error != null) record.put("error", error);
+        
+        return record;
+    }
+}
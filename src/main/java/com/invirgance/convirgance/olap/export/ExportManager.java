@@ -0,0 +1,412 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.export;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.output.ColumnarWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs report exports in the background so that large results are written
+ * to local disk rather than held open on a request thread. Each submitted 
+ * export returns an {@link ExportJob} immediately. A worker then streams the
+ * rows through a {@link FileChannel} into either a gzip compressed CSV file
+ * or a {@link ColumnarWriter columnar} file. Files are written under a 
+ * temporary name and moved into place once complete.
+ * <br><br>
+ * One manager is shared by every binding using the same name. At most 
+ * maxConcurrent exports run at once and the rest wait in a queue. Finished
+ * jobs and their files are removed after timeToLive milliseconds.
+ * 
+ * @author jbanes
+ */
+public class ExportManager
+{
+    /**
+     * Gzip compressed CSV with a header row.
+     */
+    public static final String CSV = "csv";
+    
+    /**
+     * The binary columnar format written by {@link ColumnarWriter}.
+     */
+    public static final String COLUMNAR = "columnar";
+    
+    private static final Map<String,ExportManager> managers = new LinkedHashMap<>();
+    
+    private String name;
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "convirgance-exports");
+    private int maxConcurrent = 2;
+    private long timeToLive = 3600000;
+    
+    private final Map<String,ExportJob> jobs = new LinkedHashMap<>();
+    private ExecutorService executor;
+
+    /**
+     * Creates a new manager.
+     * @param name the name the manager is shared under
+     */
+    public ExportManager(String name)
+    {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the manager shared under the name, creating it if necessary.
+     * @param name the name of the manager
+     * @return the shared manager
+     */
+    public static ExportManager get(String name)
+    {
+        ExportManager manager;
+        
+        synchronized(managers)
+        {
+            manager = managers.get(name);
+            
+            if(manager == null)
+            {
+                manager = new ExportManager(name);
+                managers.put(name, manager);
+            }
+            
+            return manager;
+        }
+    }
+
+    /**
+     * Returns the name the manager is shared under.
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the directory exported files are written to.
+     * @return the export directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Sets the directory exported files are written to. Defaults to a 
+     * convirgance-exports directory under java.io.tmpdir.
+     * @param directory the export directory
+     */
+    public void setDirectory(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the largest number of exports written at once.
+     * @return the maximum number of concurrent exports
+     */
+    public int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+
+    /**
+     * Sets the largest number of exports written at once. Only takes effect
+     * before the first export is submitted. Defaults to 2.
+     * @param maxConcurrent the maximum number of concurrent exports
+     */
+    public void setMaxConcurrent(int maxConcurrent)
+    {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Returns the number of milliseconds finished jobs are kept.
+     * @return the time to live in milliseconds
+     */
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the number of milliseconds finished jobs and their files are kept
+     * for download. Defaults to 1 hour.
+     * @param timeToLive the time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+    
+    private synchronized ExecutorService getExecutor()
+    {
+        if(executor != null) return executor;
+        
+        executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrent), runnable -> {
+            Thread thread = new Thread(runnable, "ExportManager Worker");
+            
+            thread.setDaemon(true);
+            
+            return thread;
+        });
+        
+        return executor;
+    }
+    
+    /**
+     * Submits a report to be exported in the background.
+     * @param format the format of the file, {@link #CSV} or {@link #COLUMNAR}
+     * @param source executes the report on the worker thread
+     * @return the queued job
+     */
+    public ExportJob submit(String format, Supplier<Iterable<JSONObject>> source)
+    {
+        String id = UUID.randomUUID().toString();
+        String extension;
+        ExportJob job;
+        
+        if(CSV.equalsIgnoreCase(format)) extension = ".csv.gz";
+        else if(COLUMNAR.equalsIgnoreCase(format)) extension = ".cvcl";
+        else throw new ConvirganceException("Unknown export format [" + format + "]");
+        
+        job = new ExportJob(id, format.toLowerCase(), new File(directory, id + extension));
+        
+        expire();
+        
+        synchronized(jobs)
+        {
+            jobs.put(id, job);
+        }
+        
+        synchronized(job)
+        {
+            job.setFuture(getExecutor().submit(() -> run(job, source)));
+        }
+        
+        return job;
+    }
+    
+    /**
+     * Returns a job that has not yet expired.
+     * @param id the job id
+     * @return the job or null if not found
+     */
+    public ExportJob getJob(String id)
+    {
+        expire();
+        
+        synchronized(jobs)
+        {
+            return jobs.get(id);
+        }
+    }
+    
+    /**
+     * Returns every job that has not yet expired.
+     * @return the list of jobs in the order they were submitted
+     */
+    public List<ExportJob> getJobs()
+    {
+        expire();
+        
+        synchronized(jobs)
+        {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+    
+    /**
+     * Removes finished jobs older than the time to live along with their 
+     * files.
+     */
+    public void expire()
+    {
+        List<ExportJob> expired = new ArrayList<>();
+        long cutoff = System.currentTimeMillis() - timeToLive;
+        Iterator<ExportJob> iterator;
+        ExportJob job;
+        
+        synchronized(jobs)
+        {
+            iterator = jobs.values().iterator();
+            
+            while(iterator.hasNext())
+            {
+                job = iterator.next();
+                
+                if(!job.isDone() || job.getCompleted() > cutoff) continue;
+                
+                expired.add(job);
+                iterator.remove();
+            }
+        }
+        
+        for(ExportJob current : expired) current.getFile().delete();
+    }
+    
+    private void run(ExportJob job, Supplier<Iterable<JSONObject>> source)
+    {
+        File temp = new File(job.getFile().getPath() + ".tmp");
+        Iterable<JSONObject> rows = null;
+        
+        if(!job.setState(ExportJob.QUEUED, ExportJob.RUNNING)) return;
+        
+        try
+        {
+            Files.createDirectories(directory.toPath());
+            
+            try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                rows = source.get();
+                
+                if(job.getFormat().equals(CSV)) writeCSV(job, rows, Channels.newOutputStream(channel));
+                else writeColumnar(job, rows, Channels.newOutputStream(channel));
+            }
+            
+            Files.move(temp.toPath(), job.getFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            if(!job.setState(ExportJob.RUNNING, ExportJob.COMPLETE)) job.getFile().delete();
+        }
+        catch(IOException | RuntimeException e)
+        {
+            job.setError(String.valueOf(e.getMessage()));
+            job.setState(ExportJob.RUNNING, ExportJob.FAILED);
+            temp.delete();
+        }
+        finally
+        {
+            close(rows);
+        }
+    }
+    
+    private void close(Iterable<JSONObject> rows)
+    {
+        if(!(rows instanceof AutoCloseable)) return;
+        
+        try
+        {
+            ((AutoCloseable)rows).close();
+        }
+        catch(Exception e)
+        {
+            // The export has already finished so there is no one to report to
+        }
+    }
+    
+    private void checkCancelled(ExportJob job)
+    {
+        if(Thread.currentThread().isInterrupted() || job.getState().equals(ExportJob.CANCELLED)) 
+        {
+            throw new ConvirganceException("Export [" + job.getId() + "] cancelled");
+        }
+    }
+    
+    private void writeCSV(ExportJob job, Iterable<JSONObject> rows, OutputStream out) throws IOException
+    {
+        List<String> columns = null;
+        List<Object> values = new ArrayList<>();
+        
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out, 65536), StandardCharsets.UTF_8), 65536))
+        {
+            for(JSONObject row : rows)
+            {
+                checkCancelled(job);
+                
+                if(columns == null)
+                {
+                    columns = new ArrayList<>(row.keySet());
+                    
+                    writeLine(writer, new ArrayList<Object>(columns));
+                }
+                
+                values.clear();
+                
+                for(String column : columns) values.add(row.get(column));
+                
+                writeLine(writer, values);
+                job.addRow();
+            }
+        }
+    }
+    
+    private void writeLine(Writer writer, List<Object> values) throws IOException
+    {
+        String value;
+        
+        for(int i=0; i<values.size(); i++)
+        {
+            if(i > 0) writer.write(',');
+            if(values.get(i) == null) continue;
+            
+            value = values.get(i).toString();
+            
+            if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            {
+                writer.write(value);
+                continue;
+            }
+            
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        
+        writer.write("\r\n");
+    }
+    
+    private void writeColumnar(ExportJob job, Iterable<JSONObject> rows, OutputStream out)
+    {
+        try(ColumnarWriter writer = new ColumnarWriter(out))
+        {
+            for(JSONObject row : rows)
+            {
+                checkCancelled(job);
+                writer.write(row);
+                job.addRow();
+            }
+        }
+    }
+}
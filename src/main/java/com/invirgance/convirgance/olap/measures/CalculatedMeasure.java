@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.measures;
+
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Support for measures calculated from other measures of the same Star, 
+ * such as a margin of [Profit] * 100.0 / nullif([Revenue], 0). Other 
+ * measures are referenced by name in square brackets and the remainder of
+ * the expression is passed to the database as-is.
+ * <br><br>
+ * The calculation is compiled into the select list of the report. The 
+ * measures it references are computed once in an inner query, shared with
+ * any of them that were also requested directly, and the calculation is 
+ * applied in an outer query. Referenced measures must be aggregates rather
+ * than other calculated or windowed measures.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class CalculatedMeasure extends Measure
+{
+    private static final Pattern REFERENCE = Pattern.compile("\\[([^\\]]+)\\]");
+    
+    private String expression;
+    private Star star;
+
+    /**
+     * Default constructor leaves the name and expression unassigned.
+     */
+    public CalculatedMeasure()
+    {
+    }
+
+    /**
+     * Constructs a CalculatedMeasure with a specified name and expression.
+     * @param name the name assigned to the CalculatedMeasure
+     * @param expression the SQL expression referencing other measures by 
+     * name in square brackets
+     */
+    public CalculatedMeasure(String name, String expression)
+    {
+        setName(name);
+        setExpression(expression);
+    }
+
+    /**
+     * Returns the expression computing this measure.
+     * @return the SQL expression
+     */
+    public String getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Sets the expression computing this measure. Other measures of the Star
+     * are referenced by name in square brackets, e.g. [Revenue].
+     * @param expression the SQL expression
+     */
+    public void setExpression(String expression)
+    {
+        this.expression = expression;
+    }
+
+    @Override
+    public Star getStar()
+    {
+        return star;
+    }
+
+    @Override
+    protected void setStar(Star star)
+    {
+        this.star = star;
+    }
+    
+    /**
+     * Returns the measures referenced by the expression in the order they
+     * first appear.
+     * @return the referenced Measures
+     */
+    public List<Measure> getDependencies()
+    {
+        List<Measure> dependencies = new ArrayList<>();
+        Matcher matcher = REFERENCE.matcher(expression);
+        Measure measure;
+        
+        while(matcher.find())
+        {
+            measure = getDependency(matcher.group(1));
+            
+            if(!dependencies.contains(measure)) dependencies.add(measure);
+        }
+        
+        return dependencies;
+    }
+    
+    private Measure getDependency(String name)
+    {
+        Measure measure;
+        
+        if(star == null) throw new IllegalStateException("Measure [" + getName() + "] must be added to a Star");
+        
+        measure = star.getMeasure(name);
+        
+        if(measure == null) throw new IllegalArgumentException("Measure [" + name + "] referenced by [" + getName() + "] not found");
+        if(measure.getFunction() == null || measure.isWindowed()) throw new IllegalArgumentException("Measure [" + name + "] referenced by [" + getName() + "] is not an aggregate");
+        
+        return measure;
+    }
+    
+    private String compile(Function<Measure,String> reference)
+    {
+        StringBuffer buffer = new StringBuffer();
+        Matcher matcher = REFERENCE.matcher(expression);
+        
+        while(matcher.find())
+        {
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(reference.apply(getDependency(matcher.group(1)))));
+        }
+        
+        matcher.appendTail(buffer);
+        
+        return buffer.toString();
+    }
+
+    /**
+     * Generates the expression with each reference replaced by the aggregate
+     * computing it, for use where the calculation cannot reference the
+     * columns of an inner query, such as the ordering of a {@link com.invirgance.convirgance.olap.TopK}.
+     * @param generator the SQLGenerator the expression is generated for
+     * @return the SQL expression
+     */
+    @Override
+    public String getSQL(SQLGenerator generator)
+    {
+        return compile(measure -> "(" + measure.getSQL(generator) + ")");
+    }
+
+    @Override
+    public void addSelect(ReportGenerator report, SQLGenerator generator)
+    {
+        for(Measure measure : getDependencies())
+        {
+            if(report.getMeasures().contains(measure) || generator.isSelected(measure.getName())) continue;
+            
+            measure.addSelect(report, generator);
+            generator.hide(measure.getName());
+        }
+        
+        generator.addCalculation(compile(measure -> "\"" + measure.getName() + "\""), getName());
+    }
+
+    /**
+     * Calculated measures cannot be estimated from a sample.
+     * @return false
+     */
+    @Override
+    public boolean isEstimable()
+    {
+        return false;
+    }
+
+    /**
+     * Calculated measures cannot be estimated from a sample.
+     * @param generator the SQLGenerator
+     * @param rate the fraction of fact rows sampled
+     * @param z the number of standard errors spanned by the margin
+     */
+    @Override
+    public void addApproximateAggregate(SQLGenerator generator, double rate, double z)
+    {
+        throw new IllegalArgumentException("Measure [" + getName() + "] cannot be estimated from a sample");
+    }
+}
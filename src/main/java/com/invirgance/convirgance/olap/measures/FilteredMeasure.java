@@ -0,0 +1,237 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.measures;
+
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.List;
+
+/**
+ * Support for measures that only aggregate the facts matching a filter on a
+ * Dimension, such as sales in the West region. The filter is applied to the
+ * aggregate rather than the report, rendering as 
+ * <code>sum(...) filter (where ...)</code> or, where the 
+ * {@link com.invirgance.convirgance.olap.sql.Dialect} lacks aggregate 
+ * filters, <code>sum(case when ... then ... end)</code>. Any number of 
+ * variants of a Measure are then computed in a single scan of the fact 
+ * table.
+ * <br><br>
+ * The filter is either provided directly or described by the dimension,
+ * values, from, and to properties in the same way as a {@link Filter}.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class FilteredMeasure extends Measure
+{
+    private Measure measure;
+    private Filter filter;
+    private Dimension dimension;
+    private List<Object> values;
+    private Object from;
+    private Object to;
+
+    /**
+     * Default constructor leaves the name, measure, and filter unassigned.
+     */
+    public FilteredMeasure()
+    {
+    }
+
+    /**
+     * Constructs a FilteredMeasure aggregating the facts matched by a filter.
+     * @param name the name assigned to the FilteredMeasure
+     * @param measure the Measure being filtered
+     * @param filter the Filter matching the facts to aggregate
+     */
+    public FilteredMeasure(String name, Measure measure, Filter filter)
+    {
+        setName(name);
+        setMeasure(measure);
+        
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the Measure being filtered.
+     * @return the underlying Measure
+     */
+    public Measure getMeasure()
+    {
+        return measure;
+    }
+
+    /**
+     * Sets the Measure being filtered.
+     * @param measure the underlying Measure
+     */
+    public void setMeasure(Measure measure)
+    {
+        this.measure = measure;
+    }
+
+    /**
+     * Returns the Dimension being filtered on.
+     * @return the Dimension
+     */
+    public Dimension getDimension()
+    {
+        return (filter != null) ? filter.getDimension() : dimension;
+    }
+
+    /**
+     * Sets the Dimension being filtered on.
+     * @param dimension the Dimension
+     */
+    public void setDimension(Dimension dimension)
+    {
+        this.dimension = dimension;
+        this.filter = null;
+    }
+
+    /**
+     * Returns the values matched by the filter.
+     * @return the values or null for a range
+     */
+    public List<Object> getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Sets the values matched by the filter.
+     * @param values the values to match
+     */
+    public void setValues(List<Object> values)
+    {
+        this.values = values;
+        this.filter = null;
+    }
+
+    /**
+     * Returns the lower bound of the range matched by the filter.
+     * @return the inclusive lower bound or null
+     */
+    public Object getFrom()
+    {
+        return from;
+    }
+
+    /**
+     * Sets the lower bound of the range matched by the filter.
+     * @param from the inclusive lower bound or null for no lower bound
+     */
+    public void setFrom(Object from)
+    {
+        this.from = from;
+        this.filter = null;
+    }
+
+    /**
+     * Returns the upper bound of the range matched by the filter.
+     * @return the inclusive upper bound or null
+     */
+    public Object getTo()
+    {
+        return to;
+    }
+
+    /**
+     * Sets the upper bound of the range matched by the filter.
+     * @param to the inclusive upper bound or null for no upper bound
+     */
+    public void setTo(Object to)
+    {
+        this.to = to;
+        this.filter = null;
+    }
+    
+    /**
+     * Returns the filter matching the facts to aggregate.
+     * @return the Filter
+     */
+    public Filter getFilter()
+    {
+        if(filter != null) return filter;
+        if(dimension == null) throw new IllegalStateException("Measure [" + getName() + "] requires a Dimension to filter on");
+        
+        filter = (values != null) ? new Filter(dimension, values) : new Filter(dimension, from, to);
+        
+        return filter;
+    }
+
+    /**
+     * Returns the Metric of the underlying Measure.
+     * @return the Metric
+     */
+    @Override
+    public Metric getMetric()
+    {
+        return measure.getMetric();
+    }
+
+    /**
+     * Returns the aggregate function of the underlying Measure.
+     * @return the function
+     */
+    @Override
+    public String getFunction()
+    {
+        return measure.getFunction();
+    }
+
+    @Override
+    public String getColumnSQL(SQLGenerator generator)
+    {
+        return "case when " + getCondition(generator) + " then " + measure.getColumnSQL(generator) + " end";
+    }
+    
+    private String getCondition(SQLGenerator generator)
+    {
+        return getDimension().getFilterSQL(generator, getFilter());
+    }
+
+    @Override
+    public String getSQL(SQLGenerator generator)
+    {
+        return generator.getDialect().getFilteredAggregateSQL(getFunction(), measure.getColumnSQL(generator), getCondition(generator));
+    }
+
+    @Override
+    public void addSelect(ReportGenerator report, SQLGenerator generator)
+    {
+        generator.addAggregateExpression(getSQL(generator), getMetric().getTable(), getName());
+        generator.addTable(getDimension().getTable());
+    }
+
+    @Override
+    public void addApproximateAggregate(SQLGenerator generator, double rate, double z)
+    {
+        super.addApproximateAggregate(generator, rate, z);
+        generator.addTable(getDimension().getTable());
+    }
+}
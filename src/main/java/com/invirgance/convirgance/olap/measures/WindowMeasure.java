@@ -0,0 +1,279 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.measures;
+
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+
+/**
+ * Support for measures comparing each period of a time dimension with the
+ * periods before it, such as the previous period's value, the percent change
+ * from the previous period, a running total, or a moving average. The values
+ * are computed from another Measure with window functions over the time
+ * dimension, partitioned by every other dimension of the report, so the 
+ * comparison comes from the same scan as the report itself.
+ * <br><br>
+ * The time dimension must be one of the report's dimensions. Periods are 
+ * the rows present in the results, so a period without any facts is skipped
+ * rather than treated as zero, and the first periods within a filtered 
+ * range have no previous value.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class WindowMeasure extends Measure
+{
+    /**
+     * The value of the measure in the previous period.
+     */
+    public static final String PREVIOUS = "previous";
+    
+    /**
+     * The percent change of the measure from the previous period.
+     */
+    public static final String CHANGE = "change";
+    
+    /**
+     * The total of the measure for every period up to and including the
+     * current period.
+     */
+    public static final String RUNNING_TOTAL = "running";
+    
+    /**
+     * The average of the measure over the current period and the periods 
+     * immediately before it.
+     */
+    public static final String MOVING_AVERAGE = "moving";
+    
+    private Measure measure;
+    private Dimension dimension;
+    private String type;
+    private int periods = 1;
+
+    /**
+     * Default constructor leaves the name, measure, dimension, and type 
+     * unassigned.
+     */
+    public WindowMeasure()
+    {
+    }
+
+    /**
+     * Constructs a WindowMeasure over the given time dimension.
+     * @param name the name assigned to the WindowMeasure
+     * @param measure the Measure being compared across periods
+     * @param dimension the time dimension ordering the periods
+     * @param type one of previous, change, running, or moving
+     */
+    public WindowMeasure(String name, Measure measure, Dimension dimension, String type)
+    {
+        setName(name);
+        setMeasure(measure);
+        setDimension(dimension);
+        setType(type);
+    }
+
+    /**
+     * Returns the Measure being compared across periods.
+     * @return the underlying Measure
+     */
+    public Measure getMeasure()
+    {
+        return measure;
+    }
+
+    /**
+     * Sets the Measure being compared across periods. The Measure must be
+     * computed with an aggregate function.
+     * @param measure the underlying Measure
+     */
+    public void setMeasure(Measure measure)
+    {
+        this.measure = measure;
+    }
+
+    /**
+     * Returns the time dimension ordering the periods.
+     * @return the Dimension
+     */
+    public Dimension getDimension()
+    {
+        return dimension;
+    }
+
+    /**
+     * Sets the time dimension ordering the periods, typically a 
+     * {@link com.invirgance.convirgance.olap.TimeDimension}.
+     * @param dimension the Dimension
+     */
+    public void setDimension(Dimension dimension)
+    {
+        this.dimension = dimension;
+    }
+
+    /**
+     * Returns the type of comparison.
+     * @return one of previous, change, running, or moving
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * Sets the type of comparison. See {@link #PREVIOUS}, {@link #CHANGE},
+     * {@link #RUNNING_TOTAL}, and {@link #MOVING_AVERAGE}.
+     * @param type one of previous, change, running, or moving
+     */
+    public void setType(String type)
+    {
+        switch(type == null ? "" : type.toLowerCase())
+        {
+            case PREVIOUS:
+            case CHANGE:
+            case RUNNING_TOTAL:
+            case MOVING_AVERAGE:
+                this.type = type.toLowerCase();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown window measure type [" + type + "]");
+        }
+    }
+
+    /**
+     * Returns the number of periods the comparison spans.
+     * @return the number of periods
+     */
+    public int getPeriods()
+    {
+        return periods;
+    }
+
+    /**
+     * Sets the number of periods the comparison spans. For previous and 
+     * change this is how many periods back to compare against, e.g. 12 to 
+     * compare a month with the same month of the previous year. For moving
+     * averages this is the number of periods averaged, including the 
+     * current one. Ignored by running totals. Defaults to 1.
+     * @param periods the number of periods
+     */
+    public void setPeriods(int periods)
+    {
+        if(periods < 1) throw new IllegalArgumentException("Periods must be at least 1: " + periods);
+        
+        this.periods = periods;
+    }
+
+    /**
+     * Returns the Metric of the underlying Measure.
+     * @return the Metric
+     */
+    @Override
+    public Metric getMetric()
+    {
+        return measure.getMetric();
+    }
+
+    @Override
+    public boolean isWindowed()
+    {
+        return true;
+    }
+    
+    private String getOverSQL(ReportGenerator report, SQLGenerator generator)
+    {
+        StringBuffer buffer = new StringBuffer(" over (");
+        int index = 0;
+        
+        for(Dimension partition : report.getDimensions())
+        {
+            if(partition == dimension) continue;
+            
+            buffer.append(index++ > 0 ? ", " : "partition by ");
+            buffer.append(partition.getSQL(generator));
+        }
+        
+        if(index > 0) buffer.append(' ');
+        
+        buffer.append("order by ");
+        buffer.append(dimension.getSQL(generator));
+        
+        return buffer.toString();
+    }
+
+    @Override
+    public void addSelect(ReportGenerator report, SQLGenerator generator)
+    {
+        String aggregate = measure.getSQL(generator);
+        String over = getOverSQL(report, generator);
+        String previous = "lag(" + aggregate + ", " + periods + ")" + over + ")";
+        String sql;
+        
+        if(!report.getDimensions().contains(dimension)) throw new IllegalArgumentException("Measure [" + getName() + "] requires Dimension [" + dimension.getName() + "] in the report");
+        if(measure.getFunction() == null) throw new IllegalArgumentException("Measure [" + getName() + "] requires an aggregate Measure");
+        
+        switch(type)
+        {
+            case PREVIOUS:
+                sql = previous;
+                break;
+            case CHANGE:
+                sql = "(" + aggregate + " - " + previous + ") * 100.0 / nullif(" + previous + ", 0)";
+                break;
+            case RUNNING_TOTAL:
+                if(measure.getRollupFunction() == null) throw new IllegalArgumentException("Measure [" + measure.getName() + "] cannot be totaled");
+                
+                sql = measure.getRollupFunction() + "(" + aggregate + ")" + over + " rows between unbounded preceding and current row)";
+                break;
+            default:
+                sql = "avg(" + aggregate + ")" + over + " rows between " + (periods - 1) + " preceding and current row)";
+        }
+        
+        generator.addAggregateExpression(sql, getMetric().getTable(), getName());
+    }
+
+    /**
+     * Window measures cannot be estimated from a sample.
+     * @return false
+     */
+    @Override
+    public boolean isEstimable()
+    {
+        return false;
+    }
+
+    /**
+     * Window measures cannot be estimated from a sample.
+     * @param generator the SQLGenerator
+     * @param rate the fraction of fact rows sampled
+     * @param z the number of standard errors spanned by the margin
+     */
+    @Override
+    public void addApproximateAggregate(SQLGenerator generator, double rate, double z)
+    {
+        throw new IllegalArgumentException("Measure [" + getName() + "] cannot be estimated from a sample");
+    }
+}
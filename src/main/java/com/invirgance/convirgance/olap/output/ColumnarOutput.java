@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.output;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.output.OutputCursor;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+
+/**
+ * Output that writes records in the columnar binary format produced by 
+ * {@link ColumnarWriter}. Configure this as the output of a service backed
+ * by a StarQueryBinding to send large reports as typed, dictionary-encoded
+ * column vectors rather than JSON.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class ColumnarOutput implements Output
+{
+    private int batchSize = 4096;
+
+    /**
+     * Returns the number of rows written in each batch.
+     * @return the batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows written in each batch. Defaults to 4096.
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+    
+    @Override
+    public OutputCursor write(Target target)
+    {
+        ColumnarWriter writer = new ColumnarWriter(target.getOutputStream());
+        
+        writer.setBatchSize(batchSize);
+        
+        return new OutputCursor() {
+            @Override
+            public void write(JSONObject record)
+            {
+                writer.write(record);
+            }
+
+            @Override
+            public void close()
+            {
+                writer.close();
+            }
+        };
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return "application/x-convirgance-columnar";
+    }
+}
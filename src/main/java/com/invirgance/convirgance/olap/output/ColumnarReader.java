@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads records written by a {@link ColumnarWriter}. Batches are decoded one 
+ * at a time as the records are iterated. The stream is closed once the last
+ * record has been read.
+ * 
+ * @author jbanes
+ */
+public class ColumnarReader implements Iterable<JSONObject>
+{
+    private InputStream in;
+
+    /**
+     * Creates a new reader over the input stream.
+     * @param in the stream to read
+     */
+    public ColumnarReader(InputStream in)
+    {
+        this.in = in;
+    }
+    
+    @Override
+    public Iterator<JSONObject> iterator()
+    {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+        
+        return new Iterator<JSONObject>() {
+            private String[] columns;
+            private List<List<String>> dictionaries = new ArrayList<>();
+            private Object[][] values;
+            private int rows;
+            private int index;
+            private boolean done;
+            
+            private String readString() throws IOException
+            {
+                byte[] bytes = new byte[input.readInt()];
+                
+                input.readFully(bytes);
+                
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            
+            private void readHeader() throws IOException
+            {
+                byte[] magic = new byte[4];
+                
+                input.readFully(magic);
+                
+                if(!Arrays.equals(magic, ColumnarWriter.MAGIC)) throw new ConvirganceException("Not a columnar stream");
+                if(input.readShort() > ColumnarWriter.VERSION) throw new ConvirganceException("Unsupported columnar stream version");
+                
+                columns = new String[input.readInt()];
+                
+                for(int i=0; i<columns.length; i++)
+                {
+                    columns[i] = readString();
+                    
+                    input.readByte();
+                    dictionaries.add(new ArrayList<>());
+                }
+            }
+            
+            private Object[] readColumn(int column) throws IOException
+            {
+                Object[] vector = new Object[rows];
+                byte type = input.readByte();
+                byte[] nulls;
+                List<String> dictionary = dictionaries.get(column);
+                int entries;
+                
+                if(type == ColumnarWriter.NULL) return vector;
+                
+                nulls = new byte[(rows + 7) / 8];
+                
+                input.readFully(nulls);
+                
+                if(type == ColumnarWriter.STRING)
+                {
+                    entries = input.readInt();
+                    
+                    for(int i=0; i<entries; i++) dictionary.add(readString());
+                }
+                
+                for(int i=0; i<rows; i++)
+                {
+                    switch(type)
+                    {
+                        case ColumnarWriter.LONG:
+                            vector[i] = input.readLong();
+                            break;
+                        case ColumnarWriter.DOUBLE:
+                            vector[i] = input.readDouble();
+                            break;
+                        case ColumnarWriter.BOOLEAN:
+                            vector[i] = (input.readByte() != 0);
+                            break;
+                        case ColumnarWriter.STRING:
+                            vector[i] = dictionary.get(input.readInt());
+                            break;
+                        default:
+                            throw new ConvirganceException("Unknown column type " + type);
+                    }
+                    
+                    if((nulls[i / 8] & (1 << (i % 8))) != 0) vector[i] = null;
+                }
+                
+                return vector;
+            }
+            
+            private void readBatch() throws IOException
+            {
+                if(columns == null) readHeader();
+                
+                rows = input.readInt();
+                index = 0;
+                
+                if(rows == 0)
+                {
+                    done = true;
+                    input.close();
+                    
+                    return;
+                }
+                
+                values = new Object[columns.length][];
+                
+                for(int i=0; i<columns.length; i++) values[i] = readColumn(i);
+            }
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(done) return false;
+                if(values != null && index < rows) return true;
+                
+                try
+                {
+                    readBatch();
+                }
+                catch(IOException e)
+                {
+                    throw new ConvirganceException(e);
+                }
+                
+                return !done;
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = new JSONObject();
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                for(int i=0; i<columns.length; i++) record.put(columns[i], values[i][index]);
+                
+                index++;
+                
+                return record;
+            }
+        };
+    }
+}
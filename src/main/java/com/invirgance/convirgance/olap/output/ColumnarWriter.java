@@ -0,0 +1,339 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records in a compact, length-prefixed columnar binary format. Rather
+ * than repeating every column name on every row, the stream begins with a 
+ * schema header and is followed by batches of typed column vectors. String
+ * columns are dictionary encoded so that each distinct value is sent once
+ * per stream and referenced by an integer code afterwards.
+ * <br><br>
+ * All values are big-endian. The layout is:
+ * <pre>
+ * header:  "CVCL" magic, short version, int column count, 
+ *          then per column: int name length, UTF-8 name, byte type
+ * batch:   int row count (0 ends the stream),
+ *          then per column: byte type, null bitmap of (rows + 7) / 8 bytes,
+ *          and the vector for the type:
+ *            LONG     rows x long
+ *            DOUBLE   rows x double
+ *            BOOLEAN  rows x byte
+ *            STRING   int new dictionary entries, each as int length + UTF-8,
+ *                     then rows x int dictionary code
+ *            NULL     no vector
+ * </pre>
+ * The type in the header is the type of the column in the first batch. Each
+ * batch carries its own type so a column may change type between batches 
+ * (e.g. a column that was entirely null in the first batch). Integral 
+ * numbers are written as LONG. All other numbers, including decimals, are 
+ * written as DOUBLE. Any other value is written as a STRING.
+ * 
+ * @author jbanes
+ */
+public class ColumnarWriter implements AutoCloseable
+{
+    /**
+     * Magic bytes identifying the format.
+     */
+    public static final byte[] MAGIC = { 'C', 'V', 'C', 'L' };
+    
+    /**
+     * Version of the format written.
+     */
+    public static final short VERSION = 1;
+    
+    /** Type of a column vector in which every value is null. */
+    public static final byte NULL = 0;
+    
+    /** Type of a column vector of 64-bit integers. */
+    public static final byte LONG = 1;
+    
+    /** Type of a column vector of 64-bit floating point numbers. */
+    public static final byte DOUBLE = 2;
+    
+    /** Type of a column vector of booleans. */
+    public static final byte BOOLEAN = 3;
+    
+    /** Type of a column vector of dictionary encoded strings. */
+    public static final byte STRING = 4;
+    
+    private DataOutputStream out;
+    private int batchSize = 4096;
+    
+    private String[] columns;
+    private List<Map<String,Integer>> dictionaries;
+    private List<JSONObject> batch = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Creates a new writer over the output stream.
+     * @param out the stream to write to
+     */
+    public ColumnarWriter(OutputStream out)
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Returns the number of rows written in each batch. Defaults to 4096.
+     * @return the batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows written in each batch.
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * Writes a record. The columns of the stream are taken from the first
+     * record written. Keys not present in the first record are ignored.
+     * @param record the record to write
+     */
+    public void write(JSONObject record)
+    {
+        batch.add(record);
+        
+        if(batch.size() >= batchSize) flush();
+    }
+    
+    /**
+     * Writes all records.
+     * @param records the records to write
+     */
+    public void write(Iterable<JSONObject> records)
+    {
+        for(JSONObject record : records) write(record);
+    }
+    
+    /**
+     * Returns the type a value is encoded as.
+     * @param value the value
+     * @return the encoded type
+     */
+    static byte getType(Object value)
+    {
+        if(value == null) return NULL;
+        if(value instanceof Boolean) return BOOLEAN;
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) return LONG;
+        if(value instanceof BigInteger && ((BigInteger)value).bitLength() < 64) return LONG;
+        if(value instanceof Number) return DOUBLE;
+        
+        return STRING;
+    }
+    
+    private byte getType(String column)
+    {
+        byte type = NULL;
+        byte current;
+        
+        for(JSONObject record : batch)
+        {
+            current = getType(record.get(column));
+            
+            if(current == NULL || current == type) continue;
+            if(type == NULL) type = current;
+            else if((type == LONG && current == DOUBLE) || (type == DOUBLE && current == LONG)) type = DOUBLE;
+            else return STRING;
+        }
+        
+        return type;
+    }
+    
+    private void writeString(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private void writeHeader() throws IOException
+    {
+        columns = batch.get(0).keySet().toArray(new String[0]);
+        dictionaries = new ArrayList<>();
+        
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(columns.length);
+        
+        for(String column : columns)
+        {
+            writeString(column);
+            out.writeByte(getType(column));
+            dictionaries.add(new HashMap<>());
+        }
+    }
+    
+    private void writeColumn(int index) throws IOException
+    {
+        String column = columns[index];
+        Map<String,Integer> dictionary = dictionaries.get(index);
+        List<String> entries = new ArrayList<>();
+        byte[] nulls = new byte[(batch.size() + 7) / 8];
+        byte type = getType(column);
+        int[] codes;
+        Integer code;
+        Object value;
+        
+        out.writeByte(type);
+        
+        if(type == NULL) return;
+        
+        for(int i=0; i<batch.size(); i++)
+        {
+            if(batch.get(i).get(column) == null) nulls[i / 8] |= (1 << (i % 8));
+        }
+        
+        out.write(nulls);
+        
+        if(type == STRING)
+        {
+            codes = new int[batch.size()];
+            
+            for(int i=0; i<batch.size(); i++)
+            {
+                value = batch.get(i).get(column);
+                
+                if(value == null) continue;
+                
+                code = dictionary.get(value.toString());
+                
+                if(code == null)
+                {
+                    code = dictionary.size();
+                    
+                    dictionary.put(value.toString(), code);
+                    entries.add(value.toString());
+                }
+                
+                codes[i] = code;
+            }
+            
+            out.writeInt(entries.size());
+            
+            for(String entry : entries) writeString(entry);
+            for(int i=0; i<codes.length; i++) out.writeInt(codes[i]);
+            
+            return;
+        }
+        
+        for(JSONObject record : batch)
+        {
+            value = record.get(column);
+            
+            switch(type)
+            {
+                case LONG:
+                    out.writeLong(value == null ? 0 : ((Number)value).longValue());
+                    break;
+                case DOUBLE:
+                    out.writeDouble(value == null ? 0 : ((Number)value).doubleValue());
+                    break;
+                case BOOLEAN:
+                    out.writeByte(value != null && (Boolean)value ? 1 : 0);
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Writes the rows buffered so far as a batch.
+     */
+    public void flush()
+    {
+        try
+        {
+            if(batch.isEmpty()) 
+            {
+                out.flush();
+                return;
+            }
+            
+            if(columns == null) writeHeader();
+            
+            out.writeInt(batch.size());
+            
+            for(int i=0; i<columns.length; i++) writeColumn(i);
+            
+            batch.clear();
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+
+    /**
+     * Writes any remaining rows, ends the stream, and closes the underlying
+     * output stream.
+     */
+    @Override
+    public void close()
+    {
+        if(closed) return;
+        
+        closed = true;
+        
+        try
+        {
+            flush();
+            
+            // An empty result still needs a header to be readable
+            if(columns == null)
+            {
+                out.write(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(0);
+            }
+            
+            out.writeInt(0);
+            out.close();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.output;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Encodes single values so that they decode as the same type they were 
+ * written as. Unlike the {@link ColumnarWriter}, decimals keep their exact
+ * value and dates and timestamps are not reduced to strings, so results
+ * stored with this encoding are indistinguishable from the values JDBC 
+ * returned. Each value is a type byte followed by:
+ * <pre>
+ *   NULL             nothing
+ *   BOOLEAN          byte
+ *   LONG             long
+ *   DOUBLE           double
+ *   STRING           int length + UTF-8
+ *   DECIMAL          int length + UTF-8 of the decimal string
+ *   INTEGER          int
+ *   TIMESTAMP        long epoch milliseconds + int nanoseconds
+ *   DATE             long epoch day
+ *   LOCAL_DATE       long epoch day
+ *   LOCAL_DATE_TIME  int length + UTF-8 of the ISO-8601 string
+ * </pre>
+ * The first five types share their codes with the columnar format. Values 
+ * of any other class are written as their string.
+ * 
+ * @author jbanes
+ */
+public class TypedValues
+{
+    /** Type of a BigDecimal or BigInteger, decoded as a BigDecimal. */
+    public static final byte DECIMAL = 5;
+    
+    /** Type of an Integer. */
+    public static final byte INTEGER = 6;
+    
+    /** Type of a java.sql.Timestamp. */
+    public static final byte TIMESTAMP = 7;
+    
+    /** Type of a java.sql.Date. */
+    public static final byte DATE = 8;
+    
+    /** Type of a LocalDate. */
+    public static final byte LOCAL_DATE = 9;
+    
+    /** Type of a LocalDateTime. */
+    public static final byte LOCAL_DATE_TIME = 10;
+    
+    private TypedValues()
+    {
+    }
+    
+    /**
+     * Returns the type a value is encoded as.
+     * @param value the value
+     * @return the encoded type
+     */
+    public static byte getType(Object value)
+    {
+        if(value == null) return ColumnarWriter.NULL;
+        if(value instanceof Boolean) return ColumnarWriter.BOOLEAN;
+        if(value instanceof Integer) return INTEGER;
+        if(value instanceof Long || value instanceof Short || value instanceof Byte) return ColumnarWriter.LONG;
+        if(value instanceof Double || value instanceof Float) return ColumnarWriter.DOUBLE;
+        if(value instanceof BigDecimal || value instanceof BigInteger) return DECIMAL;
+        if(value instanceof Timestamp) return TIMESTAMP;
+        if(value instanceof java.sql.Date) return DATE;
+        if(value instanceof LocalDate) return LOCAL_DATE;
+        if(value instanceof LocalDateTime) return LOCAL_DATE_TIME;
+        
+        return ColumnarWriter.STRING;
+    }
+    
+    /**
+     * True if the value decodes as an equal value of the same class. Values
+     * of classes without their own type are only lossless if they are 
+     * strings, while Short, Byte, Float, and BigInteger values widen to 
+     * Long, Double, and BigDecimal.
+     * @param value the value
+     * @return true if no information is lost by encoding the value
+     */
+    public static boolean isLossless(Object value)
+    {
+        if(value instanceof Short || value instanceof Byte || value instanceof Float || value instanceof BigInteger) return false;
+        
+        return getType(value) != ColumnarWriter.STRING || value instanceof String;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        
+        buffer.get(bytes);
+        
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Writes the type and value.
+     * @param out the stream to write to
+     * @param value the value to write
+     * @throws IOException if the value cannot be written
+     */
+    public static void write(DataOutputStream out, Object value) throws IOException
+    {
+        byte type = getType(value);
+        
+        out.writeByte(type);
+        
+        switch(type)
+        {
+            case ColumnarWriter.NULL:
+                break;
+            case ColumnarWriter.BOOLEAN:
+                out.writeBoolean((Boolean)value);
+                break;
+            case INTEGER:
+                out.writeInt((Integer)value);
+                break;
+            case ColumnarWriter.LONG:
+                out.writeLong(((Number)value).longValue());
+                break;
+            case ColumnarWriter.DOUBLE:
+                out.writeDouble(((Number)value).doubleValue());
+                break;
+            case TIMESTAMP:
+                out.writeLong(((Timestamp)value).getTime());
+                out.writeInt(((Timestamp)value).getNanos());
+                break;
+            case DATE:
+                out.writeLong(((java.sql.Date)value).toLocalDate().toEpochDay());
+                break;
+            case LOCAL_DATE:
+                out.writeLong(((LocalDate)value).toEpochDay());
+                break;
+            default:
+                writeString(out, value.toString());
+        }
+    }
+    
+    /**
+     * Reads a value written by {@link #write(DataOutputStream, Object)} from 
+     * the current position of the buffer.
+     * @param buffer the buffer to read
+     * @return the value read
+     */
+    public static Object read(ByteBuffer buffer)
+    {
+        byte type = buffer.get();
+        Timestamp timestamp;
+        
+        switch(type)
+        {
+            case ColumnarWriter.NULL:
+                return null;
+            case ColumnarWriter.BOOLEAN:
+                return buffer.get() != 0;
+            case ColumnarWriter.LONG:
+                return buffer.getLong();
+            case ColumnarWriter.DOUBLE:
+                return buffer.getDouble();
+            case DECIMAL:
+                return new BigDecimal(readString(buffer));
+            case INTEGER:
+                return buffer.getInt();
+            case TIMESTAMP:
+                timestamp = new Timestamp(buffer.getLong());
+                timestamp.setNanos(buffer.getInt());
+                return timestamp;
+            case DATE:
+                return java.sql.Date.valueOf(LocalDate.ofEpochDay(buffer.getLong()));
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(buffer.getLong());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(readString(buffer));
+            case ColumnarWriter.STRING:
+                return readString(buffer);
+            default:
+                throw new IllegalStateException("Unknown value type " + type);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of queries running concurrently against a database. 
+ * Queries beyond the limit wait in a bounded queue ordered by priority and
+ * then by arrival, so interactive reports are admitted ahead of exports that
+ * arrived earlier. Queries are rejected when the queue is full or when they 
+ * wait longer than the queue timeout.
+ * <br><br>
+ * One controller is shared by every user of the same database, keyed by the
+ * JNDI name of the database. The first user to request the controller with
+ * limits configures it. Later users asking for different limits share the
+ * existing limits and a warning is printed once for each distinct
+ * configuration.
+ * 
+ * @author jbanes
+ */
+public class AdmissionController
+{
+    /**
+     * Priority of queries a user is actively waiting on.
+     */
+    public static final int INTERACTIVE = 0;
+    
+    /**
+     * Priority of bulk queries such as exports that can tolerate delays.
+     */
+    public static final int EXPORT = 10;
+    
+    private static final Map<String,AdmissionController> controllers = new LinkedHashMap<>();
+    
+    private String name;
+    private int maxConcurrent = 10;
+    private int maxQueued = 100;
+    private long queueTimeout = 30000;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private long sequence;
+    private int active;
+    
+    private long admitted;
+    private long rejected;
+    private long timedOut;
+    private long totalWait;
+    private long maxWait;
+    
+    private boolean configured;
+    private final Set<String> conflicts = new HashSet<>();
+
+    /**
+     * Creates a new controller.
+     * @param name the name of the database being protected
+     */
+    public AdmissionController(String name)
+    {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the controller shared by all users of the named database,
+     * creating it if necessary.
+     * @param name the JNDI name of the database
+     * @return the controller for the database
+     */
+    public static AdmissionController get(String name)
+    {
+        AdmissionController controller;
+        
+        synchronized(controllers)
+        {
+            controller = controllers.get(name);
+            
+            if(controller == null)
+            {
+                controller = new AdmissionController(name);
+                controllers.put(name, controller);
+            }
+            
+            return controller;
+        }
+    }
+    
+    /**
+     * Returns the controller shared by all users of the named database, 
+     * creating it with the limits provided if necessary. The limits of an 
+     * existing controller are not changed. A warning is printed the first 
+     * time different limits are requested.
+     * @param name the JNDI name of the database
+     * @param maxConcurrent the maximum number of concurrent queries
+     * @param maxQueued the maximum number of queries waiting
+     * @param queueTimeout the milliseconds a query may wait
+     * @return the controller for the database
+     */
+    public static AdmissionController get(String name, int maxConcurrent, int maxQueued, long queueTimeout)
+    {
+        AdmissionController controller = get(name);
+        String requested = maxConcurrent + "/" + maxQueued + "/" + queueTimeout;
+        
+        synchronized(controller)
+        {
+            if(!controller.configured)
+            {
+                controller.setMaxConcurrent(maxConcurrent);
+                controller.setMaxQueued(maxQueued);
+                controller.setQueueTimeout(queueTimeout);
+                controller.configured = true;
+                
+                return controller;
+            }
+            
+            if(controller.maxConcurrent == maxConcurrent && controller.maxQueued == maxQueued && controller.queueTimeout == queueTimeout) return controller;
+            if(!controller.conflicts.add(requested)) return controller;
+        }
+        
+        System.err.println("WARNING: Admission control for [" + name + "] is already configured as maxConcurrent=" + controller.getMaxConcurrent() + 
+                           ", maxQueued=" + controller.getMaxQueued() + ", queueTimeout=" + controller.getQueueTimeout() + 
+                           ". Ignoring the requested maxConcurrent=" + maxConcurrent + ", maxQueued=" + maxQueued + ", queueTimeout=" + queueTimeout);
+        
+        return controller;
+    }
+    
+    /**
+     * Returns all controllers that have been created.
+     * @return the list of controllers
+     */
+    public static List<AdmissionController> getControllers()
+    {
+        synchronized(controllers)
+        {
+            return new ArrayList<>(controllers.values());
+        }
+    }
+    
+    /**
+     * Converts the name of a priority class ("interactive" or "export") into
+     * its priority. Null defaults to interactive.
+     * @param name the name of the priority class
+     * @return the priority
+     */
+    public static int getPriority(String name)
+    {
+        if(name == null || name.equalsIgnoreCase("interactive")) return INTERACTIVE;
+        if(name.equalsIgnoreCase("export")) return EXPORT;
+        
+        throw new ConvirganceException("Unknown priority [" + name + "]");
+    }
+
+    /**
+     * Returns the name of the database being protected.
+     * @return the name of the database
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the maximum number of queries that may run at once. Defaults 
+     * to 10.
+     * @return the maximum number of concurrent queries
+     */
+    public int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+
+    /**
+     * Sets the maximum number of queries that may run at once.
+     * @param maxConcurrent the maximum number of concurrent queries
+     */
+    public void setMaxConcurrent(int maxConcurrent)
+    {
+        lock.lock();
+        
+        try
+        {
+            this.maxConcurrent = maxConcurrent;
+            
+            dispatch();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of queries that may wait for admission.
+     * Defaults to 100.
+     * @return the maximum queue depth
+     */
+    public int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    /**
+     * Sets the maximum number of queries that may wait for admission. 
+     * Queries arriving when the queue is full are rejected.
+     * @param maxQueued the maximum queue depth
+     */
+    public void setMaxQueued(int maxQueued)
+    {
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Returns the number of milliseconds a query may wait for admission.
+     * Defaults to 30 seconds.
+     * @return the queue timeout in milliseconds
+     */
+    public long getQueueTimeout()
+    {
+        return queueTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds a query may wait for admission before
+     * it is rejected.
+     * @param queueTimeout the queue timeout in milliseconds
+     */
+    public void setQueueTimeout(long queueTimeout)
+    {
+        this.queueTimeout = queueTimeout;
+    }
+    
+    /**
+     * Waits until the query is admitted. Every successful call must be 
+     * followed by a call to {@link #release()} once the query completes.
+     * @param priority the priority of the query, lower values first
+     * @throws ConvirganceException if the queue is full or the wait times out
+     */
+    public void acquire(int priority)
+    {
+        long start = System.currentTimeMillis();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        Waiter waiter;
+        
+        lock.lock();
+        
+        try
+        {
+            if(active < maxConcurrent && queue.isEmpty())
+            {
+                active++;
+                admitted++;
+                
+                return;
+            }
+            
+            if(queue.size() >= maxQueued)
+            {
+                rejected++;
+                
+                throw new ConvirganceException("Too many queries waiting on " + name);
+            }
+            
+            waiter = new Waiter(priority, sequence++);
+            
+            queue.add(waiter);
+            
+            try
+            {
+                while(!waiter.admitted)
+                {
+                    if(remaining <= 0)
+                    {
+                        queue.remove(waiter);
+                        timedOut++;
+                        
+                        throw new ConvirganceException("Timed out waiting for a connection to " + name);
+                    }
+                    
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                if(waiter.admitted) release();
+                else queue.remove(waiter);
+                
+                Thread.currentThread().interrupt();
+                
+                throw new ConvirganceException(e);
+            }
+            
+            admitted++;
+            totalWait += System.currentTimeMillis() - start;
+            maxWait = Math.max(maxWait, System.currentTimeMillis() - start);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Releases the slot held by a completed query, admitting the next 
+     * waiting query if there is one.
+     */
+    public void release()
+    {
+        lock.lock();
+        
+        try
+        {
+            active--;
+            
+            dispatch();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void dispatch()
+    {
+        Waiter waiter;
+        
+        while(active < maxConcurrent && !queue.isEmpty())
+        {
+            waiter = queue.poll();
+            waiter.admitted = true;
+            active++;
+            
+            waiter.condition.signal();
+        }
+    }
+    
+    /**
+     * Returns the current state of the controller including the number of
+     * active and queued queries, the number admitted, rejected, and timed 
+     * out, and the average and maximum wait in milliseconds.
+     * @return the metrics as a JSONObject
+     */
+    public JSONObject getMetrics()
+    {
+        JSONObject metrics = new JSONObject();
+        
+        lock.lock();
+        
+        try
+        {
+            metrics.put("name", name);
+            metrics.put("active", active);
+            metrics.put("queued", queue.size());
+            metrics.put("maxConcurrent", maxConcurrent);
+            metrics.put("maxQueued", maxQueued);
+            metrics.put("admitted", admitted);
+            metrics.put("rejected", rejected);
+            metrics.put("timedOut", timedOut);
+            metrics.put("averageWait", admitted > 0 ? totalWait / admitted : 0);
+            metrics.put("maxWait", maxWait);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        return metrics;
+    }
+    
+    private class Waiter implements Comparable<Waiter>
+    {
+        private int priority;
+        private long sequence;
+        private boolean admitted;
+        private Condition condition = lock.newCondition();
+
+        public Waiter(int priority, long sequence)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other)
+        {
+            if(priority != other.priority) return Integer.compare(priority, other.priority);
+            
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
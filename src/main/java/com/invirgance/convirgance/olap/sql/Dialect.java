@@ -0,0 +1,261 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+
+/**
+ * Generates the database specific portions of SQL queries. The default 
+ * implementation targets ANSI SQL along with the date_trunc() function 
+ * supported by PostgreSQL, Snowflake, DuckDB, Redshift, and others. 
+ * Subclasses override the methods needed to support other databases.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class Dialect
+{
+    /** Grain truncating dates to the day. */
+    public static final String DAY = "day";
+    
+    /** Grain truncating dates to the Monday starting the week. */
+    public static final String WEEK = "week";
+    
+    /** Grain truncating dates to the first day of the month. */
+    public static final String MONTH = "month";
+    
+    /** Grain truncating dates to the first day of the quarter. */
+    public static final String QUARTER = "quarter";
+    
+    /** Grain truncating dates to the first day of the year. */
+    public static final String YEAR = "year";
+    
+    /**
+     * Verifies that the grain is one of day, week, month, quarter, or year.
+     * @param grain the grain to check
+     * @return the grain in lowercase
+     */
+    public static String checkGrain(String grain)
+    {
+        String lower = (grain == null) ? null : grain.toLowerCase();
+        
+        if(DAY.equals(lower) || WEEK.equals(lower) || MONTH.equals(lower) || QUARTER.equals(lower) || YEAR.equals(lower)) return lower;
+        
+        throw new IllegalArgumentException("Unsupported time grain [" + grain + "]");
+    }
+    
+    /**
+     * Truncates a date to the start of the bucket containing it.
+     * @param grain the grain of the bucket
+     * @param date the date to truncate
+     * @return the first day of the bucket
+     */
+    public static LocalDate truncate(String grain, LocalDate date)
+    {
+        switch(checkGrain(grain))
+        {
+            case DAY: return date;
+            case WEEK: return date.minusDays(date.getDayOfWeek().getValue() - 1);
+            case MONTH: return date.withDayOfMonth(1);
+            case QUARTER: return date.with(IsoFields.DAY_OF_QUARTER, 1);
+            default: return date.withDayOfYear(1);
+        }
+    }
+    
+    /**
+     * Returns the first day of the bucket following the bucket containing 
+     * the date.
+     * @param grain the grain of the bucket
+     * @param date the date
+     * @return the first day of the next bucket
+     */
+    public static LocalDate next(String grain, LocalDate date)
+    {
+        LocalDate start = truncate(grain, date);
+        
+        switch(checkGrain(grain))
+        {
+            case DAY: return start.plusDays(1);
+            case WEEK: return start.plusWeeks(1);
+            case MONTH: return start.plusMonths(1);
+            case QUARTER: return start.plusMonths(3);
+            default: return start.plusYears(1);
+        }
+    }
+    
+    /**
+     * Generates an expression truncating a date or timestamp expression to
+     * the start of its bucket. Weeks start on Monday.
+     * @param grain the grain (day, week, month, quarter, or year)
+     * @param expression the SQL expression of the date
+     * @return the SQL expression of the truncated date
+     */
+    public String getDateTruncSQL(String grain, String expression)
+    {
+        return "date_trunc('" + checkGrain(grain) + "', " + expression + ")";
+    }
+    
+    /**
+     * Generates an expression counting the distinct values of an expression.
+     * Databases with an approximate distinct count override this to return
+     * the much cheaper approximation. The default is an exact count.
+     * @param expression the SQL expression to count
+     * @return the SQL aggregate expression
+     */
+    public String getApproximateCountDistinctSQL(String expression)
+    {
+        return "count(distinct " + expression + ")";
+    }
+    
+    /**
+     * Formats a sampling rate or other fraction as a plain SQL number. The
+     * number is rounded to 10 significant digits to hide floating point 
+     * noise such as 7.000000000000001.
+     * @param value the number
+     * @return the number without exponent notation
+     */
+    public static String getNumberSQL(double value)
+    {
+        return BigDecimal.valueOf(value).round(new MathContext(10)).stripTrailingZeros().toPlainString();
+    }
+    
+    /**
+     * Generates the TABLESAMPLE clause that follows a table name to read a 
+     * random sample of its rows. The default samples individual rows with
+     * BERNOULLI sampling.
+     * @param rate the fraction of rows to sample between 0 and 1
+     * @return the TABLESAMPLE clause or null if the database does not support it
+     */
+    public String getTableSampleSQL(double rate)
+    {
+        return "tablesample bernoulli (" + getNumberSQL(rate * 100) + ")";
+    }
+    
+    /**
+     * Generates a predicate selecting a sample of rows for databases without
+     * TABLESAMPLE. When a key is provided, rows are selected by a hash of the
+     * key so the same rows are sampled on every query.
+     * @param key the SQL expression of the primary key or null if unknown
+     * @param rate the fraction of rows to sample between 0 and 1
+     * @return the SQL condition
+     */
+    public String getSamplePredicateSQL(String key, double rate)
+    {
+        return "random() < " + getNumberSQL(rate);
+    }
+    
+    /**
+     * Returns true if the database supports the FILTER (WHERE ...) clause on
+     * aggregate functions.
+     * @return true if aggregate filters are supported
+     */
+    public boolean isAggregateFilterSupported()
+    {
+        return true;
+    }
+    
+    /**
+     * Generates an aggregate over only the rows matching a condition. Uses
+     * FILTER (WHERE ...) when supported, otherwise a CASE expression that is
+     * null for the rows not matching.
+     * @param function the aggregate function
+     * @param expression the SQL expression being aggregated
+     * @param condition the SQL condition
+     * @return the SQL aggregate expression
+     */
+    public String getFilteredAggregateSQL(String function, String expression, String condition)
+    {
+        if(isAggregateFilterSupported()) return function + "(" + expression + ") filter (where " + condition + ")";
+        
+        return function + "(case when " + condition + " then " + expression + " end)";
+    }
+    
+    /**
+     * Generates an expression computing the sample standard deviation.
+     * @param expression the SQL expression
+     * @return the SQL aggregate expression
+     */
+    public String getStandardDeviationSQL(String expression)
+    {
+        return "stddev_samp(" + expression + ")";
+    }
+    
+    /**
+     * Generates an ordering term for an ORDER BY clause that ranks null 
+     * values last regardless of direction, matching the ordering of
+     * {@link com.invirgance.convirgance.olap.TopK#compare(Object, Object)}.
+     * @param expression the SQL expression to order by
+     * @param descending true to order from highest to lowest
+     * @return the SQL ordering term
+     */
+    public String getOrderBySQL(String expression, boolean descending)
+    {
+        return expression + (descending ? " desc" : " asc") + " nulls last";
+    }
+    
+    /**
+     * Generates a date literal.
+     * @param date the date
+     * @return the SQL literal
+     */
+    public String getDateLiteralSQL(LocalDate date)
+    {
+        return "date '" + date + "'";
+    }
+    
+    /**
+     * Generates a timestamp literal with microsecond precision.
+     * @param timestamp the timestamp
+     * @return the SQL literal
+     */
+    public String getTimestampLiteralSQL(LocalDateTime timestamp)
+    {
+        return "timestamp '" + timestamp.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS")) + "'";
+    }
+    
+    /**
+     * Generates a literal for a value used in a filter. Strings are quoted 
+     * with embedded quotes escaped, numbers and booleans are written as-is, 
+     * dates are written with {@link #getDateLiteralSQL(java.time.LocalDate)},
+     * and JDBC and java.time timestamps with 
+     * {@link #getTimestampLiteralSQL(java.time.LocalDateTime)}.
+     * @param value the value
+     * @return the SQL literal
+     */
+    public String getLiteralSQL(Object value)
+    {
+        if(value == null) return "null";
+        if(value instanceof Number || value instanceof Boolean) return value.toString();
+        if(value instanceof LocalDate) return getDateLiteralSQL((LocalDate)value);
+        if(value instanceof LocalDateTime) return getTimestampLiteralSQL((LocalDateTime)value);
+        if(value instanceof java.sql.Date) return getDateLiteralSQL(((java.sql.Date)value).toLocalDate());
+        if(value instanceof java.sql.Timestamp) return getTimestampLiteralSQL(((java.sql.Timestamp)value).toLocalDateTime());
+        
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+
+/**
+ * Caches the distinct members of the columns of a Table for use in filter 
+ * pickers and typeahead searches. The members of a column are loaded with a
+ * single grouped query the first time they are requested and held in a 
+ * {@link MemberIndex}. Once the index is older than the refresh interval, 
+ * the stale index continues to be served while a replacement is loaded in
+ * the background. The labels of the primary keys of the Table are cached 
+ * the same way.
+ * 
+ * @author jbanes
+ */
+public class MemberCache
+{
+    private static final ExecutorService refresher = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "MemberCache Refresh");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    private Table table;
+    private long refreshInterval = 600000;
+    private AdmissionController controller;
+    
+    private final Map<String,Entry> entries = new HashMap<>();
+    private final List<String> refreshing = new ArrayList<>();
+
+    /**
+     * Creates a member cache for the Table.
+     * @param table the Table whose members are cached
+     */
+    MemberCache(Table table)
+    {
+        this.table = table;
+    }
+
+    /**
+     * Returns the number of milliseconds before members are reloaded.
+     * @return the refresh interval in milliseconds
+     */
+    public long getRefreshInterval()
+    {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds before members are reloaded in the 
+     * background. Defaults to 10 minutes.
+     * @param refreshInterval the refresh interval in milliseconds
+     */
+    public void setRefreshInterval(long refreshInterval)
+    {
+        this.refreshInterval = refreshInterval;
+    }
+    
+    /**
+     * Returns the admission controller guarding the database.
+     * @return the admission controller or null
+     */
+    public AdmissionController getAdmissionController()
+    {
+        return controller;
+    }
+
+    /**
+     * Sets the admission controller guarding the database the members are
+     * loaded from. Member queries are admitted at export priority so they
+     * never hold up interactive reports.
+     * @param controller the admission controller or null for none
+     */
+    public void setAdmissionController(AdmissionController controller)
+    {
+        this.controller = controller;
+    }
+    
+    /**
+     * Generates the query loading the distinct members of a column.
+     * @param column the column of the Table
+     * @param caseSensitive true to quote identifiers
+     * @return the SQL query as a string
+     */
+    public String getSQL(String column, boolean caseSensitive)
+    {
+        SQLGenerator generator = new SQLGenerator();
+        
+        generator.setCaseSensitive(caseSensitive);
+        generator.setForceGroupBy(true);
+        generator.addSelect(column, table, "member");
+        
+        return generator.getSQL();
+    }
+    
+    /**
+     * Generates the query loading the primary key and label of every row.
+     * @param column the column of the Table holding the labels
+     * @param caseSensitive true to quote identifiers
+     * @return the SQL query as a string
+     */
+    public String getLabelSQL(String column, boolean caseSensitive)
+    {
+        SQLGenerator generator = new SQLGenerator();
+        
+        generator.setCaseSensitive(caseSensitive);
+        generator.addSelect(table.getPrimaryKey(), table, "key");
+        generator.addSelect(column, table, "label");
+        
+        return generator.getSQL();
+    }
+    
+    /**
+     * Executes the query loading the members of a column.
+     * @param source the database to query
+     * @param sql the query to execute
+     * @return the rows returned by the query
+     */
+    protected Iterable<JSONObject> query(DataSource source, String sql)
+    {
+        QueryCursor cursor = new QueryCursor(source, sql);
+        
+        if(controller != null) cursor.setAdmissionController(controller, AdmissionController.EXPORT);
+        
+        return cursor;
+    }
+    
+    private MemberIndex load(DataSource source, String column, boolean caseSensitive)
+    {
+        List<Object> members = new ArrayList<>();
+        
+        for(JSONObject row : query(source, getSQL(column, caseSensitive))) members.add(row.get("member"));
+        
+        return new MemberIndex(members);
+    }
+    
+    private Map<Object,Object> loadLabels(DataSource source, String column, boolean caseSensitive)
+    {
+        Map<Object,Object> labels = new HashMap<>();
+        
+        for(JSONObject row : query(source, getLabelSQL(column, caseSensitive))) labels.put(row.get("key"), row.get("label"));
+        
+        return Collections.unmodifiableMap(labels);
+    }
+    
+    private void refresh(String key, Supplier<Object> loader)
+    {
+        synchronized(refreshing)
+        {
+            if(refreshing.contains(key)) return;
+            
+            refreshing.add(key);
+        }
+        
+        refresher.execute(() -> {
+            try
+            {
+                Entry entry = new Entry(loader.get());
+                
+                synchronized(entries)
+                {
+                    entries.put(key, entry);
+                }
+            }
+            catch(RuntimeException e)
+            {
+                // Keep serving the stale entry and try again on the next request
+            }
+            finally
+            {
+                synchronized(refreshing)
+                {
+                    refreshing.remove(key);
+                }
+            }
+        });
+    }
+    
+    private Object get(String key, Supplier<Object> loader)
+    {
+        Entry entry;
+        
+        synchronized(entries)
+        {
+            entry = entries.get(key);
+        }
+        
+        if(entry == null)
+        {
+            entry = new Entry(loader.get());
+            
+            synchronized(entries)
+            {
+                entries.put(key, entry);
+            }
+        }
+        else if(entry.created + refreshInterval < System.currentTimeMillis())
+        {
+            refresh(key, loader);
+        }
+        
+        return entry.value;
+    }
+    
+    /**
+     * Returns the index of the distinct members of the column. Loads the 
+     * members if they have not been loaded yet. Stale members are returned
+     * while they are refreshed in the background.
+     * @param source the database to load members from
+     * @param column the column of the Table
+     * @param caseSensitive true to quote identifiers
+     * @return the index of members
+     */
+    public MemberIndex getIndex(DataSource source, String column, boolean caseSensitive)
+    {
+        return (MemberIndex)get("members:" + column + ":" + caseSensitive, () -> load(source, column, caseSensitive));
+    }
+    
+    /**
+     * Returns the value of the column for every primary key of the Table. 
+     * Used to attach labels to reports grouped by key. Loaded and refreshed
+     * in the same way as the members.
+     * @param source the database to load labels from
+     * @param column the column of the Table holding the labels
+     * @param caseSensitive true to quote identifiers
+     * @return the map of primary keys to labels
+     */
+    public Map<Object,Object> getLabels(DataSource source, String column, boolean caseSensitive)
+    {
+        return (Map<Object,Object>)get("labels:" + column + ":" + caseSensitive, () -> loadLabels(source, column, caseSensitive));
+    }
+    
+    /**
+     * Discards the cached members and labels of every column so they are 
+     * reloaded on the next request.
+     */
+    public void clear()
+    {
+        synchronized(entries)
+        {
+            entries.clear();
+        }
+    }
+    
+    private static class Entry
+    {
+        private Object value;
+        private long created = System.currentTimeMillis();
+
+        public Entry(Object value)
+        {
+            this.value = value;
+        }
+    }
+}
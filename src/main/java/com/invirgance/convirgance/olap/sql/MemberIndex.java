@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable sorted index of the distinct members of a column. Members are 
+ * kept in arrays sorted by their lowercase text so that prefix lookups are a
+ * binary search followed by a scan of the matching range. Substring lookups
+ * scan every member but touch nothing more than two arrays. Null members
+ * are ignored.
+ * 
+ * @author jbanes
+ */
+public class MemberIndex
+{
+    private final Object[] members;
+    private final String[] keys;
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * Builds an index over the members.
+     * @param values the distinct members of the column
+     */
+    public MemberIndex(Iterable<?> values)
+    {
+        List<Object> list = new ArrayList<>();
+        Integer[] order;
+        
+        for(Object value : values) 
+        {
+            if(value != null) list.add(value);
+        }
+        
+        order = new Integer[list.size()];
+        members = new Object[list.size()];
+        keys = new String[list.size()];
+        
+        for(int i=0; i<order.length; i++) order[i] = i;
+        
+        Arrays.sort(order, Comparator.comparing((Integer index) -> list.get(index).toString().toLowerCase())
+                                     .thenComparing(index -> list.get(index).toString()));
+        
+        for(int i=0; i<order.length; i++)
+        {
+            members[i] = list.get(order[i]);
+            keys[i] = members[i].toString().toLowerCase();
+        }
+    }
+    
+    /**
+     * Returns the time the index was built in milliseconds since the epoch.
+     * @return the creation time of the index
+     */
+    public long getCreated()
+    {
+        return created;
+    }
+    
+    /**
+     * Returns the number of members in the index.
+     * @return the number of members
+     */
+    public int size()
+    {
+        return members.length;
+    }
+    
+    private int lowerBound(String key)
+    {
+        int low = 0;
+        int high = keys.length;
+        int middle;
+        
+        while(low < high)
+        {
+            middle = (low + high) >>> 1;
+            
+            if(keys[middle].compareTo(key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        
+        return low;
+    }
+    
+    /**
+     * Returns the members starting with the prefix, ignoring case, in 
+     * sorted order.
+     * @param prefix the text the members must start with
+     * @param limit the maximum number of members to return
+     * @return the list of matching members
+     */
+    public List<Object> findPrefix(String prefix, int limit)
+    {
+        List<Object> results = new ArrayList<>();
+        String key = (prefix == null) ? "" : prefix.toLowerCase();
+        
+        for(int i=lowerBound(key); i<keys.length && results.size() < limit; i++)
+        {
+            if(!keys[i].startsWith(key)) break;
+            
+            results.add(members[i]);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Returns the members containing the text, ignoring case. Members 
+     * starting with the text are returned first, followed by the remaining 
+     * matches in sorted order.
+     * @param text the text the members must contain
+     * @param limit the maximum number of members to return
+     * @return the list of matching members
+     */
+    public List<Object> findSubstring(String text, int limit)
+    {
+        List<Object> results = findPrefix(text, limit);
+        String key = (text == null) ? "" : text.toLowerCase();
+        
+        for(int i=0; i<keys.length && results.size() < limit; i++)
+        {
+            if(!keys[i].startsWith(key) && keys[i].contains(key)) results.add(members[i]);
+        }
+        
+        return results;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+
+/**
+ * Generates the MySQL and MariaDB specific portions of SQL queries.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class MySQLDialect extends Dialect
+{
+    @Override
+    public String getDateTruncSQL(String grain, String expression)
+    {
+        switch(checkGrain(grain))
+        {
+            case DAY: return "date(" + expression + ")";
+            case WEEK: return "date_sub(date(" + expression + "), interval weekday(" + expression + ") day)";
+            case MONTH: return "date_sub(date(" + expression + "), interval dayofmonth(" + expression + ") - 1 day)";
+            case QUARTER: return "makedate(year(" + expression + "), 1) + interval (quarter(" + expression + ") - 1) * 3 month";
+            default: return "makedate(year(" + expression + "), 1)";
+        }
+    }
+    
+    /**
+     * MySQL does not support TABLESAMPLE.
+     * @param rate the fraction of rows to sample
+     * @return null
+     */
+    @Override
+    public String getTableSampleSQL(double rate)
+    {
+        return null;
+    }
+
+    @Override
+    public String getSamplePredicateSQL(String key, double rate)
+    {
+        if(key != null) return "crc32(" + key + ") % 10000 < " + Math.round(rate * 10000);
+        
+        return "rand() < " + getNumberSQL(rate);
+    }
+    
+    @Override
+    public boolean isAggregateFilterSupported()
+    {
+        return false;
+    }
+    
+    @Override
+    public String getOrderBySQL(String expression, boolean descending)
+    {
+        // NULLS LAST is not supported, so order by a null key first
+        return "case when " + expression + " is null then 1 else 0 end, " + expression + (descending ? " desc" : " asc");
+    }
+    
+    @Override
+    public String getLiteralSQL(Object value)
+    {
+        // MySQL treats backslashes in string literals as escapes by default
+        if(value instanceof String) return super.getLiteralSQL(((String)value).replace("\\", "\\\\"));
+        
+        return super.getLiteralSQL(value);
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Streams the results of a SQL query directly from JDBC while guarding the 
+ * query against running unattended. The query is cancelled with 
+ * {@link Statement#cancel()} when any of the following occur:
+ * <ul>
+ *   <li>The timeout elapses before the last row is read</li>
+ *   <li>No row is requested for longer than the idle timeout, which happens 
+ *       when the client reading the results has gone away. The idle clock 
+ *       starts once the database has returned the results, so a slow query
+ *       is never mistaken for an abandoned one.</li>
+ *   <li>{@link #cancel()} or {@link #close()} is called</li>
+ * </ul>
+ * The connection is released as soon as the last row is read or the query 
+ * is cancelled. The query is executed when iteration starts and may only be
+ * iterated once. If an {@link AdmissionController} is set, the query waits
+ * for admission before a connection is opened and releases its slot when the
+ * cursor is closed. Closing the cursor while it waits for admission abandons
+ * the wait.
+ * 
+ * @author jbanes
+ */
+public class QueryCursor implements Iterable<JSONObject>, AutoCloseable
+{
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "QueryCursor Watchdog");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    private DataSource source;
+    private String sql;
+    private int timeout;
+    private int idleTimeout = 60;
+    private AdmissionController admission;
+    private int priority;
+    private boolean admitted;
+    private List<Runnable> closeListeners = new ArrayList<>();
+    
+    private Connection connection;
+    private volatile Statement statement;
+    private volatile ResultSet results;
+    private ScheduledFuture check;
+    private Thread waiting;
+    
+    private volatile long deadline;
+    private volatile long accessed;
+    private volatile boolean cancelled;
+    private volatile boolean closed;
+    private volatile boolean exhausted;
+    private boolean started;
+
+    /**
+     * Creates a new cursor over the results of the SQL query.
+     * @param source the database to query
+     * @param sql the SQL query to execute
+     */
+    public QueryCursor(DataSource source, String sql)
+    {
+        this.source = source;
+        this.sql = sql;
+    }
+
+    /**
+     * Returns the number of seconds the query may run, including the time
+     * taken to read every row, before it is cancelled. 
+     * @return the timeout in seconds or 0 for no timeout
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Sets the number of seconds the query may run, including the time taken
+     * to read every row, before it is cancelled. 
+     * @param timeout the timeout in seconds or 0 for no timeout
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of seconds the cursor may wait for the next row to
+     * be requested before the query is considered abandoned and cancelled.
+     * @return the idle timeout in seconds or 0 for no idle timeout
+     */
+    public int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of seconds the cursor may wait for the next row to be
+     * requested before the query is considered abandoned and cancelled.
+     * Defaults to 60 seconds.
+     * @param idleTimeout the idle timeout in seconds or 0 for no idle timeout
+     */
+    public void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+    
+    /**
+     * Returns the controller the query must be admitted by before running.
+     * @return the admission controller or null if not controlled
+     */
+    public AdmissionController getAdmissionController()
+    {
+        return admission;
+    }
+
+    /**
+     * Sets the controller the query must be admitted by before running.
+     * @param admission the admission controller or null if not controlled
+     * @param priority the priority of the query in the admission queue
+     */
+    public void setAdmissionController(AdmissionController admission, int priority)
+    {
+        this.admission = admission;
+        this.priority = priority;
+    }
+    
+    /**
+     * Returns true if the query was cancelled before all rows were read.
+     * @return true if cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+    
+    /**
+     * Adds a listener that is run once the cursor is closed, either because
+     * all rows have been read or because the query was cancelled.
+     * @param listener the listener to run
+     */
+    public synchronized void addCloseListener(Runnable listener)
+    {
+        closeListeners.add(listener);
+    }
+    
+    // Waits outside the monitor so that close() can abandon the wait
+    private void admit()
+    {
+        synchronized(this)
+        {
+            if(closed) throw new ConvirganceException("Query cancelled");
+            
+            waiting = Thread.currentThread();
+        }
+        
+        try
+        {
+            admission.acquire(priority);
+        }
+        catch(ConvirganceException e)
+        {
+            synchronized(this)
+            {
+                waiting = null;
+                
+                if(closed) Thread.interrupted();
+            }
+            
+            throw closed ? new ConvirganceException("Query cancelled", e) : e;
+        }
+        
+        synchronized(this)
+        {
+            waiting = null;
+            
+            if(closed)
+            {
+                // Clear the interrupt close() may have sent after admission
+                Thread.interrupted();
+                admission.release();
+                
+                throw new ConvirganceException("Query cancelled");
+            }
+            
+            admitted = true;
+        }
+    }
+    
+    private void open() throws SQLException
+    {
+        long period;
+        
+        if(admission != null) admit();
+        
+        synchronized(this)
+        {
+            if(closed) throw new ConvirganceException("Query cancelled");
+            
+            deadline = (timeout > 0) ? System.currentTimeMillis() + timeout * 1000L : Long.MAX_VALUE;
+            
+            if(timeout > 0 || idleTimeout > 0)
+            {
+                period = Math.max(100, Math.min(1000, (idleTimeout > 0 ? idleTimeout : timeout) * 250L));
+                check = watchdog.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+            }
+            
+            connection = source.getConnection();
+            statement = connection.createStatement();
+            
+            if(timeout > 0) statement.setQueryTimeout(timeout);
+        }
+    }
+    
+    private void check()
+    {
+        long now = System.currentTimeMillis();
+        long accessed = this.accessed;
+        
+        // The idle clock only runs once the results have been returned
+        if(now > deadline || (idleTimeout > 0 && accessed > 0 && now - accessed > idleTimeout * 1000L)) cancel();
+    }
+    
+    /**
+     * Cancels the query if it is still running and releases the connection.
+     * Reading further rows will fail with an exception reporting that the 
+     * query was cancelled.
+     */
+    public void cancel()
+    {
+        if(closed) return;
+        
+        cancelled = true;
+        
+        close();
+    }
+    
+    /**
+     * Releases the connection. If the query is still running, it is cancelled.
+     */
+    @Override
+    public void close()
+    {
+        // Not synchronized so that a query blocked reading rows can be interrupted
+        Statement statement = this.statement;
+        List<Runnable> listeners;
+        
+        try
+        {
+            if(!closed && !exhausted && statement != null) statement.cancel();
+        }
+        catch(SQLException e)
+        {
+            // Driver does not support cancellation. Closing will still release the connection.
+        }
+        
+        synchronized(this)
+        {
+            if(closed) return;
+            
+            closed = true;
+            listeners = new ArrayList<>(closeListeners);
+            
+            if(waiting != null) waiting.interrupt();
+            
+            if(check != null) check.cancel(false);
+            
+            try
+            {
+                if(results != null) results.close();
+                if(statement != null) statement.close();
+            }
+            catch(SQLException e)
+            {
+                // Closing the connection will release any remaining resources
+            }
+            
+            try
+            {
+                if(connection != null) connection.close();
+            }
+            catch(SQLException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            finally
+            {
+                results = null;
+                statement = null;
+                connection = null;
+                
+                if(admitted) admission.release();
+            }
+        }
+        
+        for(Runnable listener : listeners) listener.run();
+    }
+
+    @Override
+    public Iterator<JSONObject> iterator()
+    {
+        Statement statement;
+        
+        synchronized(this)
+        {
+            if(started) throw new IllegalStateException("QueryCursor may only be iterated once");
+
+            started = true;
+        }
+        
+        try
+        {
+            open();
+            
+            statement = this.statement;
+            
+            // Closed between admission and execution
+            if(statement == null) throw new ConvirganceException("Query cancelled");
+            
+            results = statement.executeQuery(sql);
+            accessed = System.currentTimeMillis();
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            close();
+            
+            if(e instanceof RuntimeException) throw (RuntimeException)e;
+            
+            throw new ConvirganceException(cancelled ? "Query cancelled" : e.getMessage(), e);
+        }
+        
+        return new Iterator<JSONObject>() {
+            private String[] labels;
+            private JSONObject next;
+            
+            private JSONObject read() throws SQLException
+            {
+                ResultSet results = QueryCursor.this.results;
+                ResultSetMetaData metadata;
+                JSONObject record;
+                
+                if(closed || !results.next()) return null;
+                
+                if(labels == null)
+                {
+                    metadata = results.getMetaData();
+                    labels = new String[metadata.getColumnCount()];
+                    
+                    for(int i=0; i<labels.length; i++) labels[i] = metadata.getColumnLabel(i + 1);
+                }
+                
+                record = new JSONObject();
+                
+                for(int i=0; i<labels.length; i++) record.put(labels[i], results.getObject(i + 1));
+                
+                return record;
+            }
+            
+            @Override
+            public boolean hasNext()
+            {
+                accessed = System.currentTimeMillis();
+                
+                if(next != null) return true;
+                if(exhausted) return false;
+                if(closed && !cancelled) throw new ConvirganceException("Query closed");
+                
+                try
+                {
+                    next = read();
+                }
+                catch(SQLException e)
+                {
+                    close();
+                    
+                    throw new ConvirganceException(cancelled ? "Query cancelled" : e.getMessage(), e);
+                }
+                
+                if(next == null && cancelled) throw new ConvirganceException("Query cancelled");
+                
+                if(next == null)
+                {
+                    exhausted = true;
+                    
+                    close();
+                }
+                
+                return (next != null);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                record = next;
+                next = null;
+                
+                return record;
+            }
+        };
+    }
+}
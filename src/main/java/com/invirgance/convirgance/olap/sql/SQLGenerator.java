@@ -22,7 +22,9 @@ SOFTWARE.
 package com.invirgance.convirgance.olap.sql;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Provides support for creating and outputting SQL queries for working
@@ -33,9 +35,16 @@ public class SQLGenerator
 {
     private List<Column> selects = new ArrayList<>();
     private List<Table> tables = new ArrayList<>();
+    private List<List<String>> groupingSets = new ArrayList<>();
+    private List<String> wheres = new ArrayList<>();
+    private Set<String> hidden = new HashSet<>();
     
     private boolean caseSensitive;
     private boolean forceGroupBy;
+    private Dialect dialect = new Dialect();
+    private String tableSample;
+    private String rankAlias;
+    private int rankLimit;
 
     /**
      * Returns true if the SQLGenerator is case sensitive.
@@ -74,6 +83,58 @@ public class SQLGenerator
         this.forceGroupBy = forceGroupBy;
     }
     
+    /**
+     * Returns the Dialect used to generate database specific SQL.
+     * @return the Dialect
+     */
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * Sets the Dialect used to generate database specific SQL. Defaults to
+     * the ANSI {@link Dialect}.
+     * @param dialect the Dialect
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = (dialect == null) ? new Dialect() : dialect;
+    }
+    
+    /**
+     * Returns the clause following the FROM table that samples its rows.
+     * @return the sampling clause or null
+     */
+    public String getTableSample()
+    {
+        return tableSample;
+    }
+
+    /**
+     * Sets a clause such as TABLESAMPLE to follow the FROM table so that only
+     * a sample of its rows are read. See {@link Dialect#getTableSampleSQL(double)}.
+     * @param tableSample the sampling clause or null to read every row
+     */
+    public void setTableSample(String tableSample)
+    {
+        this.tableSample = tableSample;
+    }
+    
+    /**
+     * Keeps only the rows where a selected rank, such as a ROW_NUMBER() 
+     * window expression, is no greater than the limit. The query is wrapped
+     * in an outer query that filters on the rank, as window functions cannot
+     * be referenced in the WHERE clause.
+     * @param alias the alias of the selected rank
+     * @param limit the largest rank to keep
+     */
+    public void setRankLimit(String alias, int limit)
+    {
+        this.rankAlias = alias;
+        this.rankLimit = limit;
+    }
+    
     /**
      * Adds the provided Table to the table list of the SQLGenerator
      * @param table a Table to include in SQLGenerator.
@@ -141,6 +202,150 @@ public class SQLGenerator
         addTable(table);
     }
     
+    /**
+     * Adds a SQL expression into the list of Columns selected for this 
+     * SQLGenerator. The expression is grouped by like any other column. 
+     * Column references in the expression should be generated with 
+     * {@link #getColumnSQL(com.invirgance.convirgance.olap.sql.Table, java.lang.String)}.
+     * @param sql the SQL expression.
+     * @param table table referenced by the expression.
+     * @param alias the expression's alias.
+     */
+    public void addExpression(String sql, Table table, String alias)
+    {
+        selects.add(new Expression(sql, table, alias, false));
+        
+        addTable(table);
+    }
+    
+    /**
+     * Adds a SQL expression that computes an aggregate into the list of 
+     * Columns selected for this SQLGenerator. The expression is not grouped by.
+     * @param sql the aggregate SQL expression.
+     * @param table table referenced by the expression.
+     * @param alias the expression's alias.
+     */
+    public void addAggregateExpression(String sql, Table table, String alias)
+    {
+        selects.add(new Expression(sql, table, alias, true));
+        
+        addTable(table);
+    }
+    
+    /**
+     * Adds a calculation over other selected columns. Calculations are 
+     * computed by an outer query wrapped around the generated query, so that
+     * the columns they reference are computed once and shared with any other
+     * use of those columns. Columns are referenced by their quoted alias.
+     * @param sql the SQL expression referencing the aliases of other columns.
+     * @param alias the calculation's alias.
+     */
+    public void addCalculation(String sql, String alias)
+    {
+        selects.add(new Calculation(sql, alias));
+    }
+    
+    /**
+     * Hides a selected column from the results. Hidden columns are only 
+     * computed for use by calculations. See 
+     * {@link #addCalculation(java.lang.String, java.lang.String)}.
+     * @param alias the alias of the selected column.
+     */
+    public void hide(String alias)
+    {
+        hidden.add(alias);
+    }
+    
+    /**
+     * Returns true if a column has been selected with the alias.
+     * @param alias the alias of the column.
+     * @return true if the alias is in use.
+     */
+    public boolean isSelected(String alias)
+    {
+        for(Column column : selects)
+        {
+            if(alias.equals(column.alias)) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Selects the GROUPING() indicator for a previously selected column. The
+     * indicator is 0 when a row is grouped by the column and 1 when the 
+     * column has been rolled up by a grouping set.
+     * @param alias the alias of the selected column.
+     * @param groupingAlias the alias of the indicator.
+     */
+    public void addGrouping(String alias, String groupingAlias)
+    {
+        Column column = getColumn(alias);
+        
+        selects.add(new Expression("grouping(" + column.getGroupBySQL() + ")", column.getTable(), groupingAlias, true));
+    }
+    
+    /**
+     * Adds a condition to the WHERE clause. Conditions are combined with AND.
+     * Column references in the condition should be generated with 
+     * {@link #getColumnSQL(com.invirgance.convirgance.olap.sql.Table, java.lang.String)}.
+     * @param condition the SQL condition.
+     * @param table table referenced by the condition.
+     */
+    public void addWhere(String condition, Table table)
+    {
+        wheres.add(condition);
+        
+        addTable(table);
+    }
+    
+    /**
+     * Generates a fully qualified reference to a column in a table, quoted
+     * if this SQLGenerator is case sensitive.
+     * @param table the table containing the column.
+     * @param column the name of the column.
+     * @return SQL string component.
+     */
+    public String getColumnSQL(Table table, String column)
+    {
+        StringBuffer buffer = new StringBuffer();
+        String quotes = caseSensitive ? "\"" : "";
+
+        buffer.append(quotes);
+        buffer.append(table.getName());
+        buffer.append(quotes);
+        buffer.append('.');
+        buffer.append(quotes);
+        buffer.append(column);
+        buffer.append(quotes);
+        
+        return buffer.toString();
+    }
+    
+    /**
+     * Adds a grouping set to the GROUP BY clause. When one or more grouping
+     * sets are added, the query is grouped by GROUPING SETS rather than by 
+     * every non-aggregate column, producing one set of aggregates for each 
+     * grouping set in a single pass. The columns of each set are referenced 
+     * by the alias they were selected with. An empty list produces the grand
+     * total.
+     * @param aliases the aliases of the selected columns to group by.
+     */
+    public void addGroupingSet(List<String> aliases)
+    {
+        groupingSets.add(new ArrayList<>(aliases));
+    }
+    
+    private Column getColumn(String alias)
+    {
+        for(Column column : selects)
+        {
+            if(alias.equals(column.alias) && !column.isAggregate()) return column;
+        }
+        
+        throw new IllegalArgumentException("No column selected with the alias [" + alias + "]");
+    }
+    
     /**
      * Handles the generation of JOIN clauses among all the tables
      * selected for the SQLGenerator and the specified FROM table. 
@@ -190,6 +395,23 @@ public class SQLGenerator
         return buffer.toString();
     }
     
+    /** 
+     * Handles the generation of the WHERE clause.
+     * @return the WHERE clause for the SQL query.
+     */
+    private String generateWhere()
+    {
+        StringBuffer buffer = new StringBuffer();
+        
+        for(String condition : wheres)
+        {
+            buffer.append(buffer.length() > 0 ? "\n    and " : "\nwhere\n    ");
+            buffer.append(condition);
+        }
+        
+        return buffer.toString();
+    }
+    
     /** 
      * Handles the generation of the GROUP BY clause.
      * @return the GROUP BY clause for the SQL query.
@@ -200,9 +422,11 @@ public class SQLGenerator
         int aggregates = 0;
         int index = 0;
         
+        if(!groupingSets.isEmpty()) return generateGroupingSets();
+        
         for(Column column : selects)
         {
-            if(column instanceof Aggregate) 
+            if(column.isAggregate()) 
             {
                 aggregates++;
                 continue;
@@ -222,6 +446,63 @@ public class SQLGenerator
         return buffer.toString();
     }
     
+    /** 
+     * Handles the generation of the GROUP BY GROUPING SETS clause.
+     * @return the GROUP BY clause for the SQL query.
+     */
+    private String generateGroupingSets()
+    {
+        StringBuffer buffer = new StringBuffer("\ngroup by grouping sets (");
+        int index = 0;
+        
+        for(List<String> set : groupingSets)
+        {
+            if(index++ > 0) buffer.append(',');
+            
+            buffer.append("\n    (");
+            
+            for(int i=0; i<set.size(); i++)
+            {
+                if(i > 0) buffer.append(", ");
+                
+                buffer.append(getColumn(set.get(i)).getGroupBySQL());
+            }
+            
+            buffer.append(')');
+        }
+        
+        buffer.append("\n)");
+        
+        return buffer.toString();
+    }
+    
+    /**
+     * Generates the outer query computing the calculations from the columns
+     * of the generated query.
+     * @param query the generated query.
+     * @return the SQL query string.
+     */
+    private String generateCalculations(String query)
+    {
+        StringBuffer buffer = new StringBuffer("select\n");
+        int index = 0;
+        
+        for(Column column : selects)
+        {
+            if(hidden.contains(column.alias)) continue;
+            if(index++ > 0) buffer.append(",\n");
+            
+            buffer.append("    ");
+            buffer.append(column instanceof Calculation ? column.getSQL() : "\"" + column.alias + "\"");
+        }
+        
+        buffer.append("\nfrom (\n");
+        buffer.append(query);
+        buffer.append("\n) calculated");
+        
+        return buffer.toString();
+    }
+    
     /**
      * Generates the String with the full SQL query.
      * @return the SQL query string
@@ -230,12 +511,20 @@ public class SQLGenerator
     {
         StringBuffer buffer = new StringBuffer();
         Table from = tables.get(0);
+        boolean calculated = false;
+        String query;
         int index = 0;
         
         buffer.append("select\n");
         
         for(Column column : selects)
         {
+            if(column instanceof Calculation)
+            {
+                calculated = true;
+                continue;
+            }
+            
             if(index > 0) buffer.append(",\n");
               
             buffer.append("    ");
@@ -253,9 +542,40 @@ public class SQLGenerator
         
         if(caseSensitive) buffer.append('"');
         
+        if(tableSample != null) buffer.append(" " + tableSample);
+        
         buffer.append(generateJoins(from));
+        buffer.append(generateWhere());
         buffer.append(generateGroupBy());
         
+        query = calculated ? generateCalculations(buffer.toString()) : buffer.toString();
+        
+        if(rankAlias == null) return query;
+        
+        return "select *\nfrom (\n" + query + "\n) ranked\nwhere \"" + rankAlias + "\" <= " + rankLimit;
+    }
+    
+    /**
+     * Generates a CREATE TABLE ... AS statement that materializes the 
+     * results of the SQL query into a new table.
+     * @param name the name of the table to create.
+     * @return the DDL statement string
+     */
+    public String getCreateTableSQL(String name)
+    {
+        StringBuffer buffer = new StringBuffer();
+        
+        buffer.append("create table ");
+        
+        if(caseSensitive) buffer.append('"');
+        
+        buffer.append(name);
+        
+        if(caseSensitive) buffer.append('"');
+        
+        buffer.append(" as\n");
+        buffer.append(getSQL());
+        
         return buffer.toString();
     }
     
@@ -314,6 +634,16 @@ public class SQLGenerator
             return table;
         }
         
+        /**
+         * Returns true if the column computes an aggregate and is therefore
+         * excluded from the GROUP BY clause.
+         * @return true if the column is an aggregate
+         */
+        public boolean isAggregate()
+        {
+            return false;
+        }
+        
         /**
          * Returns the SQL component for the column, with the specified alias 
          * name if one exists.
@@ -322,15 +652,8 @@ public class SQLGenerator
         public String getSQL()
         {
             StringBuffer buffer = new StringBuffer();
-            String quotes = caseSensitive ? "\"" : "";
             
-            buffer.append(quotes);
-            buffer.append(table.getName());
-            buffer.append(quotes);
-            buffer.append('.');
-            buffer.append(quotes);
-            buffer.append(this.name);
-            buffer.append(quotes);
+            buffer.append(getColumnSQL(table, this.name));
             
             if(this.alias != null)
             {
@@ -350,18 +673,7 @@ public class SQLGenerator
          */
         public String getGroupBySQL()
         {
-            StringBuffer buffer = new StringBuffer();
-            String quotes = caseSensitive ? "\"" : "";
-            
-            buffer.append(quotes);
-            buffer.append(table.getName());
-            buffer.append(quotes);
-            buffer.append('.');
-            buffer.append(quotes);
-            buffer.append(this.name);
-            buffer.append(quotes);
-                
-            return buffer.toString();
+            return getColumnSQL(table, this.name);
         }
     }
     
@@ -401,6 +713,12 @@ public class SQLGenerator
             this.function = function;
         }
         
+        @Override
+        public boolean isAggregate()
+        {
+            return true;
+        }
+        
         /**
          * Returns the function of the Aggregate object
          * @return the String representing the object's function.
@@ -443,4 +761,76 @@ public class SQLGenerator
             return buffer.toString();
         }
     }
+    
+    /**
+     * Private class Expression, extends the Column object to select an 
+     * arbitrary SQL expression rather than a column of a table.
+     */
+    private class Expression extends Column
+    {
+        private boolean aggregate;
+        
+        /**
+         * Creates a new instance of an Expression object.
+         * @param sql the SQL expression.
+         * @param table Table referenced by the expression.
+         * @param alias the String with the expression's alias.
+         * @param aggregate true if the expression computes an aggregate.
+         */
+        public Expression(String sql, Table table, String alias, boolean aggregate)
+        {
+            super(sql, table, alias);
+            
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public boolean isAggregate()
+        {
+            return aggregate;
+        }
+        
+        @Override
+        public String getSQL()
+        {
+            if(this.alias == null) return this.name;
+            
+            return this.name + " as \"" + this.alias + "\"";
+        }
+
+        @Override
+        public String getGroupBySQL()
+        {
+            return this.name;
+        }
+    }
+    
+    /**
+     * Private class Calculation, extends the Column object to compute an
+     * expression over the aliases of other columns in an outer query.
+     */
+    private class Calculation extends Column
+    {
+        /**
+         * Creates a new instance of a Calculation object.
+         * @param sql the SQL expression.
+         * @param alias the String with the calculation's alias.
+         */
+        public Calculation(String sql, String alias)
+        {
+            super(sql, null, alias);
+        }
+
+        @Override
+        public boolean isAggregate()
+        {
+            return true;
+        }
+        
+        @Override
+        public String getSQL()
+        {
+            return this.name + " as \"" + this.alias + "\"";
+        }
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.sql;
+
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Generates the Microsoft SQL Server specific portions of SQL queries.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class SQLServerDialect extends Dialect
+{
+    @Override
+    public String getDateTruncSQL(String grain, String expression)
+    {
+        String checked = checkGrain(grain);
+        
+        // Day zero (1900-01-01) is a Monday, so whole weeks since then start on Monday
+        if(WEEK.equals(checked)) return "dateadd(day, datediff(day, 0, " + expression + ") / 7 * 7, 0)";
+        
+        return "dateadd(" + checked + ", datediff(" + checked + ", 0, " + expression + "), 0)";
+    }
+    
+    @Override
+    public String getApproximateCountDistinctSQL(String expression)
+    {
+        return "approx_count_distinct(" + expression + ")";
+    }
+    
+    /**
+     * SQL Server's TABLESAMPLE samples whole pages rather than rows. The error
+     * bounds of approximate reports assume rows are sampled independently, 
+     * and small tables may return no rows at all, so rows are sampled with 
+     * {@link #getSamplePredicateSQL(java.lang.String, double)} instead.
+     * @param rate the fraction of rows to sample
+     * @return null
+     */
+    @Override
+    public String getTableSampleSQL(double rate)
+    {
+        return null;
+    }
+
+    @Override
+    public String getSamplePredicateSQL(String key, double rate)
+    {
+        if(key != null) return "abs(checksum(" + key + ")) % 10000 < " + Math.round(rate * 10000);
+        
+        return "rand(checksum(newid())) < " + getNumberSQL(rate);
+    }
+
+    @Override
+    public String getStandardDeviationSQL(String expression)
+    {
+        return "stdev(" + expression + ")";
+    }
+    
+    @Override
+    public boolean isAggregateFilterSupported()
+    {
+        return false;
+    }
+    
+    @Override
+    public String getOrderBySQL(String expression, boolean descending)
+    {
+        // NULLS LAST is not supported, so order by a null key first
+        return "case when " + expression + " is null then 1 else 0 end, " + expression + (descending ? " desc" : " asc");
+    }
+    
+    @Override
+    public String getDateLiteralSQL(LocalDate date)
+    {
+        return "cast('" + date + "' as date)";
+    }
+    
+    @Override
+    public String getTimestampLiteralSQL(LocalDateTime timestamp)
+    {
+        return "cast('" + timestamp.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS")) + "' as datetime2)";
+    }
+    
+    @Override
+    public String getLiteralSQL(Object value)
+    {
+        if(value instanceof Boolean) return ((Boolean)value) ? "1" : "0";
+        
+        return super.getLiteralSQL(value);
+    }
+}
@@ -36,6 +36,7 @@ public class Table
     private String name;
     private String primaryKey;
     private List<ForeignKey> foreignKeys = new ArrayList<>();
+    private MemberCache members;
 
     /**
      * Creates a new instance of the Table object.
@@ -159,6 +160,18 @@ public class Table
         for(ForeignKey key : foreignKeys) key.setSource(this);
     }
 
+    /**
+     * Returns the cache of the distinct members of the columns of this table.
+     * The cache is created the first time it is requested.
+     * @return the MemberCache for this table.
+     */
+    public synchronized MemberCache getMemberCache()
+    {
+        if(members == null) members = new MemberCache(this);
+        
+        return members;
+    }
+    
     /**
      * Compares this Table to another Table first by reference, then
      * by instance fields (associated database, table name, and primary key),
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.stats;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Captures the number of rows in the fact table of a Star along with the
+ * number of distinct values (cardinality) of each Dimension. Used to estimate
+ * the cost of reports and the number of groups they produce. The minimum
+ * and maximum values of each Metric are captured as well.
+ * <br><br>
+ * Statistics are gathered by a {@link StatisticsCollector} and can be 
+ * persisted as JSON next to the model with {@link #save(java.io.File)}.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class StarStatistics
+{
+    private long rows;
+    private Map<String,Long> cardinalities = new HashMap<>();
+    private Map<String,Object> minimums = new HashMap<>();
+    private Map<String,Object> maximums = new HashMap<>();
+    private long collected;
+
+    /**
+     * Returns the number of rows in the fact table.
+     * @return the fact table row count
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Sets the number of rows in the fact table.
+     * @param rows the fact table row count
+     */
+    public void setRows(long rows)
+    {
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the time the statistics were collected in milliseconds since
+     * the epoch.
+     * @return the collection time or 0 if unknown
+     */
+    public long getCollected()
+    {
+        return collected;
+    }
+
+    /**
+     * Sets the time the statistics were collected.
+     * @param collected the collection time in milliseconds since the epoch
+     */
+    public void setCollected(long collected)
+    {
+        this.collected = collected;
+    }
+
+    /**
+     * Returns the cardinality of each Dimension keyed by Dimension name.
+     * @return the map of Dimension names to cardinalities
+     */
+    public Map<String,Long> getCardinalities()
+    {
+        return cardinalities;
+    }
+
+    /**
+     * Sets the cardinality of each Dimension keyed by Dimension name.
+     * @param cardinalities the map of Dimension names to cardinalities
+     */
+    public void setCardinalities(Map<String,Long> cardinalities)
+    {
+        this.cardinalities = cardinalities;
+    }
+    
+    /**
+     * Returns the number of distinct values of the Dimension. If the 
+     * cardinality is unknown, the fact table row count is returned as the 
+     * worst case.
+     * @param dimension the Dimension to look up
+     * @return the number of distinct values of the Dimension
+     */
+    public long getCardinality(Dimension dimension)
+    {
+        Long cardinality = cardinalities.get(dimension.getName());
+        
+        if(cardinality == null) return Math.max(rows, 1);
+        
+        return cardinality;
+    }
+    
+    /**
+     * Sets the number of distinct values of the Dimension.
+     * @param dimension the Dimension the cardinality describes
+     * @param cardinality the number of distinct values
+     */
+    public void setCardinality(Dimension dimension, long cardinality)
+    {
+        cardinalities.put(dimension.getName(), cardinality);
+    }
+    
+    /**
+     * Returns the key identifying a Metric in the minimum and maximum maps.
+     * @param metric the Metric
+     * @return the table and column of the Metric (e.g. FactSales.Quantity)
+     */
+    public static String getKey(Metric metric)
+    {
+        return metric.getTable().getName() + "." + metric.getColumn();
+    }
+    
+    /**
+     * Returns the minimum value of the Metric.
+     * @param metric the Metric to look up
+     * @return the minimum value or null if unknown
+     */
+    public Object getMinimum(Metric metric)
+    {
+        return minimums.get(getKey(metric));
+    }
+    
+    /**
+     * Returns the maximum value of the Metric.
+     * @param metric the Metric to look up
+     * @return the maximum value or null if unknown
+     */
+    public Object getMaximum(Metric metric)
+    {
+        return maximums.get(getKey(metric));
+    }
+    
+    /**
+     * Sets the minimum and maximum values of the Metric.
+     * @param metric the Metric the range describes
+     * @param minimum the minimum value
+     * @param maximum the maximum value
+     */
+    public void setRange(Metric metric, Object minimum, Object maximum)
+    {
+        minimums.put(getKey(metric), minimum);
+        maximums.put(getKey(metric), maximum);
+    }
+    
+    /**
+     * Estimates the number of groups produced when grouping the fact table by
+     * the given Dimensions. Assumes values are independent and uniformly
+     * distributed, so the estimate is the expected number of distinct 
+     * combinations hit when drawing the fact rows from every possible
+     * combination. The estimate never exceeds the fact table row count.
+     * @param dimensions the Dimensions being grouped on
+     * @return the estimated number of groups
+     */
+    public long estimateGroups(Iterable<Dimension> dimensions)
+    {
+        double combinations = 1;
+        
+        for(Dimension dimension : dimensions) combinations *= getCardinality(dimension);
+        
+        if(rows <= 0) return (long)Math.min(combinations, Long.MAX_VALUE);
+        if(combinations <= 1) return 1;
+        
+        return Math.max(1, Math.min(rows, Math.round(combinations * (1 - Math.exp(-rows / combinations)))));
+    }
+    
+    /**
+     * Converts the statistics to JSON.
+     * @return the statistics as a JSONObject
+     */
+    public JSONObject toJSON()
+    {
+        JSONObject json = new JSONObject();
+        JSONObject counts = new JSONObject();
+        JSONObject lower = new JSONObject();
+        JSONObject upper = new JSONObject();
+        
+        counts.putAll(cardinalities);
+        lower.putAll(minimums);
+        upper.putAll(maximums);
+        
+        json.put("rows", rows);
+        json.put("collected", collected);
+        json.put("cardinalities", counts);
+        json.put("minimums", lower);
+        json.put("maximums", upper);
+        
+        return json;
+    }
+    
+    /**
+     * Creates statistics from JSON produced by {@link #toJSON()}.
+     * @param json the statistics as a JSONObject
+     * @return the statistics
+     */
+    public static StarStatistics fromJSON(JSONObject json)
+    {
+        StarStatistics statistics = new StarStatistics();
+        JSONObject map;
+        
+        statistics.rows = json.getLong("rows", 0);
+        statistics.collected = json.getLong("collected", 0);
+        
+        if((map = json.getJSONObject("cardinalities")) != null)
+        {
+            for(String key : map.keySet()) statistics.cardinalities.put(key, map.getLong(key));
+        }
+        
+        if((map = json.getJSONObject("minimums")) != null) statistics.minimums.putAll(map);
+        if((map = json.getJSONObject("maximums")) != null) statistics.maximums.putAll(map);
+        
+        return statistics;
+    }
+    
+    /**
+     * Writes the statistics to a JSON file. The file is replaced atomically
+     * so readers never see a partially written file.
+     * @param file the file to write
+     */
+    public void save(File file)
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        
+        try
+        {
+            Files.write(temp.toPath(), toJSON().toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    /**
+     * Returns the file statistics for a model are persisted to. The file sits
+     * next to the model and is named after it (e.g. sales.xml is paired with 
+     * sales.stats.json).
+     * @param model the model file
+     * @return the statistics file
+     */
+    public static File getFile(File model)
+    {
+        String name = model.getName();
+        
+        if(name.toLowerCase().endsWith(".xml")) name = name.substring(0, name.length() - 4);
+        
+        return new File(model.getParentFile(), name + ".stats.json");
+    }
+    
+    /**
+     * Reads statistics written by {@link #save(java.io.File)}.
+     * @param file the file to read
+     * @return the statistics or null if the file does not exist
+     */
+    public static StarStatistics load(File file)
+    {
+        if(!file.exists()) return null;
+        
+        try
+        {
+            return fromJSON(new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)));
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+}
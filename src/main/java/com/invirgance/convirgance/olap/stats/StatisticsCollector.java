@@ -0,0 +1,243 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.stats;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.QueryCursor;
+import com.invirgance.convirgance.olap.sql.SQLGenerator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Gathers {@link StarStatistics} for a Star in a single scan of the fact 
+ * table. The scan counts the fact rows, counts the distinct values of each 
+ * Dimension, and finds the minimum and maximum of each Metric. Distinct 
+ * counts use the approximate distinct count of the {@link Dialect} where the
+ * database provides one. The scan runs at export priority when an
+ * {@link AdmissionController} is set, so that it waits behind interactive
+ * reports.
+ * 
+ * @author jbanes
+ */
+public class StatisticsCollector
+{
+    private static final String ROWS = "rows";
+    private static final String CARDINALITY_PREFIX = "Cardinality:";
+    private static final String MIN_PREFIX = "Min:";
+    private static final String MAX_PREFIX = "Max:";
+    
+    private Star star;
+    private DataSource source;
+    private Dialect dialect;
+    private boolean caseSensitive;
+    private int timeout;
+    private AdmissionController admission;
+
+    /**
+     * Creates a collector for the Star.
+     * @param star the Star to gather statistics for
+     * @param source the database containing the Star
+     */
+    public StatisticsCollector(Star star, DataSource source)
+    {
+        this.star = star;
+        this.source = source;
+    }
+
+    /**
+     * Returns the Dialect used to generate database specific SQL.
+     * @return the Dialect or null for the default ANSI dialect
+     */
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * Sets the Dialect used to generate database specific SQL.
+     * @param dialect the Dialect
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Returns true if identifiers are quoted.
+     * @return true if case sensitive
+     */
+    public boolean isCaseSensitive()
+    {
+        return caseSensitive;
+    }
+
+    /**
+     * Set to true to quote identifiers.
+     * @param caseSensitive true if case sensitive
+     */
+    public void setCaseSensitive(boolean caseSensitive)
+    {
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Returns the number of seconds the scan may run before it is cancelled.
+     * @return the timeout in seconds or 0 for no timeout
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Sets the number of seconds the scan may run before it is cancelled.
+     * @param timeout the timeout in seconds or 0 for no timeout
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the controller the scan must be admitted by before running.
+     * @return the admission controller or null if not controlled
+     */
+    public AdmissionController getAdmissionController()
+    {
+        return admission;
+    }
+
+    /**
+     * Sets the controller the scan must be admitted by before running. The
+     * scan is admitted at {@link AdmissionController#EXPORT} priority.
+     * @param admission the admission controller or null if not controlled
+     */
+    public void setAdmissionController(AdmissionController admission)
+    {
+        this.admission = admission;
+    }
+    
+    private List<Metric> getMetrics()
+    {
+        Map<String,Metric> metrics = new LinkedHashMap<>();
+        
+        for(Metric metric : star.getMetrics()) metrics.put(StarStatistics.getKey(metric), metric);
+        
+        for(Measure measure : star.getMeasures())
+        {
+            if(measure.getMetric() != null) metrics.putIfAbsent(StarStatistics.getKey(measure.getMetric()), measure.getMetric());
+        }
+        
+        return new ArrayList<>(metrics.values());
+    }
+    
+    /**
+     * Generates the query scanning the fact table for statistics.
+     * @return the SQL query as a string
+     */
+    public String getSQL()
+    {
+        SQLGenerator generator = new SQLGenerator();
+        String key;
+        
+        generator.setCaseSensitive(caseSensitive);
+        generator.setDialect(dialect);
+        generator.addTable(star.getFact());
+        generator.addAggregateExpression("count(*)", star.getFact(), ROWS);
+        
+        for(Dimension dimension : star.getDimensions())
+        {
+            generator.addAggregateExpression(generator.getDialect().getApproximateCountDistinctSQL(dimension.getSQL(generator)), dimension.getTable(), CARDINALITY_PREFIX + dimension.getName());
+        }
+        
+        for(Metric metric : getMetrics())
+        {
+            key = StarStatistics.getKey(metric);
+            
+            generator.addAggregate("min", metric.getColumn(), metric.getTable(), MIN_PREFIX + key);
+            generator.addAggregate("max", metric.getColumn(), metric.getTable(), MAX_PREFIX + key);
+        }
+        
+        return generator.getSQL();
+    }
+    
+    private static Object toValue(Object value)
+    {
+        if(value == null || value instanceof Number || value instanceof Boolean) return value;
+        
+        return value.toString();
+    }
+    
+    /**
+     * Converts the row returned by {@link #getSQL()} into statistics.
+     * @param row the result of the statistics query
+     * @return the statistics
+     */
+    public StarStatistics getStatistics(JSONObject row)
+    {
+        StarStatistics statistics = new StarStatistics();
+        String key;
+        
+        statistics.setRows(((Number)row.get(ROWS)).longValue());
+        statistics.setCollected(System.currentTimeMillis());
+        
+        for(Dimension dimension : star.getDimensions())
+        {
+            statistics.setCardinality(dimension, ((Number)row.get(CARDINALITY_PREFIX + dimension.getName())).longValue());
+        }
+        
+        for(Metric metric : getMetrics())
+        {
+            key = StarStatistics.getKey(metric);
+            
+            statistics.setRange(metric, toValue(row.get(MIN_PREFIX + key)), toValue(row.get(MAX_PREFIX + key)));
+        }
+        
+        return statistics;
+    }
+    
+    /**
+     * Scans the fact table and returns the statistics of the Star.
+     * @return the statistics
+     */
+    public StarStatistics collect()
+    {
+        try(QueryCursor cursor = new QueryCursor(source, getSQL()))
+        {
+            cursor.setTimeout(timeout);
+            cursor.setAdmissionController(admission, AdmissionController.EXPORT);
+            
+            for(JSONObject row : cursor) return getStatistics(row);
+        }
+        
+        return new StarStatistics();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.dbms.DBMS;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.sql.MemberCache;
+import com.invirgance.convirgance.olap.sql.MemberIndex;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.List;
+
+/**
+ * Typeahead search over the distinct members of a Dimension for use in 
+ * filter pickers. The request parameters name the "dimension" and the 
+ * "search" text typed so far. Members starting with the text are returned 
+ * by default. Set "match" to "contains" to also return members containing 
+ * the text anywhere. The optional "limit" caps the number of members
+ * returned. One record is returned per member keyed by the dimension name.
+ * <br><br>
+ * Members are served from the {@link MemberCache} of the dimension's table
+ * so that keystrokes never query the database once the members are loaded.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class DimensionMembersBinding extends StarQueryBinding
+{
+    private int defaultLimit = 20;
+    private int maxLimit = 100;
+    private long refreshInterval = 600000;
+
+    /**
+     * Returns the number of members returned when the request has no limit.
+     * 
+     * @return the default limit
+     */
+    public int getDefaultLimit()
+    {
+        return defaultLimit;
+    }
+
+    /**
+     * Sets the number of members returned when the request has no limit.
+     * Defaults to 20.
+     * 
+     * @param defaultLimit the default limit
+     */
+    public void setDefaultLimit(int defaultLimit)
+    {
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Returns the largest limit a request may ask for.
+     * 
+     * @return the maximum limit
+     */
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    /**
+     * Sets the largest limit a request may ask for. Larger limits are 
+     * reduced to this value. Defaults to 100.
+     * 
+     * @param maxLimit the maximum limit
+     */
+    public void setMaxLimit(int maxLimit)
+    {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Returns the number of milliseconds before members are reloaded.
+     * 
+     * @return the refresh interval in milliseconds
+     */
+    public long getRefreshInterval()
+    {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds before members are reloaded in the 
+     * background. Defaults to 10 minutes.
+     * 
+     * @param refreshInterval the refresh interval in milliseconds
+     */
+    public void setRefreshInterval(long refreshInterval)
+    {
+        this.refreshInterval = refreshInterval;
+    }
+    
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        Star star = loadStar();
+        Dimension dimension = star.getDimension(parameters.getString("dimension"));
+        String search = parameters.getString("search", "");
+        int limit = Math.min(parameters.getInt("limit", defaultLimit), maxLimit);
+        MemberCache cache;
+        MemberIndex index;
+        List<Object> members;
+        JSONObject record;
+        
+        if(dimension == null) throw new ConvirganceException("Dimension [" + parameters.getString("dimension") + "] not found!");
+        
+        cache = dimension.getTable().getMemberCache();
+        
+        cache.setRefreshInterval(refreshInterval);
+        cache.setAdmissionController(getAdmissionController());
+        
+        index = cache.getIndex(DBMS.lookup(getJndiName()).getSource(), dimension.getColumn(), isCaseSensitive());
+        
+        if("contains".equals(parameters.getString("match", "prefix"))) members = index.findSubstring(search, limit);
+        else members = index.findPrefix(search, limit);
+        
+        for(Object member : members)
+        {
+            record = new JSONObject();
+            
+            record.put(dimension.getName(), member);
+            results.add(record);
+        }
+        
+        return results;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.export.ExportJob;
+import com.invirgance.convirgance.olap.export.ExportManager;
+import com.invirgance.convirgance.web.binding.Binding;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Downloads a completed export started by {@link ExportSubmitBinding} in 
+ * chunks. The "id" parameter identifies the job and an optional "range" 
+ * parameter takes the value of an HTTP Range header (e.g. bytes=0-1048575,
+ * bytes=1048576- or bytes=-4096) so that interrupted downloads can resume.
+ * Chunks are limited to maxChunkSize bytes; a client reads the whole file 
+ * by requesting the next offset until "complete" is true.
+ * <br><br>
+ * Returns a single record with the "offset", "length", and total "size" of
+ * the file, the equivalent "contentRange" header value, and the bytes 
+ * themselves encoded as Base64 in "data". Bindings can only return records,
+ * so the chunk is carried in JSON rather than as a 206 response. Base64 
+ * adds a third to the size of each chunk.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class ExportDownloadBinding implements Binding
+{
+    private String exports = "exports";
+    private int maxChunkSize = 1048576;
+
+    /**
+     * Get the name of the export manager to download from.
+     * 
+     * @return the export manager name
+     */
+    public String getExports()
+    {
+        return exports;
+    }
+
+    /**
+     * Set the name of the export manager to download from. Must match the 
+     * {@link ExportSubmitBinding}. Defaults to "exports".
+     * 
+     * @param exports the export manager name
+     */
+    public void setExports(String exports)
+    {
+        this.exports = exports;
+    }
+
+    /**
+     * Get the largest number of bytes returned per request.
+     * 
+     * @return the maximum chunk size in bytes
+     */
+    public int getMaxChunkSize()
+    {
+        return maxChunkSize;
+    }
+
+    /**
+     * Set the largest number of bytes returned per request. Defaults to 1MB.
+     * 
+     * @param maxChunkSize the maximum chunk size in bytes
+     */
+    public void setMaxChunkSize(int maxChunkSize)
+    {
+        this.maxChunkSize = maxChunkSize;
+    }
+    
+    /**
+     * Parses the value of an HTTP Range header holding a single byte range.
+     * 
+     * @param range the header value or null for the whole file
+     * @param size the size of the file
+     * @return the first and last byte of the range, inclusive
+     */
+    static long[] getRange(String range, long size)
+    {
+        String[] bounds;
+        long start;
+        long end;
+        
+        if(range == null || range.trim().isEmpty()) return new long[] { 0, size - 1 };
+        
+        range = range.trim();
+        
+        if(!range.startsWith("bytes=") || range.contains(",")) throw new ConvirganceException("Unsupported range [" + range + "]");
+        
+        bounds = range.substring(6).split("-", -1);
+        
+        try
+        {
+            if(bounds.length != 2) throw new NumberFormatException();
+            
+            if(bounds[0].isEmpty())
+            {
+                start = Math.max(0, size - Long.parseLong(bounds[1]));
+                end = size - 1;
+            }
+            else
+            {
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(bounds[1]));
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            throw new ConvirganceException("Invalid range [" + range + "]");
+        }
+        
+        if(start > end && !(size == 0 && start == 0)) throw new ConvirganceException("Unsatisfiable range [" + range + "] for " + size + " bytes");
+        
+        return new long[] { start, end };
+    }
+    
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        JSONObject record = new JSONObject();
+        ExportJob job = ExportManager.get(exports).getJob(parameters.getString("id"));
+        ByteBuffer buffer;
+        byte[] data;
+        long[] range;
+        long size;
+        
+        if(job == null) throw new ConvirganceException("Export [" + parameters.getString("id") + "] not found!");
+        if(!job.getState().equals(ExportJob.COMPLETE)) throw new ConvirganceException("Export [" + job.getId() + "] is " + job.getState());
+        
+        size = job.getSize();
+        range = getRange(parameters.getString("range"), size);
+        buffer = job.read(range[0], (int)Math.min(maxChunkSize, range[1] - range[0] + 1));
+        data = new byte[buffer.remaining()];
+        
+        buffer.get(data);
+        
+        record.put("id", job.getId());
+        record.put("format", job.getFormat());
+        record.put("offset", range[0]);
+        record.put("length", data.length);
+        record.put("size", size);
+        record.put("contentRange", "bytes " + range[0] + "-" + (range[0] + data.length - 1) + "/" + size);
+        record.put("complete", range[0] + data.length >= size);
+        record.put("data", Base64.getEncoder().encodeToString(data));
+        
+        results.add(record);
+        
+        return results;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.export.ExportJob;
+import com.invirgance.convirgance.olap.export.ExportManager;
+import com.invirgance.convirgance.web.binding.Binding;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+
+/**
+ * Reports the state of exports started by {@link ExportSubmitBinding}. With
+ * an "id" parameter a single record describes that job, otherwise one 
+ * record is returned per job that has not expired. Setting "cancel" to true
+ * along with an "id" cancels the job.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class ExportStatusBinding implements Binding
+{
+    private String exports = "exports";
+
+    /**
+     * Get the name of the export manager to report on.
+     * 
+     * @return the export manager name
+     */
+    public String getExports()
+    {
+        return exports;
+    }
+
+    /**
+     * Set the name of the export manager to report on. Must match the 
+     * {@link ExportSubmitBinding}. Defaults to "exports".
+     * 
+     * @param exports the export manager name
+     */
+    public void setExports(String exports)
+    {
+        this.exports = exports;
+    }
+    
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        ExportManager manager = ExportManager.get(exports);
+        ExportJob job;
+        
+        if(parameters.get("id") == null)
+        {
+            for(ExportJob current : manager.getJobs()) results.add(current.toJSON());
+            
+            return results;
+        }
+        
+        job = manager.getJob(parameters.getString("id"));
+        
+        if(job == null) throw new ConvirganceException("Export [" + parameters.getString("id") + "] not found!");
+        if(Boolean.parseBoolean(String.valueOf(parameters.get("cancel")))) job.cancel();
+        
+        results.add(job.toJSON());
+        
+        return results;
+    }
+}
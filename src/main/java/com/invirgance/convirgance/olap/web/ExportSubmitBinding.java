@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.dbms.DBMS;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.engine.SQLReportExecutor;
+import com.invirgance.convirgance.olap.export.ExportJob;
+import com.invirgance.convirgance.olap.export.ExportManager;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.io.File;
+
+/**
+ * Starts an asynchronous export of the report described by the request 
+ * parameters accepted by {@link StarQueryBinding}. The report is executed 
+ * at export priority by a background worker of the named 
+ * {@link ExportManager} and written to local disk. Exports always query the
+ * database directly with their own timeout. They bypass the report cache, 
+ * coalescing, local execution, and the interactive timeouts. An optional "format" 
+ * parameter selects "csv" (gzip compressed) or "columnar". Returns a single
+ * record describing the queued job, whose "id" is passed to 
+ * {@link ExportStatusBinding} and {@link ExportDownloadBinding}.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class ExportSubmitBinding extends StarQueryBinding
+{
+    private String exports = "exports";
+    private String directory;
+    private int maxConcurrentExports = 2;
+    private long exportTimeToLive = 3600000;
+    private String defaultFormat = ExportManager.CSV;
+    private int exportTimeout;
+
+    /**
+     * Get the name of the export manager shared with the status and 
+     * download bindings.
+     * 
+     * @return the export manager name
+     */
+    public String getExports()
+    {
+        return exports;
+    }
+
+    /**
+     * Set the name of the export manager shared with the status and download
+     * bindings. Defaults to "exports".
+     * 
+     * @param exports the export manager name
+     */
+    public void setExports(String exports)
+    {
+        this.exports = exports;
+    }
+
+    /**
+     * Get the directory exported files are written to.
+     * 
+     * @return the export directory or null for the default
+     */
+    public String getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Set the directory exported files are written to. Defaults to a 
+     * convirgance-exports directory under java.io.tmpdir.
+     * 
+     * @param directory the export directory
+     */
+    public void setDirectory(String directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the largest number of exports written at once.
+     * 
+     * @return the maximum number of concurrent exports
+     */
+    public int getMaxConcurrentExports()
+    {
+        return maxConcurrentExports;
+    }
+
+    /**
+     * Set the largest number of exports written at once. Defaults to 2.
+     * 
+     * @param maxConcurrentExports the maximum number of concurrent exports
+     */
+    public void setMaxConcurrentExports(int maxConcurrentExports)
+    {
+        this.maxConcurrentExports = maxConcurrentExports;
+    }
+
+    /**
+     * Get the number of milliseconds finished exports are kept for download.
+     * 
+     * @return the time to live in milliseconds
+     */
+    public long getExportTimeToLive()
+    {
+        return exportTimeToLive;
+    }
+
+    /**
+     * Set the number of milliseconds finished exports are kept for download.
+     * Defaults to 1 hour.
+     * 
+     * @param exportTimeToLive the time to live in milliseconds
+     */
+    public void setExportTimeToLive(long exportTimeToLive)
+    {
+        this.exportTimeToLive = exportTimeToLive;
+    }
+
+    /**
+     * Get the format used when the request does not specify one.
+     * 
+     * @return the default format
+     */
+    public String getDefaultFormat()
+    {
+        return defaultFormat;
+    }
+
+    /**
+     * Set the format used when the request does not specify one. Defaults 
+     * to csv.
+     * 
+     * @param defaultFormat csv or columnar
+     */
+    public void setDefaultFormat(String defaultFormat)
+    {
+        this.defaultFormat = defaultFormat;
+    }
+    
+    /**
+     * Get the number of seconds an export query may run.
+     * 
+     * @return the export timeout in seconds or 0 for no timeout
+     */
+    public int getExportTimeout()
+    {
+        return exportTimeout;
+    }
+
+    /**
+     * Set the number of seconds an export query may run before it is 
+     * cancelled. The interactive timeout of the binding is not applied to 
+     * exports. Defaults to 0 for no timeout.
+     * 
+     * @param exportTimeout the export timeout in seconds
+     */
+    public void setExportTimeout(int exportTimeout)
+    {
+        this.exportTimeout = exportTimeout;
+    }
+    
+    /**
+     * Returns the export manager configured by this binding.
+     * 
+     * @return the shared export manager
+     */
+    protected ExportManager getExportManager()
+    {
+        ExportManager manager = ExportManager.get(exports);
+        
+        if(directory != null) manager.setDirectory(new File(directory));
+        
+        manager.setMaxConcurrent(maxConcurrentExports);
+        manager.setTimeToLive(exportTimeToLive);
+        
+        return manager;
+    }
+
+    /**
+     * Queries the database for every row of the report at export priority.
+     * 
+     * @param generator the report to export
+     * @param dbms the database to execute against
+     * @return the rows of the report
+     */
+    protected Iterable<JSONObject> export(ReportGenerator generator, DBMS dbms)
+    {
+        SQLReportExecutor executor = new SQLReportExecutor(dbms.getSource());
+        String sql = generator.getSQL();
+        
+        if(isLogQuery()) System.out.println(sql);
+        
+        executor.setTimeout(exportTimeout);
+        executor.setAdmissionController(getAdmissionController());
+        
+        return executor.query(sql, AdmissionController.EXPORT);
+    }
+
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        ReportGenerator generator;
+        ExportJob job;
+        DBMS dbms;
+        
+        loadStar();
+        
+        generator = getReport(parameters);
+        
+        if(generator == null) throw new ConvirganceException("An export requires dimensions or measures");
+        
+        dbms = DBMS.lookup(getJndiName());
+        job = getExportManager().submit(parameters.getString("format", defaultFormat), () -> export(generator, dbms));
+        
+        results.add(job.toJSON());
+        
+        return results;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Answers a report in stages of increasing completeness. Every stage starts
+ * at once on a background thread: each sample rate runs the report against
+ * that fraction of the fact table and a final stage runs it exactly. One 
+ * message is returned as each stage finishes, containing the "completeness" 
+ * of the stage between 0 and 1, whether the results are "exact", and the 
+ * "results" themselves. Iteration ends with the exact stage.
+ * <br><br>
+ * Messages are only returned when they are more complete than the last one,
+ * so a sample finishing after a larger sample or after the exact results is
+ * dropped. A failed sample is skipped while a failure of the exact stage is
+ * thrown. Stages that are still running when the exact results arrive are 
+ * cancelled, as is every stage when the iterator or the results are closed
+ * before then. Cancelling a stage closes its results so the query stops.
+ * <br><br>
+ * Stages of every report share a pool of at most {@link #MAX_THREADS} 
+ * threads. Stages beyond that wait for a thread.
+ * 
+ * @author jbanes
+ */
+public class ProgressiveResults implements Iterable<JSONObject>, AutoCloseable
+{
+    /**
+     * The largest number of stages executed at once across all reports
+     */
+    public static final int MAX_THREADS = 16;
+    
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "ProgressiveResults Stage");
+        
+        // Otherwise inherited from whichever request created the thread
+        thread.setContextClassLoader(ProgressiveResults.class.getClassLoader());
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    static
+    {
+        executor.allowCoreThreadTimeOut(true);
+    }
+    
+    private List<Double> rates = new ArrayList<>();
+    private Function<Double,Iterable<JSONObject>> stage;
+    private final List<Stages> open = new ArrayList<>();
+
+    /**
+     * Creates progressive results for a report.
+     * @param rates the sample rates of the estimates to return before the 
+     * exact results. Rates outside of 0 to 1 exclusive are ignored.
+     * @param stage executes the report at the given sample rate, where a rate
+     * of 1 requests the exact results
+     */
+    public ProgressiveResults(List<Double> rates, Function<Double,Iterable<JSONObject>> stage)
+    {
+        for(Double rate : rates)
+        {
+            if(rate != null && rate > 0 && rate < 1 && !this.rates.contains(rate)) this.rates.add(rate);
+        }
+        
+        Collections.sort(this.rates);
+        
+        this.rates.add(1.0);
+        this.stage = stage;
+    }
+    
+    /**
+     * Returns the completeness of each stage in ascending order, ending with
+     * 1 for the exact stage.
+     * @return the stage completeness values
+     */
+    public List<Double> getRates()
+    {
+        return rates;
+    }
+    
+    private static void close(Iterable<JSONObject> results)
+    {
+        if(!(results instanceof AutoCloseable)) return;
+        
+        try
+        {
+            ((AutoCloseable)results).close();
+        }
+        catch(Exception e)
+        {
+            // The stage is being abandoned so there is no one to report to
+        }
+    }
+    
+    @Override
+    public Iterator<JSONObject> iterator()
+    {
+        Stages stages = new Stages();
+        
+        synchronized(open)
+        {
+            open.add(stages);
+        }
+        
+        return stages;
+    }
+    
+    /**
+     * Cancels every stage still running.
+     */
+    @Override
+    public void close()
+    {
+        List<Stages> list;
+        
+        synchronized(open)
+        {
+            list = new ArrayList<>(open);
+        }
+        
+        for(Stages stages : list) stages.close();
+    }
+    
+    private class Stages implements Iterator<JSONObject>, AutoCloseable
+    {
+        private CompletionService<JSONObject> completion = new ExecutorCompletionService<>(executor);
+        private Map<Future<JSONObject>,Double> stages = new HashMap<>();
+        private Map<Double,Iterable<JSONObject>> running = new HashMap<>();
+        private JSONObject next;
+        private double completeness;
+        private boolean done;
+        private boolean closed;
+        
+        public Stages()
+        {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            
+            for(Double rate : rates)
+            {
+                stages.put(completion.submit(() -> {
+                    Thread thread = Thread.currentThread();
+                    ClassLoader previous = thread.getContextClassLoader();
+                    
+                    // Containers resolve resources through the context class loader
+                    thread.setContextClassLoader(loader);
+                    
+                    try
+                    {
+                        return execute(rate);
+                    }
+                    finally
+                    {
+                        thread.setContextClassLoader(previous);
+                    }
+                }), rate);
+            }
+        }
+        
+        private JSONObject execute(double rate)
+        {
+            JSONObject message = new JSONObject();
+            JSONArray<JSONObject> results = new JSONArray<>();
+            Iterable<JSONObject> rows = stage.apply(rate);
+            
+            synchronized(this)
+            {
+                if(closed) 
+                {
+                    ProgressiveResults.close(rows);
+                    
+                    throw new ConvirganceException("Stage cancelled");
+                }
+                
+                running.put(rate, rows);
+            }
+            
+            try
+            {
+                for(JSONObject record : rows) results.add(record);
+            }
+            finally
+            {
+                synchronized(this)
+                {
+                    running.remove(rate);
+                }
+            }
+            
+            message.put("completeness", rate);
+            message.put("exact", rate >= 1);
+            message.put("results", results);
+            
+            return message;
+        }
+        
+        private void cancel()
+        {
+            List<Iterable<JSONObject>> list;
+            
+            for(Future<JSONObject> future : stages.keySet()) future.cancel(true);
+            
+            synchronized(this)
+            {
+                closed = true;
+                list = new ArrayList<>(running.values());
+            }
+            
+            // Interrupting the thread won't stop a query blocked in the driver
+            for(Iterable<JSONObject> rows : list) ProgressiveResults.close(rows);
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            Future<JSONObject> future;
+            double rate;
+            
+            if(next != null) return true;
+            
+            while(!done)
+            {
+                try
+                {
+                    future = completion.take();
+                    rate = stages.get(future);
+                    
+                    if(rate >= 1)
+                    {
+                        done = true;
+                        cancel();
+                    }
+                    
+                    next = future.get();
+                }
+                catch(ExecutionException | CancellationException e)
+                {
+                    if(done) throw new ConvirganceException(e.getCause() != null ? e.getCause() : e);
+                    
+                    continue;
+                }
+                catch(InterruptedException e)
+                {
+                    close();
+                    Thread.currentThread().interrupt();
+                    
+                    throw new ConvirganceException(e);
+                }
+                
+                if(rate > completeness)
+                {
+                    completeness = rate;
+                    
+                    return true;
+                }
+                
+                next = null;
+            }
+            
+            synchronized(open)
+            {
+                open.remove(this);
+            }
+            
+            return false;
+        }
+        
+        @Override
+        public JSONObject next()
+        {
+            JSONObject message;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            message = next;
+            next = null;
+            
+            return message;
+        }
+        
+        @Override
+        public void close()
+        {
+            done = true;
+            next = null;
+            
+            cancel();
+            
+            synchronized(open)
+            {
+                open.remove(this);
+            }
+        }
+    }
+}
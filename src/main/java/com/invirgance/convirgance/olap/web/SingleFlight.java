@@ -0,0 +1,472 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical queries that are running at the same time so that only
+ * one of them executes. The first request for a key starts the query on a 
+ * background thread. The supplier of the results is also called on that 
+ * thread, so slow work done by the supplier never holds up other keys. 
+ * Every request for the same key made before the first row is released 
+ * subscribes to the same results, which are streamed to each subscriber as 
+ * they arrive. Once the query completes, the key is forgotten and the next
+ * request executes the query again.
+ * <br><br>
+ * At most maxBuffered rows are held for a query. Rows every subscriber has
+ * read are released, and the query waits for the slowest subscriber once 
+ * the buffer is full. Each subscriber receives its own copy of every row, 
+ * so subscribers may modify the rows they read.
+ * <br><br>
+ * Each subscriber is independent. A subscriber that is closed, or that stops
+ * reading for longer than the idle timeout, is dropped without affecting the
+ * others. The query itself is only cancelled once every subscriber has been
+ * dropped.
+ * 
+ * @author jbanes
+ */
+public class SingleFlight
+{
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "SingleFlight");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
+    private final Map<String,Flight> flights = new HashMap<>();
+    private int idleTimeout;
+    private int maxBuffered = 1000;
+
+    /**
+     * Returns the number of seconds a subscriber may go without reading a 
+     * row before it is dropped.
+     * @return the idle timeout in seconds or 0 for no idle timeout
+     */
+    public int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of seconds a subscriber may go without reading a row
+     * before it is dropped.
+     * @param idleTimeout the idle timeout in seconds or 0 for no idle timeout
+     */
+    public void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the maximum number of rows held for each query. Defaults to
+     * 1000.
+     * @return the maximum number of rows buffered per query
+     */
+    public int getMaxBuffered()
+    {
+        return maxBuffered;
+    }
+
+    /**
+     * Sets the maximum number of rows held for each query. The query waits
+     * for the slowest subscriber once this many rows are buffered.
+     * @param maxBuffered the maximum number of rows buffered per query
+     */
+    public void setMaxBuffered(int maxBuffered)
+    {
+        if(maxBuffered < 1) throw new IllegalArgumentException("maxBuffered must be at least 1");
+        
+        this.maxBuffered = maxBuffered;
+    }
+    
+    /**
+     * Returns the number of distinct queries currently running.
+     * @return the number of queries in flight
+     */
+    public int getFlights()
+    {
+        synchronized(flights)
+        {
+            return flights.size();
+        }
+    }
+    
+    /**
+     * Returns the results of the query identified by the key, joining the 
+     * query already running for that key if there is one. The query is not
+     * started or joined until iteration begins.
+     * @param key the key identifying identical queries
+     * @param query supplies the results of the query if it must be executed
+     * @return the shared results of the query
+     */
+    public Iterable<JSONObject> execute(String key, Supplier<Iterable<JSONObject>> query)
+    {
+        return () -> subscribe(key, query);
+    }
+    
+    private Iterator<JSONObject> subscribe(String key, Supplier<Iterable<JSONObject>> query)
+    {
+        Flight flight;
+        Subscriber subscriber;
+        
+        synchronized(flights)
+        {
+            flight = flights.get(key);
+            
+            if(flight != null)
+            {
+                subscriber = new Subscriber(flight);
+                
+                if(flight.join(subscriber)) return subscriber;
+            }
+            
+            flight = new Flight(key, query, maxBuffered);
+            subscriber = new Subscriber(flight);
+            
+            flight.join(subscriber);
+            flights.put(key, flight);
+            executor.execute(flight);
+        }
+        
+        return subscriber;
+    }
+    
+    private class Flight implements Runnable
+    {
+        private String key;
+        private Supplier<Iterable<JSONObject>> query;
+        private Iterable<JSONObject> source;
+        private int maxBuffered;
+        private List<JSONObject> rows = new ArrayList<>();
+        private long offset;
+        private List<Subscriber> subscribers = new ArrayList<>();
+        private boolean done;
+        private boolean abandoned;
+        private RuntimeException error;
+
+        public Flight(String key, Supplier<Iterable<JSONObject>> query, int maxBuffered)
+        {
+            this.key = key;
+            this.query = query;
+            this.maxBuffered = maxBuffered;
+        }
+        
+        public synchronized boolean join(Subscriber subscriber)
+        {
+            // A subscriber joining late would miss the rows already released
+            if(done || abandoned || offset > 0) return false;
+            
+            subscribers.add(subscriber);
+            
+            return true;
+        }
+        
+        public void leave(Subscriber subscriber)
+        {
+            synchronized(this)
+            {
+                subscribers.remove(subscriber);
+                notifyAll();
+
+                if(!subscribers.isEmpty() || done) return;
+
+                abandoned = true;
+            }
+            
+            // Lock on flights is taken outside the flight to preserve lock ordering
+            forget();
+            closeSource();
+        }
+        
+        private void closeSource()
+        {
+            Iterable<JSONObject> source;
+            
+            synchronized(this)
+            {
+                source = this.source;
+                this.source = null;
+            }
+            
+            if(source instanceof AutoCloseable) 
+            {
+                try
+                {
+                    ((AutoCloseable)source).close();
+                }
+                catch(Exception e)
+                {
+                    // Abandoned by every subscriber so there is no one to report to
+                }
+            }
+        }
+        
+        private void forget()
+        {
+            synchronized(flights)
+            {
+                if(flights.get(key) == this) flights.remove(key);
+            }
+        }
+        
+        private boolean isAbandoned()
+        {
+            List<Subscriber> idle = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            
+            synchronized(this)
+            {
+                if(idleTimeout <= 0) return abandoned;
+                
+                for(Subscriber subscriber : subscribers)
+                {
+                    if(now - subscriber.accessed > idleTimeout * 1000L) idle.add(subscriber);
+                }
+            }
+            
+            for(Subscriber subscriber : idle) subscriber.close();
+            
+            synchronized(this)
+            {
+                return abandoned;
+            }
+        }
+        
+        /**
+         * Releases the rows every subscriber has read once at least half of
+         * the buffer can be freed, so rows are not shifted one at a time.
+         */
+        private void release()
+        {
+            long read = Long.MAX_VALUE;
+            int count;
+            
+            for(Subscriber subscriber : subscribers) read = Math.min(read, subscriber.index);
+            
+            count = (int)Math.min(read - offset, rows.size());
+            
+            if(count < 1 || count < Math.min(rows.size(), Math.max(1, maxBuffered / 2))) return;
+            
+            rows.subList(0, count).clear();
+            offset += count;
+        }
+        
+        private boolean offer(JSONObject row) throws InterruptedException
+        {
+            while(!isAbandoned())
+            {
+                synchronized(this)
+                {
+                    if(rows.size() >= maxBuffered) release();
+                    
+                    if(rows.size() < maxBuffered)
+                    {
+                        rows.add(row);
+                        notifyAll();
+                        
+                        return true;
+                    }
+                    
+                    // Wake periodically to drop idle subscribers
+                    if(!abandoned) wait(idleTimeout > 0 ? 1000 : 0);
+                }
+            }
+            
+            return false;
+        }
+
+        @Override
+        public void run()
+        {
+            Iterable<JSONObject> source;
+            boolean abandoned;
+            
+            try
+            {
+                source = query.get();
+                
+                synchronized(this)
+                {
+                    this.source = source;
+                    abandoned = this.abandoned;
+                }
+                
+                // Every subscriber left while the supplier was running
+                if(abandoned)
+                {
+                    closeSource();
+                    return;
+                }
+                
+                for(JSONObject row : source)
+                {
+                    if(!offer(row)) return;
+                }
+            }
+            catch(InterruptedException e)
+            {
+                synchronized(this)
+                {
+                    error = new ConvirganceException(e);
+                }
+            }
+            catch(RuntimeException e)
+            {
+                synchronized(this)
+                {
+                    error = e;
+                }
+            }
+            finally
+            {
+                forget();
+                
+                synchronized(this)
+                {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+        
+        public synchronized JSONObject next(Subscriber subscriber)
+        {
+            JSONObject row;
+            
+            while(subscriber.index - offset >= rows.size() && !done && !abandoned)
+            {
+                try
+                {
+                    wait();
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    
+                    throw new ConvirganceException(e);
+                }
+            }
+            
+            if(subscriber.index - offset < rows.size()) 
+            {
+                row = rows.get((int)(subscriber.index++ - offset));
+                
+                // The query may be waiting on this subscriber
+                if(rows.size() >= maxBuffered) notifyAll();
+                
+                return row;
+            }
+            
+            if(error != null) throw error;
+            if(abandoned) throw new ConvirganceException("Query cancelled");
+            
+            return null;
+        }
+    }
+    
+    private class Subscriber implements Iterator<JSONObject>, AutoCloseable
+    {
+        private Flight flight;
+        private long index;
+        private JSONObject next;
+        private boolean closed;
+        private volatile long accessed = System.currentTimeMillis();
+
+        public Subscriber(Flight flight)
+        {
+            this.flight = flight;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            JSONObject row;
+            
+            accessed = System.currentTimeMillis();
+            
+            if(next != null) return true;
+            if(closed) return false;
+            
+            try
+            {
+                row = flight.next(this);
+            }
+            catch(RuntimeException e)
+            {
+                close();
+                
+                throw e;
+            }
+            
+            if(row == null) 
+            {
+                close();
+                
+                return false;
+            }
+            
+            next = new JSONObject();
+            next.putAll(row);
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject record;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            record = next;
+            next = null;
+            
+            return record;
+        }
+
+        @Override
+        public void close()
+        {
+            synchronized(this)
+            {
+                if(closed) return;
+                
+                closed = true;
+            }
+            
+            flight.leave(this);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.dbms.DBMS;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.SharedScan;
+import com.invirgance.convirgance.olap.SharedScanPlanner;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executes a batch of reports against a single Star in one request. The 
+ * request parameters contain a "reports" array where each entry has an "id"
+ * along with the "dimensions" and "measures" arrays accepted by 
+ * {@link StarQueryBinding}. The reports are executed concurrently and one
+ * record is returned per report containing its "id" and either its 
+ * "results" or the "error" that prevented it from completing.
+ * <br><br>
+ * Reports run on virtual threads when the runtime supports them, otherwise 
+ * on a pool of platform threads. Either way no more than the configured
+ * maximum number of queries from this binding run at once. A report that 
+ * cannot be built, such as one naming an unknown dimension or measure, 
+ * returns its "error" without failing the rest of the batch.
+ * <br><br>
+ * When shared scans are enabled, the reports are planned with a 
+ * {@link SharedScanPlanner} so that compatible reports are answered from a 
+ * single scan of the fact table rather than one query per report.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class StarBatchBinding extends StarQueryBinding
+{
+    private int maxConcurrency = 8;
+    private boolean sharedScan;
+    private boolean groupingSets = true;
+    
+    private ExecutorService executor;
+    private final Object permits = new Object();
+    private int running;
+
+    /**
+     * Returns the maximum number of reports this binding executes at once.
+     * Defaults to 8.
+     * 
+     * @return the maximum number of concurrent reports
+     */
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of reports this binding executes at once across
+     * all requests. Changes take effect immediately, including for reports
+     * already waiting to run.
+     * 
+     * @param maxConcurrency the maximum number of concurrent reports
+     */
+    public void setMaxConcurrency(int maxConcurrency)
+    {
+        ThreadPoolExecutor pool;
+        
+        if(maxConcurrency < 1) throw new ConvirganceException("Maximum concurrency must be at least 1");
+        
+        synchronized(this)
+        {
+            if(executor instanceof ThreadPoolExecutor)
+            {
+                pool = (ThreadPoolExecutor)executor;
+                
+                // The core size may never exceed the maximum size
+                if(maxConcurrency > pool.getMaximumPoolSize())
+                {
+                    pool.setMaximumPoolSize(maxConcurrency);
+                    pool.setCorePoolSize(maxConcurrency);
+                }
+                else
+                {
+                    pool.setCorePoolSize(maxConcurrency);
+                    pool.setMaximumPoolSize(maxConcurrency);
+                }
+            }
+            
+            this.maxConcurrency = maxConcurrency;
+        }
+        
+        synchronized(permits)
+        {
+            permits.notifyAll();
+        }
+    }
+    
+    /**
+     * True if compatible reports in a batch are merged into a shared scan of
+     * the fact table.
+     * 
+     * @return true if merging reports into shared scans
+     */
+    public boolean isSharedScan()
+    {
+        return sharedScan;
+    }
+
+    /**
+     * Set to true to merge compatible reports in a batch into a shared scan 
+     * of the fact table. Defaults to false.
+     * 
+     * @param sharedScan true to merge reports into shared scans
+     */
+    public void setSharedScan(boolean sharedScan)
+    {
+        this.sharedScan = sharedScan;
+    }
+
+    /**
+     * True if shared scans use GROUPING SETS rather than re-aggregating a 
+     * finest grain query in memory.
+     * 
+     * @return true if using GROUPING SETS
+     */
+    public boolean isGroupingSets()
+    {
+        return groupingSets;
+    }
+
+    /**
+     * Set to false if the database does not support GROUPING SETS. Shared
+     * scans will then query the finest grain needed by the merged reports 
+     * and re-aggregate the results in memory. Defaults to true.
+     * 
+     * @param groupingSets true to use GROUPING SETS
+     */
+    public void setGroupingSets(boolean groupingSets)
+    {
+        this.groupingSets = groupingSets;
+    }
+    
+    private synchronized ExecutorService getExecutor()
+    {
+        if(executor != null) return executor;
+        
+        try
+        {
+            // Java 21+ only. Looked up reflectively to remain compatible with Java 8.
+            executor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "StarBatchBinding");
+                
+                // Otherwise inherited from whichever request created the thread
+                thread.setContextClassLoader(StarBatchBinding.class.getClassLoader());
+                thread.setDaemon(true);
+                
+                return thread;
+            });
+        }
+        
+        return executor;
+    }
+    
+    private void acquire() throws InterruptedException
+    {
+        synchronized(permits)
+        {
+            while(running >= maxConcurrency) permits.wait();
+            
+            running++;
+        }
+    }
+    
+    private void release()
+    {
+        synchronized(permits)
+        {
+            running--;
+            
+            permits.notifyAll();
+        }
+    }
+    
+    private <T> Callable<T> getTask(Callable<T> task)
+    {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        
+        return () -> {
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            
+            // Containers resolve resources through the context class loader
+            thread.setContextClassLoader(loader);
+            
+            try
+            {
+                acquire();
+                
+                try
+                {
+                    return task.call();
+                }
+                finally
+                {
+                    release();
+                }
+            }
+            finally
+            {
+                // Pooled threads outlive the request
+                thread.setContextClassLoader(previous);
+            }
+        };
+    }
+    
+    private Callable<Map<String,JSONArray<JSONObject>>> getTask(String id, ReportGenerator generator, DBMS dbms, int priority)
+    {
+        return getTask(() -> {
+            Map<String,JSONArray<JSONObject>> results = new HashMap<>();
+            JSONArray<JSONObject> rows = new JSONArray<>();
+            
+            for(JSONObject record : execute(generator, dbms, priority)) rows.add(record);
+            
+            results.put(id, rows);
+            
+            return results;
+        });
+    }
+    
+    private Callable<Map<String,JSONArray<JSONObject>>> getTask(SharedScan scan, DBMS dbms, int priority)
+    {
+        return getTask(() -> {
+            long start = System.currentTimeMillis();
+            Map<String,JSONArray<JSONObject>> results = scan.split(query(scan.getSQL(), dbms, priority));
+            long latency = System.currentTimeMillis() - start;
+            
+            if(getWorkloadLog() == null) return results;
+            
+            for(String id : results.keySet())
+            {
+                getWorkloadLog().record(scan.getReports().get(id), latency, results.get(id).size());
+            }
+            
+            return results;
+        });
+    }
+    
+    private void cancel(Map<String,Future<Map<String,JSONArray<JSONObject>>>> futures)
+    {
+        for(Future pending : futures.values()) if(pending != null) pending.cancel(true);
+    }
+    
+    /**
+     * Executes a batch of reports and returns one record per report in the
+     * order requested. Reports that cannot be built are returned with their
+     * "error" rather than failing the batch. If the batch itself fails, any
+     * reports already submitted are cancelled.
+     * 
+     * @param reports the reports to execute, each with an "id"
+     * @param dbms the database to execute against
+     * @param priority the priority of the queries when waiting for admission
+     * @return one record per report
+     */
+    protected Iterable<JSONObject> execute(JSONArray<JSONObject> reports, DBMS dbms, int priority)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        Map<String,Future<Map<String,JSONArray<JSONObject>>>> futures = new LinkedHashMap<>();
+        Map<String,String> errors = new HashMap<>();
+        Future<Map<String,JSONArray<JSONObject>>> future;
+        SharedScanPlanner planner;
+        ExecutorService executor = getExecutor();
+        ReportGenerator generator;
+        JSONObject record;
+        String id;
+        
+        // Validate the batch before anything is submitted
+        for(JSONObject report : reports)
+        {
+            if(report.get("id") == null) throw new ConvirganceException("Every report in the batch requires an id");
+            
+            id = report.get("id").toString();
+            
+            if(futures.containsKey(id)) throw new ConvirganceException("Duplicate report id [" + id + "] in batch");
+            
+            futures.put(id, null);
+        }
+        
+        planner = new SharedScanPlanner(loadStar());
+        
+        planner.setGroupingSets(groupingSets);
+        
+        try
+        {
+            for(JSONObject report : reports)
+            {
+                id = report.get("id").toString();
+                
+                try
+                {
+                    generator = getReport(report);
+                }
+                catch(ConvirganceException e)
+                {
+                    errors.put(id, String.valueOf(e.getMessage()));
+                    continue;
+                }
+                
+                if(generator == null) continue;
+                if(sharedScan) planner.addReport(id, generator);
+                else futures.put(id, executor.submit(getTask(id, generator, dbms, priority)));
+            }
+            
+            if(sharedScan)
+            {
+                for(SharedScan scan : planner.getScans())
+                {
+                    future = executor.submit(getTask(scan, dbms, priority));
+                    
+                    for(String key : scan.getReports().keySet()) futures.put(key, future);
+                }
+            }
+        }
+        catch(RuntimeException | Error e)
+        {
+            cancel(futures);
+            
+            throw e;
+        }
+        
+        for(JSONObject report : reports)
+        {
+            id = report.get("id").toString();
+            future = futures.get(id);
+            record = new JSONObject();
+            
+            record.put("id", report.get("id"));
+            
+            try
+            {
+                if(errors.containsKey(id)) record.put("error", errors.get(id));
+                else record.put("results", future == null ? new JSONArray<>() : future.get().get(id));
+            }
+            catch(ExecutionException e)
+            {
+                record.put("error", String.valueOf(e.getCause().getMessage()));
+            }
+            catch(InterruptedException e)
+            {
+                cancel(futures);
+                
+                Thread.currentThread().interrupt();
+                
+                throw new ConvirganceException(e);
+            }
+            
+            results.add(record);
+        }
+        
+        return results;
+    }
+    
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        JSONArray<JSONObject> reports = (JSONArray<JSONObject>)parameters.getJSONArray("reports");
+        int priority = AdmissionController.getPriority(parameters.getString("priority"));
+        
+        return execute(reports, DBMS.lookup(getJndiName()), priority);
+    }
+}
@@ -22,11 +22,17 @@ SOFTWARE.
 package com.invirgance.convirgance.olap.web;
 
 import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.dbms.DBMS;
 import com.invirgance.convirgance.json.JSONArray;
 import com.invirgance.convirgance.json.JSONObject;
 import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Hierarchy;
 import com.invirgance.convirgance.olap.Measure;
 import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import com.invirgance.convirgance.olap.stats.StatisticsCollector;
 import com.invirgance.convirgance.source.FileSource;
 import com.invirgance.convirgance.web.binding.Binding;
 import com.invirgance.convirgance.web.http.HttpRequest;
@@ -35,18 +41,54 @@ import com.invirgance.convirgance.wiring.XMLWiringParser;
 import com.invirgance.convirgance.wiring.annotation.Wiring;
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
 
 /**
- *
+ * Describes the dimensions, hierarchies, and measures of a Star. When a 
+ * database is configured, statistics about the Star are collected on a 
+ * schedule, persisted next to the model as <code>&lt;model&gt;.stats.json</code>,
+ * and included in the description: the cardinality of each dimension, the 
+ * minimum and maximum of the metric behind each measure, and a "statistics"
+ * record with the fact row count and collection time.
+ * <p>
+ * The database is looked up on the request thread, so the schedule starts
+ * with the first request to this binding. Until then, only statistics
+ * persisted by an earlier run are available. The collection scan reads the
+ * whole fact table and is admitted at export priority by the
+ * {@link AdmissionController} shared with the other bindings using the
+ * database.
+ * 
  * @author jbanes
  */
 @Wiring
 public class StarMetaDataBinding implements Binding
 {
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StarMetaDataBinding Statistics");
+        
+        thread.setDaemon(true);
+        
+        return thread;
+    });
+    
     private String schema;
+    private String jndiName;
+    private boolean caseSensitive;
+    private Dialect dialect;
+    private long statisticsInterval = 86400000;
+    private int statisticsTimeout = 3600;
+    
     private File file;
     private Star star;
     private long loaded;
+    private volatile StarStatistics statistics;
+    private ScheduledFuture refresh;
+    private volatile String lastError;
+    private volatile long lastErrorTime;
 
 
     public String getSchema()
@@ -59,6 +101,163 @@ public class StarMetaDataBinding implements Binding
         this.schema = schema;
     }
     
+    /**
+     * Get the JNDI path to the database statistics are collected from.
+     * 
+     * @return path to jdbc datasource or null if statistics are not collected
+     */
+    public String getJndiName()
+    {
+        return jndiName;
+    }
+
+    /**
+     * Set the JNDI path to the database statistics are collected from. e.g.
+     * jdbc/mydatabase. Statistics are only collected when this is set.
+     * 
+     * @param jndiName path to jdbc datasource
+     */
+    public void setJndiName(String jndiName)
+    {
+        this.jndiName = jndiName;
+    }
+
+    public boolean isCaseSensitive()
+    {
+        return caseSensitive;
+    }
+
+    public void setCaseSensitive(boolean caseSensitive)
+    {
+        this.caseSensitive = caseSensitive;
+    }
+
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Get the number of milliseconds between statistics collections.
+     * 
+     * @return the collection interval in milliseconds
+     */
+    public long getStatisticsInterval()
+    {
+        return statisticsInterval;
+    }
+
+    /**
+     * Set the number of milliseconds between statistics collections. Defaults
+     * to 24 hours. Set to 0 to only use previously persisted statistics. The
+     * first collection happens on the first request to this binding if no
+     * statistics have been persisted or they are older than the interval.
+     * 
+     * @param statisticsInterval the collection interval in milliseconds
+     */
+    public void setStatisticsInterval(long statisticsInterval)
+    {
+        this.statisticsInterval = statisticsInterval;
+    }
+
+    /**
+     * Get the number of seconds a statistics collection may run before it
+     * is cancelled.
+     * 
+     * @return the timeout in seconds or 0 for no timeout
+     */
+    public int getStatisticsTimeout()
+    {
+        return statisticsTimeout;
+    }
+
+    /**
+     * Set the number of seconds a statistics collection may run before it is
+     * cancelled. Defaults to 1 hour.
+     * 
+     * @param statisticsTimeout the timeout in seconds or 0 for no timeout
+     */
+    public void setStatisticsTimeout(int statisticsTimeout)
+    {
+        this.statisticsTimeout = statisticsTimeout;
+    }
+    
+    /**
+     * Returns the most recently collected statistics.
+     * 
+     * @return the statistics or null if none have been collected
+     */
+    public StarStatistics getStatistics()
+    {
+        return statistics;
+    }
+    
+    /**
+     * Returns the message of the last failed statistics collection.
+     * 
+     * @return the error message or null if no collection has failed
+     */
+    public String getLastError()
+    {
+        return lastError;
+    }
+
+    /**
+     * Returns the time of the last failed statistics collection.
+     * 
+     * @return the time in milliseconds since the epoch or 0 if none
+     */
+    public long getLastErrorTime()
+    {
+        return lastErrorTime;
+    }
+    
+    private void collectStatistics(DataSource source, AdmissionController admission)
+    {
+        StatisticsCollector collector = new StatisticsCollector(star, source);
+        StarStatistics collected;
+        
+        collector.setCaseSensitive(caseSensitive);
+        collector.setDialect(dialect);
+        collector.setTimeout(statisticsTimeout);
+        collector.setAdmissionController(admission);
+        
+        try
+        {
+            collected = collector.collect();
+            
+            collected.save(StarStatistics.getFile(file));
+            
+            this.statistics = collected;
+        }
+        catch(RuntimeException e)
+        {
+            // Keep the previous statistics and try again at the next interval
+            lastError = (e.getMessage() != null) ? e.getMessage() : e.toString();
+            lastErrorTime = System.currentTimeMillis();
+        }
+    }
+    
+    private synchronized void scheduleStatistics()
+    {
+        DataSource source;
+        AdmissionController admission;
+        long delay;
+        
+        if(jndiName == null || statisticsInterval <= 0 || refresh != null) return;
+        
+        // Resolved on the request thread where the JNDI context is available
+        source = DBMS.lookup(jndiName).getSource();
+        admission = AdmissionController.get(jndiName);
+        delay = (statistics == null) ? 0 : Math.max(0, statistics.getCollected() + statisticsInterval - System.currentTimeMillis());
+        refresh = scheduler.scheduleWithFixedDelay(() -> collectStatistics(source, admission), delay, statisticsInterval, TimeUnit.MILLISECONDS);
+    }
+    
     private void loadStar()
     {
         List list;
@@ -79,17 +278,24 @@ public class StarMetaDataBinding implements Binding
             {
                 if(object instanceof Star) this.star = (Star)object;
             }
+            
+            this.statistics = StarStatistics.load(StarStatistics.getFile(file));
         }
+        
+        scheduleStatistics();
     }
     
     @Override
     public Iterable<JSONObject> getBinding(JSONObject parameters)
     {
         JSONArray<JSONObject> results = new JSONArray<>();
+        StarStatistics stats;
         JSONObject record;
         
         loadStar();
         
+        stats = statistics;
+        
         for(Dimension dimension : star.getDimensions())
         {
             record = new JSONObject();
@@ -97,6 +303,26 @@ public class StarMetaDataBinding implements Binding
             record.put("type", "dimension");
             record.put("name", dimension.getName());
             
+            if(stats != null && stats.getCardinalities().containsKey(dimension.getName()))
+            {
+                record.put("cardinality", stats.getCardinality(dimension));
+            }
+            
+            results.add(record);
+        }
+        
+        for(Hierarchy hierarchy : star.getHierarchies())
+        {
+            JSONArray<String> levels = new JSONArray<>();
+            
+            record = new JSONObject();
+            
+            for(Dimension level : hierarchy.getLevels()) levels.add(level.getName());
+            
+            record.put("type", "hierarchy");
+            record.put("name", hierarchy.getName());
+            record.put("levels", levels);
+            
             results.add(record);
         }
         
@@ -108,6 +334,23 @@ public class StarMetaDataBinding implements Binding
             record.put("name", measure.getName());
             record.put("function", measure.getFunction());
             
+            if(stats != null && measure.getMetric() != null)
+            {
+                record.put("minimum", stats.getMinimum(measure.getMetric()));
+                record.put("maximum", stats.getMaximum(measure.getMetric()));
+            }
+            
+            results.add(record);
+        }
+        
+        if(stats != null)
+        {
+            record = new JSONObject();
+            
+            record.put("type", "statistics");
+            record.put("rows", stats.getRows());
+            record.put("collected", stats.getCollected());
+            
             results.add(record);
         }
         
@@ -23,13 +23,26 @@ package com.invirgance.convirgance.olap.web;
 
 import com.invirgance.convirgance.ConvirganceException;
 import com.invirgance.convirgance.dbms.DBMS;
-import com.invirgance.convirgance.dbms.Query;
 import com.invirgance.convirgance.json.JSONArray;
 import com.invirgance.convirgance.json.JSONObject;
 import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.LabelMaterializer;
 import com.invirgance.convirgance.olap.Measure;
 import com.invirgance.convirgance.olap.ReportGenerator;
 import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.TopK;
+import com.invirgance.convirgance.olap.cache.ReportCache;
+import com.invirgance.convirgance.olap.engine.LocalReportExecutor;
+import com.invirgance.convirgance.olap.engine.LocalStar;
+import com.invirgance.convirgance.olap.engine.ReportExecutor;
+import com.invirgance.convirgance.olap.engine.ReportRouter;
+import com.invirgance.convirgance.olap.engine.SQLReportExecutor;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.Dialect;
+import com.invirgance.convirgance.olap.sql.Table;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import com.invirgance.convirgance.olap.workload.WorkloadLog;
 import com.invirgance.convirgance.source.FileSource;
 import com.invirgance.convirgance.web.binding.Binding;
 import com.invirgance.convirgance.web.http.HttpRequest;
@@ -37,7 +50,10 @@ import com.invirgance.convirgance.web.servlet.ServiceState;
 import com.invirgance.convirgance.wiring.XMLWiringParser;
 import com.invirgance.convirgance.wiring.annotation.Wiring;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  *
@@ -50,10 +66,32 @@ public class StarQueryBinding implements Binding
     private String schema;
     private boolean caseSensitive;
     private boolean logQuery;
+    private WorkloadLog workloadLog;
+    private int timeout;
+    private int idleTimeout = 60;
+    private int maxConcurrentQueries;
+    private int maxQueuedQueries = 100;
+    private long queueTimeout = 30000;
+    private boolean coalesce;
+    private Dialect dialect;
+    private ReportCache cache;
+    private boolean drillPath = true;
+    private boolean lateLabels;
+    private boolean localExecution;
+    private long maxLocalRows = 1000000;
+    private long localRefreshInterval = 3600000;
+    private boolean localSnapshot;
+    private String localWatermark;
+    private long localDeltaInterval = 60000;
+    private List<Double> progressiveRates = new ArrayList<>(Arrays.asList(0.01, 0.1));
     
     private File file;
     private Star star;
     private long loaded;
+    private SingleFlight flights = new SingleFlight();
+    private StarStatistics statistics;
+    private long statisticsLoaded;
+    private LocalReportExecutor local;
 
     /**
      * Get the JNDI path to the configured database connection. e.g. jdbc/mydatabase
@@ -119,6 +157,264 @@ public class StarQueryBinding implements Binding
         this.caseSensitive = caseSensitive;
     }
 
+    /**
+     * Returns the SQL dialect of the database.
+     * 
+     * @return the dialect or null for the default ANSI dialect
+     */
+    public Dialect getDialect()
+    {
+        return dialect;
+    }
+
+    /**
+     * Set the SQL dialect of the database. Used to generate database specific
+     * SQL such as the date truncation of time dimensions. Defaults to ANSI SQL
+     * with date_trunc().
+     * 
+     * @param dialect the dialect of the database
+     */
+    public void setDialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Returns the cache used to answer repeated reports.
+     * 
+     * @return the report cache or null if caching is disabled
+     */
+    public ReportCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Set a cache to answer repeated reports without querying the database.
+     * Reports covered by a cached report with more dimensions or broader 
+     * filters are derived from it in memory when possible. Disabled by default.
+     * 
+     * @param cache the report cache
+     */
+    public void setCache(ReportCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * True if reports on a level of a Hierarchy are executed along their 
+     * drill path when caching.
+     * 
+     * @return true if executing along the drill path
+     */
+    public boolean isDrillPath()
+    {
+        return drillPath;
+    }
+
+    /**
+     * Set to false to execute reports on a level of a Hierarchy as requested.
+     * When true and a cache is set, a report on a level also groups by the 
+     * coarser levels above it so that the cached results can answer those
+     * levels when the user drills back up. See 
+     * {@link ReportCache#getDrillPath(ReportGenerator)}. Defaults to true.
+     * 
+     * @param drillPath true to execute along the drill path
+     */
+    public void setDrillPath(boolean drillPath)
+    {
+        this.drillPath = drillPath;
+    }
+
+    /**
+     * True if reports are grouped by the foreign keys of the fact table with
+     * the dimension labels attached afterwards.
+     * 
+     * @return true if labels are attached after grouping
+     */
+    public boolean isLateLabels()
+    {
+        return lateLabels;
+    }
+
+    /**
+     * Set to true to group reports by the integer foreign keys of the fact 
+     * table rather than by the dimension labels. The dimension joins are 
+     * skipped and the labels are attached from an in-memory map of keys to
+     * labels cached on each dimension table. Only used for reports where 
+     * every measure can be re-aggregated. Defaults to false.
+     * 
+     * @param lateLabels true to attach labels after grouping
+     */
+    public void setLateLabels(boolean lateLabels)
+    {
+        this.lateLabels = lateLabels;
+    }
+
+    /**
+     * True if small stars may be copied into memory and reports answered 
+     * locally when cheaper than querying the database.
+     * 
+     * @return true if local execution is enabled
+     */
+    public boolean isLocalExecution()
+    {
+        return localExecution;
+    }
+
+    /**
+     * Set to true to route each report to either the database or an 
+     * in-memory copy of the star, whichever has the lower estimated cost. 
+     * Costs are estimated from the statistics persisted next to the model 
+     * by {@link StarMetaDataBinding}. Decisions are written to the routing 
+     * log of the workload log. Defaults to false.
+     * 
+     * @param localExecution true to enable local execution
+     */
+    public void setLocalExecution(boolean localExecution)
+    {
+        this.localExecution = localExecution;
+    }
+
+    /**
+     * Get the largest number of fact rows copied into memory for local 
+     * execution.
+     * 
+     * @return the maximum number of rows
+     */
+    public long getMaxLocalRows()
+    {
+        return maxLocalRows;
+    }
+
+    /**
+     * Set the largest number of fact rows copied into memory for local 
+     * execution. Defaults to 1,000,000.
+     * 
+     * @param maxLocalRows the maximum number of rows
+     */
+    public void setMaxLocalRows(long maxLocalRows)
+    {
+        this.maxLocalRows = maxLocalRows;
+    }
+
+    /**
+     * Get the number of milliseconds before the in-memory copy is refreshed.
+     * 
+     * @return the refresh interval in milliseconds
+     */
+    public long getLocalRefreshInterval()
+    {
+        return localRefreshInterval;
+    }
+
+    /**
+     * Set the number of milliseconds before the in-memory copy is refreshed
+     * in the background. Defaults to 1 hour.
+     * 
+     * @param localRefreshInterval the refresh interval in milliseconds
+     */
+    public void setLocalRefreshInterval(long localRefreshInterval)
+    {
+        this.localRefreshInterval = localRefreshInterval;
+    }
+
+    /**
+     * True if the in-memory copy of the star is saved to a snapshot file
+     * next to the model.
+     * 
+     * @return true if snapshots are enabled
+     */
+    public boolean isLocalSnapshot()
+    {
+        return localSnapshot;
+    }
+
+    /**
+     * Set to true to save the in-memory copy of the star to a snapshot file
+     * next to the model (e.g. sales.xml is paired with sales.snapshot). 
+     * After a restart the snapshot is memory mapped instead of extracting 
+     * the fact rows from the database again. The model directory must be 
+     * writable. Defaults to false.
+     * 
+     * @param localSnapshot true to enable snapshots
+     */
+    public void setLocalSnapshot(boolean localSnapshot)
+    {
+        this.localSnapshot = localSnapshot;
+    }
+
+    /**
+     * Get the column of the fact table used to find rows added since the 
+     * in-memory copy was loaded.
+     * 
+     * @return the watermark column or null
+     */
+    public String getLocalWatermark()
+    {
+        return localWatermark;
+    }
+
+    /**
+     * Set the column of the fact table used to find rows added since the 
+     * in-memory copy was loaded. The column must increase as rows are added,
+     * such as an identity or a load timestamp. Added rows are appended to the
+     * copy every delta interval rather than waiting for the next refresh. 
+     * Defaults to null.
+     * 
+     * @param localWatermark the watermark column or null
+     */
+    public void setLocalWatermark(String localWatermark)
+    {
+        this.localWatermark = localWatermark;
+    }
+
+    /**
+     * Get the number of milliseconds between polls for rows added to the 
+     * fact table.
+     * 
+     * @return the delta interval in milliseconds
+     */
+    public long getLocalDeltaInterval()
+    {
+        return localDeltaInterval;
+    }
+
+    /**
+     * Set the number of milliseconds between polls for rows added to the 
+     * fact table. Only used when a watermark column is set. Defaults to 1 
+     * minute.
+     * 
+     * @param localDeltaInterval the delta interval in milliseconds
+     */
+    public void setLocalDeltaInterval(long localDeltaInterval)
+    {
+        this.localDeltaInterval = localDeltaInterval;
+    }
+
+    /**
+     * Get the sample rates of the estimates returned before the exact results
+     * of a progressive request.
+     * 
+     * @return the sample rates
+     */
+    public List<Double> getProgressiveRates()
+    {
+        return progressiveRates;
+    }
+
+    /**
+     * Set the sample rates of the estimates returned before the exact results
+     * when a request sets "progressive" to true. See {@link ProgressiveResults}.
+     * Defaults to 1% and 10%.
+     * 
+     * @param progressiveRates the sample rates between 0 and 1
+     */
+    public void setProgressiveRates(List<Double> progressiveRates)
+    {
+        this.progressiveRates = progressiveRates;
+    }
+
     public boolean isLogQuery()
     {
         return logQuery;
@@ -128,13 +424,200 @@ public class StarQueryBinding implements Binding
     {
         this.logQuery = logQuery;
     }
+
+    /**
+     * Returns the log used to capture the signature, latency, and row count 
+     * of every report executed by this binding.
+     * 
+     * @return the workload log or null if the workload is not captured
+     */
+    public WorkloadLog getWorkloadLog()
+    {
+        return workloadLog;
+    }
+
+    /**
+     * Sets the log used to capture the signature, latency, and row count of
+     * every report executed by this binding. 
+     * 
+     * @param workloadLog the workload log or null to disable capture
+     */
+    public void setWorkloadLog(WorkloadLog workloadLog)
+    {
+        this.workloadLog = workloadLog;
+    }
+    
+    /**
+     * Returns the number of seconds a report may run, including the time 
+     * taken to stream every row to the client, before it is cancelled.
+     * 
+     * @return the timeout in seconds or 0 for no timeout
+     */
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Sets the number of seconds a report may run, including the time taken
+     * to stream every row to the client, before it is cancelled. The timeout
+     * is also applied to the JDBC statement so the database can abandon the
+     * query on its own. Defaults to 0 for no timeout.
+     * 
+     * @param timeout the timeout in seconds or 0 for no timeout
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of seconds a report waits for the client to read 
+     * the next row before the client is considered disconnected.
+     * 
+     * @return the idle timeout in seconds or 0 for no idle timeout
+     */
+    public int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of seconds a report waits for the client to read the 
+     * next row before the client is considered disconnected and the query is
+     * cancelled. Results are streamed to the client as they are read, so a
+     * client that has gone away stops requesting rows. The time the database
+     * takes to return the first row is not counted. Defaults to 60 seconds
+     * so that abandoned reports are cancelled without configuration.
+     * 
+     * @param idleTimeout the idle timeout in seconds or 0 for no idle timeout
+     */
+    public void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
     
-    private void loadStar()
+    /**
+     * Returns the maximum number of queries run at once against the database.
+     * 
+     * @return the maximum number of concurrent queries or 0 for no limit
+     */
+    public int getMaxConcurrentQueries()
+    {
+        return maxConcurrentQueries;
+    }
+
+    /**
+     * Sets the maximum number of queries run at once against the database. 
+     * The limit is shared by every binding using the same JNDI name, with 
+     * additional queries waiting in a queue where interactive requests are
+     * admitted ahead of exports. Defaults to 0 for no limit.
+     * 
+     * @param maxConcurrentQueries the maximum number of concurrent queries or 0 for no limit
+     */
+    public void setMaxConcurrentQueries(int maxConcurrentQueries)
+    {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+    }
+
+    /**
+     * Returns the maximum number of queries that may wait for admission when
+     * the concurrent query limit is reached.
+     * 
+     * @return the maximum queue depth
+     */
+    public int getMaxQueuedQueries()
+    {
+        return maxQueuedQueries;
+    }
+
+    /**
+     * Sets the maximum number of queries that may wait for admission when 
+     * the concurrent query limit is reached. Queries arriving when the queue
+     * is full are rejected. Defaults to 100.
+     * 
+     * @param maxQueuedQueries the maximum queue depth
+     */
+    public void setMaxQueuedQueries(int maxQueuedQueries)
+    {
+        this.maxQueuedQueries = maxQueuedQueries;
+    }
+
+    /**
+     * Returns the number of milliseconds a query waits for admission before
+     * it is rejected.
+     * 
+     * @return the queue timeout in milliseconds
+     */
+    public long getQueueTimeout()
+    {
+        return queueTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds a query waits for admission before it
+     * is rejected. Defaults to 30 seconds.
+     * 
+     * @param queueTimeout the queue timeout in milliseconds
+     */
+    public void setQueueTimeout(long queueTimeout)
+    {
+        this.queueTimeout = queueTimeout;
+    }
+    
+    /**
+     * True if identical reports requested at the same time share a single 
+     * execution.
+     * 
+     * @return true if coalescing identical reports
+     */
+    public boolean isCoalesce()
+    {
+        return coalesce;
+    }
+
+    /**
+     * Set to true to coalesce identical reports requested at the same time.
+     * Reports with the same signature that arrive while the first is still
+     * running receive the results of the running query rather than starting
+     * their own. At most 1000 rows of a coalesced report are buffered, so 
+     * the query proceeds at the pace of its slowest reader. Export priority
+     * reports are never coalesced. Defaults to false.
+     * 
+     * @param coalesce true to coalesce identical reports
+     */
+    public void setCoalesce(boolean coalesce)
+    {
+        this.coalesce = coalesce;
+    }
+    
+    /**
+     * Returns the admission controller shared by all bindings querying the 
+     * configured database. The limits of the first binding to use the
+     * controller apply to the database; later bindings configured with 
+     * different limits share them and a warning is printed.
+     * 
+     * @return the admission controller or null if queries are not limited
+     */
+    protected AdmissionController getAdmissionController()
+    {
+        if(maxConcurrentQueries <= 0) return null;
+        
+        return AdmissionController.get(jndiName, maxConcurrentQueries, maxQueuedQueries, queueTimeout);
+    }
+    
+    /**
+     * Loads the Star from the schema file under WEB-INF/models/, reloading it
+     * if the file has been modified since it was last loaded.
+     * 
+     * @return the loaded Star
+     */
+    protected Star loadStar()
     {
         List list;
 
         // Already loaded
-        if(star != null && this.file.lastModified() <= this.loaded) return;
+        if(star != null && this.file.lastModified() <= this.loaded) return star;
         
         synchronized(this)
         {
@@ -149,27 +632,65 @@ public class StarQueryBinding implements Binding
             {
                 if(object instanceof Star) this.star = (Star)object;
             }
+            
+            if(star != null) star.setVersion(loaded);
+            
+            this.statistics = null;
+            this.statisticsLoaded = 0;
         }
+        
+        return star;
     }
     
-    @Override
-    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    /**
+     * Returns the statistics persisted next to the model, reloading them if
+     * the file has been modified since they were last loaded. Statistics
+     * refreshed on a schedule by {@link StarMetaDataBinding} are picked up 
+     * by the next report.
+     * 
+     * @return the statistics of the Star or null if none have been collected
+     */
+    protected synchronized StarStatistics loadStatistics()
+    {
+        File stats = StarStatistics.getFile(file);
+        long modified = stats.lastModified();
+        
+        if(modified == statisticsLoaded) return statistics;
+        
+        statistics = StarStatistics.load(stats);
+        statisticsLoaded = modified;
+        
+        return statistics;
+    }
+    
+    /**
+     * Builds the report described by the "dimensions" and "measures" arrays
+     * of the request parameters against the loaded Star. An optional "filters"
+     * array restricts the report. Each filter names a "dimension" and either
+     * a "values" array to match or an inclusive "from" and "to" range. An 
+     * optional "sample" rate between 0 and 1 runs the report in approximate
+     * mode, see {@link ReportGenerator#setSampleRate(double)}. Reports with
+     * calculated or window measures can't be sampled and are rejected. An optional 
+     * "top" object keeps the "limit" top members of its "dimension" within 
+     * each group, ranked by its "measure" in "desc" (default) or "asc" 
+     * "order". See {@link TopK}.
+     * 
+     * @param parameters the report request
+     * @return the report or null if no dimensions or measures were requested
+     */
+    protected ReportGenerator getReport(JSONObject parameters)
     {
         ReportGenerator generator;
-        DBMS dbms;
         
         Measure measure;
         Dimension dimension;
         
         JSONArray<String> dimensions = (JSONArray<String>)parameters.getJSONArray("dimensions");
         JSONArray<String> measures = (JSONArray<String>)parameters.getJSONArray("measures");
-
-        loadStar();
         
-        if(parameters.getJSONArray("dimensions").isEmpty() && parameters.getJSONArray("measures").isEmpty()) return new JSONArray<>();
+        if(dimensions.isEmpty() && measures.isEmpty()) return null;
         
         generator = new ReportGenerator(star);
-        dbms = DBMS.lookup(jndiName);
         
         for(String name : dimensions)
         {
@@ -189,11 +710,276 @@ public class StarQueryBinding implements Binding
             generator.addMeasure(measure);
         }
         
+        if(parameters.get("filters") != null)
+        {
+            for(JSONObject filter : (JSONArray<JSONObject>)parameters.getJSONArray("filters"))
+            {
+                generator.addFilter(getFilter(filter));
+            }
+        }
+        
+        if(parameters.get("top") != null)
+        {
+            generator.setTopK(getTopK(parameters.getJSONObject("top")));
+        }
+        
+        if(parameters.get("sample") != null)
+        {
+            try
+            {
+                generator.setSampleRate(Double.parseDouble(parameters.get("sample").toString()));
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new ConvirganceException(e.getMessage(), e);
+            }
+        }
+        
         generator.setCaseSensitive(caseSensitive);
+        generator.setDialect(dialect);
+        
+        return generator;
+    }
+    
+    private TopK getTopK(JSONObject top)
+    {
+        Dimension dimension = star.getDimension(top.getString("dimension"));
+        Measure measure = star.getMeasure(top.getString("measure"));
+        
+        if(dimension == null) throw new ConvirganceException("Dimension [" + top.getString("dimension") + "] not found!");
+        if(measure == null) throw new ConvirganceException("Measure [" + top.getString("measure") + "] not found!");
+        
+        return new TopK(dimension, measure, top.getInt("limit", 10), !"asc".equalsIgnoreCase(top.getString("order")));
+    }
+    
+    private Filter getFilter(JSONObject filter)
+    {
+        Dimension dimension = star.getDimension(filter.getString("dimension"));
+        
+        if(dimension == null) throw new ConvirganceException("Dimension [" + filter.getString("dimension") + "] not found!");
+        
+        if(filter.get("values") != null) return new Filter(dimension, filter.getJSONArray("values"));
+        
+        return new Filter(dimension, filter.get("from"), filter.get("to"));
+    }
+    
+    /**
+     * Executes a SQL query against the database.
+     * 
+     * @param sql the SQL query to execute
+     * @param dbms the database to execute against
+     * @param priority the priority of the query when waiting for admission
+     * @return the results of the query
+     */
+    protected Iterable<JSONObject> query(String sql, DBMS dbms, int priority)
+    {
+        if(logQuery) System.out.println(sql);
+        
+        return getSQLExecutor(dbms).query(sql, priority);
+    }
+    
+    /**
+     * Returns the executor sending queries to the database with the timeouts
+     * and admission control of this binding.
+     * 
+     * @param dbms the database to execute against
+     * @return the SQL executor
+     */
+    protected SQLReportExecutor getSQLExecutor(DBMS dbms)
+    {
+        SQLReportExecutor executor = new SQLReportExecutor(dbms.getSource());
+        
+        executor.setTimeout(timeout);
+        executor.setIdleTimeout(idleTimeout);
+        executor.setAdmissionController(getAdmissionController());
+        
+        return executor;
+    }
+    
+    /**
+     * Returns the router choosing between the database and the in-memory copy
+     * of the star. Reports routed to the database are executed by this 
+     * binding through the same {@link #getSQLExecutor(DBMS) SQL executor} so
+     * that caching, coalescing, and late labels still apply.
+     * 
+     * @param dbms the database containing the star
+     * @return the router
+     */
+    protected synchronized ReportRouter getRouter(DBMS dbms)
+    {
+        ReportRouter router = new ReportRouter();
+        LocalStar copy;
+        
+        if(local == null || local.getLocalStar().getStar() != star)
+        {
+            copy = new LocalStar(star);
+            
+            copy.setWatermarkColumn(localWatermark);
+            
+            local = new LocalReportExecutor(copy, dbms.getSource());
+        }
+        
+        local.setCaseSensitive(caseSensitive);
+        local.setDialect(dialect);
+        local.setAdmissionController(getAdmissionController());
+        local.setMaxRows(maxLocalRows);
+        local.setRefreshInterval(localRefreshInterval);
+        local.setSnapshot(localSnapshot ? LocalStar.getSnapshotFile(file) : null);
+        local.setDeltaInterval(localDeltaInterval);
+        
+        router.addExecutor(getSQLExecutor(dbms));
+        router.addExecutor(local);
+        router.setStatistics(loadStatistics());
+        router.setWorkloadLog(workloadLog);
+        
+        return router;
+    }
+    
+    /**
+     * Executes a report grouped by the foreign keys of the fact table and 
+     * attaches the dimension labels to the results.
+     * 
+     * @param generator the report to execute
+     * @param dbms the database to execute against
+     * @param priority the priority of the query when waiting for admission
+     * @return the results of the report
+     */
+    protected Iterable<JSONObject> queryByKey(ReportGenerator generator, DBMS dbms, int priority)
+    {
+        LabelMaterializer materializer = new LabelMaterializer(generator);
+        Table table;
+        
+        for(Dimension dimension : generator.getDimensions())
+        {
+            if(dimension.getGroupingKey() == null) continue;
+            
+            table = dimension.getTable();
+            
+            table.getMemberCache().setAdmissionController(getAdmissionController());
+            materializer.setLabels(dimension, table.getMemberCache().getLabels(dbms.getSource(), dimension.getColumn(), caseSensitive));
+        }
+        
+        return materializer.materialize(query(generator.getKeySQLGenerator().getSQL(), dbms, priority));
+    }
+    
+    /**
+     * Executes the report against the database. Reports that can be 
+     * answered from the cache are returned without querying the database.
+     * Otherwise reports on a level of a Hierarchy are executed along their
+     * drill path, see {@link #setDrillPath(boolean)}.
+     * 
+     * @param generator the report to execute
+     * @param dbms the database to execute against
+     * @param priority the priority of the query when waiting for admission
+     * @return the results of the report
+     */
+    protected Iterable<JSONObject> execute(ReportGenerator generator, DBMS dbms, int priority)
+    {
+        Iterable<JSONObject> results;
+        Supplier<Iterable<JSONObject>> source;
+        ReportExecutor executor;
+        ReportGenerator path;
+        
+        if(cache != null)
+        {
+            results = cache.get(generator);
+            
+            if(results != null && workloadLog != null) return workloadLog.track(generator, results, true);
+            if(results != null) return results;
+            
+            path = drillPath ? cache.getDrillPath(generator) : null;
+            
+            if(path != null) return cache.putDrillPath(path, execute(path, dbms, priority), generator);
+        }
+        
+        executor = localExecution ? getRouter(dbms).route(generator) : null;
+        
+        if(executor instanceof LocalReportExecutor) source = () -> executeLocal((LocalReportExecutor)executor, generator, dbms, priority);
+        else source = () -> executeDatabase(generator, dbms, priority);
+        
+        // Exports are read far slower than the query runs, holding back every subscriber
+        if(coalesce && priority != AdmissionController.EXPORT) 
+        {
+            flights.setIdleTimeout(idleTimeout);
+            
+            results = flights.execute(jndiName + ":" + generator.getSignature(), source);
+        }
+        else
+        {
+            results = source.get();
+        }
+        
+        if(cache != null) results = cache.track(generator, results);
+        if(workloadLog != null) results = workloadLog.track(generator, results);
+        
+        return results;
+    }
+    
+    private Iterable<JSONObject> executeDatabase(ReportGenerator generator, DBMS dbms, int priority)
+    {
+        if(lateLabels && generator.isKeyGroupable()) return queryByKey(generator, dbms, priority);
+        
+        return query(generator.getSQL(), dbms, priority);
+    }
+    
+    private Iterable<JSONObject> executeLocal(LocalReportExecutor executor, ReportGenerator generator, DBMS dbms, int priority)
+    {
+        try
+        {
+            return executor.execute(generator, priority);
+        }
+        catch(ConvirganceException e)
+        {
+            // Stars that turn out to be too large to copy are left to the database
+            if(executor.isExceeded()) return executeDatabase(generator, dbms, priority);
+            
+            throw e;
+        }
+    }
+    
+    /**
+     * Executes the report progressively, returning estimates from samples of
+     * increasing size before the exact results. Any "sample" rate in the 
+     * request is replaced by the rate of each stage. Reports with measures 
+     * that can't be {@link ReportGenerator#isEstimable() estimated} skip the
+     * samples and only return the exact results.
+     * 
+     * @param parameters the report request
+     * @param dbms the database to execute against
+     * @param priority the priority of the queries when waiting for admission
+     * @return one message per stage tagged with its completeness
+     */
+    protected Iterable<JSONObject> executeProgressive(JSONObject parameters, DBMS dbms, int priority)
+    {
+        List<Double> rates = getReport(parameters).isEstimable() ? progressiveRates : new ArrayList<>();
+        
+        return new ProgressiveResults(rates, rate -> {
+            ReportGenerator generator = getReport(parameters);
+            
+            generator.setSampleRate(rate);
+            
+            return execute(generator, dbms, priority);
+        });
+    }
+    
+    @Override
+    public Iterable<JSONObject> getBinding(JSONObject parameters)
+    {
+        ReportGenerator generator;
+        DBMS dbms;
+        int priority = AdmissionController.getPriority(parameters.getString("priority"));
 
-        if(logQuery) System.out.println(generator.getSQL());
+        loadStar();
+        
+        generator = getReport(parameters);
+        
+        if(generator == null) return new JSONArray<>();
+        
+        dbms = DBMS.lookup(jndiName);
+        
+        if(Boolean.parseBoolean(String.valueOf(parameters.get("progressive")))) return executeProgressive(parameters, dbms, priority);
         
-        return dbms.query(new Query(generator.getSQL()));
+        return execute(generator, dbms, priority);
     }
     
 }
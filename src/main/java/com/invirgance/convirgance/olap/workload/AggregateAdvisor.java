@@ -0,0 +1,426 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.workload;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recommends aggregate tables for a Star based on a captured workload. Each
+ * report in the workload is costed as the number of rows it must scan. 
+ * Candidate aggregates are the dimension sets requested by the workload along
+ * with the unions of each pair of them. Candidates are chosen greedily by the
+ * scan cost they save per row of storage until either the storage budget or 
+ * the maximum number of aggregates is reached.
+ * <br><br>
+ * Group counts are estimated from the {@link StarStatistics} provided, so the
+ * quality of the recommendations depends on the accuracy of the sampled
+ * cardinalities.
+ * 
+ * @author jbanes
+ */
+public class AggregateAdvisor
+{
+    private Star star;
+    private StarStatistics statistics;
+    private Map<String,Workload> workloads = new LinkedHashMap<>();
+    
+    private long storageBudget = 1000000;
+    private int maxAggregates = 5;
+    private String prefix = "Agg";
+    private boolean caseSensitive;
+
+    /**
+     * Creates a new advisor for the Star using the statistics to estimate
+     * the size of each aggregate.
+     * @param star the Star to recommend aggregates for
+     * @param statistics the row count and cardinalities of the Star
+     */
+    public AggregateAdvisor(Star star, StarStatistics statistics)
+    {
+        this.star = star;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the total number of rows all recommended aggregates may occupy.
+     * Defaults to 1,000,000.
+     * @return the storage budget in rows
+     */
+    public long getStorageBudget()
+    {
+        return storageBudget;
+    }
+
+    /**
+     * Sets the total number of rows all recommended aggregates may occupy.
+     * @param storageBudget the storage budget in rows
+     */
+    public void setStorageBudget(long storageBudget)
+    {
+        this.storageBudget = storageBudget;
+    }
+
+    /**
+     * Returns the maximum number of aggregates recommended. Defaults to 5.
+     * @return the maximum number of aggregates
+     */
+    public int getMaxAggregates()
+    {
+        return maxAggregates;
+    }
+
+    /**
+     * Sets the maximum number of aggregates recommended.
+     * @param maxAggregates the maximum number of aggregates
+     */
+    public void setMaxAggregates(int maxAggregates)
+    {
+        this.maxAggregates = maxAggregates;
+    }
+
+    /**
+     * Returns the prefix used to name the recommended tables. Defaults to "Agg".
+     * @return the table name prefix
+     */
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    /**
+     * Sets the prefix used to name the recommended tables. Tables are named
+     * with the prefix, the fact table name, and a sequence number.
+     * @param prefix the table name prefix
+     */
+    public void setPrefix(String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns true if the generated DDL quotes identifiers.
+     * @return true if quoting identifiers
+     */
+    public boolean isCaseSensitive()
+    {
+        return caseSensitive;
+    }
+
+    /**
+     * Set to true to quote identifiers in the generated DDL.
+     * @param caseSensitive true to quote identifiers
+     */
+    public void setCaseSensitive(boolean caseSensitive)
+    {
+        this.caseSensitive = caseSensitive;
+    }
+    
+    /**
+     * Adds a report to the workload being analyzed.
+     * @param report the report executed
+     * @param count the number of times the report was executed
+     */
+    public void addReport(ReportGenerator report, long count)
+    {
+        Workload workload = workloads.get(report.getSignature());
+        
+        if(report.getStar() != star) throw new IllegalArgumentException("Reports must be against the advised Star");
+        
+        if(workload == null)
+        {
+            workload = new Workload(report);
+            workloads.put(report.getSignature(), workload);
+        }
+        
+        workload.count += count;
+    }
+    
+    /**
+     * Adds a report recorded by a {@link WorkloadLog}. Only reports read to
+     * completion from the database are counted, as cache hits and abandoned 
+     * or failed reads never paid for a full scan. Records against other fact
+     * tables or referencing Dimensions and Measures no longer in the Star are
+     * ignored.
+     * @param record the JSON record written by the workload log
+     */
+    public void addRecord(JSONObject record)
+    {
+        ReportGenerator report = new ReportGenerator(star);
+        Dimension dimension;
+        Measure measure;
+        JSONArray filters;
+        JSONObject filter;
+        
+        if(!star.getFact().getName().equals(record.getString("fact"))) return;
+        if(record.getBoolean("cached", false)) return;
+        if(!WorkloadLog.COMPLETE.equals(record.getString("status", WorkloadLog.COMPLETE))) return;
+        
+        for(Object name : record.getJSONArray("dimensions"))
+        {
+            dimension = star.getDimension(name.toString());
+            
+            if(dimension == null) return;
+            
+            report.addDimension(dimension);
+        }
+        
+        for(Object name : record.getJSONArray("measures"))
+        {
+            measure = star.getMeasure(name.toString());
+            
+            if(measure == null) return;
+            
+            report.addMeasure(measure);
+        }
+        
+        // Logs written before filters were recorded have none
+        filters = (record.get("filters") == null) ? new JSONArray<>() : record.getJSONArray("filters");
+        
+        for(Object value : filters)
+        {
+            filter = (JSONObject)value;
+            dimension = star.getDimension(filter.getString("dimension"));
+            
+            if(dimension == null) return;
+            
+            if(filter.get("values") != null) report.addFilter(new Filter(dimension, filter.getJSONArray("values")));
+            else report.addFilter(new Filter(dimension, filter.get("from"), filter.get("to")));
+        }
+        
+        addReport(report, 1);
+    }
+    
+    /**
+     * Reads every report recorded in a workload log file.
+     * @param file the workload log file
+     */
+    public void addWorkload(File file)
+    {
+        String line;
+        
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+        {
+            while((line = reader.readLine()) != null)
+            {
+                if(line.trim().isEmpty()) continue;
+                
+                addRecord(new JSONObject(line));
+            }
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private List<List<Dimension>> getCandidates()
+    {
+        List<List<Dimension>> candidates = new ArrayList<>();
+        List<List<Dimension>> requested;
+        List<Dimension> union;
+        
+        List<Dimension> dimensions;
+        
+        // Filtered dimensions must be kept in the aggregate to answer the report
+        for(Workload workload : workloads.values())
+        {
+            dimensions = new ArrayList<>(workload.report.getDimensions());
+            
+            for(Filter filter : workload.report.getFilters()) dimensions.add(filter.getDimension());
+            
+            addCandidate(candidates, dimensions);
+        }
+        
+        requested = new ArrayList<>(candidates);
+        
+        for(int i=0; i<requested.size(); i++)
+        {
+            for(int j=i+1; j<requested.size(); j++)
+            {
+                union = new ArrayList<>(requested.get(i));
+                
+                for(Dimension dimension : requested.get(j))
+                {
+                    if(!union.contains(dimension)) union.add(dimension);
+                }
+                
+                addCandidate(candidates, union);
+            }
+        }
+        
+        return candidates;
+    }
+    
+    private void addCandidate(List<List<Dimension>> candidates, List<Dimension> dimensions)
+    {
+        List<Dimension> candidate = new ArrayList<>();
+        
+        // Normalize to Star order so equal sets compare equal
+        for(Dimension dimension : star.getDimensions())
+        {
+            if(dimensions.contains(dimension)) candidate.add(dimension);
+        }
+        
+        if(!candidates.contains(candidate)) candidates.add(candidate);
+    }
+    
+    /**
+     * Computes the recommended aggregate tables. Tables are returned in the
+     * order they were chosen, so the most valuable table is first.
+     * @return the list of recommended aggregate tables
+     */
+    public List<AggregateTable> getRecommendations()
+    {
+        List<AggregateTable> selected = new ArrayList<>();
+        List<AggregateTable> candidates = new ArrayList<>();
+        Map<Workload,Long> costs = new HashMap<>();
+        AggregateTable best;
+        double bestScore;
+        double benefit;
+        long used = 0;
+        
+        for(List<Dimension> dimensions : getCandidates())
+        {
+            candidates.add(new AggregateTable(null, star, dimensions, statistics.estimateGroups(dimensions)));
+        }
+        
+        for(Workload workload : workloads.values()) costs.put(workload, Math.max(statistics.getRows(), 1));
+        
+        while(selected.size() < maxAggregates)
+        {
+            best = null;
+            bestScore = 0;
+            
+            for(AggregateTable candidate : candidates)
+            {
+                if(used + candidate.getRows() > storageBudget) continue;
+                
+                benefit = 0;
+                
+                for(Workload workload : workloads.values())
+                {
+                    if(!candidate.covers(workload.report)) continue;
+                    
+                    benefit += workload.count * Math.max(0, costs.get(workload) - candidate.getRows());
+                }
+                
+                if(benefit > 0 && benefit / Math.max(candidate.getRows(), 1) > bestScore)
+                {
+                    best = candidate;
+                    bestScore = benefit / Math.max(candidate.getRows(), 1);
+                }
+            }
+            
+            if(best == null) break;
+            
+            candidates.remove(best);
+            used += best.getRows();
+            
+            best = new AggregateTable(prefix + star.getFact().getName() + (selected.size() + 1), star, best.getDimensions(), best.getRows());
+            
+            for(Workload workload : workloads.values())
+            {
+                if(best.covers(workload.report)) costs.put(workload, Math.min(costs.get(workload), best.getRows()));
+            }
+            
+            selected.add(best);
+        }
+        
+        assignMeasures(selected);
+        
+        // Tables superseded by cheaper tables chosen later serve no reports
+        for(int i=selected.size()-1; i>=0; i--)
+        {
+            if(selected.get(i).getMeasures().isEmpty()) selected.remove(i);
+        }
+        
+        return selected;
+    }
+    
+    private void assignMeasures(List<AggregateTable> tables)
+    {
+        AggregateTable cheapest;
+        double benefit;
+        
+        for(Workload workload : workloads.values())
+        {
+            cheapest = null;
+            
+            for(AggregateTable table : tables)
+            {
+                if(!table.covers(workload.report)) continue;
+                if(cheapest == null || table.getRows() < cheapest.getRows()) cheapest = table;
+            }
+            
+            if(cheapest == null) continue;
+            
+            for(Measure measure : workload.report.getMeasures()) cheapest.addMeasure(measure);
+            
+            benefit = workload.count * Math.max(0, statistics.getRows() - cheapest.getRows());
+            
+            cheapest.setBenefit(cheapest.getBenefit() + benefit);
+        }
+    }
+    
+    /**
+     * Generates the DDL for all recommended aggregate tables.
+     * @return the list of CREATE TABLE ... AS statements
+     */
+    public List<String> getSQL()
+    {
+        List<String> statements = new ArrayList<>();
+        
+        for(AggregateTable table : getRecommendations()) statements.add(table.getSQL(caseSensitive));
+        
+        return statements;
+    }
+    
+    private class Workload
+    {
+        private ReportGenerator report;
+        private long count;
+
+        public Workload(ReportGenerator report)
+        {
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.workload;
+
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes an aggregate (rollup) table recommended by the 
+ * {@link AggregateAdvisor}. The table pre-aggregates the fact table of a Star
+ * by a set of Dimensions so that reports grouping on any subset of those
+ * Dimensions can be answered from the much smaller aggregate.
+ * 
+ * @author jbanes
+ */
+public class AggregateTable
+{
+    private String name;
+    private Star star;
+    private List<Dimension> dimensions = new ArrayList<>();
+    private List<Measure> measures = new ArrayList<>();
+    private long rows;
+    private double benefit;
+
+    /**
+     * Creates a new aggregate table description.
+     * @param name the name of the table to create
+     * @param star the Star being aggregated
+     * @param dimensions the Dimensions the table is grouped by
+     * @param rows the estimated number of rows in the table
+     */
+    public AggregateTable(String name, Star star, List<Dimension> dimensions, long rows)
+    {
+        this.name = name;
+        this.star = star;
+        this.dimensions.addAll(dimensions);
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the name of the table to create.
+     * @return the table name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the Star aggregated by this table.
+     * @return the Star
+     */
+    public Star getStar()
+    {
+        return star;
+    }
+
+    /**
+     * Returns the Dimensions this table is grouped by.
+     * @return the list of Dimensions
+     */
+    public List<Dimension> getDimensions()
+    {
+        return dimensions;
+    }
+
+    /**
+     * Returns the Measures pre-computed by this table.
+     * @return the list of Measures
+     */
+    public List<Measure> getMeasures()
+    {
+        return measures;
+    }
+    
+    /**
+     * Adds a Measure to be pre-computed by this table.
+     * @param measure the Measure to add
+     */
+    void addMeasure(Measure measure)
+    {
+        if(!measures.contains(measure)) measures.add(measure);
+    }
+
+    /**
+     * Returns the estimated number of rows in this table.
+     * @return the estimated row count
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Returns the estimated number of fact rows no longer scanned by the 
+     * captured workload if this table is created.
+     * @return the estimated benefit in rows scanned
+     */
+    public double getBenefit()
+    {
+        return benefit;
+    }
+
+    /**
+     * Sets the estimated benefit of this table.
+     * @param benefit the estimated benefit in rows scanned
+     */
+    void setBenefit(double benefit)
+    {
+        this.benefit = benefit;
+    }
+    
+    /**
+     * Returns true if a report grouping on the given Dimensions and computing
+     * the given Measures can be answered by this table. Reports on a subset of
+     * the Dimensions require that every Measure can be re-aggregated. Filtered
+     * Dimensions must also be in the table so the filters can be applied.
+     * @param report the report to check
+     * @return true if the report can be answered from this table
+     */
+    public boolean covers(ReportGenerator report)
+    {
+        if(report.getStar() != star) return false;
+        if(!dimensions.containsAll(report.getDimensions())) return false;
+        
+        for(Filter filter : report.getFilters())
+        {
+            if(!dimensions.contains(filter.getDimension())) return false;
+        }
+        
+        if(dimensions.size() == report.getDimensions().size()) return true;
+        
+        for(Measure measure : report.getMeasures())
+        {
+            if(measure.getRollupFunction() == null) return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Generates the CREATE TABLE ... AS statement that builds this table.
+     * @param caseSensitive true to quote identifiers
+     * @return the DDL statement string
+     */
+    public String getSQL(boolean caseSensitive)
+    {
+        ReportGenerator generator = new ReportGenerator(star);
+        
+        generator.setCaseSensitive(caseSensitive);
+        
+        for(Dimension dimension : dimensions) generator.addDimension(dimension);
+        for(Measure measure : measures) generator.addMeasure(measure);
+        
+        return generator.getSQLGenerator().getCreateTableSQL(name);
+    }
+}
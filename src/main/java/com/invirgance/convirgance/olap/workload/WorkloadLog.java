@@ -0,0 +1,652 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.workload;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.sql.QueryCursor;
+import com.invirgance.convirgance.wiring.annotation.Wiring;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a bounded, append-only log of the reports executed against a Star.
+ * Each report is written as a single line of JSON containing the normalized
+ * signature, the dimensions, measures, and filters requested, the latency in
+ * milliseconds, the number of rows read, how the read ended and whether the
+ * report was answered from the cache. Reports slower than the configured 
+ * threshold are additionally written to a separate slow log.
+ * <br><br>
+ * Log files are rotated once they exceed the maximum file size. Rotated files
+ * are renamed with a numeric suffix (e.g. workload.jsonl.1) and the oldest
+ * files are deleted once the maximum number of files is reached. Each log
+ * file is kept open between records and written under its own lock, so 
+ * writes to the slow log don't wait on the workload log.
+ * 
+ * @author jbanes
+ */
+@Wiring
+public class WorkloadLog
+{
+    private String path;
+    private String slowPath;
+    private String routingPath;
+    private long slowThreshold = 1000;
+    private long maxFileSize = 10 * 1024 * 1024;
+    private int maxFiles = 5;
+    private final Map<String,LogFile> files = new HashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+    
+    /**
+     * Status of a report whose results were read to the end
+     */
+    public static final String COMPLETE = "complete";
+    
+    /**
+     * Status of a report whose results were closed before being fully read
+     */
+    public static final String ABANDONED = "abandoned";
+    
+    /**
+     * Status of a report whose results failed while being read
+     */
+    public static final String FAILED = "failed";
+    
+    /**
+     * Status of a report whose query was cancelled while being read
+     */
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Returns the path of the file all reports are logged to.
+     * @return the path to the workload log or null if not logging
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Sets the path of the file all reports are logged to. Set to null to 
+     * disable the workload log while still capturing slow queries.
+     * @param path the path to the workload log
+     */
+    public void setPath(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * Returns the path of the file slow reports are logged to.
+     * @return the path to the slow log or null if not logging
+     */
+    public String getSlowPath()
+    {
+        return slowPath;
+    }
+
+    /**
+     * Sets the path of the file reports exceeding the slow threshold are 
+     * logged to. 
+     * @param slowPath the path to the slow log
+     */
+    public void setSlowPath(String slowPath)
+    {
+        this.slowPath = slowPath;
+    }
+
+    /**
+     * Returns the path of the file routing decisions are logged to.
+     * @return the path to the routing log or null if not logging
+     */
+    public String getRoutingPath()
+    {
+        return routingPath;
+    }
+
+    /**
+     * Sets the path of the file the decisions of the 
+     * {@link com.invirgance.convirgance.olap.engine.ReportRouter} are logged 
+     * to for auditing. 
+     * @param routingPath the path to the routing log
+     */
+    public void setRoutingPath(String routingPath)
+    {
+        this.routingPath = routingPath;
+    }
+
+    /**
+     * Returns the latency in milliseconds above which a report is considered
+     * slow. Defaults to 1000 milliseconds.
+     * @return the slow threshold in milliseconds
+     */
+    public long getSlowThreshold()
+    {
+        return slowThreshold;
+    }
+
+    /**
+     * Sets the latency in milliseconds above which a report is considered
+     * slow and is written to the slow log.
+     * @param slowThreshold the slow threshold in milliseconds
+     */
+    public void setSlowThreshold(long slowThreshold)
+    {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * Returns the size in bytes a log file may grow to before it is rotated.
+     * Defaults to 10MB.
+     * @return the maximum size of a log file in bytes
+     */
+    public long getMaxFileSize()
+    {
+        return maxFileSize;
+    }
+
+    /**
+     * Sets the size in bytes a log file may grow to before it is rotated.
+     * @param maxFileSize the maximum size of a log file in bytes
+     */
+    public void setMaxFileSize(long maxFileSize)
+    {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Returns the number of files (including the active file) retained for 
+     * each log. Defaults to 5.
+     * @return the number of files retained
+     */
+    public int getMaxFiles()
+    {
+        return maxFiles;
+    }
+
+    /**
+     * Sets the number of files (including the active file) retained for each
+     * log. Older files are deleted on rotation.
+     * @param maxFiles the number of files retained
+     */
+    public void setMaxFiles(int maxFiles)
+    {
+        this.maxFiles = maxFiles;
+    }
+    
+    /**
+     * Returns the number of records that could not be written. Failing to 
+     * write a record never fails the report being recorded.
+     * @return the number of records lost to write failures
+     */
+    public long getFailures()
+    {
+        return failures.get();
+    }
+    
+    /**
+     * Records the complete execution of a report against the database. 
+     * @param report the report that was executed
+     * @param latency the time in milliseconds until the last row was returned
+     * @param rows the number of rows returned
+     */
+    public void record(ReportGenerator report, long latency, long rows)
+    {
+        record(report, latency, rows, COMPLETE, false);
+    }
+    
+    /**
+     * Records the execution of a report. The status is one of 
+     * {@link #COMPLETE}, {@link #ABANDONED}, {@link #FAILED} or 
+     * {@link #CANCELLED}.
+     * @param report the report that was executed
+     * @param latency the time in milliseconds until the read ended
+     * @param rows the number of rows read
+     * @param status how the read ended
+     * @param cached true if the report was answered from the cache
+     */
+    public void record(ReportGenerator report, long latency, long rows, String status, boolean cached)
+    {
+        JSONObject record = new JSONObject();
+        JSONArray<String> dimensions = new JSONArray<>();
+        JSONArray<String> measures = new JSONArray<>();
+        JSONArray<JSONObject> filters = new JSONArray<>();
+        
+        for(Dimension dimension : report.getDimensions()) dimensions.add(dimension.getName());
+        for(Measure measure : report.getMeasures()) measures.add(measure.getName());
+        for(Filter filter : report.getFilters()) filters.add(getFilter(filter));
+        
+        record.put("timestamp", System.currentTimeMillis());
+        record.put("signature", report.getSignature());
+        record.put("fact", report.getStar().getFact().getName());
+        record.put("dimensions", dimensions);
+        record.put("measures", measures);
+        record.put("filters", filters);
+        record.put("latency", latency);
+        record.put("rows", rows);
+        record.put("status", status);
+        record.put("cached", cached);
+        
+        if(path != null) write(path, record);
+        if(slowPath != null && latency > slowThreshold) write(slowPath, record);
+    }
+    
+    // Values JSON can't represent are written as strings
+    private static Object getValue(Object value)
+    {
+        if(value == null || value instanceof String || value instanceof Number || value instanceof Boolean) return value;
+        
+        return value.toString();
+    }
+    
+    private static JSONObject getFilter(Filter filter)
+    {
+        JSONObject record = new JSONObject();
+        JSONArray<Object> values = new JSONArray<>();
+        
+        record.put("dimension", filter.getDimension().getName());
+        
+        if(filter.isRange())
+        {
+            record.put("from", getValue(filter.getFrom()));
+            record.put("to", getValue(filter.getTo()));
+            
+            return record;
+        }
+        
+        for(Object value : filter.getValues()) values.add(getValue(value));
+        
+        record.put("values", values);
+        
+        return record;
+    }
+    
+    /**
+     * Records the executor chosen to answer a report along with the 
+     * estimated cost of every executor considered and the last background
+     * error of any executor that has one.
+     * @param report the report being routed
+     * @param executor the name of the chosen executor
+     * @param rows the estimated number of fact rows or -1 if unknown
+     * @param groups the estimated number of groups or -1 if unknown
+     * @param costs the estimated cost keyed by executor name
+     * @param errors the last background error keyed by executor name
+     */
+    public void recordRouting(ReportGenerator report, String executor, long rows, long groups, Map<String,Double> costs, Map<String,String> errors)
+    {
+        JSONObject record = new JSONObject();
+        JSONObject estimates = new JSONObject();
+        JSONObject failures = new JSONObject();
+        
+        for(String name : costs.keySet())
+        {
+            // Infinite costs can't be represented in JSON
+            estimates.put(name, costs.get(name).isInfinite() ? null : costs.get(name));
+        }
+        
+        for(String name : errors.keySet()) failures.put(name, errors.get(name));
+        
+        record.put("timestamp", System.currentTimeMillis());
+        record.put("signature", report.getSignature());
+        record.put("executor", executor);
+        record.put("rows", rows);
+        record.put("groups", groups);
+        record.put("costs", estimates);
+        
+        if(!errors.isEmpty()) record.put("errors", failures);
+        
+        if(routingPath != null) write(routingPath, record);
+    }
+    
+    /**
+     * Wraps the results of a report so that the report is recorded once 
+     * reading ends. Latency is measured from the time this method is called.
+     * 
+     * @param report the report being executed
+     * @param results the results of the report
+     * @return the results that will record the report when read
+     * @see #track(ReportGenerator, Iterable, boolean)
+     */
+    public Iterable<JSONObject> track(ReportGenerator report, Iterable<JSONObject> results)
+    {
+        return track(report, results, false);
+    }
+    
+    /**
+     * Wraps the results of a report so that the report is recorded once 
+     * reading ends. Latency is measured from the time this method is called.
+     * <br><br>
+     * Each iteration is recorded exactly once: as {@link #COMPLETE} when the 
+     * last row is read, {@link #FAILED} or {@link #CANCELLED} when reading
+     * throws, or {@link #ABANDONED} when the results are closed before the
+     * last row is read. The returned results are {@link AutoCloseable} and
+     * close the underlying results. Callers that stop reading early must 
+     * close them for the read to be recorded.
+     * 
+     * @param report the report being executed
+     * @param results the results of the report
+     * @param cached true if the results were answered from the cache
+     * @return the results that will record the report when read or closed
+     */
+    public Iterable<JSONObject> track(ReportGenerator report, Iterable<JSONObject> results, boolean cached)
+    {
+        return new TrackedResults(report, results, cached);
+    }
+    
+    private void write(String path, JSONObject record)
+    {
+        byte[] line = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        LogFile file;
+        
+        synchronized(files)
+        {
+            file = files.computeIfAbsent(path, LogFile::new);
+        }
+        
+        try
+        {
+            file.write(line);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            // A diagnostic log must never fail the report being recorded
+            failures.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Closes every open log file. Files are reopened on the next record.
+     */
+    public void close()
+    {
+        List<LogFile> open;
+        
+        synchronized(files)
+        {
+            open = new ArrayList<>(files.values());
+            
+            files.clear();
+        }
+        
+        for(LogFile file : open) file.close();
+    }
+    
+    private class LogFile
+    {
+        private File file;
+        private OutputStream out;
+        private long length;
+
+        public LogFile(String path)
+        {
+            this.file = new File(path);
+        }
+        
+        public synchronized void write(byte[] line) throws IOException
+        {
+            if(out == null) 
+            {
+                out = new FileOutputStream(file, true);
+                length = file.length();
+            }
+            
+            if(length > 0 && length + line.length > maxFileSize) 
+            {
+                close();
+                rotate();
+                
+                out = new FileOutputStream(file, true);
+                length = 0;
+            }
+            
+            out.write(line);
+            
+            length += line.length;
+        }
+        
+        public synchronized void close()
+        {
+            if(out == null) return;
+            
+            try
+            {
+                out.close();
+            }
+            catch(IOException e)
+            {
+                // Every line has already been written to the file
+            }
+            
+            out = null;
+        }
+        
+        private void rotate() throws IOException
+        {
+            File oldest = new File(file.getPath() + "." + (maxFiles - 1));
+            File source;
+            
+            if(maxFiles <= 1)
+            {
+                if(!file.delete()) throw new IOException("Unable to delete " + file);
+                
+                return;
+            }
+            
+            if(oldest.exists() && !oldest.delete()) throw new IOException("Unable to delete " + oldest);
+            
+            for(int i=maxFiles-2; i>=0; i--)
+            {
+                source = (i == 0) ? file : new File(file.getPath() + "." + i);
+                
+                if(source.exists() && !source.renameTo(new File(file.getPath() + "." + (i + 1))))
+                {
+                    throw new IOException("Unable to rotate " + source);
+                }
+            }
+        }
+    }
+    
+    private static void close(Object closeable)
+    {
+        if(!(closeable instanceof AutoCloseable)) return;
+        
+        try
+        {
+            ((AutoCloseable)closeable).close();
+        }
+        catch(Exception e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private class TrackedResults implements Iterable<JSONObject>, AutoCloseable
+    {
+        private ReportGenerator report;
+        private Iterable<JSONObject> results;
+        private boolean cached;
+        private long start = System.currentTimeMillis();
+        private TrackedIterator current;
+
+        public TrackedResults(ReportGenerator report, Iterable<JSONObject> results, boolean cached)
+        {
+            this.report = report;
+            this.results = results;
+            this.cached = cached;
+        }
+        
+        private String getFailure()
+        {
+            if(results instanceof QueryCursor && ((QueryCursor)results).isCancelled()) return CANCELLED;
+            
+            return FAILED;
+        }
+        
+        @Override
+        public Iterator<JSONObject> iterator()
+        {
+            TrackedIterator iterator;
+            
+            try
+            {
+                iterator = new TrackedIterator(this, results.iterator());
+            }
+            catch(RuntimeException | Error e)
+            {
+                record(report, System.currentTimeMillis() - start, 0, getFailure(), cached);
+                
+                throw e;
+            }
+            
+            synchronized(this)
+            {
+                current = iterator;
+            }
+            
+            return iterator;
+        }
+
+        @Override
+        public void close()
+        {
+            TrackedIterator iterator;
+            
+            synchronized(this)
+            {
+                iterator = current;
+                
+                // Closing before reading still counts as a request
+                if(iterator == null) current = new TrackedIterator(this, null);
+            }
+            
+            try
+            {
+                if(iterator != null) iterator.close();
+                else current.finish(ABANDONED);
+            }
+            finally
+            {
+                WorkloadLog.close(results);
+            }
+        }
+    }
+    
+    private class TrackedIterator implements Iterator<JSONObject>, AutoCloseable
+    {
+        private TrackedResults tracked;
+        private Iterator<JSONObject> iterator;
+        private long rows;
+        private boolean recorded;
+
+        public TrackedIterator(TrackedResults tracked, Iterator<JSONObject> iterator)
+        {
+            this.tracked = tracked;
+            this.iterator = iterator;
+        }
+        
+        private void finish(String status)
+        {
+            synchronized(this)
+            {
+                if(recorded) return;
+                
+                recorded = true;
+            }
+            
+            record(tracked.report, System.currentTimeMillis() - tracked.start, rows, status, tracked.cached);
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            boolean next;
+            
+            try
+            {
+                next = iterator.hasNext();
+            }
+            catch(RuntimeException | Error e)
+            {
+                finish(tracked.getFailure());
+                
+                throw e;
+            }
+            
+            if(!next) finish(COMPLETE);
+            
+            return next;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject record;
+            
+            try
+            {
+                record = iterator.next();
+            }
+            catch(NoSuchElementException e)
+            {
+                throw e;
+            }
+            catch(RuntimeException | Error e)
+            {
+                finish(tracked.getFailure());
+                
+                throw e;
+            }
+            
+            rows++;
+            
+            return record;
+        }
+
+        @Override
+        public void close()
+        {
+            try
+            {
+                WorkloadLog.close(iterator);
+            }
+            finally
+            {
+                finish(ABANDONED);
+            }
+        }
+    }
+}
@@ -21,9 +21,19 @@ SOFTWARE.
  */
 package com.invirgance.convirgance.olap;
 
+import com.invirgance.convirgance.olap.measures.CalculatedMeasure;
+import com.invirgance.convirgance.olap.measures.FilteredMeasure;
 import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.measures.WindowMeasure;
 import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.MySQLDialect;
+import com.invirgance.convirgance.olap.sql.SQLServerDialect;
 import com.invirgance.convirgance.olap.sql.Table;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -108,4 +118,362 @@ public class ReportGeneratorTest
         assertEquals(expected, generator.getSQL());
     }
     
+    @Test
+    public void testSignature()
+    {
+        Star star = getStar();
+        ReportGenerator first = new ReportGenerator(star);
+        ReportGenerator second = new ReportGenerator(star);
+        
+        first.addDimension(star.getDimension("Franchise Name"));
+        first.addDimension(star.getDimension("Store Name"));
+        first.addMeasure(star.getMeasure("Products Sold"));
+        
+        second.addMeasure(star.getMeasure("Products Sold"));
+        second.addDimension(star.getDimension("Store Name"));
+        second.addDimension(star.getDimension("Franchise Name"));
+        
+        assertEquals("[\"FactSales\",[\"Franchise Name\",\"Store Name\"],[\"Products Sold\"],[],null,null]", first.getSignature());
+        assertEquals(first.getSignature(), second.getSignature());
+        
+        // Filter values are sorted and can't be confused with lists
+        first.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("West", "East")));
+        second.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("East", "West", "East")));
+        
+        assertEquals(first.getSignature(), second.getSignature());
+        
+        second = new ReportGenerator(star);
+        
+        second.addDimension(star.getDimension("Franchise Name"));
+        second.addDimension(star.getDimension("Store Name"));
+        second.addMeasure(star.getMeasure("Products Sold"));
+        second.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("West, East")));
+        
+        assertNotEquals(first.getSignature(), second.getSignature());
+        assertEquals("[\"Store Name\",\"in\",[\"East\",\"West\"]]", first.getFilters().get(0).toString());
+    }
+    
+    @Test
+    public void testTimeDimension()
+    {
+        String expected = "select\n" + 
+                          "    date_trunc('month', FactSales.SaleDate) as \"Sale Month\",\n" +
+                          "    sum(FactSales.Quantity) as \"Products Sold\"\n" +
+                          "from FactSales\n" + 
+                          "where\n" +
+                          "    FactSales.SaleDate >= date '2024-01-01' and FactSales.SaleDate < date '2024-04-01'\n" +
+                          "group by\n" +
+                          "    date_trunc('month', FactSales.SaleDate)";
+        
+        Star star = getStar();
+        TimeDimension month = new TimeDimension("Sale Month", star.getFact(), "SaleDate", "month");
+        ReportGenerator generator = new ReportGenerator(star);
+        
+        star.addDimension(month);
+        
+        generator.addDimension(month);
+        generator.addMeasure(star.getMeasure("Products Sold"));
+        generator.addFilter(new Filter(month, "2024-01-15", "2024-03-02"));
+        
+        assertEquals(expected, generator.getSQL());
+        
+        generator = new ReportGenerator(star);
+        month.setGrain("quarter");
+        
+        generator.setDialect(new SQLServerDialect());
+        generator.addDimension(month);
+        generator.addMeasure(star.getMeasure("Products Sold"));
+        generator.addFilter(new Filter(month, Arrays.asList("2024-05-20")));
+        
+        assertTrue(generator.getSQL().contains("dateadd(quarter, datediff(quarter, 0, FactSales.SaleDate), 0) as \"Sale Month\""));
+        assertTrue(generator.getSQL().contains("FactSales.SaleDate >= cast('2024-04-01' as date) and FactSales.SaleDate < cast('2024-07-01' as date)"));
+    }
+    
+    @Test
+    public void testKeyGrouping()
+    {
+        String expected = "select\n" + 
+                          "    FactSales.StoreId as \"Key:Store Name\",\n" +
+                          "    sum(FactSales.Quantity) as \"Products Sold\"\n" +
+                          "from FactSales\n" + 
+                          "group by\n" +
+                          "    FactSales.StoreId";
+        
+        Star star = getStar();
+        ReportGenerator generator = new ReportGenerator(star);
+        LabelMaterializer materializer = new LabelMaterializer(generator);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONArray<JSONObject> results;
+        Map<Object,Object> labels = new HashMap<>();
+        JSONObject row;
+        
+        generator.addDimension(star.getDimension("Store Name"));
+        generator.addMeasure(star.getMeasure("Products Sold"));
+        
+        assertTrue(generator.isKeyGroupable());
+        assertEquals(expected, generator.getKeySQLGenerator().getSQL());
+        
+        labels.put(1L, "Downtown");
+        labels.put(2L, "Uptown");
+        labels.put(3L, "Downtown");
+        
+        for(int i=1; i<=4; i++)
+        {
+            row = new JSONObject();
+            
+            row.put("Key:Store Name", i);
+            row.put("Products Sold", i * 10);
+            rows.add(row);
+        }
+        
+        materializer.setLabels(star.getDimension("Store Name"), labels);
+        
+        results = materializer.materialize(rows);
+        
+        assertEquals(2, results.size());
+        assertEquals("Downtown", results.get(0).get("Store Name"));
+        assertEquals(40L, ((Number)results.get(0).get("Products Sold")).longValue());
+        assertEquals("Uptown", results.get(1).get("Store Name"));
+        assertEquals(20L, ((Number)results.get(1).get("Products Sold")).longValue());
+        assertFalse(results.get(0).containsKey("Key:Store Name"));
+    }
+    
+    @Test
+    public void testApproximate()
+    {
+        String expected = "select\n" + 
+                          "    sum(FactSales.Quantity) / 0.01 as \"Products Sold\",\n" +
+                          "    1.96 * sqrt(0.99 * sum(1.0 * FactSales.Quantity * FactSales.Quantity)) / 0.01 as \"Products Sold:Margin\"\n" +
+                          "from FactSales tablesample bernoulli (1)";
+        
+        Star star = getStar();
+        ReportGenerator generator = new ReportGenerator(star);
+        String signature;
+        
+        generator.addMeasure(star.getMeasure("Products Sold"));
+        
+        signature = generator.getSignature();
+        
+        generator.setSampleRate(0.01);
+        
+        assertTrue(generator.isApproximate());
+        assertFalse(generator.isKeyGroupable());
+        assertNotEquals(signature, generator.getSignature());
+        assertEquals(expected, generator.getSQL());
+        
+        star.getFact().setPrimaryKey("id");
+        generator.setDialect(new MySQLDialect());
+        
+        assertTrue(generator.getSQL().contains("from FactSales\nwhere\n    crc32(FactSales.id) % 10000 < 100"));
+        
+        // Page sampling would understate the margins
+        generator.setDialect(new SQLServerDialect());
+        
+        assertFalse(generator.getSQL().contains("tablesample"));
+        assertTrue(generator.getSQL().contains("from FactSales\nwhere\n    abs(checksum(FactSales.id)) % 10000 < 100"));
+        
+        assertThrows(IllegalArgumentException.class, () -> generator.setSampleRate(0));
+    }
+    
+    @Test
+    public void testTopK()
+    {
+        Star star = getStar();
+        ReportGenerator generator = new ReportGenerator(star);
+        String sql;
+        
+        generator.addDimension(star.getDimension("Franchise Name"));
+        generator.setTopK(new TopK(star.getDimension("Store Name"), star.getMeasure("Products Sold"), 5));
+        
+        sql = generator.getSQL();
+        
+        assertEquals(2, generator.getDimensions().size());
+        assertFalse(generator.isKeyGroupable());
+        assertTrue(generator.getSignature().endsWith(",[\"Store Name\",\"Products Sold\",5,true],null]"));
+        assertTrue(sql.startsWith("select *\nfrom (\nselect\n"));
+        assertTrue(sql.contains("    row_number() over (partition by DimFranchise.FranchiseName order by sum(FactSales.Quantity) desc nulls last) as \"Rank\"\nfrom FactSales\n"));
+        assertTrue(sql.endsWith("\n) ranked\nwhere \"Rank\" <= 5"));
+        
+        generator = new ReportGenerator(star);
+        generator.setTopK(new TopK(star.getDimension("Store Name"), star.getMeasure("Products Sold"), 3, false));
+        
+        assertTrue(generator.getSQL().contains("row_number() over (order by sum(FactSales.Quantity) asc nulls last) as \"Rank\""));
+        
+        generator.setDialect(new SQLServerDialect());
+        
+        assertTrue(generator.getSQL().contains("row_number() over (order by case when sum(FactSales.Quantity) is null then 1 else 0 end, sum(FactSales.Quantity) asc) as \"Rank\""));
+    }
+    
+    @Test
+    public void testWindowMeasures()
+    {
+        String over = " over (partition by DimFranchise.FranchiseName order by date_trunc('month', FactSales.SaleDate)";
+        String sum = "sum(FactSales.Quantity)";
+        
+        Star star = getStar();
+        TimeDimension month = new TimeDimension("Sale Month", star.getFact(), "SaleDate", "month");
+        Measure sold = star.getMeasure("Products Sold");
+        WindowMeasure previous = new WindowMeasure("Previous Sold", sold, month, WindowMeasure.PREVIOUS);
+        WindowMeasure change = new WindowMeasure("Sold Change", sold, month, WindowMeasure.CHANGE);
+        WindowMeasure running = new WindowMeasure("Running Sold", sold, month, WindowMeasure.RUNNING_TOTAL);
+        WindowMeasure moving = new WindowMeasure("Moving Sold", sold, month, WindowMeasure.MOVING_AVERAGE);
+        ReportGenerator generator = new ReportGenerator(star);
+        ReportGenerator missing = new ReportGenerator(star);
+        String sql;
+        
+        moving.setPeriods(3);
+        
+        star.addDimension(month);
+        star.addMeasure(previous);
+        star.addMeasure(change);
+        star.addMeasure(running);
+        star.addMeasure(moving);
+        
+        generator.addDimension(star.getDimension("Franchise Name"));
+        generator.addDimension(month);
+        generator.addMeasure(sold);
+        generator.addMeasure(previous);
+        generator.addMeasure(change);
+        generator.addMeasure(running);
+        generator.addMeasure(moving);
+        
+        sql = generator.getSQL();
+        
+        assertFalse(generator.isShareable());
+        assertFalse(generator.isKeyGroupable());
+        assertTrue(sql.contains("    lag(" + sum + ", 1)" + over + ") as \"Previous Sold\",\n"));
+        assertTrue(sql.contains("    (" + sum + " - lag(" + sum + ", 1)" + over + ")) * 100.0 / nullif(lag(" + sum + ", 1)" + over + "), 0) as \"Sold Change\",\n"));
+        assertTrue(sql.contains("    sum(" + sum + ")" + over + " rows between unbounded preceding and current row) as \"Running Sold\",\n"));
+        assertTrue(sql.contains("    avg(" + sum + ")" + over + " rows between 2 preceding and current row) as \"Moving Sold\"\n"));
+        assertTrue(sql.endsWith("group by\n    DimFranchise.FranchiseName,\n    date_trunc('month', FactSales.SaleDate)"));
+        
+        missing.addMeasure(running);
+        
+        // The time dimension must be part of the report
+        assertThrows(IllegalArgumentException.class, () -> missing.getSQL());
+    }
+    
+    @Test
+    public void testCalculatedMeasure()
+    {
+        String expected = "select\n" + 
+                          "    \"Store Name\",\n" +
+                          "    \"Revenue\" / nullif(\"Products Sold\", 0) as \"Average Price\",\n" +
+                          "    \"Revenue\"\n" +
+                          "from (\n" +
+                          "select\n" + 
+                          "    DimStore.StoreName as \"Store Name\",\n" +
+                          "    sum(FactSales.Quantity) as \"Products Sold\",\n" +
+                          "    sum(FactSales.Amount) as \"Revenue\"\n" +
+                          "from FactSales\n" + 
+                          "join DimStore on DimStore.id = FactSales.StoreId\n" +
+                          "group by\n" +
+                          "    DimStore.StoreName\n" +
+                          ") calculated";
+        
+        Star star = getStar();
+        Measure revenue = new SumMeasure("Revenue", new Metric(star.getFact(), "Amount"));
+        CalculatedMeasure price = new CalculatedMeasure("Average Price", "[Revenue] / nullif([Products Sold], 0)");
+        ReportGenerator generator = new ReportGenerator(star);
+        
+        star.addMeasure(revenue);
+        star.addMeasure(price);
+        
+        assertSame(star, price.getStar());
+        assertEquals(Arrays.asList(revenue, star.getMeasure("Products Sold")), price.getDependencies());
+        
+        generator.addDimension(star.getDimension("Store Name"));
+        generator.addMeasure(price);
+        generator.addMeasure(revenue);
+        
+        assertEquals(expected, generator.getSQL());
+        assertFalse(generator.isKeyGroupable());
+        
+        generator = new ReportGenerator(star);
+        
+        generator.addDimension(star.getDimension("Store Name"));
+        generator.setTopK(new TopK(star.getDimension("Store Name"), price, 3));
+        
+        assertTrue(generator.getSQL().contains("row_number() over (order by (sum(FactSales.Amount)) / nullif((sum(FactSales.Quantity)), 0) desc nulls last) as \"Rank\""));
+        
+        star.addMeasure(new CalculatedMeasure("Broken", "[Missing] * 2"));
+        
+        assertThrows(IllegalArgumentException.class, () -> ((CalculatedMeasure)star.getMeasure("Broken")).getDependencies());
+    }
+    
+    @Test
+    public void testApproximateRejected()
+    {
+        Star star = getStar();
+        Measure sold = star.getMeasure("Products Sold");
+        CalculatedMeasure doubled = new CalculatedMeasure("Doubled", "[Products Sold] * 2");
+        TimeDimension month = new TimeDimension("Sale Month", star.getFact(), "SaleDate", "month");
+        WindowMeasure running = new WindowMeasure("Running Sold", sold, month, WindowMeasure.RUNNING_TOTAL);
+        ReportGenerator generator = new ReportGenerator(star);
+        ReportGenerator sampled = new ReportGenerator(star);
+        
+        star.addDimension(month);
+        star.addMeasure(doubled);
+        star.addMeasure(running);
+        
+        assertTrue(sold.isEstimable());
+        assertFalse(doubled.isEstimable());
+        assertFalse(running.isEstimable());
+        
+        generator.addDimension(month);
+        generator.addMeasure(sold);
+        
+        assertTrue(generator.isEstimable());
+        
+        generator.addMeasure(doubled);
+        
+        // Rejected up front rather than when the SQL is generated
+        assertFalse(generator.isEstimable());
+        assertEquals("Measure [Doubled] cannot be estimated from a sample", assertThrows(IllegalArgumentException.class, () -> generator.setSampleRate(0.1)).getMessage());
+        assertFalse(generator.isApproximate());
+        
+        generator.setSampleRate(1);
+        
+        sampled.addDimension(month);
+        sampled.addMeasure(sold);
+        sampled.setSampleRate(0.1);
+        
+        assertThrows(IllegalArgumentException.class, () -> sampled.addMeasure(running));
+        assertEquals(Arrays.asList(sold), sampled.getMeasures());
+    }
+    
+    @Test
+    public void testFilteredMeasure()
+    {
+        String expected = "select\n" + 
+                          "    sum(FactSales.Quantity) filter (where DimFranchise.FranchiseName = 'Acme') as \"Acme Sold\",\n" +
+                          "    sum(FactSales.Quantity) filter (where DimFranchise.FranchiseName in ('Bolt', 'Crest')) as \"Other Sold\"\n" +
+                          "from FactSales\n" + 
+                          "join DimFranchise on DimFranchise.id = FactSales.FranchiseId";
+        
+        Star star = getStar();
+        Dimension franchise = star.getDimension("Franchise Name");
+        Measure sold = star.getMeasure("Products Sold");
+        FilteredMeasure acme = new FilteredMeasure("Acme Sold", sold, new Filter(franchise, Arrays.asList("Acme")));
+        FilteredMeasure other = new FilteredMeasure();
+        ReportGenerator generator = new ReportGenerator(star);
+        
+        other.setName("Other Sold");
+        other.setMeasure(sold);
+        other.setDimension(franchise);
+        other.setValues(Arrays.asList("Bolt", "Crest"));
+        
+        star.addMeasure(acme);
+        star.addMeasure(other);
+        
+        generator.addMeasure(acme);
+        generator.addMeasure(other);
+        
+        assertEquals("sum", acme.getRollupFunction());
+        assertEquals(expected, generator.getSQL());
+        
+        generator.setDialect(new SQLServerDialect());
+        
+        assertTrue(generator.getSQL().contains("    sum(case when DimFranchise.FranchiseName = 'Acme' then FactSales.Quantity end) as \"Acme Sold\",\n"));
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.measures.AverageMeasure;
+import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.Table;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class SharedScanPlannerTest
+{
+    public Star getStar()
+    {
+        Database stardb = new Database("StarDB");
+        Table sales = new Table("FactSales");
+        Table franchise = new Table("DimFranchise", "id");
+        Table store = new Table("DimStore", "id");
+        Metric quantity = new Metric(sales, "Quantity");
+        Star star = new Star(sales);
+        
+        stardb.addTable(sales);
+        stardb.addTable(franchise);
+        stardb.addTable(store);
+        
+        sales.addForeignKey("FranchiseId", franchise);
+        sales.addForeignKey("StoreId", store);
+        
+        star.addDimension(new Dimension("Franchise Name", franchise, "FranchiseName"));
+        star.addDimension(new Dimension("Store Name", store, "StoreName"));
+        star.addMeasure(new SumMeasure("Products Sold", quantity));
+        star.addMeasure(new AverageMeasure("Average Sold", quantity));
+        
+        return star;
+    }
+    
+    public JSONObject getRow(String franchise, String store, long sold)
+    {
+        JSONObject row = new JSONObject();
+        
+        row.put("Franchise Name", franchise);
+        row.put("Store Name", store);
+        row.put("Products Sold", sold);
+        
+        return row;
+    }
+    
+    @Test
+    public void testGroupingSets()
+    {
+        String expected = "select\n" + 
+                          "    DimFranchise.FranchiseName as \"Franchise Name\",\n" +
+                          "    DimStore.StoreName as \"Store Name\",\n" + 
+                          "    sum(FactSales.Quantity) as \"Products Sold\",\n" +
+                          "    grouping(DimFranchise.FranchiseName) as \"Grouping:Franchise Name\",\n" +
+                          "    grouping(DimStore.StoreName) as \"Grouping:Store Name\"\n" +
+                          "from FactSales\n" + 
+                          "join DimFranchise on DimFranchise.id = FactSales.FranchiseId\n" + 
+                          "join DimStore on DimStore.id = FactSales.StoreId\n" + 
+                          "group by grouping sets (\n" +
+                          "    (DimFranchise.FranchiseName),\n" +
+                          "    (DimStore.StoreName)\n" +
+                          ")";
+        
+        Star star = getStar();
+        SharedScanPlanner planner = new SharedScanPlanner(star);
+        ReportGenerator franchise = new ReportGenerator(star);
+        ReportGenerator store = new ReportGenerator(star);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        Map<String,JSONArray<JSONObject>> results;
+        List<SharedScan> scans;
+        JSONObject row;
+        
+        franchise.addDimension(star.getDimension("Franchise Name"));
+        franchise.addMeasure(star.getMeasure("Products Sold"));
+        store.addDimension(star.getDimension("Store Name"));
+        store.addMeasure(star.getMeasure("Products Sold"));
+        
+        planner.addReport("franchise", franchise);
+        planner.addReport("store", store);
+        
+        scans = planner.getScans();
+        
+        assertEquals(1, scans.size());
+        assertEquals(expected, scans.get(0).getSQL());
+        
+        row = getRow("Acme", null, 10);
+        row.put("Grouping:Franchise Name", 0);
+        row.put("Grouping:Store Name", 1);
+        rows.add(row);
+        
+        row = getRow(null, "Main St", 4);
+        row.put("Grouping:Franchise Name", 1);
+        row.put("Grouping:Store Name", 0);
+        rows.add(row);
+        
+        results = scans.get(0).split(rows);
+        
+        assertEquals(1, results.get("franchise").size());
+        assertEquals("Acme", results.get("franchise").get(0).get("Franchise Name"));
+        assertFalse(results.get("franchise").get(0).containsKey("Store Name"));
+        assertEquals(1, results.get("store").size());
+        assertEquals(4L, ((Number)results.get("store").get(0).get("Products Sold")).longValue());
+    }
+    
+    @Test
+    public void testRollup()
+    {
+        Star star = getStar();
+        SharedScanPlanner planner = new SharedScanPlanner(star);
+        ReportGenerator franchise = new ReportGenerator(star);
+        ReportGenerator store = new ReportGenerator(star);
+        ReportGenerator average = new ReportGenerator(star);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        Map<String,JSONArray<JSONObject>> results;
+        List<SharedScan> scans;
+        
+        franchise.addDimension(star.getDimension("Franchise Name"));
+        franchise.addMeasure(star.getMeasure("Products Sold"));
+        store.addDimension(star.getDimension("Store Name"));
+        store.addMeasure(star.getMeasure("Products Sold"));
+        average.addDimension(star.getDimension("Store Name"));
+        average.addMeasure(star.getMeasure("Average Sold"));
+        
+        planner.setGroupingSets(false);
+        planner.addReport("franchise", franchise);
+        planner.addReport("store", store);
+        planner.addReport("average", average);
+        
+        scans = planner.getScans();
+        
+        assertEquals(2, scans.size());
+        assertEquals(2, scans.get(0).getReports().size());
+        assertEquals(average.getSQL(), scans.get(1).getSQL());
+        
+        rows.add(getRow("Acme", "Main St", 10));
+        rows.add(getRow("Acme", "Elm St", 5));
+        rows.add(getRow("Zenith", "Main St", 1));
+        
+        results = scans.get(0).split(rows);
+        
+        assertEquals(2, results.get("franchise").size());
+        assertEquals(15L, results.get("franchise").get(0).get("Products Sold"));
+        assertEquals(2, results.get("store").size());
+        assertEquals(11L, results.get("store").get(0).get("Products Sold"));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.cache;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DiskReportCacheTest
+{
+    private ReportCacheTest helper = new ReportCacheTest();
+    
+    private JSONArray<JSONObject> getRows()
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        
+        rows.add(helper.getRow("Acme", "Acme North", 10));
+        rows.add(helper.getRow("Acme", "Acme South", 20));
+        rows.add(helper.getRow("Zenith", "Zenith East", 5));
+        
+        return rows;
+    }
+    
+    private JSONArray<JSONObject> read(Iterable<JSONObject> results)
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        
+        for(JSONObject row : results) rows.add(row);
+        
+        return rows;
+    }
+    
+    private DiskReportCache getCache(File directory)
+    {
+        DiskReportCache cache = new DiskReportCache();
+        
+        cache.setDirectory(directory);
+        
+        return cache;
+    }
+    
+    @Test
+    public void testPersistence() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        ReportGenerator report = helper.getReport(star, "Franchise Name", "Store Name");
+        DiskReportCache cache = getCache(directory);
+        
+        assertNull(cache.get(report));
+        
+        cache.put(report, getRows()).get();
+        
+        assertEquals(1, cache.size());
+        assertEquals(getRows().toString(), read(cache.get(report)).toString());
+        
+        // Results can be iterated more than once
+        assertEquals(3, read(cache.get(report)).size());
+        
+        // Reopened from the index without the original instance
+        cache = getCache(directory);
+        
+        assertEquals(1, cache.size());
+        assertEquals(getRows().toString(), read(cache.get(report)).toString());
+        assertNull(cache.get(helper.getReport(star, "Franchise Name")));
+        
+        // A new version of the model invalidates the results
+        star.setVersion(2);
+        
+        assertNull(cache.get(report));
+        assertEquals(1, cache.getMetrics().getInt("hits"));
+        assertEquals(2, cache.getMetrics().getInt("misses"));
+        
+        cache.clear();
+        
+        assertEquals(0, cache.size());
+        assertEquals(0, getCache(directory).size());
+    }
+    
+    @Test
+    public void testEviction() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        ReportGenerator first = helper.getReport(star, "Franchise Name", "Store Name");
+        ReportGenerator second = helper.getReport(star, "Franchise Name");
+        ReportGenerator third = helper.getReport(star, "Store Name");
+        DiskReportCache cache = getCache(directory);
+        
+        // Every entry gets its own segment and only the newest fits
+        cache.setSegmentSize(1);
+        cache.setMaxSize(1);
+        
+        cache.put(first, getRows()).get();
+        cache.put(second, getRows()).get();
+        cache.put(third, getRows()).get();
+        
+        assertEquals(1, cache.size());
+        assertNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+        assertEquals(1, directory.listFiles((dir, name) -> name.startsWith("segment-")).length);
+        
+        // Expired entries are not returned
+        cache.setTimeToLive(-1);
+        
+        assertNull(cache.get(third));
+    }
+    
+    @Test
+    public void testReportCache() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        ReportGenerator report = helper.getReport(star, "Franchise Name", "Store Name");
+        ReportCache cache = new ReportCache();
+        
+        getCache(directory).put(report, getRows()).get();
+        
+        cache.setDisk(getCache(directory));
+        
+        assertEquals(getRows().toString(), cache.get(report).toString());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMetrics().getInt("stored"));
+        
+        // Served from memory after the first load
+        assertEquals(getRows().toString(), cache.get(report).toString());
+        assertEquals(1, cache.getMetrics().getInt("hits"));
+        
+        report = helper.getReport(star, "Store Name");
+        
+        report.addMeasure(star.getMeasure("Average Sold"));
+        
+        assertNull(cache.get(report));
+        assertEquals(1, cache.getMetrics().getInt("misses"));
+    }
+    
+    @Test
+    public void testTypes() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        ReportGenerator report = helper.getReport(star, "Franchise Name", "Store Name");
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        Timestamp timestamp = Timestamp.valueOf("2024-03-01 12:30:45.123456789");
+        JSONObject first = new JSONObject();
+        JSONObject second = new JSONObject();
+        JSONArray<JSONObject> results;
+        
+        first.put("Decimal", new BigDecimal("12345678901234567.000000000001"));
+        first.put("Count", 7);
+        first.put("Total", 9007199254740993L);
+        first.put("Ratio", 0.25);
+        first.put("Updated", timestamp);
+        first.put("Day", java.sql.Date.valueOf("2024-03-01"));
+        first.put("Local", LocalDate.of(2024, 3, 1));
+        first.put("Flag", true);
+        first.put("Name", "Acme");
+        
+        // Different types and columns in the same column across rows
+        second.put("Decimal", null);
+        second.put("Count", 7L);
+        second.put("Extra", "Only here");
+        
+        rows.add(first);
+        rows.add(second);
+        
+        getCache(directory).put(report, rows).get();
+        
+        results = read(getCache(directory).get(report));
+        
+        assertEquals(2, results.size());
+        
+        for(int i=0; i<rows.size(); i++)
+        {
+            assertEquals(rows.get(i).keySet(), results.get(i).keySet());
+            
+            for(String key : rows.get(i).keySet())
+            {
+                assertEquals(rows.get(i).get(key), results.get(i).get(key), key);
+                
+                if(rows.get(i).get(key) != null) assertEquals(rows.get(i).get(key).getClass(), results.get(i).get(key).getClass(), key);
+            }
+        }
+        
+        assertTrue(results.get(1).containsKey("Decimal"));
+    }
+    
+    @Test
+    public void testLossyResultsSkipped() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        ReportGenerator report = helper.getReport(star, "Franchise Name", "Store Name");
+        DiskReportCache cache = getCache(directory);
+        JSONArray<JSONObject> rows = getRows();
+        
+        rows.get(2).put("Id", UUID.randomUUID());
+        
+        cache.put(report, rows).get();
+        
+        assertNull(cache.get(report));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getMetrics().getInt("skipped"));
+        assertEquals(0, cache.getMetrics().getInt("writes"));
+    }
+    
+    @Test
+    public void testBatchedIndex() throws Exception
+    {
+        File directory = Files.createTempDirectory("disk-cache").toFile();
+        Star star = helper.getStar();
+        DiskReportCache cache = getCache(directory);
+        List<Future<?>> futures = new ArrayList<>();
+        ReportGenerator report;
+        
+        for(int i=0; i<100; i++)
+        {
+            report = helper.getReport(star, "Franchise Name", "Store Name");
+            
+            report.setSampleRate((i + 1) / 1000.0);
+            futures.add(cache.put(report, getRows()));
+        }
+        
+        for(Future<?> future : futures) future.get();
+        
+        // The index is written once the queue drains
+        assertEquals(100, getCache(directory).size());
+    }
+}
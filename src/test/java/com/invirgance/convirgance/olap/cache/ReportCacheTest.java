@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.cache;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Hierarchy;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.measures.AverageMeasure;
+import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.measures.WindowMeasure;
+import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.Table;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ReportCacheTest
+{
+    public Star getStar()
+    {
+        Database stardb = new Database("StarDB");
+        Table sales = new Table("FactSales");
+        Table franchise = new Table("DimFranchise", "id");
+        Table store = new Table("DimStore", "id");
+        Metric quantity = new Metric(sales, "Quantity");
+        Star star = new Star(sales);
+        
+        stardb.addTable(sales);
+        stardb.addTable(franchise);
+        stardb.addTable(store);
+        
+        sales.addForeignKey("FranchiseId", franchise);
+        sales.addForeignKey("StoreId", store);
+        
+        star.addDimension(new Dimension("Franchise Name", franchise, "FranchiseName"));
+        star.addDimension(new Dimension("Store Name", store, "StoreName"));
+        star.addMeasure(new SumMeasure("Products Sold", quantity));
+        star.addMeasure(new AverageMeasure("Average Sold", quantity));
+        star.addHierarchy(new Hierarchy("Stores", Arrays.asList(star.getDimension("Franchise Name"), star.getDimension("Store Name"))));
+        
+        return star;
+    }
+    
+    public JSONObject getRow(String franchise, String store, long sold)
+    {
+        JSONObject row = new JSONObject();
+        
+        row.put("Franchise Name", franchise);
+        row.put("Store Name", store);
+        row.put("Products Sold", sold);
+        
+        return row;
+    }
+    
+    public ReportGenerator getReport(Star star, String... dimensions)
+    {
+        ReportGenerator report = new ReportGenerator(star);
+        
+        for(String dimension : dimensions) report.addDimension(star.getDimension(dimension));
+        
+        report.addMeasure(star.getMeasure("Products Sold"));
+        
+        return report;
+    }
+    
+    @Test
+    public void testDrillUp()
+    {
+        Star star = getStar();
+        ReportCache cache = new ReportCache();
+        JSONArray<JSONObject> stores = new JSONArray<>();
+        JSONArray<JSONObject> results;
+        ReportGenerator report;
+        
+        stores.add(getRow("Acme", "Downtown", 5));
+        stores.add(getRow("Acme", "Uptown", 7));
+        stores.add(getRow("Bolt", "Airport", 3));
+        
+        cache.put(getReport(star, "Franchise Name", "Store Name"), stores);
+        
+        assertSame(stores, cache.get(getReport(star, "Store Name", "Franchise Name")));
+        
+        results = cache.get(getReport(star, "Franchise Name"));
+        
+        assertEquals(2, results.size());
+        assertEquals("Acme", results.get(0).get("Franchise Name"));
+        assertEquals(12L, ((Number)results.get(0).get("Products Sold")).longValue());
+        assertEquals(3L, ((Number)results.get(1).get("Products Sold")).longValue());
+        assertEquals(15L, ((Number)cache.get(getReport(star)).get(0).get("Products Sold")).longValue());
+        
+        // Averages can't be rolled up
+        report = getReport(star, "Franchise Name");
+        report.addMeasure(star.getMeasure("Average Sold"));
+        
+        assertNull(cache.get(report));
+        
+        // Filters on cached dimensions are applied in memory
+        report = getReport(star, "Franchise Name");
+        report.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Uptown", "Airport")));
+        results = cache.get(report);
+        
+        assertEquals(2, results.size());
+        assertEquals(7L, ((Number)results.get(0).get("Products Sold")).longValue());
+        assertEquals(3L, ((Number)results.get(1).get("Products Sold")).longValue());
+    }
+    
+    @Test
+    public void testSubsumption()
+    {
+        Star star = getStar();
+        ReportCache cache = new ReportCache();
+        JSONArray<JSONObject> stores = new JSONArray<>();
+        JSONArray<JSONObject> results;
+        ReportGenerator cached = getReport(star, "Franchise Name", "Store Name");
+        ReportGenerator report;
+        
+        cached.addMeasure(star.getMeasure("Average Sold"));
+        cached.addFilter(new Filter(star.getDimension("Franchise Name"), Arrays.asList("Acme", "Bolt")));
+        
+        stores.add(getRow("Acme", "Downtown", 5));
+        stores.add(getRow("Acme", "Uptown", 7));
+        stores.add(getRow("Bolt", "Airport", 3));
+        
+        for(JSONObject row : stores) row.put("Average Sold", 1.5);
+        
+        cache.put(cached, stores);
+        
+        // Same dimensions with a narrower filter doesn't need to re-aggregate
+        report = new ReportGenerator(star);
+        report.addDimension(star.getDimension("Store Name"));
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addMeasure(star.getMeasure("Average Sold"));
+        report.addFilter(new Filter(star.getDimension("Franchise Name"), Arrays.asList("Acme")));
+        results = cache.get(report);
+        
+        assertEquals(2, results.size());
+        assertEquals("Uptown", results.get(1).get("Store Name"));
+        assertEquals(1.5, ((Number)results.get(1).get("Average Sold")).doubleValue(), 0.0);
+        assertFalse(results.get(1).containsKey("Products Sold"));
+        
+        // The cached filter must be implied by the request
+        assertNull(cache.get(getReport(star, "Franchise Name", "Store Name")));
+        
+        report = getReport(star);
+        report.addFilter(new Filter(star.getDimension("Franchise Name"), Arrays.asList("Acme", "Bolt")));
+        
+        assertEquals(15L, ((Number)cache.get(report).get(0).get("Products Sold")).longValue());
+    }
+    
+    @Test
+    public void testWindowedMeasures()
+    {
+        Star star = getStar();
+        ReportCache cache = new ReportCache();
+        JSONArray<JSONObject> stores = new JSONArray<>();
+        WindowMeasure running = new WindowMeasure("Running Sold", star.getMeasure("Products Sold"), star.getDimension("Store Name"), WindowMeasure.RUNNING_TOTAL);
+        ReportGenerator cached = getReport(star, "Franchise Name", "Store Name");
+        ReportGenerator report;
+        
+        star.addMeasure(running);
+        cached.addMeasure(running);
+        
+        stores.add(getRow("Acme", "Downtown", 5));
+        stores.add(getRow("Acme", "Uptown", 7));
+        stores.add(getRow("Bolt", "Airport", 3));
+        
+        stores.get(0).put("Running Sold", 5L);
+        stores.get(1).put("Running Sold", 12L);
+        stores.get(2).put("Running Sold", 3L);
+        
+        cache.put(cached, stores);
+        
+        // The same rows can still be projected
+        report = new ReportGenerator(star);
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(running);
+        
+        assertEquals(12L, ((Number)cache.get(report).get(1).get("Running Sold")).longValue());
+        
+        // Filtering out Downtown changes the running total of Uptown
+        report = new ReportGenerator(star);
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(running);
+        report.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Uptown", "Airport")));
+        
+        assertNull(cache.get(report));
+        
+        // As does rolling up to franchises
+        report = new ReportGenerator(star);
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(running);
+        
+        assertNull(cache.get(report));
+        
+        // Non-windowed measures are still derived
+        report = getReport(star, "Franchise Name");
+        report.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Uptown", "Airport")));
+        
+        assertEquals(2, cache.get(report).size());
+    }
+    
+    @Test
+    public void testDrillPath()
+    {
+        Star star = getStar();
+        ReportCache cache = new ReportCache();
+        JSONArray<JSONObject> stores = new JSONArray<>();
+        ReportGenerator report = getReport(star, "Store Name");
+        ReportGenerator path = cache.getDrillPath(report);
+        JSONArray<JSONObject> results;
+        
+        assertEquals(Arrays.asList(star.getDimension("Franchise Name"), star.getDimension("Store Name")), path.getDimensions());
+        assertEquals(report.getMeasures(), path.getMeasures());
+        
+        // Nothing to add at the top level, and averages can't be derived back
+        assertNull(cache.getDrillPath(getReport(star, "Franchise Name")));
+        assertNull(cache.getDrillPath(getReport(star, "Franchise Name", "Store Name")));
+        
+        report.addMeasure(star.getMeasure("Average Sold"));
+        
+        assertNull(cache.getDrillPath(report));
+        
+        // Store names may repeat across franchises
+        stores.add(getRow("Acme", "Downtown", 5));
+        stores.add(getRow("Acme", "Uptown", 7));
+        stores.add(getRow("Bolt", "Downtown", 3));
+        
+        report = getReport(star, "Store Name");
+        results = cache.putDrillPath(path, cache.track(path, stores), report);
+        
+        assertEquals(2, results.size());
+        assertEquals("Downtown", results.get(0).get("Store Name"));
+        assertEquals(8L, ((Number)results.get(0).get("Products Sold")).longValue());
+        assertFalse(results.get(0).containsKey("Franchise Name"));
+        assertEquals(2, cache.size());
+        
+        // Drilling back up is answered from the drill path
+        results = cache.get(getReport(star, "Franchise Name"));
+        
+        assertEquals(2, results.size());
+        assertEquals(12L, ((Number)results.get(0).get("Products Sold")).longValue());
+        assertEquals(1, cache.getMetrics().getInt("derived"));
+        assertEquals(0, cache.getMetrics().getInt("misses"));
+    }
+}
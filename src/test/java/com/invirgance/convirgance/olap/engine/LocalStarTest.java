@@ -0,0 +1,404 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.TopK;
+import com.invirgance.convirgance.olap.measures.AverageMeasure;
+import com.invirgance.convirgance.olap.measures.FilteredMeasure;
+import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.Table;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class LocalStarTest
+{
+    public Star getStar()
+    {
+        Database stardb = new Database("StarDB");
+        Table sales = new Table("FactSales");
+        Table franchise = new Table("DimFranchise", "id");
+        Table store = new Table("DimStore", "id");
+        Metric quantity = new Metric(sales, "Quantity");
+        Star star = new Star(sales);
+        
+        stardb.addTable(sales);
+        stardb.addTable(franchise);
+        stardb.addTable(store);
+        
+        sales.addForeignKey("FranchiseId", franchise);
+        sales.addForeignKey("StoreId", store);
+        
+        star.addDimension(new Dimension("Franchise Name", franchise, "FranchiseName"));
+        star.addDimension(new Dimension("Store Name", store, "StoreName"));
+        star.addMeasure(new SumMeasure("Products Sold", quantity));
+        star.addMeasure(new AverageMeasure("Average Sold", quantity));
+        star.addMeasure(new Measure("Distinct Sold", quantity, "count_distinct"));
+        
+        return star;
+    }
+    
+    public JSONObject getRow(String franchise, String store, Integer sold)
+    {
+        JSONObject row = new JSONObject();
+        
+        row.put("Franchise Name", franchise);
+        row.put("Store Name", store);
+        row.put("Metric:FactSales.Quantity", sold);
+        
+        return row;
+    }
+    
+    public LocalStar getLocalStar(Star star)
+    {
+        LocalStar local = new LocalStar(star);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        
+        rows.add(getRow("Acme", "Downtown", 5));
+        rows.add(getRow("Acme", "Uptown", 7));
+        rows.add(getRow("Bolt", "Airport", 3));
+        rows.add(getRow("Acme", "Downtown", 2));
+        rows.add(getRow("Bolt", "Airport", null));
+        
+        local.load(rows);
+        
+        return local;
+    }
+    
+    @Test
+    public void testLocalStar()
+    {
+        Star star = getStar();
+        LocalStar local = getLocalStar(star);
+        ReportGenerator report = new ReportGenerator(star);
+        JSONArray<JSONObject> results;
+        
+        assertTrue(local.getSQL(false, null).startsWith("select\n    DimFranchise.FranchiseName as \"Franchise Name\",\n"));
+        assertEquals(5, local.getRows());
+        
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        report.addMeasure(star.getMeasure("Average Sold"));
+        
+        results = local.execute(report);
+        
+        assertEquals(2, results.size());
+        assertEquals("Acme", results.get(0).get("Franchise Name"));
+        assertEquals(14L, results.get(0).get("Products Sold"));
+        assertEquals(14.0 / 3, (Double)results.get(0).get("Average Sold"), 0.0001);
+        assertEquals(3L, results.get(1).get("Products Sold"));
+        
+        report.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Downtown", "Airport")));
+        
+        results = local.execute(report);
+        
+        assertEquals(7L, results.get(0).get("Products Sold"));
+        assertEquals(3L, results.get(1).get("Products Sold"));
+        
+        report = new ReportGenerator(star);
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addMeasure(new FilteredMeasure("Downtown Sold", star.getMeasure("Products Sold"), new Filter(star.getDimension("Store Name"), Arrays.asList("Downtown"))));
+        
+        results = local.execute(report);
+        
+        assertEquals(7L, results.get(0).get("Downtown Sold"));
+        assertNull(results.get(1).get("Downtown Sold"));
+        
+        report = new ReportGenerator(star);
+        report.addMeasure(star.getMeasure("Distinct Sold"));
+        
+        assertFalse(local.supports(report));
+    }
+    
+    @Test
+    public void testSnapshot() throws Exception
+    {
+        Star star = getStar();
+        LocalStar local = getLocalStar(star);
+        LocalStar copy = new LocalStar(star);
+        File file = new File(Files.createTempDirectory("snapshot").toFile(), "sales.snapshot");
+        ReportGenerator report = new ReportGenerator(star);
+        
+        assertEquals(new File("models", "sales.snapshot"), LocalStar.getSnapshotFile(new File("models", "sales.xml")));
+        assertFalse(copy.open(file));
+        
+        local.save(file);
+        
+        assertTrue(copy.open(file));
+        assertEquals(5, copy.getRows());
+        assertEquals(local.getLoaded(), copy.getLoaded());
+        
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        report.addMeasure(star.getMeasure("Average Sold"));
+        report.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Downtown", "Airport")));
+        
+        assertEquals(local.execute(report).toString(), copy.execute(report).toString());
+        
+        // Snapshots of another version of the model are ignored
+        star.setVersion(1);
+        
+        assertFalse(new LocalStar(star).open(file));
+        
+        star.setVersion(0);
+        
+        try(RandomAccessFile damaged = new RandomAccessFile(file, "rw"))
+        {
+            int last;
+            
+            damaged.seek(damaged.length() - 1);
+            last = damaged.read();
+            damaged.seek(damaged.length() - 1);
+            damaged.write(last ^ 0xFF);
+        }
+        
+        assertFalse(new LocalStar(star).open(file));
+    }
+    
+    @Test
+    public void testDeltaSegments() throws Exception
+    {
+        Star star = getStar();
+        LocalStar local = new LocalStar(star);
+        LocalStar reloaded = new LocalStar(star);
+        LocalStar copy = new LocalStar(star);
+        File file = new File(Files.createTempDirectory("snapshot").toFile(), "sales.snapshot");
+        ReportGenerator report = new ReportGenerator(star);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONArray<JSONObject> delta = new JSONArray<>();
+        JSONArray<JSONObject> before;
+        JSONArray<JSONObject> results;
+        
+        rows.add(getRow("Acme", "Downtown", 5));
+        rows.add(getRow("Bolt", "Airport", 3));
+        delta.add(getRow("Acme", "Harbor", 4));
+        delta.add(getRow("Bolt", "Airport", 6));
+        
+        for(int i=0; i<rows.size(); i++) rows.get(i).put("Watermark", i + 1);
+        for(int i=0; i<delta.size(); i++) delta.get(i).put("Watermark", rows.size() + i + 1);
+        
+        local.setWatermarkColumn("Id");
+        
+        assertThrows(IllegalStateException.class, () -> new LocalStar(star).getDeltaSQL(false, null));
+        assertTrue(local.getSQL(false, null).contains("FactSales.Id as \"Watermark\""));
+        assertFalse(local.getDeltaSQL(false, null).contains(" > "));
+        
+        local.load(rows);
+        
+        assertEquals(2, local.getWatermark());
+        assertTrue(local.getDeltaSQL(false, null).contains("FactSales.Id > 2"));
+        
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        
+        before = local.execute(report);
+        
+        assertEquals(2, local.append(delta));
+        assertEquals(0, local.append(new JSONArray<>()));
+        assertEquals(2, local.getSegments());
+        assertEquals(4, local.getRows());
+        assertEquals(4, local.getWatermark());
+        
+        results = local.execute(report);
+        
+        assertEquals(2, before.size());
+        assertEquals(3, results.size());
+        assertEquals("Harbor", results.get(2).get("Store Name"));
+        assertEquals(9L, results.get(1).get("Products Sold"));
+        
+        // Snapshots hold every segment and the watermark
+        local.save(file);
+        
+        assertTrue(copy.open(file));
+        assertEquals(1, copy.getSegments());
+        assertEquals(4, copy.getWatermark());
+        assertEquals(results.toString(), copy.execute(report).toString());
+        
+        // A compacted copy matches loading the same rows
+        rows.addAll(delta);
+        reloaded.load(rows);
+        local.compact();
+        
+        assertEquals(1, local.getSegments());
+        assertEquals(4, local.getRows());
+        assertEquals(4, local.getWatermark());
+        assertEquals(results.toString(), local.execute(report).toString());
+        assertEquals(reloaded.execute(report).toString(), local.execute(report).toString());
+        
+        // Appending after a restart continues from the restored watermark
+        delta = new JSONArray<>();
+        
+        delta.add(getRow("Bolt", "Station", 1));
+        delta.get(0).put("Watermark", 5);
+        delta.add(getRow("Bolt", "Station", 1));
+        delta.get(1).put("Watermark", 3);
+        
+        copy.setWatermarkColumn("Id");
+        
+        assertEquals(2, copy.append(delta));
+        assertEquals(5, copy.getWatermark());
+    }
+    
+    @Test
+    public void testTimestampWatermark() throws Exception
+    {
+        Star star = getStar();
+        LocalStar local = new LocalStar(star);
+        LocalStar copy = new LocalStar(star);
+        File file = new File(Files.createTempDirectory("snapshot").toFile(), "sales.snapshot");
+        Timestamp loaded = Timestamp.valueOf("2024-03-01 10:15:30.123456");
+        Timestamp later = Timestamp.valueOf("2024-03-01 11:00:00");
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        
+        rows.add(getRow("Acme", "Downtown", 5));
+        rows.get(0).put("Watermark", loaded);
+        
+        local.setWatermarkColumn("LoadedAt");
+        local.load(rows);
+        local.save(file);
+        
+        copy.setWatermarkColumn("LoadedAt");
+        
+        assertTrue(copy.open(file));
+        assertEquals(loaded, copy.getWatermark());
+        assertTrue(copy.getDeltaSQL(false, null).contains("FactSales.LoadedAt > timestamp '2024-03-01 10:15:30.123456'"));
+        
+        rows = new JSONArray<>();
+        
+        rows.add(getRow("Bolt", "Airport", 3));
+        rows.get(0).put("Watermark", later);
+        
+        assertEquals(1, copy.append(rows));
+        assertEquals(later, copy.getWatermark());
+    }
+    
+    /**
+     * Returns the rows of the fact table the delta query would read by 
+     * applying its watermark predicate to the rows in memory.
+     */
+    private JSONArray<JSONObject> getDelta(LocalStar local, JSONArray<JSONObject> table)
+    {
+        Matcher matcher = Pattern.compile("LoadedAt > timestamp '([^']+)'").matcher(local.getDeltaSQL(false, null));
+        JSONArray<JSONObject> delta = new JSONArray<>();
+        LocalDateTime watermark;
+        
+        assertTrue(matcher.find(), local.getDeltaSQL(false, null));
+        
+        watermark = LocalDateTime.parse(matcher.group(1).replace(' ', 'T'));
+        
+        for(JSONObject row : table)
+        {
+            if(((LocalDateTime)row.get("Watermark")).isAfter(watermark)) delta.add(row);
+        }
+        
+        return delta;
+    }
+    
+    @Test
+    public void testLocalDateTimeWatermark()
+    {
+        Star star = getStar();
+        LocalStar local = new LocalStar(star);
+        JSONArray<JSONObject> table = new JSONArray<>();
+        
+        table.add(getRow("Acme", "Downtown", 5));
+        table.get(0).put("Watermark", LocalDateTime.parse("2024-03-01T10:15:30.123456"));
+        
+        local.setWatermarkColumn("LoadedAt");
+        local.load(table);
+        
+        table.add(getRow("Bolt", "Airport", 3));
+        table.get(1).put("Watermark", LocalDateTime.parse("2024-03-01T11:00:00"));
+        
+        assertEquals(1, local.append(getDelta(local, table)));
+        assertEquals(LocalDateTime.parse("2024-03-01T11:00:00"), local.getWatermark());
+        
+        // Nothing new has been added since the last poll on the same day
+        assertEquals(0, local.append(getDelta(local, table)));
+        assertEquals(2, local.getRows());
+    }
+    
+    @Test
+    public void testTopK()
+    {
+        Star star = getStar();
+        LocalStar local = new LocalStar(star);
+        ReportGenerator report = new ReportGenerator(star);
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONArray<JSONObject> results;
+        
+        rows.add(getRow("Acme", "Downtown", 5));
+        rows.add(getRow("Acme", "Uptown", 9));
+        rows.add(getRow("Acme", "Harbor", 1));
+        rows.add(getRow("Acme", "Downtown", 2));
+        rows.add(getRow("Bolt", "Airport", 3));
+        rows.add(getRow("Bolt", "Station", null));
+        
+        local.load(rows);
+        
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.setTopK(new TopK(star.getDimension("Store Name"), star.getMeasure("Products Sold"), 2));
+        
+        assertTrue(local.supports(report));
+        
+        results = local.execute(report);
+        
+        assertEquals(4, results.size());
+        assertEquals("Uptown", results.get(0).get("Store Name"));
+        assertEquals(1, results.get(0).get(ReportGenerator.RANK_COLUMN));
+        assertEquals("Downtown", results.get(1).get("Store Name"));
+        assertEquals(2, results.get(1).get(ReportGenerator.RANK_COLUMN));
+        assertEquals("Airport", results.get(2).get("Store Name"));
+        assertEquals("Station", results.get(3).get("Store Name"));
+        assertNull(results.get(3).get("Products Sold"));
+        
+        report.setTopK(new TopK(star.getDimension("Store Name"), star.getMeasure("Products Sold"), 1, false));
+        
+        results = local.execute(report);
+        
+        assertEquals(2, results.size());
+        assertEquals("Harbor", results.get(0).get("Store Name"));
+        assertEquals("Airport", results.get(1).get("Store Name"));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.engine;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ReportRouterTest
+{
+    private LocalStarTest helper = new LocalStarTest();
+    
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(ReportRouterTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+    
+    /**
+     * Creates a database returning the rows for every query.
+     */
+    private DataSource getSource(JSONArray<JSONObject> rows)
+    {
+        List<String> labels = new ArrayList<>(rows.get(0).keySet());
+        ResultSetMetaData metadata = proxy(ResultSetMetaData.class, (object, method, args) -> {
+            if(method.getName().equals("getColumnCount")) return labels.size();
+            if(method.getName().equals("getColumnLabel")) return labels.get((Integer)args[0] - 1);
+            
+            return null;
+        });
+        
+        return proxy(DataSource.class, (source, sourceMethod, sourceArgs) -> {
+            return proxy(Connection.class, (connection, connectionMethod, connectionArgs) -> {
+                if(!connectionMethod.getName().equals("createStatement")) return null;
+                
+                return proxy(Statement.class, (statement, method, args) -> {
+                    Iterator<JSONObject> iterator = rows.iterator();
+                    JSONObject[] current = new JSONObject[1];
+                    
+                    if(!method.getName().equals("executeQuery")) return null;
+                    
+                    return proxy(ResultSet.class, (results, resultsMethod, resultsArgs) -> {
+                        switch(resultsMethod.getName())
+                        {
+                            case "next":
+                                if(!iterator.hasNext()) return false;
+                                
+                                current[0] = iterator.next();
+                                
+                                return true;
+                            case "getMetaData":
+                                return metadata;
+                            case "getObject":
+                                return current[0].get(labels.get((Integer)resultsArgs[0] - 1));
+                            default:
+                                return null;
+                        }
+                    });
+                });
+            });
+        });
+    }
+    
+    @Test
+    public void testRouting() throws Exception
+    {
+        Star star = helper.getStar();
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        ReportRouter router = new ReportRouter();
+        StarStatistics statistics = new StarStatistics();
+        SQLReportExecutor sql = new SQLReportExecutor(null);
+        AtomicInteger extracts = new AtomicInteger();
+        DataSource source;
+        LocalReportExecutor local;
+        ReportGenerator report = new ReportGenerator(star);
+        
+        for(int i=0; i<5; i++) rows.add(helper.getRow("Acme", "Store " + i, i));
+        
+        source = getSource(rows);
+        local = new LocalReportExecutor(new LocalStar(star), proxy(DataSource.class, (object, method, args) -> {
+            extracts.incrementAndGet();
+            
+            return method.invoke(source, args);
+        }));
+        
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        
+        router.addExecutor(sql);
+        router.addExecutor(local);
+        
+        // Without statistics the first executor is used and nothing is loaded
+        assertSame(sql, router.route(report));
+        
+        router.setStatistics(statistics);
+        
+        // Too large to copy
+        statistics.setRows(5000000);
+        assertSame(sql, router.route(report));
+        
+        Thread.sleep(50);
+        assertEquals(0, extracts.get());
+        
+        // The database answers while the copy loads in the background
+        statistics.setRows(5);
+        assertSame(sql, router.route(report));
+        
+        local.execute(report, 0);
+        
+        assertSame(local, router.route(report));
+        assertEquals(1, extracts.get());
+        assertEquals(5, local.getMetrics().get("rows"));
+    }
+    
+    @Test
+    public void testMaxRows()
+    {
+        Star star = helper.getStar();
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        LocalReportExecutor local;
+        ReportGenerator report = new ReportGenerator(star);
+        StarStatistics statistics = new StarStatistics();
+        
+        for(int i=0; i<5; i++) rows.add(helper.getRow("Acme", "Store " + i, i));
+        
+        report.addDimension(star.getDimension("Store Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        
+        // Statistics gathered before the fact table grew
+        statistics.setRows(3);
+        
+        local = new LocalReportExecutor(new LocalStar(star), getSource(rows));
+        local.setMaxRows(3);
+        
+        // Starts the extract in the background
+        assertEquals(Double.POSITIVE_INFINITY, local.estimateCost(report, statistics));
+        assertThrows(ConvirganceException.class, () -> local.execute(report, 0));
+        assertTrue(local.isExceeded());
+        assertTrue(local.getLastError().contains("more than 3 fact rows"));
+        assertTrue(local.getLastErrorTime() > 0);
+        assertEquals(1L, local.getMetrics().get("errors"));
+        assertEquals(0, local.getLocalStar().getLoaded());
+        assertEquals(Double.POSITIVE_INFINITY, local.estimateCost(report, statistics));
+        
+        local.setMaxRows(5);
+        
+        assertThrows(ConvirganceException.class, () -> local.execute(report, 0));
+        
+        // Within the limit
+        LocalReportExecutor larger = new LocalReportExecutor(new LocalStar(star), getSource(rows));
+        int count = 0;
+        
+        larger.setMaxRows(5);
+        
+        for(JSONObject row : larger.execute(report, 0)) count++;
+        
+        assertEquals(5, count);
+        assertFalse(larger.isExceeded());
+    }
+    
+    @Test
+    public void testLocalCost()
+    {
+        Star star = helper.getStar();
+        LocalReportExecutor local = new LocalReportExecutor(helper.getLocalStar(star), null);
+        StarStatistics statistics = new StarStatistics();
+        ReportGenerator narrow = new ReportGenerator(star);
+        ReportGenerator wide = new ReportGenerator(star);
+        
+        statistics.setRows(5);
+        
+        narrow.addMeasure(star.getMeasure("Products Sold"));
+        
+        wide.addDimension(star.getDimension("Franchise Name"));
+        wide.addDimension(star.getDimension("Store Name"));
+        wide.addMeasure(star.getMeasure("Products Sold"));
+        wide.addMeasure(star.getMeasure("Average Sold"));
+        
+        double cost;
+        
+        // Five rows of one column, plus the single group
+        assertEquals(5 * 0.05 + 0.05, local.estimateCost(narrow, statistics), 0.0001);
+        assertTrue(local.estimateCost(wide, statistics) > 3 * local.estimateCost(narrow, statistics));
+        
+        // Filtering on a dimension already read costs nothing more
+        cost = local.estimateCost(wide, statistics);
+        wide.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Uptown")));
+        
+        assertEquals(cost, local.estimateCost(wide, statistics), 0.0);
+        
+        cost = local.estimateCost(narrow, statistics);
+        narrow.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Uptown")));
+        
+        assertTrue(local.estimateCost(narrow, statistics) > cost);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.export;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.output.ColumnarReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ExportManagerTest
+{
+    private ExportManager getManager() throws Exception
+    {
+        ExportManager manager = new ExportManager("test");
+        
+        manager.setDirectory(Files.createTempDirectory("exports").toFile());
+        
+        return manager;
+    }
+    
+    private JSONArray<JSONObject> getRows(int count)
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONObject row;
+        
+        for(int i=0; i<count; i++)
+        {
+            row = new JSONObject();
+            
+            row.put("Store Name", i == 0 ? "Main, \"North\"" : "Store " + i);
+            row.put("Products Sold", (long)i);
+            rows.add(row);
+        }
+        
+        return rows;
+    }
+    
+    private void await(ExportJob job) throws InterruptedException
+    {
+        while(!job.isDone()) Thread.sleep(5);
+    }
+    
+    private byte[] readAll(ExportJob job)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer;
+        long offset = 0;
+        
+        // Read in small ranges the way a resumed download would
+        do
+        {
+            buffer = job.read(offset, 100);
+            offset += buffer.remaining();
+            
+            while(buffer.hasRemaining()) out.write(buffer.get());
+        }
+        while(offset < job.getSize());
+        
+        return out.toByteArray();
+    }
+    
+    @Test
+    public void testCSV() throws Exception
+    {
+        ExportManager manager = getManager();
+        ExportJob job = manager.submit("csv", () -> getRows(1000));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[4096];
+        String[] lines;
+        int read;
+        
+        await(job);
+        
+        assertEquals(ExportJob.COMPLETE, job.getState());
+        assertEquals(1000, job.getRows());
+        assertTrue(job.getFile().getName().endsWith(".csv.gz"));
+        assertEquals(job.getFile().length(), job.getSize());
+        assertSame(job, manager.getJob(job.getId()));
+        
+        try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(readAll(job))))
+        {
+            while((read = in.read(bytes)) > 0) out.write(bytes, 0, read);
+        }
+        
+        lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        
+        assertEquals(1001, lines.length);
+        assertEquals("Store Name,Products Sold", lines[0]);
+        assertEquals("\"Main, \"\"North\"\"\",0", lines[1]);
+        assertEquals("Store 999,999", lines[1000]);
+    }
+    
+    @Test
+    public void testColumnar() throws Exception
+    {
+        ExportManager manager = getManager();
+        ExportJob job = manager.submit("columnar", () -> getRows(50));
+        int count = 0;
+        
+        await(job);
+        
+        assertEquals(ExportJob.COMPLETE, job.getState());
+        
+        for(JSONObject row : new ColumnarReader(new ByteArrayInputStream(readAll(job))))
+        {
+            assertEquals((long)count++, ((Number)row.get("Products Sold")).longValue());
+        }
+        
+        assertEquals(50, count);
+    }
+    
+    @Test
+    public void testFailureAndCancel() throws Exception
+    {
+        ExportManager manager = getManager();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExportJob failed = manager.submit("csv", () -> { throw new IllegalStateException("Query failed"); });
+        ExportJob cancelled;
+        
+        await(failed);
+        
+        assertEquals(ExportJob.FAILED, failed.getState());
+        assertEquals("Query failed", failed.getError());
+        assertThrows(IllegalStateException.class, () -> failed.read(0, 10));
+        
+        cancelled = manager.submit("csv", () -> {
+            try
+            {
+                latch.await();
+            }
+            catch(InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            
+            return getRows(10);
+        });
+        
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(ExportJob.CANCELLED, cancelled.getState());
+        
+        manager.setTimeToLive(0);
+        Thread.sleep(5);
+        
+        assertTrue(manager.getJobs().isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.output;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ColumnarWriterTest
+{
+    private List<JSONObject> getRecords(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("Store Name", "Store " + (i % 3));
+            record.put("Products Sold", (long)i);
+            record.put("Average Sold", i % 5 == 0 ? null : new BigDecimal(i + ".5"));
+            record.put("Open", i % 2 == 0);
+            record.put("Notes", null);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    @Test
+    public void testRoundTrip()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out);
+        List<JSONObject> records = getRecords(10);
+        List<JSONObject> read = new ArrayList<>();
+        
+        writer.setBatchSize(4);
+        writer.write(records);
+        writer.close();
+        
+        for(JSONObject record : new ColumnarReader(new ByteArrayInputStream(out.toByteArray()))) read.add(record);
+        
+        assertEquals(10, read.size());
+        
+        for(int i=0; i<10; i++)
+        {
+            assertEquals(records.get(i).get("Store Name"), read.get(i).get("Store Name"));
+            assertEquals(records.get(i).get("Products Sold"), read.get(i).get("Products Sold"));
+            assertEquals(records.get(i).get("Open"), read.get(i).get("Open"));
+            assertNull(read.get(i).get("Notes"));
+            
+            if(i % 5 == 0) assertNull(read.get(i).get("Average Sold"));
+            else assertEquals(i + 0.5, (Double)read.get(i).get("Average Sold"), 0.0);
+        }
+    }
+    
+    @Test
+    public void testDictionary()
+    {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        ByteArrayOutputStream columnar = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(columnar);
+        
+        for(JSONObject record : getRecords(1000))
+        {
+            writer.write(record);
+            json.write(record.toString().getBytes(), 0, record.toString().length());
+        }
+        
+        writer.close();
+        
+        assertTrue(columnar.size() * 2 < json.size());
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        new ColumnarWriter(out).close();
+        
+        assertFalse(new ColumnarReader(new ByteArrayInputStream(out.toByteArray())).iterator().hasNext());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.stats;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.TimeDimension;
+import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.Table;
+import java.io.File;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class StatisticsCollectorTest
+{
+    public Star getStar()
+    {
+        Database stardb = new Database("StarDB");
+        Table sales = new Table("FactSales");
+        Table store = new Table("DimStore", "id");
+        Metric quantity = new Metric(sales, "Quantity");
+        Star star = new Star(sales);
+        
+        stardb.addTable(sales);
+        stardb.addTable(store);
+        
+        sales.addForeignKey("StoreId", store);
+        
+        star.addDimension(new Dimension("Store Name", store, "StoreName"));
+        star.addDimension(new TimeDimension("Sale Month", sales, "SaleDate", "month"));
+        star.addMeasure(new SumMeasure("Products Sold", quantity));
+        
+        return star;
+    }
+    
+    @Test
+    public void testCollect() throws Exception
+    {
+        String expected = "select\n" + 
+                          "    count(*) as \"rows\",\n" +
+                          "    count(distinct DimStore.StoreName) as \"Cardinality:Store Name\",\n" +
+                          "    count(distinct date_trunc('month', FactSales.SaleDate)) as \"Cardinality:Sale Month\",\n" +
+                          "    min(FactSales.Quantity) as \"Min:FactSales.Quantity\",\n" +
+                          "    max(FactSales.Quantity) as \"Max:FactSales.Quantity\"\n" +
+                          "from FactSales\n" +
+                          "join DimStore on DimStore.id = FactSales.StoreId";
+        
+        Star star = getStar();
+        StatisticsCollector collector = new StatisticsCollector(star, null);
+        JSONObject row = new JSONObject();
+        StarStatistics statistics;
+        File file = File.createTempFile("star", ".stats.json");
+        Metric quantity = star.getMeasure("Products Sold").getMetric();
+        
+        assertEquals(expected, collector.getSQL());
+        
+        row.put("rows", 1000);
+        row.put("Cardinality:Store Name", 12);
+        row.put("Cardinality:Sale Month", 24L);
+        row.put("Min:FactSales.Quantity", 1);
+        row.put("Max:FactSales.Quantity", 250);
+        
+        statistics = collector.getStatistics(row);
+        
+        assertEquals(1000, statistics.getRows());
+        assertEquals(12, statistics.getCardinality(star.getDimension("Store Name")));
+        assertEquals(1, statistics.getMinimum(quantity));
+        
+        try
+        {
+            statistics.save(file);
+            statistics = StarStatistics.load(file);
+        }
+        finally
+        {
+            file.delete();
+        }
+        
+        assertEquals(1000, statistics.getRows());
+        assertEquals(24, statistics.getCardinality(star.getDimension("Sale Month")));
+        assertEquals(250, ((Number)statistics.getMaximum(quantity)).intValue());
+        assertTrue(statistics.getCollected() > 0);
+        assertNull(StarStatistics.load(file));
+    }
+    
+    @Test
+    public void testAdmission()
+    {
+        StatisticsCollector collector = new StatisticsCollector(getStar(), null);
+        AdmissionController controller = new AdmissionController("stats");
+        
+        controller.setMaxConcurrent(1);
+        controller.setMaxQueued(0);
+        controller.acquire(AdmissionController.INTERACTIVE);
+        
+        collector.setAdmissionController(controller);
+        
+        // Rejected by the controller before the database is touched
+        assertThrows(ConvirganceException.class, () -> collector.collect());
+        assertEquals(1L, controller.getMetrics().get("rejected"));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ProgressiveResultsTest
+{
+    private Iterable<JSONObject> getResults(double rate)
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONObject row = new JSONObject();
+        
+        row.put("rate", rate);
+        rows.add(row);
+        
+        return rows;
+    }
+    
+    @Test
+    public void testStages()
+    {
+        CountDownLatch exact = new CountDownLatch(1);
+        ProgressiveResults results = new ProgressiveResults(Arrays.asList(0.1, 2.0, 0.01), rate -> {
+            try
+            {
+                if(rate >= 1) exact.await();
+            }
+            catch(InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            
+            return getResults(rate);
+        });
+        Iterator<JSONObject> iterator;
+        JSONObject message;
+        double completeness = 0;
+        int estimates = 0;
+        
+        assertEquals(Arrays.asList(0.01, 0.1, 1.0), results.getRates());
+        
+        iterator = results.iterator();
+        
+        // The exact stage cannot finish until an estimate has been returned
+        message = iterator.next();
+        
+        assertFalse((Boolean)message.get("exact"));
+        exact.countDown();
+        
+        do
+        {
+            assertTrue((Double)message.get("completeness") > completeness);
+            
+            completeness = (Double)message.get("completeness");
+            
+            if(!(Boolean)message.get("exact")) estimates++;
+            
+            message = iterator.hasNext() ? iterator.next() : null;
+        }
+        while(message != null);
+        
+        assertEquals(1.0, completeness);
+        assertTrue(estimates >= 1);
+    }
+    
+    @Test
+    public void testFailures()
+    {
+        Iterator<JSONObject> iterator = new ProgressiveResults(Arrays.asList(0.01), rate -> {
+            if(rate < 1) throw new IllegalStateException("Sample failed");
+            
+            return getResults(rate);
+        }).iterator();
+        
+        assertEquals(1.0, iterator.next().get("completeness"));
+        assertFalse(iterator.hasNext());
+        
+        iterator = new ProgressiveResults(Arrays.asList(0.01), rate -> {
+            if(rate >= 1) throw new IllegalStateException("Query failed");
+            
+            return getResults(rate);
+        }).iterator();
+        
+        try
+        {
+            while(iterator.hasNext()) iterator.next();
+            
+            fail("Expected the exact stage to fail");
+        }
+        catch(ConvirganceException e)
+        {
+            assertEquals("Query failed", e.getCause().getMessage());
+        }
+    }
+    
+    @Test
+    public void testClose() throws Exception
+    {
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger closed = new AtomicInteger();
+        ProgressiveResults results = new ProgressiveResults(Arrays.asList(0.01), rate -> new Closeable(started, closed));
+        Iterator<JSONObject> iterator = results.iterator();
+        
+        started.await();
+        
+        // The client stopped reading before any stage finished
+        ((AutoCloseable)iterator).close();
+        
+        assertEquals(2, closed.get());
+        assertFalse(iterator.hasNext());
+        
+        // Closing the results closes every open iterator
+        iterator = results.iterator();
+        results.close();
+        
+        assertFalse(iterator.hasNext());
+    }
+    
+    /**
+     * Results that never finish until closed, like a long running query.
+     */
+    private static class Closeable implements Iterable<JSONObject>, AutoCloseable
+    {
+        private CountDownLatch started;
+        private AtomicInteger closed;
+        private CountDownLatch latch = new CountDownLatch(1);
+
+        public Closeable(CountDownLatch started, AtomicInteger closed)
+        {
+            this.started = started;
+            this.closed = closed;
+        }
+        
+        @Override
+        public Iterator<JSONObject> iterator()
+        {
+            started.countDown();
+            
+            try
+            {
+                // Ignores interrupts the way a driver blocked on the network does
+                while(!latch.await(10, TimeUnit.MILLISECONDS)) Thread.interrupted();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            
+            throw new ConvirganceException("Query cancelled");
+        }
+
+        @Override
+        public void close()
+        {
+            closed.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
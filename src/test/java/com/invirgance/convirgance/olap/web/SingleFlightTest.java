@@ -0,0 +1,229 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class SingleFlightTest
+{
+    private Iterable<JSONObject> getSource(AtomicInteger executions, CountDownLatch latch, int count)
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONObject row;
+        
+        executions.incrementAndGet();
+        
+        for(int i=0; i<count; i++)
+        {
+            row = new JSONObject();
+            
+            row.put("index", i);
+            rows.add(row);
+        }
+        
+        return () -> {
+            try
+            {
+                latch.await();
+            }
+            catch(InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            
+            return rows.iterator();
+        };
+    }
+    
+    private int count(Iterator<JSONObject> iterator)
+    {
+        int count = 0;
+        
+        while(iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        
+        return count;
+    }
+    
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        Iterator<JSONObject> first = flights.execute("report", () -> getSource(executions, latch, 100)).iterator();
+        Iterator<JSONObject> second = flights.execute("report", () -> getSource(executions, latch, 100)).iterator();
+        Iterator<JSONObject> third = flights.execute("report", () -> getSource(executions, latch, 100)).iterator();
+        
+        assertEquals(1, flights.getFlights());
+        
+        // Cancelling one subscriber does not affect the others
+        ((AutoCloseable)third).close();
+        latch.countDown();
+        
+        assertEquals(100, count(first));
+        assertEquals(100, count(second));
+        assertFalse(third.hasNext());
+        assertEquals(1, executions.get());
+        
+        while(flights.getFlights() > 0) Thread.sleep(5);
+        
+        assertEquals(100, count(flights.execute("report", () -> getSource(executions, latch, 100)).iterator()));
+        assertEquals(2, executions.get());
+    }
+    
+    @Test
+    public void testSlowSupplier() throws Exception
+    {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch supplying = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Iterator<JSONObject> slow;
+        Iterator<JSONObject> fast;
+        
+        slow = flights.execute("slow", () -> {
+            try
+            {
+                supplying.await();
+            }
+            catch(InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            
+            return getSource(executions, latch, 10);
+        }).iterator();
+        
+        // A supplier blocked on the database does not stall other keys
+        latch.countDown();
+        fast = flights.execute("fast", () -> getSource(executions, latch, 5)).iterator();
+        
+        assertEquals(5, count(fast));
+        assertEquals(1, executions.get());
+        
+        supplying.countDown();
+        
+        assertEquals(10, count(slow));
+        assertEquals(2, executions.get());
+    }
+    
+    @Test
+    public void testBoundedBuffer() throws Exception
+    {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        Iterator<JSONObject> first;
+        Iterator<JSONObject> second;
+        Iterator<JSONObject> late;
+        Thread reader;
+        int[] count = new int[1];
+        
+        flights.setMaxBuffered(10);
+        
+        first = flights.execute("report", () -> counted(getSource(executions, latch, 100), produced)).iterator();
+        second = flights.execute("report", () -> counted(getSource(executions, latch, 100), produced)).iterator();
+        
+        latch.countDown();
+        
+        // The query waits for the second subscriber once the buffer is full
+        for(int i=0; i<10; i++) first.next();
+        
+        Thread.sleep(50);
+        
+        assertTrue(produced.get() <= 11);
+        
+        for(int i=0; i<10; i++) second.next();
+        
+        while(produced.get() < 12) Thread.sleep(5);
+        
+        // Rows have been released so a new request starts its own query
+        late = flights.execute("report", () -> getSource(executions, latch, 100)).iterator();
+        
+        assertEquals(100, count(late));
+        assertEquals(2, executions.get());
+        
+        reader = new Thread(() -> count[0] = count(second));
+        reader.start();
+        
+        assertEquals(90, count(first));
+        
+        reader.join();
+        
+        assertEquals(90, count[0]);
+        assertEquals(100, produced.get());
+    }
+    
+    private Iterable<JSONObject> counted(Iterable<JSONObject> source, AtomicInteger produced)
+    {
+        return () -> {
+            Iterator<JSONObject> iterator = source.iterator();
+            
+            return new Iterator<JSONObject>() {
+                @Override
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public JSONObject next()
+                {
+                    produced.incrementAndGet();
+                    
+                    return iterator.next();
+                }
+            };
+        };
+    }
+    
+    @Test
+    public void testCopies() throws Exception
+    {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        Iterator<JSONObject> first = flights.execute("report", () -> getSource(executions, latch, 1)).iterator();
+        Iterator<JSONObject> second = flights.execute("report", () -> getSource(executions, latch, 1)).iterator();
+        
+        latch.countDown();
+        
+        first.next().put("index", "modified");
+        
+        assertEquals(0, second.next().get("index"));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.web;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.dbms.DBMS;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.ReportGeneratorTest;
+import com.invirgance.convirgance.olap.Star;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class StarBatchBindingTest
+{
+    private static class TestBinding extends StarBatchBinding
+    {
+        private final Star star = new ReportGeneratorTest().getStar();
+        private final AtomicInteger executions = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final Set<ClassLoader> loaders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private CyclicBarrier barrier;
+        
+        @Override
+        protected Star loadStar()
+        {
+            return star;
+        }
+
+        @Override
+        protected ReportGenerator getReport(JSONObject parameters)
+        {
+            ReportGenerator generator = new ReportGenerator(star);
+            
+            for(Object name : parameters.getJSONArray("measures"))
+            {
+                if(star.getMeasure(name.toString()) == null) throw new ConvirganceException("Measure [" + name + "] not found!");
+                
+                generator.addMeasure(star.getMeasure(name.toString()));
+            }
+            
+            return generator;
+        }
+
+        @Override
+        protected Iterable<JSONObject> execute(ReportGenerator generator, DBMS dbms, int priority)
+        {
+            JSONArray<JSONObject> rows = new JSONArray<>();
+            JSONObject row = new JSONObject();
+            int current = running.incrementAndGet();
+            
+            executions.incrementAndGet();
+            threads.add(Thread.currentThread());
+            loaders.add(Thread.currentThread().getContextClassLoader());
+            peak.accumulateAndGet(current, Math::max);
+            
+            try
+            {
+                if(barrier != null) barrier.await(5, TimeUnit.SECONDS);
+                else Thread.sleep(20);
+            }
+            catch(Exception e)
+            {
+                throw new ConvirganceException(e);
+            }
+            finally
+            {
+                running.decrementAndGet();
+            }
+            
+            row.put("Products Sold", 1);
+            rows.add(row);
+            
+            return rows;
+        }
+    }
+    
+    private JSONArray<JSONObject> getReports(String... measures)
+    {
+        JSONArray<JSONObject> reports = new JSONArray<>();
+        JSONArray<String> names;
+        JSONObject report;
+        
+        for(int i=0; i<measures.length; i++)
+        {
+            report = new JSONObject();
+            names = new JSONArray<>();
+            
+            names.add(measures[i]);
+            
+            report.put("id", "report" + i);
+            report.put("dimensions", new JSONArray<>());
+            report.put("measures", names);
+            
+            reports.add(report);
+        }
+        
+        return reports;
+    }
+    
+    private JSONArray<JSONObject> execute(TestBinding binding, JSONArray<JSONObject> reports)
+    {
+        JSONArray<JSONObject> results = new JSONArray<>();
+        
+        for(JSONObject record : binding.execute(reports, null, 0)) results.add(record);
+        
+        return results;
+    }
+    
+    @Test
+    public void testUnknownMeasure()
+    {
+        TestBinding binding = new TestBinding();
+        JSONArray<JSONObject> results = execute(binding, getReports("Products Sold", "Missing", "Products Sold"));
+        
+        assertEquals(3, results.size());
+        assertEquals(2, binding.executions.get());
+        
+        assertEquals("report0", results.get(0).getString("id"));
+        assertEquals(1, results.get(0).getJSONArray("results").size());
+        assertNull(results.get(0).get("error"));
+        
+        assertEquals("report1", results.get(1).getString("id"));
+        assertEquals("Measure [Missing] not found!", results.get(1).getString("error"));
+        assertNull(results.get(1).get("results"));
+        
+        assertEquals("report2", results.get(2).getString("id"));
+        assertEquals(1, results.get(2).getJSONArray("results").size());
+    }
+    
+    @Test
+    public void testDuplicateId()
+    {
+        TestBinding binding = new TestBinding();
+        JSONArray<JSONObject> reports = getReports("Products Sold", "Products Sold");
+        
+        reports.get(1).put("id", "report0");
+        
+        assertThrows(ConvirganceException.class, () -> execute(binding, reports));
+        assertEquals(0, binding.executions.get());
+    }
+    
+    @Test
+    public void testMaxConcurrency()
+    {
+        TestBinding binding = new TestBinding();
+        
+        binding.setMaxConcurrency(1);
+        
+        execute(binding, getReports("Products Sold", "Products Sold", "Products Sold", "Products Sold"));
+        
+        assertEquals(1, binding.peak.get());
+        
+        // Every report must run at once to get past the barrier
+        binding.setMaxConcurrency(4);
+        binding.barrier = new CyclicBarrier(4);
+        
+        for(JSONObject record : execute(binding, getReports("Products Sold", "Products Sold", "Products Sold", "Products Sold")))
+        {
+            assertNull(record.get("error"));
+        }
+        
+        assertEquals(4, binding.peak.get());
+    }
+    
+    @Test
+    public void testContextClassLoader()
+    {
+        TestBinding binding = new TestBinding();
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ClassLoader loader = new URLClassLoader(new URL[0], original);
+        
+        thread.setContextClassLoader(loader);
+        
+        try
+        {
+            execute(binding, getReports("Products Sold", "Products Sold"));
+        }
+        finally
+        {
+            thread.setContextClassLoader(original);
+        }
+        
+        assertEquals(Collections.singleton(loader), binding.loaders);
+        
+        for(Thread pooled : binding.threads) assertNotSame(loader, pooled.getContextClassLoader());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.workload;
+
+import com.invirgance.convirgance.olap.Dimension;
+import com.invirgance.convirgance.olap.Filter;
+import com.invirgance.convirgance.olap.Measure;
+import com.invirgance.convirgance.olap.Metric;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import com.invirgance.convirgance.olap.measures.SumMeasure;
+import com.invirgance.convirgance.olap.sql.Database;
+import com.invirgance.convirgance.olap.sql.Table;
+import com.invirgance.convirgance.olap.stats.StarStatistics;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class AggregateAdvisorTest
+{
+    public Star getStar()
+    {
+        Database stardb = new Database("StarDB");
+        Table sales = new Table("FactSales");
+        Table franchise = new Table("DimFranchise", "id");
+        Table store = new Table("DimStore", "id");
+        
+        stardb.addTable(sales);
+        stardb.addTable(franchise);
+        stardb.addTable(store);
+        
+        sales.addForeignKey("FranchiseId", franchise);
+        sales.addForeignKey("StoreId", store);
+        
+        Star star = new Star(sales);
+        
+        star.addDimension(new Dimension("Franchise Name", franchise, "FranchiseName"));
+        star.addDimension(new Dimension("Store Name", store, "StoreName"));
+        star.addMeasure(new SumMeasure("Products Sold", new Metric(sales, "Quantity")));
+        
+        return star;
+    }
+    
+    public StarStatistics getStatistics(Star star)
+    {
+        StarStatistics statistics = new StarStatistics();
+        
+        statistics.setRows(10000000);
+        statistics.setCardinality(star.getDimension("Franchise Name"), 20);
+        statistics.setCardinality(star.getDimension("Store Name"), 2000);
+        
+        return statistics;
+    }
+    
+    @Test
+    public void testEstimateGroups()
+    {
+        Star star = getStar();
+        StarStatistics statistics = getStatistics(star);
+        
+        assertEquals(20, statistics.estimateGroups(star.getDimensions().subList(0, 1)));
+        assertEquals(40000, statistics.estimateGroups(star.getDimensions()));
+        
+        statistics.setRows(1000);
+        
+        assertTrue(statistics.estimateGroups(star.getDimensions()) <= 1000);
+    }
+    
+    @Test
+    public void testRecommendation()
+    {
+        String expected = "create table AggFactSales2 as\n" +
+                          "select\n" + 
+                          "    DimFranchise.FranchiseName as \"Franchise Name\",\n" +
+                          "    DimStore.StoreName as \"Store Name\",\n" + 
+                          "    sum(FactSales.Quantity) as \"Products Sold\"\n" +
+                          "from FactSales\n" + 
+                          "join DimFranchise on DimFranchise.id = FactSales.FranchiseId\n" + 
+                          "join DimStore on DimStore.id = FactSales.StoreId\n" + 
+                          "group by\n" +
+                          "    DimFranchise.FranchiseName,\n" +
+                          "    DimStore.StoreName";
+        
+        Star star = getStar();
+        Measure measure = star.getMeasure("Products Sold");
+        AggregateAdvisor advisor = new AggregateAdvisor(star, getStatistics(star));
+        ReportGenerator franchise = new ReportGenerator(star);
+        ReportGenerator store = new ReportGenerator(star);
+        List<AggregateTable> tables;
+        
+        franchise.addDimension(star.getDimension("Franchise Name"));
+        franchise.addMeasure(measure);
+        
+        store.addDimension(star.getDimension("Franchise Name"));
+        store.addDimension(star.getDimension("Store Name"));
+        store.addMeasure(measure);
+        
+        advisor.addReport(franchise, 10);
+        advisor.addReport(store, 5);
+        
+        tables = advisor.getRecommendations();
+        
+        assertEquals(2, tables.size());
+        assertEquals(1, tables.get(0).getDimensions().size());
+        assertEquals(2, tables.get(1).getDimensions().size());
+        assertEquals(expected, tables.get(1).getSQL(false));
+        
+        advisor.setStorageBudget(100);
+        
+        tables = advisor.getRecommendations();
+        
+        assertEquals(1, tables.size());
+        assertEquals("Franchise Name", tables.get(0).getDimensions().get(0).getName());
+    }
+    
+    @Test
+    public void testWorkloadLog() throws Exception
+    {
+        Star star = getStar();
+        File file = new File(Files.createTempDirectory("workload").toFile(), "workload.jsonl");
+        WorkloadLog log = new WorkloadLog();
+        AggregateAdvisor advisor = new AggregateAdvisor(star, getStatistics(star));
+        ReportGenerator filtered = new ReportGenerator(star);
+        ReportGenerator franchise = new ReportGenerator(star);
+        List<AggregateTable> tables;
+        
+        filtered.addDimension(star.getDimension("Franchise Name"));
+        filtered.addMeasure(star.getMeasure("Products Sold"));
+        filtered.addFilter(new Filter(star.getDimension("Store Name"), Arrays.asList("Downtown")));
+        
+        franchise.addDimension(star.getDimension("Franchise Name"));
+        franchise.addMeasure(star.getMeasure("Products Sold"));
+        
+        log.setPath(file.getPath());
+        
+        for(int i=0; i<5; i++) log.record(filtered, 100, 1);
+        
+        // Never scanned the fact table
+        for(int i=0; i<100; i++) log.record(franchise, 0, 20, WorkloadLog.COMPLETE, true);
+        for(int i=0; i<100; i++) log.record(franchise, 100, 0, WorkloadLog.ABANDONED, false);
+        for(int i=0; i<100; i++) log.record(franchise, 100, 0, WorkloadLog.FAILED, false);
+        
+        advisor.addWorkload(file);
+        
+        tables = advisor.getRecommendations();
+        
+        // The filter on Store Name can only be answered by keeping the store
+        assertEquals(1, tables.size());
+        assertEquals(2, tables.get(0).getDimensions().size());
+        assertTrue(tables.get(0).covers(filtered));
+    }
+}
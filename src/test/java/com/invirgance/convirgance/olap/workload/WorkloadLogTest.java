@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.olap.workload;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.ReportGenerator;
+import com.invirgance.convirgance.olap.Star;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class WorkloadLogTest
+{
+    private ReportGenerator getReport()
+    {
+        Star star = new AggregateAdvisorTest().getStar();
+        ReportGenerator report = new ReportGenerator(star);
+        
+        report.addDimension(star.getDimension("Franchise Name"));
+        report.addMeasure(star.getMeasure("Products Sold"));
+        
+        return report;
+    }
+    
+    private JSONArray<JSONObject> getRows(int count)
+    {
+        JSONArray<JSONObject> rows = new JSONArray<>();
+        JSONObject row;
+        
+        for(int i=0; i<count; i++)
+        {
+            row = new JSONObject();
+            
+            row.put("Franchise Name", "Franchise " + i);
+            row.put("Products Sold", i);
+            rows.add(row);
+        }
+        
+        return rows;
+    }
+    
+    private JSONArray<JSONObject> readLog(File file) throws Exception
+    {
+        JSONArray<JSONObject> records = new JSONArray<>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        
+        for(String line : lines) records.add(new JSONObject(line));
+        
+        return records;
+    }
+    
+    private WorkloadLog getLog(File file)
+    {
+        WorkloadLog log = new WorkloadLog();
+        
+        log.setPath(file.getPath());
+        
+        return log;
+    }
+    
+    @Test
+    public void testRotation() throws Exception
+    {
+        File directory = Files.createTempDirectory("workload").toFile();
+        File file = new File(directory, "workload.jsonl");
+        WorkloadLog log = getLog(file);
+        ReportGenerator report = getReport();
+        int lines = 0;
+        
+        log.setMaxFileSize(1024);
+        log.setMaxFiles(3);
+        
+        for(int i=0; i<50; i++) log.record(report, i, i);
+        
+        assertTrue(file.exists());
+        assertTrue(new File(file.getPath() + ".1").exists());
+        assertTrue(new File(file.getPath() + ".2").exists());
+        assertFalse(new File(file.getPath() + ".3").exists());
+        
+        for(File rotated : new File[]{ file, new File(file.getPath() + ".1"), new File(file.getPath() + ".2") })
+        {
+            assertTrue(rotated.length() <= 1024);
+            lines += readLog(rotated).size();
+        }
+        
+        // The oldest records have been deleted and the newest are retained
+        assertTrue(lines < 50);
+        assertEquals(49L, readLog(file).get(readLog(file).size() - 1).getLong("rows"));
+        
+        log.setMaxFiles(1);
+        log.setMaxFileSize(1);
+        log.record(report, 0, 0);
+        
+        assertEquals(1, readLog(file).size());
+    }
+    
+    @Test
+    public void testComplete() throws Exception
+    {
+        File file = new File(Files.createTempDirectory("workload").toFile(), "workload.jsonl");
+        WorkloadLog log = getLog(file);
+        JSONObject record;
+        
+        for(JSONObject row : log.track(getReport(), getRows(3))) assertNotNull(row);
+        for(JSONObject row : log.track(getReport(), getRows(2), true)) assertNotNull(row);
+        
+        record = readLog(file).get(0);
+        
+        assertEquals(2, readLog(file).size());
+        assertEquals(WorkloadLog.COMPLETE, record.getString("status"));
+        assertEquals(3L, record.getLong("rows"));
+        assertFalse(record.getBoolean("cached"));
+        
+        record = readLog(file).get(1);
+        
+        assertEquals(WorkloadLog.COMPLETE, record.getString("status"));
+        assertEquals(2L, record.getLong("rows"));
+        assertTrue(record.getBoolean("cached"));
+    }
+    
+    @Test
+    public void testAbandoned() throws Exception
+    {
+        File file = new File(Files.createTempDirectory("workload").toFile(), "workload.jsonl");
+        WorkloadLog log = getLog(file);
+        Iterable<JSONObject> results = log.track(getReport(), getRows(3));
+        Iterator<JSONObject> iterator = results.iterator();
+        
+        iterator.next();
+        ((AutoCloseable)iterator).close();
+        ((AutoCloseable)iterator).close();
+        ((AutoCloseable)results).close();
+        
+        assertEquals(1, readLog(file).size());
+        assertEquals(WorkloadLog.ABANDONED, readLog(file).get(0).getString("status"));
+        assertEquals(1L, readLog(file).get(0).getLong("rows"));
+        
+        // Closing without reading is still recorded
+        ((AutoCloseable)log.track(getReport(), getRows(3))).close();
+        
+        assertEquals(2, readLog(file).size());
+        assertEquals(WorkloadLog.ABANDONED, readLog(file).get(1).getString("status"));
+        assertEquals(0L, readLog(file).get(1).getLong("rows"));
+    }
+    
+    @Test
+    public void testFailed() throws Exception
+    {
+        File file = new File(Files.createTempDirectory("workload").toFile(), "workload.jsonl");
+        WorkloadLog log = getLog(file);
+        Iterable<JSONObject> results = () -> new Iterator<JSONObject>() {
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(index >= 2) throw new ConvirganceException("Connection lost");
+                
+                return true;
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                index++;
+                
+                return new JSONObject();
+            }
+        };
+        
+        try
+        {
+            for(JSONObject row : log.track(getReport(), results)) assertNotNull(row);
+            
+            fail("Expected the read to fail");
+        }
+        catch(ConvirganceException e)
+        {
+            assertEquals("Connection lost", e.getMessage());
+        }
+        
+        try
+        {
+            log.track(getReport(), () -> { throw new ConvirganceException("Rejected"); }).iterator();
+            
+            fail("Expected the query to fail");
+        }
+        catch(ConvirganceException e)
+        {
+            assertEquals("Rejected", e.getMessage());
+        }
+        
+        assertEquals(2, readLog(file).size());
+        assertEquals(WorkloadLog.FAILED, readLog(file).get(0).getString("status"));
+        assertEquals(2L, readLog(file).get(0).getLong("rows"));
+        assertEquals(WorkloadLog.FAILED, readLog(file).get(1).getString("status"));
+        assertEquals(0L, readLog(file).get(1).getLong("rows"));
+    }
+    
+    @Test
+    public void testWriteFailure() throws Exception
+    {
+        File directory = Files.createTempDirectory("workload").toFile();
+        WorkloadLog log = getLog(directory);
+        int count = 0;
+        
+        // The log path is a directory so every write fails
+        for(JSONObject row : log.track(getReport(), getRows(3))) count++;
+        
+        log.record(getReport(), 0, 0);
+        
+        assertEquals(3, count);
+        assertEquals(2, log.getFailures());
+    }
+}
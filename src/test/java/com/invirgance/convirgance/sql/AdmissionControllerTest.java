@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.sql;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class AdmissionControllerTest
+{
+    private Thread start(AdmissionController controller, int priority, List<Integer> order)
+    {
+        Thread thread = new Thread(() -> {
+            controller.acquire(priority);
+            order.add(priority);
+            controller.release();
+        });
+        
+        thread.start();
+        
+        return thread;
+    }
+    
+    private void awaitQueued(AdmissionController controller, int queued) throws InterruptedException
+    {
+        while(((Number)controller.getMetrics().get("queued")).intValue() < queued) Thread.sleep(5);
+    }
+    
+    @Test
+    public void testPriority() throws Exception
+    {
+        AdmissionController controller = new AdmissionController("test");
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Thread export;
+        Thread interactive;
+        
+        controller.setMaxConcurrent(1);
+        controller.acquire(AdmissionController.INTERACTIVE);
+        
+        export = start(controller, AdmissionController.EXPORT, order);
+        awaitQueued(controller, 1);
+        interactive = start(controller, AdmissionController.INTERACTIVE, order);
+        awaitQueued(controller, 2);
+        
+        controller.release();
+        export.join();
+        interactive.join();
+        
+        assertEquals(AdmissionController.INTERACTIVE, (int)order.get(0));
+        assertEquals(AdmissionController.EXPORT, (int)order.get(1));
+        assertEquals(3L, controller.getMetrics().get("admitted"));
+        assertEquals(0, controller.getMetrics().get("active"));
+    }
+    
+    @Test
+    public void testRejection() throws Exception
+    {
+        AdmissionController controller = new AdmissionController("test");
+        
+        controller.setMaxConcurrent(1);
+        controller.setMaxQueued(0);
+        controller.acquire(AdmissionController.INTERACTIVE);
+        
+        assertThrows(ConvirganceException.class, () -> controller.acquire(AdmissionController.INTERACTIVE));
+        
+        controller.setMaxQueued(1);
+        controller.setQueueTimeout(10);
+        
+        assertThrows(ConvirganceException.class, () -> controller.acquire(AdmissionController.INTERACTIVE));
+        assertEquals(1L, controller.getMetrics().get("rejected"));
+        assertEquals(1L, controller.getMetrics().get("timedOut"));
+        assertEquals(0, controller.getMetrics().get("queued"));
+    }
+    
+    @Test
+    public void testFirstConfigurationWins()
+    {
+        AdmissionController controller = AdmissionController.get("testFirstConfigurationWins", 2, 5, 1000);
+        
+        assertSame(controller, AdmissionController.get("testFirstConfigurationWins", 4, 10, 2000));
+        assertEquals(2, controller.getMaxConcurrent());
+        assertEquals(5, controller.getMaxQueued());
+        assertEquals(1000, controller.getQueueTimeout());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.sql;
+
+import com.invirgance.convirgance.olap.sql.MemberIndex;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class MemberIndexTest
+{
+    @Test
+    public void testSearch()
+    {
+        MemberIndex index = new MemberIndex(Arrays.asList("Uptown", "downtown", "Airport", null, "Down Under", "Dover"));
+        
+        assertEquals(5, index.size());
+        assertEquals(Arrays.asList("Dover", "Down Under", "downtown"), index.findPrefix("do", 10));
+        assertEquals(Arrays.asList("Down Under", "downtown"), index.findPrefix("DOWN", 10));
+        assertEquals(Arrays.asList("Dover"), index.findPrefix("d", 1));
+        assertEquals(Arrays.asList(), index.findPrefix("x", 10));
+        assertEquals(Arrays.asList("downtown", "Uptown"), index.findSubstring("town", 10));
+        assertEquals(Arrays.asList("Down Under", "downtown", "Uptown"), index.findSubstring("own", 10));
+        assertEquals(5, index.findPrefix("", 10).size());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.convirgance.sql;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.olap.sql.AdmissionController;
+import com.invirgance.convirgance.olap.sql.QueryCursor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class QueryCursorTest
+{
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(QueryCursorTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+    
+    /**
+     * Creates a database whose queries take the delay to return their first
+     * row unless cancelled first.
+     */
+    private DataSource getSource(long delay, List<Object> values, CountDownLatch cancelled)
+    {
+        ResultSetMetaData metadata = proxy(ResultSetMetaData.class, (object, method, args) -> {
+            if(method.getName().equals("getColumnCount")) return 1;
+            if(method.getName().equals("getColumnLabel")) return "value";
+            
+            return null;
+        });
+        
+        return proxy(DataSource.class, (source, sourceMethod, sourceArgs) -> {
+            return proxy(Connection.class, (connection, connectionMethod, connectionArgs) -> {
+                if(!connectionMethod.getName().equals("createStatement")) return null;
+                
+                return proxy(Statement.class, (statement, method, args) -> {
+                    Iterator<Object> iterator = values.iterator();
+                    AtomicReference<Object> current = new AtomicReference<>();
+                    
+                    if(method.getName().equals("cancel")) cancelled.countDown();
+                    if(!method.getName().equals("executeQuery")) return null;
+                    
+                    if(cancelled.await(delay, TimeUnit.MILLISECONDS)) throw new SQLException("cancelled");
+                    
+                    return proxy(ResultSet.class, (results, resultsMethod, resultsArgs) -> {
+                        switch(resultsMethod.getName())
+                        {
+                            case "next":
+                                if(cancelled.getCount() == 0) throw new SQLException("cancelled");
+                                if(!iterator.hasNext()) return false;
+                                
+                                current.set(iterator.next());
+                                
+                                return true;
+                            case "getMetaData":
+                                return metadata;
+                            case "getObject":
+                                return current.get();
+                            default:
+                                return null;
+                        }
+                    });
+                });
+            });
+        });
+    }
+    
+    @Test
+    public void testSlowFirstRow()
+    {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        QueryCursor cursor = new QueryCursor(getSource(1500, Arrays.asList(1, 2), cancelled), "select 1");
+        int count = 0;
+        
+        // Waiting on the database is not idle time
+        cursor.setIdleTimeout(1);
+        
+        for(JSONObject row : cursor) count++;
+        
+        assertEquals(2, count);
+        assertFalse(cursor.isCancelled());
+        assertEquals(1, cancelled.getCount());
+    }
+    
+    @Test
+    public void testIdleTimeout() throws Exception
+    {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        QueryCursor cursor = new QueryCursor(getSource(0, Arrays.asList(1, 2, 3), cancelled), "select 1");
+        Iterator<JSONObject> iterator;
+        
+        assertEquals(60, cursor.getIdleTimeout());
+        
+        cursor.setIdleTimeout(1);
+        
+        iterator = cursor.iterator();
+        
+        assertEquals(1, iterator.next().get("value"));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(cursor.isCancelled());
+        assertEquals("Query cancelled", assertThrows(ConvirganceException.class, () -> iterator.next()).getMessage());
+    }
+    
+    @Test
+    public void testTimeout()
+    {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        QueryCursor cursor = new QueryCursor(getSource(10000, Arrays.asList(1), cancelled), "select 1");
+        long start = System.currentTimeMillis();
+        
+        cursor.setTimeout(1);
+        
+        assertEquals("Query cancelled", assertThrows(ConvirganceException.class, () -> cursor.iterator()).getMessage());
+        assertTrue(cursor.isCancelled());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+    
+    @Test
+    public void testCloseWhileQueued() throws Exception
+    {
+        AdmissionController controller = new AdmissionController("cursor");
+        CountDownLatch cancelled = new CountDownLatch(1);
+        QueryCursor cursor = new QueryCursor(getSource(0, Arrays.asList(1), cancelled), "select 1");
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread reader;
+        long start;
+        
+        controller.setMaxConcurrent(1);
+        controller.acquire(AdmissionController.INTERACTIVE);
+        cursor.setAdmissionController(controller, AdmissionController.INTERACTIVE);
+        
+        reader = new Thread(() -> {
+            try
+            {
+                cursor.iterator();
+            }
+            catch(Exception e)
+            {
+                error.set(e);
+            }
+        });
+        
+        reader.start();
+        
+        while(((Number)controller.getMetrics().get("queued")).intValue() < 1) Thread.sleep(5);
+        
+        start = System.currentTimeMillis();
+        
+        cursor.close();
+        reader.join(5000);
+        
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertFalse(reader.isAlive());
+        assertEquals("Query cancelled", error.get().getMessage());
+        assertEquals(0, controller.getMetrics().get("queued"));
+        assertEquals(1, controller.getMetrics().get("active"));
+        
+        controller.release();
+        
+        assertEquals(0, controller.getMetrics().get("active"));
+    }
+}